@@ -1261,19 +1261,7 @@ public abstract class AbstractByteBuf extends ByteBuf {
     }
 
     private int firstIndexOf(int fromIndex, int toIndex, byte value) {
-        fromIndex = Math.max(fromIndex, 0);
-        if (fromIndex >= toIndex || capacity() == 0) {
-            return -1;
-        }
-        checkIndex(fromIndex, toIndex - fromIndex);
-
-        for (int i = fromIndex; i < toIndex; i ++) {
-            if (_getByte(i) == value) {
-                return i;
-            }
-        }
-
-        return -1;
+        return ByteBufUtil.firstIndexOf(this, fromIndex, toIndex, value);
     }
 
     private int lastIndexOf(int fromIndex, int toIndex, byte value) {
@@ -37,6 +37,8 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
     }
 
     protected static ByteBuf toLeakAwareBuffer(ByteBuf buf) {
+        // Sample the buffer before the leak detector wraps it, so the leak detector tracks the sampled buffer.
+        buf = ByteBufAllocationProfiler.track(buf);
         ResourceLeakTracker<ByteBuf> leak;
         switch (ResourceLeakDetector.getLevel()) {
             case SIMPLE:
@@ -59,6 +61,8 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
     }
 
     protected static CompositeByteBuf toLeakAwareBuffer(CompositeByteBuf buf) {
+        // Sample the buffer before the leak detector wraps it, so the leak detector tracks the sampled buffer.
+        buf = ByteBufAllocationProfiler.track(buf);
         ResourceLeakTracker<ByteBuf> leak;
         switch (ResourceLeakDetector.getLevel()) {
             case SIMPLE:
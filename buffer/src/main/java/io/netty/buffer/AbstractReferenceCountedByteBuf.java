@@ -16,18 +16,40 @@
 
 package io.netty.buffer;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.internal.ReferenceCountUpdater;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 
 /**
  * Abstract base class for {@link ByteBuf} implementations that count references.
+ * <p>
+ * If {@code -Dio.netty.buffer.ownerThreadRefCnt} is {@code true}, buffers created or reused on an
+ * {@link EventExecutor} thread are owned by it: while the buffer does not leave it, {@link #retain()} and
+ * {@link #release()} are plain writes. Other threads count their references in an atomic counter, and once the
+ * owner gave up all its references (or the other threads released more than they retained) both are merged into
+ * the usual atomic reference count.
+ * <p>
+ * In this mode {@link #release()} on a thread other than the owner never deallocates the buffer, even if it gave up
+ * the last reference: it returns {@code false} and the owner deallocates the buffer once it merged the reference
+ * counts, unless the owner was terminated already.
  */
 public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(
+            AbstractReferenceCountedByteBuf.class);
+
     private static final long REFCNT_FIELD_OFFSET =
             ReferenceCountUpdater.getUnsafeOffset(AbstractReferenceCountedByteBuf.class, "refCnt");
     private static final AtomicIntegerFieldUpdater<AbstractReferenceCountedByteBuf> AIF_UPDATER =
             AtomicIntegerFieldUpdater.newUpdater(AbstractReferenceCountedByteBuf.class, "refCnt");
+    private static final AtomicIntegerFieldUpdater<Ownership> SHARED_REFCNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Ownership.class, "sharedRefCnt");
 
     private static final ReferenceCountUpdater<AbstractReferenceCountedByteBuf> updater =
             new ReferenceCountUpdater<AbstractReferenceCountedByteBuf>() {
@@ -41,16 +63,64 @@ public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
         }
     };
 
+    private static final boolean OWNER_THREAD_REFCNT =
+            SystemPropertyUtil.getBoolean("io.netty.buffer.ownerThreadRefCnt", false);
+
+    // Values of sharedRefCnt once the owner thread mode is left.
+    private static final int MERGING = Integer.MIN_VALUE;
+    private static final int MERGED = Integer.MIN_VALUE + 1;
+
+    static {
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.buffer.ownerThreadRefCnt: {}", OWNER_THREAD_REFCNT);
+        }
+    }
+
     // Value might not equal "real" reference count, all access should be via the updater
     @SuppressWarnings("unused")
     private volatile int refCnt = updater.initialValue();
 
+    // The owner thread mode, null if only refCnt is used. A single field so buffers do not pay for it if the mode
+    // is off.
+    private Ownership ownership;
+
     protected AbstractReferenceCountedByteBuf(int maxCapacity) {
         super(maxCapacity);
+        if (OWNER_THREAD_REFCNT) {
+            setOwner(ThreadExecutorMap.currentExecutor());
+        }
+    }
+
+    /**
+     * Let the buffer be owned by {@code owner}, which must be the current thread's executor, or use the atomic
+     * reference count if {@code null}. Must only be called while the buffer is not shared with other threads.
+     */
+    final void setOwner(EventExecutor owner) {
+        if (owner != null) {
+            assert owner.inEventLoop();
+            Ownership ownership = this.ownership;
+            if (ownership == null || ownership.owner != owner) {
+                ownership = new Ownership(owner);
+                this.ownership = ownership;
+            }
+            ownership.ownerRefCnt = updater.refCnt(this);
+            // The volatile write publishes the field above.
+            ownership.sharedRefCnt = 0;
+        } else {
+            ownership = null;
+        }
     }
 
     @Override
     boolean isAccessible() {
+        Ownership ownership = this.ownership;
+        if (ownership != null) {
+            int shared = ownership.sharedRefCnt;
+            if (shared != MERGING && shared != MERGED) {
+                // Best-effort on other threads, just like the non-volatile read below.
+                return ownership.ownerRefCnt + shared > 0;
+            }
+        }
         // Try to do non-volatile read for performance as the ensureAccessible() is racy anyway and only provide
         // a best-effort guard.
         return updater.isLiveNonVolatile(this);
@@ -58,6 +128,15 @@ public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
 
     @Override
     public int refCnt() {
+        Ownership ownership = this.ownership;
+        if (ownership != null) {
+            int shared = ownership.sharedRefCnt;
+            if (shared != MERGING && shared != MERGED) {
+                // Only exact on the owner thread.
+                return ownership.ownerRefCnt + shared;
+            }
+            ownership.awaitMerged();
+        }
         return updater.refCnt(this);
     }
 
@@ -65,6 +144,7 @@ public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
      * An unsafe operation intended for use by a subclass that sets the reference count of the buffer directly
      */
     protected final void setRefCnt(int refCnt) {
+        ownership = null;
         updater.setRefCnt(this, refCnt);
     }
 
@@ -73,15 +153,30 @@ public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
      */
     protected final void resetRefCnt() {
         updater.resetRefCnt(this);
+        if (OWNER_THREAD_REFCNT) {
+            setOwner(ThreadExecutorMap.currentExecutor());
+        }
     }
 
     @Override
     public ByteBuf retain() {
+        Ownership ownership = this.ownership;
+        if (ownership != null) {
+            return ownedRetain(ownership, 1);
+        }
         return updater.retain(this);
     }
 
     @Override
     public ByteBuf retain(int increment) {
+        Ownership ownership = this.ownership;
+        if (ownership != null) {
+            if (increment <= 0) {
+                // Let the updater throw the usual exception.
+                return updater.retain(this, increment);
+            }
+            return ownedRetain(ownership, increment);
+        }
         return updater.retain(this, increment);
     }
 
@@ -97,11 +192,19 @@ public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
 
     @Override
     public boolean release() {
+        Ownership ownership = this.ownership;
+        if (ownership != null) {
+            return ownedRelease(ownership, 1);
+        }
         return handleRelease(updater.release(this));
     }
 
     @Override
     public boolean release(int decrement) {
+        Ownership ownership = this.ownership;
+        if (ownership != null && decrement > 0) {
+            return ownedRelease(ownership, decrement);
+        }
         return handleRelease(updater.release(this, decrement));
     }
 
@@ -112,8 +215,144 @@ public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
         return result;
     }
 
+    // Once merged, sharedRefCnt stays MERGED and all threads use refCnt. The ownership is never cleared while the
+    // buffer may be shared, so the decision to use refCnt only depends on the volatile sharedRefCnt.
+
+    private ByteBuf ownedRetain(Ownership ownership, int increment) {
+        if (ownership.owner.inEventLoop()) {
+            if (ownership.sharedRefCnt == MERGED) {
+                return updater.retain(this, increment);
+            }
+            int cnt = ownership.ownerRefCnt;
+            if (cnt + increment < cnt) {
+                throw new IllegalReferenceCountException(cnt, increment);
+            }
+            ownership.ownerRefCnt = cnt + increment;
+            return this;
+        }
+        for (;;) {
+            int shared = ownership.sharedRefCnt;
+            if (shared == MERGING || shared == MERGED) {
+                ownership.awaitMerged();
+                return updater.retain(this, increment);
+            }
+            if (shared + increment < shared) {
+                throw new IllegalReferenceCountException(shared, increment);
+            }
+            if (SHARED_REFCNT_UPDATER.compareAndSet(ownership, shared, shared + increment)) {
+                return this;
+            }
+        }
+    }
+
+    private boolean ownedRelease(Ownership ownership, int decrement) {
+        if (ownership.owner.inEventLoop()) {
+            if (ownership.sharedRefCnt != MERGED) {
+                int cnt = ownership.ownerRefCnt;
+                if (decrement < cnt) {
+                    ownership.ownerRefCnt = cnt - decrement;
+                    return false;
+                }
+                // The owner gives up its last references, from now on all threads use refCnt.
+                if (merge(ownership)) {
+                    // Already deallocated because the other threads released the references of the owner.
+                    throw new IllegalReferenceCountException(0, -decrement);
+                }
+            }
+            return handleRelease(updater.release(this, decrement));
+        }
+        for (;;) {
+            int shared = ownership.sharedRefCnt;
+            if (shared == MERGING || shared == MERGED) {
+                ownership.awaitMerged();
+                return handleRelease(updater.release(this, decrement));
+            }
+            int newShared = shared - decrement;
+            if (newShared > shared || newShared <= MERGED) {
+                throw new IllegalReferenceCountException(shared, -decrement);
+            }
+            if (SHARED_REFCNT_UPDATER.compareAndSet(ownership, shared, newShared)) {
+                if (newShared < 0 && shared >= 0) {
+                    // The references of the owner are released by this thread, so it may never release the buffer
+                    // itself: let the owner check if the buffer must be deallocated.
+                    return scheduleMerge(ownership);
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Let the owner merge the reference counts. Returns {@code true} if the owner is terminated and the buffer was
+     * deallocated by the current thread.
+     */
+    private boolean scheduleMerge(final Ownership ownership) {
+        try {
+            ownership.owner.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Only the owner thread leaves the owner thread mode, so if it is not MERGED yet the buffer is
+                    // still owned by this thread.
+                    if (ownership.sharedRefCnt != MERGED) {
+                        merge(ownership);
+                    }
+                }
+            });
+            return false;
+        } catch (RejectedExecutionException e) {
+            // The owner does not run tasks anymore, so it can not access ownerRefCnt concurrently.
+            return merge(ownership);
+        }
+    }
+
+    /**
+     * Move the references of the owner thread and the other threads to refCnt, and deallocate the buffer if there
+     * are none. Returns {@code true} if the buffer was deallocated.
+     */
+    private boolean merge(Ownership ownership) {
+        int shared;
+        do {
+            shared = ownership.sharedRefCnt;
+            if (shared == MERGING || shared == MERGED) {
+                return false;
+            }
+        } while (!SHARED_REFCNT_UPDATER.compareAndSet(ownership, shared, MERGING));
+
+        int cnt = ownership.ownerRefCnt + shared;
+        ownership.ownerRefCnt = 0;
+        // Publish refCnt before MERGED, as the other threads use refCnt as soon as they see MERGED.
+        updater.setRefCnt(this, cnt);
+        ownership.sharedRefCnt = MERGED;
+        if (cnt > 0) {
+            return false;
+        }
+        deallocate();
+        if (cnt < 0) {
+            throw new IllegalReferenceCountException(0, cnt);
+        }
+        return true;
+    }
+
     /**
      * Called once {@link #refCnt()} is equals 0.
      */
     protected abstract void deallocate();
+
+    private static final class Ownership {
+        final EventExecutor owner;
+        // References held by the owner thread, only accessed by it.
+        int ownerRefCnt;
+        // References retained minus released by other threads, or MERGING / MERGED.
+        volatile int sharedRefCnt;
+
+        Ownership(EventExecutor owner) {
+            this.owner = owner;
+        }
+
+        void awaitMerged() {
+            while (sharedRefCnt == MERGING) {
+                Thread.yield();
+            }
+        }
+    }
 }
@@ -731,6 +731,12 @@ final class AdvancedLeakAwareByteBuf extends SimpleLeakAwareByteBuf {
         return super.nioBuffers(index, length);
     }
 
+    @Override
+    public int nioBuffers(int index, int length, ByteBuffer[] buffers, int offset, int maxCount) {
+        recordLeakNonRefCountingOperation(leak);
+        return super.nioBuffers(index, length, buffers, offset, maxCount);
+    }
+
     @Override
     public ByteBuffer internalNioBuffer(int index, int length) {
         recordLeakNonRefCountingOperation(leak);
@@ -243,6 +243,12 @@ final class AdvancedLeakAwareCompositeByteBuf extends SimpleLeakAwareCompositeBy
         return super.getBytes(index, dst);
     }
 
+    @Override
+    public CompositeByteBuf getBytes(int index, ByteBuffer... dsts) {
+        recordLeakNonRefCountingOperation(leak);
+        return super.getBytes(index, dsts);
+    }
+
     @Override
     public CompositeByteBuf getBytes(int index, OutputStream out, int length) throws IOException {
         recordLeakNonRefCountingOperation(leak);
@@ -717,6 +723,12 @@ final class AdvancedLeakAwareCompositeByteBuf extends SimpleLeakAwareCompositeBy
         return super.nioBuffers(index, length);
     }
 
+    @Override
+    public int nioBuffers(int index, int length, ByteBuffer[] buffers, int offset, int maxCount) {
+        recordLeakNonRefCountingOperation(leak);
+        return super.nioBuffers(index, length, buffers, offset, maxCount);
+    }
+
     @Override
     public ByteBuffer internalNioBuffer(int index, int length) {
         recordLeakNonRefCountingOperation(leak);
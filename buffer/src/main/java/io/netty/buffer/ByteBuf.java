@@ -2345,6 +2345,49 @@ public abstract class ByteBuf implements ReferenceCounted, Comparable<ByteBuf> {
      */
     public abstract ByteBuffer[] nioBuffers(int index, int length);
 
+    /**
+     * Exposes this buffer's sub-region as NIO {@link ByteBuffer}'s by storing them into the specified
+     * {@code buffers} array starting at {@code offset}, and returns the number of buffers that were stored.
+     * At most {@code maxCount} buffers are stored and empty buffers are skipped. Unlike
+     * {@link #nioBuffers(int, int)} this method does not allocate a new array and, where possible, stores the
+     * internal NIO buffers of this buffer (see {@link #internalNioBuffer(int, int)}) instead of creating new
+     * duplicates. This makes it suitable for gathering writes that reuse the same {@code buffers} array.
+     * This method does not modify {@code readerIndex} or {@code writerIndex} of this buffer.
+     * <p>
+     * The stored buffers may share their position and limit with this buffer's internal NIO buffers, so they
+     * are only valid until the next call to this method, {@link #internalNioBuffer(int, int)} or any other
+     * operation that uses the internal NIO buffers of this buffer.
+     *
+     * @throws UnsupportedOperationException
+     *         if this buffer cannot create a {@link ByteBuffer} that shares the content with itself
+     * @throws IndexOutOfBoundsException
+     *         if {@code buffers} has not enough room for the stored buffers
+     *
+     * @see #nioBufferCount()
+     * @see #nioBuffers(int, int)
+     */
+    public int nioBuffers(int index, int length, ByteBuffer[] buffers, int offset, int maxCount) {
+        if (length == 0 || maxCount <= 0) {
+            return 0;
+        }
+        if (nioBufferCount() == 1) {
+            buffers[offset] = internalNioBuffer(index, length);
+            return 1;
+        }
+        ByteBuffer[] nioBuffers = nioBuffers(index, length);
+        int count = 0;
+        for (int i = 0; i < nioBuffers.length && count < maxCount; i++) {
+            ByteBuffer nioBuffer = nioBuffers[i];
+            if (nioBuffer == null) {
+                break;
+            }
+            if (nioBuffer.hasRemaining()) {
+                buffers[offset + count++] = nioBuffer;
+            }
+        }
+        return count;
+    }
+
     /**
      * Returns {@code true} if and only if this buffer has a backing byte array.
      * If this method returns true, you can safely call {@link #array()} and
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sampling profiler of the buffers allocated by all {@link AbstractByteBufAllocator}s. One in
+ * {@link #samplingInterval()} buffers is tracked: the stack trace of its allocation site is recorded together with
+ * its capacity and, once it is released, its lifetime. The results can be obtained via {@link #snapshot()}.
+ * <p>
+ * Only sampled buffers pay for capturing the stack trace and for a wrapper that notices their release, so with
+ * a large enough sampling interval the profiler is cheap enough to stay enabled in production. Multiply the numbers
+ * of a {@link ByteBufAllocationSite} by the sampling interval to estimate the real numbers.
+ */
+@UnstableApi
+public final class ByteBufAllocationProfiler {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(ByteBufAllocationProfiler.class);
+
+    private static final String PROP_SAMPLING_INTERVAL = "io.netty.allocator.profilerSamplingInterval";
+    private static final String PROP_STACK_DEPTH = "io.netty.allocator.profilerStackDepth";
+    private static final String PROP_MAX_SITES = "io.netty.allocator.profilerMaxSites";
+
+    private static final int STACK_DEPTH;
+    private static final int MAX_SITES;
+
+    private static volatile int samplingInterval;
+
+    private static final ConcurrentMap<String, Site> sites = PlatformDependent.newConcurrentHashMap();
+    private static final Site OVERFLOW_SITE = new Site("(too many allocation sites)");
+
+    static {
+        samplingInterval = Math.max(0, SystemPropertyUtil.getInt(PROP_SAMPLING_INTERVAL, 0));
+        STACK_DEPTH = Math.max(1, SystemPropertyUtil.getInt(PROP_STACK_DEPTH, 4));
+        MAX_SITES = Math.max(1, SystemPropertyUtil.getInt(PROP_MAX_SITES, 1024));
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("-D{}: {}", PROP_SAMPLING_INTERVAL, samplingInterval);
+            logger.debug("-D{}: {}", PROP_STACK_DEPTH, STACK_DEPTH);
+            logger.debug("-D{}: {}", PROP_MAX_SITES, MAX_SITES);
+        }
+    }
+
+    private ByteBufAllocationProfiler() { }
+
+    /**
+     * Return {@code true} if allocations are sampled.
+     */
+    public static boolean isEnabled() {
+        return samplingInterval > 0;
+    }
+
+    /**
+     * Return the number of allocations per sampled allocation, or {@code 0} if the profiler is disabled.
+     */
+    public static int samplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Set the number of allocations per sampled allocation, {@code 0} disables the profiler. Buffers that were
+     * sampled before are still tracked until they are released.
+     */
+    public static void setSamplingInterval(int samplingInterval) {
+        ByteBufAllocationProfiler.samplingInterval = ObjectUtil.checkPositiveOrZero(
+                samplingInterval, "samplingInterval");
+    }
+
+    /**
+     * Return a snapshot of all allocation sites recorded so far, ordered by the number of bytes allocated by the
+     * sampled buffers that are still live.
+     */
+    public static List<ByteBufAllocationSite> snapshot() {
+        List<ByteBufAllocationSite> snapshot = new ArrayList<ByteBufAllocationSite>(sites.size() + 1);
+        for (Site site : sites.values()) {
+            snapshot.add(site.snapshot());
+        }
+        if (OVERFLOW_SITE.sampledAllocations.get() > 0) {
+            snapshot.add(OVERFLOW_SITE.snapshot());
+        }
+        Collections.sort(snapshot, new Comparator<ByteBufAllocationSite>() {
+            @Override
+            public int compare(ByteBufAllocationSite o1, ByteBufAllocationSite o2) {
+                long bytes1 = o1.liveBytes();
+                long bytes2 = o2.liveBytes();
+                return bytes1 > bytes2 ? -1 : bytes1 < bytes2 ? 1 : 0;
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Return a snapshot of all allocation sites recorded so far in a human readable form.
+     */
+    public static String dump() {
+        StringBuilder buf = new StringBuilder(1024)
+                .append("Sampling interval: ").append(samplingInterval)
+                .append(StringUtil.NEWLINE);
+        for (ByteBufAllocationSite site : snapshot()) {
+            buf.append(site).append(StringUtil.NEWLINE);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Forget all allocation sites recorded so far. Buffers that were sampled before are still tracked until they
+     * are released, but their release is not recorded anymore.
+     */
+    public static void reset() {
+        sites.clear();
+        OVERFLOW_SITE.reset();
+    }
+
+    static ByteBuf track(ByteBuf buf) {
+        Site site = sample();
+        return site == null ? buf : new TrackedByteBuf(buf, new SampledAllocation(site, buf.capacity()));
+    }
+
+    static CompositeByteBuf track(CompositeByteBuf buf) {
+        Site site = sample();
+        return site == null ? buf : new TrackedCompositeByteBuf(buf, new SampledAllocation(site, buf.capacity()));
+    }
+
+    private static Site sample() {
+        int samplingInterval = ByteBufAllocationProfiler.samplingInterval;
+        if (samplingInterval == 0 || PlatformDependent.threadLocalRandom().nextInt(samplingInterval) != 0) {
+            return null;
+        }
+        String stackTrace = allocationSite(new Throwable().getStackTrace());
+        Site site = sites.get(stackTrace);
+        if (site == null) {
+            if (sites.size() >= MAX_SITES) {
+                return OVERFLOW_SITE;
+            }
+            Site newSite = new Site(stackTrace);
+            site = sites.putIfAbsent(stackTrace, newSite);
+            if (site == null) {
+                site = newSite;
+            }
+        }
+        return site;
+    }
+
+    private static String allocationSite(StackTraceElement[] stackTrace) {
+        // Skip the frames of the profiler and of the allocators, so that the site starts with their caller.
+        int i = 0;
+        while (i < stackTrace.length - 1 && isAllocatorFrame(stackTrace[i])) {
+            i++;
+        }
+        StringBuilder buf = new StringBuilder(256);
+        for (int end = Math.min(stackTrace.length, i + STACK_DEPTH); i < end; i++) {
+            buf.append("\tat ").append(stackTrace[i]).append(StringUtil.NEWLINE);
+        }
+        return buf.toString();
+    }
+
+    private static boolean isAllocatorFrame(StackTraceElement element) {
+        String className = element.getClassName();
+        return className.equals(ByteBufAllocationProfiler.class.getName()) ||
+                className.startsWith("io.netty.buffer.") &&
+                (className.contains("Allocator") || className.equals(Unpooled.class.getName()));
+    }
+
+    /**
+     * Histogram index of a capacity, {@code i} for capacities in {@code [2^i, 2^(i+1))}.
+     */
+    static int capacityIndex(int capacity) {
+        return Math.max(0, 31 - Integer.numberOfLeadingZeros(capacity));
+    }
+
+    /**
+     * Histogram index of a lifetime, {@code i} for lifetimes in {@code [2^i, 2^(i+1))} microseconds.
+     */
+    static int lifetimeIndex(long lifetimeNanos) {
+        long lifetimeMicros = TimeUnit.NANOSECONDS.toMicros(lifetimeNanos);
+        return Math.min(ByteBufAllocationSite.LIFETIME_BUCKETS - 1,
+                Math.max(0, 63 - Long.numberOfLeadingZeros(lifetimeMicros)));
+    }
+
+    private static final class Site {
+        private final String stackTrace;
+        final AtomicLong sampledAllocations = new AtomicLong();
+        private final AtomicLong sampledBytes = new AtomicLong();
+        private final AtomicLong releasedAllocations = new AtomicLong();
+        private final AtomicLong releasedBytes = new AtomicLong();
+        private final AtomicLongArray capacities = new AtomicLongArray(ByteBufAllocationSite.CAPACITY_BUCKETS);
+        private final AtomicLongArray lifetimes = new AtomicLongArray(ByteBufAllocationSite.LIFETIME_BUCKETS);
+
+        Site(String stackTrace) {
+            this.stackTrace = stackTrace;
+        }
+
+        void allocated(int capacity) {
+            sampledAllocations.incrementAndGet();
+            sampledBytes.addAndGet(capacity);
+            capacities.incrementAndGet(capacityIndex(capacity));
+        }
+
+        void released(int capacity, long lifetimeNanos) {
+            releasedAllocations.incrementAndGet();
+            releasedBytes.addAndGet(capacity);
+            lifetimes.incrementAndGet(lifetimeIndex(lifetimeNanos));
+        }
+
+        void reset() {
+            sampledAllocations.set(0);
+            sampledBytes.set(0);
+            releasedAllocations.set(0);
+            releasedBytes.set(0);
+            for (int i = 0; i < capacities.length(); i++) {
+                capacities.set(i, 0);
+            }
+            for (int i = 0; i < lifetimes.length(); i++) {
+                lifetimes.set(i, 0);
+            }
+        }
+
+        ByteBufAllocationSite snapshot() {
+            long[] capacities = new long[this.capacities.length()];
+            for (int i = 0; i < capacities.length; i++) {
+                capacities[i] = this.capacities.get(i);
+            }
+            long[] lifetimes = new long[this.lifetimes.length()];
+            for (int i = 0; i < lifetimes.length; i++) {
+                lifetimes[i] = this.lifetimes.get(i);
+            }
+            // Read the releases first so the live numbers can not become negative.
+            long releasedAllocations = this.releasedAllocations.get();
+            long releasedBytes = this.releasedBytes.get();
+            return new ByteBufAllocationSite(stackTrace, sampledAllocations.get(), sampledBytes.get(),
+                    releasedAllocations, releasedBytes, capacities, lifetimes);
+        }
+    }
+
+    /**
+     * Records the release of a sampled buffer.
+     */
+    private static final class SampledAllocation extends TrackedByteBuf.Allocation {
+        private final Site site;
+        private final int capacity;
+        private final long allocationNanos = System.nanoTime();
+
+        SampledAllocation(Site site, int capacity) {
+            this.site = site;
+            this.capacity = capacity;
+            site.allocated(capacity);
+        }
+
+        @Override
+        protected void released() {
+            site.released(capacity, System.nanoTime() - allocationNanos);
+        }
+    }
+}
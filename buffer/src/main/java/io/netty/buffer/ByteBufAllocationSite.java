@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.UnstableApi;
+
+import static java.lang.Math.max;
+
+/**
+ * Snapshot of the buffers sampled by the {@link ByteBufAllocationProfiler} for one allocation site.
+ */
+@UnstableApi
+public final class ByteBufAllocationSite {
+
+    static final int CAPACITY_BUCKETS = 31;
+    static final int LIFETIME_BUCKETS = 40;
+
+    private final String stackTrace;
+    private final long sampledAllocations;
+    private final long sampledBytes;
+    private final long releasedAllocations;
+    private final long releasedBytes;
+    private final long[] capacityHistogram;
+    private final long[] lifetimeHistogram;
+
+    ByteBufAllocationSite(String stackTrace, long sampledAllocations, long sampledBytes, long releasedAllocations,
+                          long releasedBytes, long[] capacityHistogram, long[] lifetimeHistogram) {
+        this.stackTrace = stackTrace;
+        this.sampledAllocations = sampledAllocations;
+        this.sampledBytes = sampledBytes;
+        this.releasedAllocations = releasedAllocations;
+        this.releasedBytes = releasedBytes;
+        this.capacityHistogram = capacityHistogram;
+        this.lifetimeHistogram = lifetimeHistogram;
+    }
+
+    /**
+     * Return the innermost frames of the stack trace of the allocation site, starting at the caller of the
+     * {@link ByteBufAllocator}.
+     */
+    public String stackTrace() {
+        return stackTrace;
+    }
+
+    /**
+     * Return the number of sampled allocations of this site.
+     */
+    public long sampledAllocations() {
+        return sampledAllocations;
+    }
+
+    /**
+     * Return the sum of the initial capacities of the sampled allocations of this site.
+     */
+    public long sampledBytes() {
+        return sampledBytes;
+    }
+
+    /**
+     * Return the number of sampled allocations of this site which were not released yet.
+     */
+    public long liveAllocations() {
+        return max(0, sampledAllocations - releasedAllocations);
+    }
+
+    /**
+     * Return the sum of the initial capacities of the sampled allocations of this site which were not released yet.
+     */
+    public long liveBytes() {
+        return max(0, sampledBytes - releasedBytes);
+    }
+
+    /**
+     * Return the number of sampled allocations per initial capacity, the element {@code i} counts the capacities in
+     * {@code [2^i, 2^(i+1))} bytes (and the element {@code 0} also counts the empty buffers).
+     */
+    public long[] capacityHistogram() {
+        return capacityHistogram.clone();
+    }
+
+    /**
+     * Return the number of released sampled allocations per lifetime, the element {@code i} counts the lifetimes in
+     * {@code [2^i, 2^(i+1))} microseconds (and the element {@code 0} also counts the lifetimes below one microsecond,
+     * the last element all longer lifetimes).
+     */
+    public long[] lifetimeHistogram() {
+        return lifetimeHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder(512)
+                .append(StringUtil.simpleClassName(this))
+                .append("(sampled: ").append(sampledAllocations)
+                .append(", sampledBytes: ").append(sampledBytes)
+                .append(", live: ").append(liveAllocations())
+                .append(", liveBytes: ").append(liveBytes())
+                .append(", capacities: ");
+        appendHistogram(buf, capacityHistogram, "B");
+        buf.append(", lifetimes: ");
+        appendHistogram(buf, lifetimeHistogram, "us");
+        return buf.append(')').append(StringUtil.NEWLINE)
+                .append(stackTrace)
+                .toString();
+    }
+
+    // Only lists the non empty buckets as "lowerBound+: count".
+    private static void appendHistogram(StringBuilder buf, long[] histogram, String unit) {
+        buf.append('[');
+        boolean first = true;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            if (!first) {
+                buf.append(", ");
+            }
+            first = false;
+            buf.append(i == 0 ? 0 : 1L << i).append(unit).append("+: ").append(histogram[i]);
+        }
+        buf.append(']');
+    }
+}
@@ -64,6 +64,8 @@ public final class ByteBufUtil {
     };
 
     private static final byte WRITE_UTF_UNKNOWN = (byte) '?';
+    private static final boolean LITTLE_ENDIAN_NATIVE_ORDER = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private static final long NON_ASCII_BITS = 0x8080808080808080L;
     private static final int MAX_CHAR_BUFFER_SIZE;
     private static final int THREAD_LOCAL_BUFFER_SIZE;
     private static final int MAX_BYTES_PER_CHAR_UTF8 =
@@ -210,14 +212,25 @@ public final class ByteBufUtil {
      * Returns the reader index of needle in haystack, or -1 if needle is not in haystack.
      */
     public static int indexOf(ByteBuf needle, ByteBuf haystack) {
-        // TODO: maybe use Boyer Moore for efficiency.
-        int attempts = haystack.readableBytes() - needle.readableBytes() + 1;
-        for (int i = 0; i < attempts; i++) {
-            if (equals(needle, needle.readerIndex(),
-                       haystack, haystack.readerIndex() + i,
-                       needle.readableBytes())) {
-                return haystack.readerIndex() + i;
+        final int needleLength = needle.readableBytes();
+        if (needleLength == 0) {
+            return haystack.readerIndex();
+        }
+        final int needleStart = needle.readerIndex();
+        final byte first = needle.getByte(needleStart);
+        // Last index of the haystack at which the needle may start.
+        final int lastStart = haystack.writerIndex() - needleLength;
+        int i = haystack.readerIndex();
+        while (i <= lastStart) {
+            // Find the candidates with a word-at-a-time search for the first byte and only compare the rest there.
+            i = haystack.indexOf(i, lastStart + 1, first);
+            if (i < 0) {
+                return -1;
+            }
+            if (needleLength == 1 || equals(needle, needleStart + 1, haystack, i + 1, needleLength - 1)) {
+                return i;
             }
+            i++;
         }
         return -1;
     }
@@ -455,7 +468,318 @@ public final class ByteBufUtil {
         }
     }
 
+    /**
+     * Returns the number of bytes needed to encode {@code value} as an unsigned
+     * <a href="https://developers.google.com/protocol-buffers/docs/encoding#varints">varint</a>, between
+     * {@code 1} and {@code 5}. Use {@link #encodeZigZag32(int)} first for signed values.
+     */
+    public static int varint32Size(int value) {
+        // One byte per 7 significant bits, 0 needs one byte as well.
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Returns the number of bytes needed to encode {@code value} as an unsigned
+     * <a href="https://developers.google.com/protocol-buffers/docs/encoding#varints">varint</a>, between
+     * {@code 1} and {@code 10}. Use {@link #encodeZigZag64(long)} first for signed values.
+     */
+    public static int varint64Size(long value) {
+        return (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Maps a signed int to an unsigned one, so that values with a small absolute value have a short varint.
+     */
+    public static int encodeZigZag32(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * The inverse of {@link #encodeZigZag32(int)}.
+     */
+    public static int decodeZigZag32(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Maps a signed long to an unsigned one, so that values with a small absolute value have a short varint.
+     */
+    public static long encodeZigZag64(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * The inverse of {@link #encodeZigZag64(long)}.
+     */
+    public static long decodeZigZag64(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint of {@link #varint32Size(int)} bytes and increases the
+     * {@code writerIndex} accordingly.
+     *
+     * @return the number of bytes written.
+     */
+    public static int writeVarint32(ByteBuf buf, int value) {
+        final int size = varint32Size(value);
+        buf.ensureWritable(size);
+        final int writerIndex = buf.writerIndex();
+        setVarint(buf, writerIndex, value & 0xFFFFFFFFL, size);
+        buf.writerIndex(writerIndex + size);
+        return size;
+    }
+
+    /**
+     * Writes {@code value} as an unsigned varint of {@link #varint64Size(long)} bytes and increases the
+     * {@code writerIndex} accordingly.
+     *
+     * @return the number of bytes written.
+     */
+    public static int writeVarint64(ByteBuf buf, long value) {
+        final int size = varint64Size(value);
+        buf.ensureWritable(size);
+        final int writerIndex = buf.writerIndex();
+        setVarint(buf, writerIndex, value, size);
+        buf.writerIndex(writerIndex + size);
+        return size;
+    }
+
+    /**
+     * Writes {@code length} values of {@code values} starting at {@code offset} as consecutive unsigned varints,
+     * the encoding of a packed repeated field without its length prefix. The buffer is expanded at most once.
+     *
+     * @return the number of bytes written.
+     */
+    public static int writeVarint32s(ByteBuf buf, int[] values, int offset, int length) {
+        checkArrayBounds(values.length, offset, length);
+        int totalSize = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            totalSize += varint32Size(values[i]);
+        }
+        buf.ensureWritable(totalSize);
+        int writerIndex = buf.writerIndex();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            final int value = values[i];
+            final int size = varint32Size(value);
+            setVarint(buf, writerIndex, value & 0xFFFFFFFFL, size);
+            writerIndex += size;
+        }
+        buf.writerIndex(writerIndex);
+        return totalSize;
+    }
+
+    /**
+     * Writes {@code length} values of {@code values} starting at {@code offset} as consecutive unsigned varints,
+     * the encoding of a packed repeated field without its length prefix. The buffer is expanded at most once.
+     *
+     * @return the number of bytes written.
+     */
+    public static int writeVarint64s(ByteBuf buf, long[] values, int offset, int length) {
+        checkArrayBounds(values.length, offset, length);
+        int totalSize = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            totalSize += varint64Size(values[i]);
+        }
+        buf.ensureWritable(totalSize);
+        int writerIndex = buf.writerIndex();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            final long value = values[i];
+            final int size = varint64Size(value);
+            setVarint(buf, writerIndex, value, size);
+            writerIndex += size;
+        }
+        buf.writerIndex(writerIndex);
+        return totalSize;
+    }
+
+    /**
+     * Returns the number of bytes of the varint of at most 5 bytes which starts at {@code index}, {@code 0} if it
+     * does not end before the {@code writerIndex} yet, or {@code -1} if it is longer than 5 bytes and so malformed.
+     */
+    public static int varint32Length(ByteBuf buf, int index) {
+        return varintLength(buf, index, 5);
+    }
+
+    /**
+     * Returns the number of bytes of the varint of at most 10 bytes which starts at {@code index}, {@code 0} if it
+     * does not end before the {@code writerIndex} yet, or {@code -1} if it is longer than 10 bytes and so malformed.
+     */
+    public static int varint64Length(ByteBuf buf, int index) {
+        return varintLength(buf, index, 10);
+    }
+
+    /**
+     * Gets the unsigned varint of at most 5 bytes at the specified absolute {@code index}, bits beyond the 32nd
+     * are discarded. This method does not modify the {@code readerIndex}.
+     *
+     * @throws IndexOutOfBoundsException if the varint does not end before the {@code writerIndex}
+     * @throws IllegalArgumentException if the varint is longer than 5 bytes
+     */
+    public static int getVarint32(ByteBuf buf, int index) {
+        return (int) getVarint(buf, index, checkVarintLength(buf, index, 5));
+    }
+
+    /**
+     * Gets the unsigned varint of at most 10 bytes at the specified absolute {@code index}, bits beyond the 64th
+     * are discarded. This method does not modify the {@code readerIndex}.
+     *
+     * @throws IndexOutOfBoundsException if the varint does not end before the {@code writerIndex}
+     * @throws IllegalArgumentException if the varint is longer than 10 bytes
+     */
+    public static long getVarint64(ByteBuf buf, int index) {
+        return getVarint(buf, index, checkVarintLength(buf, index, 10));
+    }
+
+    /**
+     * Reads an unsigned varint of at most 5 bytes and increases the {@code readerIndex} by its length, see
+     * {@link #getVarint32(ByteBuf, int)}.
+     */
+    public static int readVarint32(ByteBuf buf) {
+        final int readerIndex = buf.readerIndex();
+        final int length = checkVarintLength(buf, readerIndex, 5);
+        final int value = (int) getVarint(buf, readerIndex, length);
+        buf.readerIndex(readerIndex + length);
+        return value;
+    }
+
+    /**
+     * Reads an unsigned varint of at most 10 bytes and increases the {@code readerIndex} by its length, see
+     * {@link #getVarint64(ByteBuf, int)}.
+     */
+    public static long readVarint64(ByteBuf buf) {
+        final int readerIndex = buf.readerIndex();
+        final int length = checkVarintLength(buf, readerIndex, 10);
+        final long value = getVarint(buf, readerIndex, length);
+        buf.readerIndex(readerIndex + length);
+        return value;
+    }
+
+    /**
+     * Reads {@code length} consecutive unsigned varints of at most 5 bytes into {@code dst} starting at
+     * {@code offset}. If one of them is incomplete or malformed an exception is thrown and the {@code readerIndex}
+     * is not modified.
+     */
+    public static void readVarint32s(ByteBuf buf, int[] dst, int offset, int length) {
+        checkArrayBounds(dst.length, offset, length);
+        int readerIndex = buf.readerIndex();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            final int varintLength = checkVarintLength(buf, readerIndex, 5);
+            dst[i] = (int) getVarint(buf, readerIndex, varintLength);
+            readerIndex += varintLength;
+        }
+        buf.readerIndex(readerIndex);
+    }
+
+    /**
+     * Reads {@code length} consecutive unsigned varints of at most 10 bytes into {@code dst} starting at
+     * {@code offset}. If one of them is incomplete or malformed an exception is thrown and the {@code readerIndex}
+     * is not modified.
+     */
+    public static void readVarint64s(ByteBuf buf, long[] dst, int offset, int length) {
+        checkArrayBounds(dst.length, offset, length);
+        int readerIndex = buf.readerIndex();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            final int varintLength = checkVarintLength(buf, readerIndex, 10);
+            dst[i] = getVarint(buf, readerIndex, varintLength);
+            readerIndex += varintLength;
+        }
+        buf.readerIndex(readerIndex);
+    }
+
+    private static void checkArrayBounds(int arrayLength, int offset, int length) {
+        if (isOutOfBounds(offset, length, arrayLength)) {
+            throw new IndexOutOfBoundsException("expected: 0 <= offset(" + offset + ") <= offset + length(" + length
+                    + ") <= array.length(" + arrayLength + ')');
+        }
+    }
+
+    // The caller made sure that size bytes are writable at index.
+    private static void setVarint(ByteBuf buf, int index, long value, int size) {
+        if (buf instanceof AbstractByteBuf) {
+            final AbstractByteBuf b = (AbstractByteBuf) buf;
+            for (int end = index + size - 1; index < end; index++) {
+                b._setByte(index, (int) value | 0x80);
+                value >>>= 7;
+            }
+            b._setByte(index, (int) value);
+        } else {
+            for (int end = index + size - 1; index < end; index++) {
+                buf.setByte(index, (int) value | 0x80);
+                value >>>= 7;
+            }
+            buf.setByte(index, (int) value);
+        }
+    }
+
+    private static int checkVarintLength(ByteBuf buf, int index, int maxLength) {
+        final int length = varintLength(buf, index, maxLength);
+        if (length == 0) {
+            throw new IndexOutOfBoundsException("incomplete varint at index " + index + " (writerIndex: "
+                    + buf.writerIndex() + ')');
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("malformed varint at index " + index + " (longer than "
+                    + maxLength + " bytes)");
+        }
+        return length;
+    }
+
+    /**
+     * Whether the 8 bytes at {@code index} can be read at once by {@link AbstractByteBuf#_getLongLE(int)}.
+     */
+    private static boolean canReadWord(ByteBuf buf, int index) {
+        if (buf instanceof AbstractByteBuf && PlatformDependent.isUnaligned() && buf.writerIndex() - index >= 8) {
+            ((AbstractByteBuf) buf).checkIndex(index, 8);
+            return true;
+        }
+        return false;
+    }
+
+    private static int varintLength(ByteBuf buf, int index, int maxLength) {
+        final int available = buf.writerIndex() - index;
+        int i = 0;
+        if (canReadWord(buf, index)) {
+            // The varint ends at the first byte without the continuation bit.
+            final long ends = ~((AbstractByteBuf) buf)._getLongLE(index) & 0x8080808080808080L;
+            if (ends != 0) {
+                final int length = (Long.numberOfTrailingZeros(ends) >>> 3) + 1;
+                return length <= maxLength ? length : -1;
+            }
+            i = 8;
+        }
+        for (final int end = Math.min(available, maxLength); i < end; i++) {
+            if (buf.getByte(index + i) >= 0) {
+                return i + 1;
+            }
+        }
+        return available >= maxLength ? -1 : 0;
+    }
+
+    // The caller made sure that the varint has the given length.
+    private static long getVarint(ByteBuf buf, int index, int length) {
+        if (length <= 8 && canReadWord(buf, index)) {
+            long word = ((AbstractByteBuf) buf)._getLongLE(index);
+            if (length < 8) {
+                word &= (1L << (length << 3)) - 1;
+            }
+            // Drop the continuation bits and pack the 7 bit groups: in pairs, quadruples and finally all 8.
+            word &= 0x7F7F7F7F7F7F7F7FL;
+            word = word & 0x007F007F007F007FL | (word & 0x7F007F007F007F00L) >>> 1;
+            word = word & 0x00003FFF00003FFFL | (word & 0x3FFF00003FFF0000L) >>> 2;
+            return word & 0x000000000FFFFFFFL | (word & 0x0FFFFFFF00000000L) >>> 4;
+        }
+        long result = 0;
+        for (int i = 0, shift = 0; i < length; i++, shift += 7) {
+            result |= (buf.getByte(index + i) & 0x7FL) << shift;
+        }
+        return result;
+    }
+
     private static int firstIndexOf(ByteBuf buffer, int fromIndex, int toIndex, byte value) {
+        if (buffer instanceof AbstractByteBuf) {
+            return firstIndexOf((AbstractByteBuf) buffer, fromIndex, toIndex, value);
+        }
         fromIndex = Math.max(fromIndex, 0);
         if (fromIndex >= toIndex || buffer.capacity() == 0) {
             return -1;
@@ -464,6 +788,73 @@ public final class ByteBufUtil {
         return buffer.forEachByte(fromIndex, toIndex - fromIndex, new ByteProcessor.IndexOfProcessor(value));
     }
 
+    /**
+     * Returns the index of the first occurrence of {@code value} in {@code buffer[fromIndex, toIndex)}, or
+     * {@code -1}. If unaligned access is cheap the bytes are compared 8 at a time (SWAR), otherwise one by one.
+     */
+    static int firstIndexOf(AbstractByteBuf buffer, int fromIndex, int toIndex, byte value) {
+        fromIndex = Math.max(fromIndex, 0);
+        if (fromIndex >= toIndex || buffer.capacity() == 0) {
+            return -1;
+        }
+        final int length = toIndex - fromIndex;
+        buffer.checkIndex(fromIndex, length);
+        if (!PlatformDependent.isUnaligned()) {
+            return linearFirstIndexOf(buffer, fromIndex, toIndex, value);
+        }
+
+        int offset = fromIndex;
+        final int byteCount = length & 7;
+        if (byteCount > 0) {
+            final int index = linearFirstIndexOf(buffer, offset, offset + byteCount, value);
+            if (index != -1) {
+                return index;
+            }
+            offset += byteCount;
+        }
+        final long pattern = compilePattern(value);
+        // Read the words in native order, so that unsafe buffers don't need to swap the bytes.
+        if (LITTLE_ENDIAN_NATIVE_ORDER) {
+            for (; offset < toIndex; offset += 8) {
+                final long result = applyPattern(buffer._getLongLE(offset), pattern);
+                if (result != 0) {
+                    return offset + (Long.numberOfTrailingZeros(result) >>> 3);
+                }
+            }
+        } else {
+            for (; offset < toIndex; offset += 8) {
+                final long result = applyPattern(buffer._getLong(offset), pattern);
+                if (result != 0) {
+                    return offset + (Long.numberOfLeadingZeros(result) >>> 3);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int linearFirstIndexOf(AbstractByteBuf buffer, int fromIndex, int toIndex, byte value) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (buffer._getByte(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long compilePattern(byte byteToFind) {
+        return (byteToFind & 0xFFL) * 0x0101010101010101L;
+    }
+
+    /**
+     * Returns a word which has the highest bit set in exactly the bytes of {@code word} which are equal to the
+     * byte of {@code pattern}, so {@code 0} if there is no such byte.
+     */
+    private static long applyPattern(long word, long pattern) {
+        long input = word ^ pattern;
+        long tmp = (input & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL;
+        return ~(tmp | input | 0x7F7F7F7F7F7F7F7FL);
+    }
+
     private static int lastIndexOf(ByteBuf buffer, int fromIndex, int toIndex, byte value) {
         int capacity = buffer.capacity();
         fromIndex = Math.min(fromIndex, capacity);
@@ -573,9 +964,13 @@ public final class ByteBufUtil {
     static int writeUtf8(AbstractByteBuf buffer, int writerIndex, CharSequence seq, int start, int end) {
         int oldWriterIndex = writerIndex;
 
+        // Most text starts with (or only consists of) ASCII chars, which can be written in bulk.
+        int asciiPrefix = writeNarrowPrefix(buffer, writerIndex, seq, start, end, 0x7F);
+        writerIndex += asciiPrefix;
+
         // We can use the _set methods as these not need to do any index checks and reference checks.
         // This is possible as we called ensureWritable(...) before.
-        for (int i = start; i < end; i++) {
+        for (int i = start + asciiPrefix; i < end; i++) {
             char c = seq.charAt(i);
             if (c < 0x80) {
                 buffer._setByte(writerIndex++, (byte) c);
@@ -753,15 +1148,61 @@ public final class ByteBufUtil {
 
     // Fast-Path implementation
     static int writeAscii(AbstractByteBuf buffer, int writerIndex, CharSequence seq, int len) {
+        // AsciiString.c2b(c) is just (byte) c for the chars up to 0xFF.
+        int i = writeNarrowPrefix(buffer, writerIndex, seq, 0, len, 0xFF);
+        writerIndex += i;
 
         // We can use the _set methods as these not need to do any index checks and reference checks.
         // This is possible as we called ensureWritable(...) before.
-        for (int i = 0; i < len; i++) {
+        for (; i < len; i++) {
             buffer._setByte(writerIndex++, AsciiString.c2b(seq.charAt(i)));
         }
         return len;
     }
 
+    /**
+     * Writes the longest prefix of {@code seq[start, end)} whose chars are not greater than {@code maxChar}, which
+     * must be {@code 0x7F} or {@code 0xFF}, with one byte per char and returns its length. A {@link String} is
+     * narrowed in bulk into a buffer with an array, and otherwise 8 chars are stored at once into a buffer with a
+     * memory address. Other buffers are left alone, as writing them word by word is not faster.
+     */
+    @SuppressWarnings("deprecation")
+    private static int writeNarrowPrefix(AbstractByteBuf buffer, int writerIndex, CharSequence seq, int start,
+                                         int end, int maxChar) {
+        if (end - start < 8) {
+            return 0;
+        }
+        if (seq instanceof String && buffer.hasArray()) {
+            String string = (String) seq;
+            int i = start;
+            while (i < end && string.charAt(i) <= maxChar) {
+                i++;
+            }
+            string.getBytes(start, i, buffer.array(), buffer.arrayOffset() + writerIndex);
+            return i - start;
+        }
+        if (!buffer.hasMemoryAddress()) {
+            return 0;
+        }
+        int i = start;
+        for (; i <= end - 8; i += 8) {
+            char c0 = seq.charAt(i);
+            char c1 = seq.charAt(i + 1);
+            char c2 = seq.charAt(i + 2);
+            char c3 = seq.charAt(i + 3);
+            char c4 = seq.charAt(i + 4);
+            char c5 = seq.charAt(i + 5);
+            char c6 = seq.charAt(i + 6);
+            char c7 = seq.charAt(i + 7);
+            if ((c0 | c1 | c2 | c3 | c4 | c5 | c6 | c7) > maxChar) {
+                break;
+            }
+            buffer._setLong(writerIndex + i - start, (long) c0 << 56 | (long) c1 << 48 | (long) c2 << 40 |
+                    (long) c3 << 32 | (long) c4 << 24 | (long) c5 << 16 | (long) c6 << 8 | c7);
+        }
+        return i - start;
+    }
+
     /**
      * Encode the given {@link CharBuffer} using the given {@link Charset} into a new {@link ByteBuf} which
      * is allocated via the {@link ByteBufAllocator}.
@@ -833,8 +1274,10 @@ public final class ByteBufUtil {
             offset = 0;
             src.getBytes(readerIndex, array, 0, len);
         }
-        if (CharsetUtil.US_ASCII.equals(charset)) {
-            // Fast-path for US-ASCII which is used frequently.
+        if (CharsetUtil.US_ASCII.equals(charset) || CharsetUtil.ISO_8859_1.equals(charset) ||
+                CharsetUtil.UTF_8.equals(charset) && indexOfNonAscii(array, offset, len) == -1) {
+            // Fast-path which widens the bytes in bulk, for ISO-8859-1 and for US-ASCII which are used frequently
+            // and for UTF-8 if all bytes are ASCII.
             return new String(array, 0, offset, len);
         }
         return new String(array, offset, len, charset);
@@ -1311,7 +1754,79 @@ public final class ByteBufUtil {
      * @param length The length of the specified buffer.
      */
     private static boolean isAscii(ByteBuf buf, int index, int length) {
-        return buf.forEachByte(index, length, FIND_NON_ASCII) == -1;
+        return indexOfNonAscii(buf, index, length) == -1;
+    }
+
+    /**
+     * Returns the index of the first byte in {@code buf[index, index + length)} which is not an ASCII character, or
+     * {@code -1} if all of them are ASCII. If unaligned access is cheap the bytes are checked 8 at a time.
+     *
+     * @throws IndexOutOfBoundsException if {@code index} and {@code length} are out of the bounds of the buffer.
+     */
+    public static int indexOfNonAscii(ByteBuf buf, int index, int length) {
+        checkNotNull(buf, "buf");
+        if (isOutOfBounds(index, length, buf.capacity())) {
+            throw new IndexOutOfBoundsException("index: " + index + " length: " + length);
+        }
+        if (length == 0) {
+            return -1;
+        }
+        if (PlatformDependent.isUnaligned()) {
+            if (buf.hasArray()) {
+                int arrayOffset = buf.arrayOffset();
+                int i = indexOfNonAscii(buf.array(), arrayOffset + index, length);
+                return i == -1 ? -1 : i - arrayOffset;
+            }
+            if (buf instanceof AbstractByteBuf) {
+                return indexOfNonAscii((AbstractByteBuf) buf, index, length);
+            }
+        }
+        return buf.forEachByte(index, length, FIND_NON_ASCII);
+    }
+
+    private static int indexOfNonAscii(AbstractByteBuf buf, int index, int length) {
+        buf.ensureAccessible();
+        final int end = index + length;
+        int i = index;
+        // Read the words in native order, so that unsafe buffers don't need to swap the bytes.
+        for (; i <= end - 8; i += 8) {
+            long word = (LITTLE_ENDIAN_NATIVE_ORDER ? buf._getLongLE(i) : buf._getLong(i)) & NON_ASCII_BITS;
+            if (word != 0) {
+                return i + nonAsciiByteIndex(word);
+            }
+        }
+        for (; i < end; i++) {
+            if (buf._getByte(i) < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfNonAscii(byte[] array, int index, int length) {
+        final int end = index + length;
+        int i = index;
+        if (PlatformDependent.hasUnsafe() && PlatformDependent.isUnaligned()) {
+            for (; i <= end - 8; i += 8) {
+                long word = PlatformDependent.getLong(array, i) & NON_ASCII_BITS;
+                if (word != 0) {
+                    return i + nonAsciiByteIndex(word);
+                }
+            }
+        }
+        for (; i < end; i++) {
+            if (array[i] < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first byte with the highest bit set in {@code word}, which was read in native order.
+     */
+    private static int nonAsciiByteIndex(long word) {
+        return (LITTLE_ENDIAN_NATIVE_ORDER ? Long.numberOfTrailingZeros(word) : Long.numberOfLeadingZeros(word)) >>> 3;
     }
 
     /**
@@ -1359,6 +1874,11 @@ public final class ByteBufUtil {
      */
     private static boolean isUtf8(ByteBuf buf, int index, int length) {
         final int endIndex = index + length;
+        // Skip the ASCII prefix in bulk.
+        index = indexOfNonAscii(buf, index, length);
+        if (index == -1) {
+            return true;
+        }
         while (index < endIndex) {
             byte b1 = buf.getByte(index++);
             byte b2, b3, b4;
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.UnstableApi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Provides the memory of the chunks of the direct arenas of a {@link PooledByteBufAllocator}, for example to back
+ * them by huge pages instead of memory allocated via {@link ByteBuffer#allocateDirect(int)}.
+ * <p>
+ * Implementations must be thread-safe as all arenas of an allocator share the same {@link ChunkAllocator}.
+ */
+@UnstableApi
+public interface ChunkAllocator {
+
+    /**
+     * Allocate the memory of a chunk. The returned {@link ByteBuffer} must be direct and have a capacity of
+     * {@code capacity} bytes.
+     */
+    ByteBuffer allocate(int capacity);
+
+    /**
+     * Free the memory of a chunk that was returned by {@link #allocate(int)} and is not used anymore.
+     */
+    void free(ByteBuffer memory);
+}
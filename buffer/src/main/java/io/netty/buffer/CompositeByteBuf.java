@@ -51,6 +51,9 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
     private static final ByteBuffer EMPTY_NIO_BUFFER = Unpooled.EMPTY_BUFFER.nioBuffer();
     private static final Iterator<ByteBuf> EMPTY_ITERATOR = Collections.<ByteBuf>emptyList().iterator();
 
+    // From this number of components on, offsets are looked up in componentEndOffsets.
+    private static final int INDEXED_COMPONENTS_THRESHOLD = 32;
+
     private final ByteBufAllocator alloc;
     private final boolean direct;
     private final int maxNumComponents;
@@ -58,6 +61,11 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
     private int componentCount;
     private Component[] components; // resized when needed
 
+    // endOffset of each component, so that lookups do not need to dereference the components.
+    // Only the first indexedComponentCount elements are valid, this is extended lazily on lookup.
+    private int[] componentEndOffsets;
+    private int indexedComponentCount;
+
     private boolean freed;
 
     private CompositeByteBuf(ByteBufAllocator alloc, boolean direct, int maxNumComponents, int initSize) {
@@ -566,6 +574,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         if (size <= cIndex) {
             return;
         }
+        invalidateComponentIndex(cIndex);
 
         int nextIndex = cIndex > 0 ? components[cIndex - 1].endOffset : 0;
         for (; cIndex < size; cIndex++) {
@@ -634,6 +643,32 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         return componentCount == 0 ? EMPTY_ITERATOR : new CompositeByteBufIterator();
     }
 
+    @Override
+    public int indexOf(int fromIndex, int toIndex, byte value) {
+        if (fromIndex > toIndex) {
+            return super.indexOf(fromIndex, toIndex, value);
+        }
+        fromIndex = Math.max(fromIndex, 0);
+        if (fromIndex >= toIndex || capacity() == 0) {
+            return -1;
+        }
+        checkIndex(fromIndex, toIndex - fromIndex);
+        // Search each component on its own, so that it can use its word-at-a-time search.
+        for (int i = toComponentIndex0(fromIndex); fromIndex < toIndex; i++) {
+            Component c = components[i];
+            if (c.offset == c.endOffset) {
+                continue; // empty
+            }
+            int localEnd = Math.min(toIndex, c.endOffset);
+            int result = c.buf.indexOf(c.idx(fromIndex), c.idx(localEnd), value);
+            if (result != -1) {
+                return result - c.adjustment;
+            }
+            fromIndex = localEnd;
+        }
+        return -1;
+    }
+
     @Override
     protected int forEachByteAsc0(int start, int end, ByteProcessor processor) throws Exception {
         if (end <= start) {
@@ -826,6 +861,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
                 if (bytesToTrim < cLength) {
                     // Trim the last component
                     c.endOffset -= bytesToTrim;
+                    invalidateComponentIndex(i);
                     ByteBuf slice = c.slice;
                     if (slice != null) {
                         // We must replace the cached slice with a derived one to ensure that
@@ -892,6 +928,9 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         if (size <= 2) { // fast-path for 1 and 2 component count
             return size == 1 || offset < components[0].endOffset ? 0 : 1;
         }
+        if (size >= INDEXED_COMPONENTS_THRESHOLD) {
+            return indexedComponentIndex(offset);
+        }
         for (int low = 0, high = size; low <= high;) {
             int mid = low + high >>> 1;
             Component c = components[mid];
@@ -907,6 +946,46 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         throw new Error("should not reach here");
     }
 
+    /**
+     * Binary search for the component containing {@code offset} in {@link #componentEndOffsets}, which is brought up
+     * to date first. Empty components are skipped as their end offset is not greater than any offset they contain.
+     */
+    private int indexedComponentIndex(int offset) {
+        final int size = componentCount;
+        int[] endOffsets = componentEndOffsets;
+        int indexed = indexedComponentCount;
+        if (indexed < size) {
+            if (endOffsets == null || endOffsets.length < size) {
+                endOffsets = componentEndOffsets = endOffsets == null ?
+                        new int[components.length] : Arrays.copyOf(endOffsets, components.length);
+            }
+            for (; indexed < size; indexed++) {
+                endOffsets[indexed] = components[indexed].endOffset;
+            }
+            indexedComponentCount = size;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = low + high >>> 1;
+            if (endOffsets[mid] > offset) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Invalidate the indexed end offsets of all components from {@code cIndex} on.
+     */
+    private void invalidateComponentIndex(int cIndex) {
+        if (indexedComponentCount > cIndex) {
+            indexedComponentCount = cIndex;
+        }
+    }
+
     public int toByteIndex(int cIndex) {
         checkComponentIndex(cIndex);
         return components[cIndex].offset;
@@ -1067,6 +1146,60 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         return this;
     }
 
+    /**
+     * Transfers this buffer's data starting at the specified absolute {@code index} to the specified destinations
+     * until all of them have no remaining bytes, filling one after the other. The components are copied directly
+     * into the destinations, this buffer is never consolidated. This method does not modify {@code readerIndex} or
+     * {@code writerIndex} of this buffer, while the {@code position}s of the destinations are increased.
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the specified {@code index} is less than {@code 0} or
+     *         if {@code index + sum of dst.remaining()} is greater than
+     *            {@code this.capacity}
+     */
+    public CompositeByteBuf getBytes(int index, ByteBuffer... dsts) {
+        long totalLength = 0;
+        for (ByteBuffer dst : dsts) {
+            totalLength += dst.remaining();
+        }
+        if (totalLength > Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "index: %d, length: %d (expected: range(0, %d))", index, totalLength, capacity()));
+        }
+        int length = (int) totalLength;
+        checkIndex(index, length);
+        if (length == 0) {
+            return this;
+        }
+
+        int i = toComponentIndex0(index);
+        int d = 0;
+        ByteBuffer dst = dsts[0];
+        int limit = dst.limit();
+        try {
+            while (length > 0) {
+                while (!dst.hasRemaining()) {
+                    dst.limit(limit);
+                    dst = dsts[++d];
+                    limit = dst.limit();
+                }
+                Component c = components[i];
+                int localLength = Math.min(dst.remaining(), c.endOffset - index);
+                dst.limit(dst.position() + localLength);
+                c.buf.getBytes(c.idx(index), dst);
+                dst.limit(limit);
+                index += localLength;
+                length -= localLength;
+                if (index == c.endOffset) {
+                    i ++;
+                }
+            }
+        } finally {
+            dst.limit(limit);
+        }
+        return this;
+    }
+
     @Override
     public CompositeByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
         checkDstIndex(index, length, dstIndex, dst.capacity());
@@ -1572,6 +1705,11 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
     }
 
     private Component findIt(int offset) {
+        if (componentCount >= INDEXED_COMPONENTS_THRESHOLD) {
+            Component c = components[indexedComponentIndex(offset)];
+            lastAccessed = c;
+            return c;
+        }
         for (int low = 0, high = componentCount; low <= high;) {
             int mid = low + high >>> 1;
             Component c = components[mid];
@@ -1682,6 +1820,47 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         }
     }
 
+    @Override
+    public int nioBuffers(int index, int length, ByteBuffer[] buffers, int offset, int maxCount) {
+        checkIndex(index, length);
+        if (length == 0 || maxCount <= 0) {
+            return 0;
+        }
+
+        int count = 0;
+        int i = toComponentIndex0(index);
+        while (length > 0 && count < maxCount) {
+            Component c = components[i];
+            int localLength = Math.min(length, c.endOffset - index);
+            if (localLength > 0) {
+                ByteBuf s = c.buf;
+                int nioBufferCount = s.nioBufferCount();
+                if (nioBufferCount == 0) {
+                    throw new UnsupportedOperationException();
+                }
+                if (nioBufferCount == 1) {
+                    buffers[offset + count++] = c.ownedNioBuffer(index, localLength);
+                } else {
+                    // The NIO buffers stored by the component itself may be shared with other users of it,
+                    // so use new ones.
+                    for (ByteBuffer nioBuffer : s.nioBuffers(c.idx(index), localLength)) {
+                        if (count == maxCount) {
+                            break;
+                        }
+                        if (nioBuffer.hasRemaining()) {
+                            buffers[offset + count++] = nioBuffer;
+                        }
+                    }
+                }
+            }
+
+            index += localLength;
+            length -= localLength;
+            i ++;
+        }
+        return count;
+    }
+
     /**
      * Consolidate the composed {@link ByteBuf}s
      */
@@ -1719,6 +1898,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         lastAccessed = null;
         removeCompRange(cIndex + 1, endCIndex);
         components[cIndex] = newComponent(consolidated, 0);
+        invalidateComponentIndex(cIndex);
         if (cIndex != 0 || numComponents != componentCount) {
             updateComponentOffsets(cIndex);
         }
@@ -1809,6 +1989,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         int trimmedBytes = readerIndex - c.offset;
         c.offset = 0;
         c.endOffset -= readerIndex;
+        invalidateComponentIndex(0);
         c.srcAdjustment += readerIndex;
         c.adjustment += readerIndex;
         ByteBuf slice = c.slice;
@@ -1853,6 +2034,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         int endOffset; // end offset of this component within this CompositeByteBuf
 
         private ByteBuf slice; // cached slice, may be null
+        private ByteBuffer nioBuf; // cached NIO buffer of srcBuf owned by this component, may be null
 
         Component(ByteBuf srcBuf, int srcOffset, ByteBuf buf, int bufOffset,
                 int offset, int len, ByteBuf slice) {
@@ -1908,8 +2090,20 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
             return srcBuf.internalNioBuffer(srcIdx(index), length);
         }
 
+        // Unlike internalNioBuffer(...) the returned buffer is never shared with other users of srcBuf, like other
+        // components or other CompositeByteBufs that contain the same buffer.
+        ByteBuffer ownedNioBuffer(int index, int length) {
+            ByteBuffer nioBuf = this.nioBuf;
+            if (nioBuf == null) {
+                this.nioBuf = nioBuf = srcBuf.nioBuffer(0, srcBuf.capacity());
+            }
+            int srcIndex = srcIdx(index);
+            return (ByteBuffer) nioBuf.clear().position(srcIndex).limit(srcIndex + length);
+        }
+
         void free() {
             slice = null;
+            nioBuf = null;
             // Release the original buffer since it may have a different
             // refcount to the unwrapped buf (e.g. if PooledSlicedByteBuf)
             srcBuf.release();
@@ -2277,6 +2471,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         }
         final int size = componentCount;
         assert from >= 0 && to <= size;
+        invalidateComponentIndex(from);
         if (to < size) {
             System.arraycopy(components, to, components, from, size - to);
         }
@@ -2295,6 +2490,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
     private void shiftComps(int i, int count) {
         final int size = componentCount, newSize = size + count;
         assert i >= 0 && i <= size && count > 0;
+        invalidateComponentIndex(i);
         if (newSize > components.length) {
             // grow the array
             int newArrSize = Math.max(size + (size >> 1), newSize);
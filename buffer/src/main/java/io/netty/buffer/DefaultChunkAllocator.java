@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Default {@link ChunkAllocator} which allocates the memory of the chunks via
+ * {@link PlatformDependent#allocateDirectNoCleaner(int)} when possible and via
+ * {@link ByteBuffer#allocateDirect(int)} otherwise, and returns it to the OS as soon as a chunk is destroyed.
+ */
+@UnstableApi
+public final class DefaultChunkAllocator implements ChunkAllocator {
+
+    public static final DefaultChunkAllocator INSTANCE = new DefaultChunkAllocator();
+
+    private DefaultChunkAllocator() { }
+
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        return PlatformDependent.useDirectBufferNoCleaner() ?
+                PlatformDependent.allocateDirectNoCleaner(capacity) : ByteBuffer.allocateDirect(capacity);
+    }
+
+    @Override
+    public void free(ByteBuffer memory) {
+        if (PlatformDependent.useDirectBufferNoCleaner()) {
+            PlatformDependent.freeDirectNoCleaner(memory);
+        } else {
+            PlatformDependent.freeDirectBuffer(memory);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import io.netty.util.internal.StringUtil;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -29,7 +30,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
 import static java.lang.Math.max;
 
-abstract class PoolArena<T> implements PoolArenaMetric {
+abstract class PoolArena<T> implements PoolArenaFragmentationMetric {
     static final boolean HAS_UNSAFE = PlatformDependent.hasUnsafe();
 
     enum SizeClass {
@@ -50,6 +51,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     final int numSmallSubpagePools;
     final int directMemoryCacheAlignment;
     final int directMemoryCacheAlignmentMask;
+    /** The size classes used to normalize capacities or {@code null} if sizes are normalized to powers of two. */
+    final SizeClasses sizeClasses;
+    private final int numTinyPools;
+    // Every size class has one pool per stripe, the pool of stripe s for the size class at tableIdx is stored at
+    // tableIdx * subpageStripes + s.
+    private final int subpageStripes;
+    private final int subpageStripeMask;
     private final PoolSubpage<T>[] tinySubpagePools;
     private final PoolSubpage<T>[] smallSubpagePools;
 
@@ -62,6 +70,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     private final List<PoolChunkListMetric> chunkListMetrics;
 
+    // Accounting of the active allocations per size class, ordered by size.
+    private final PoolSizeClass[] sizeClassMetrics;
+    private final List<PoolSizeClassMetric> sizeClassMetricList;
+
     // Metrics for allocations and deallocations
     private long allocationsNormal;
     // We need to use the LongCounter here as this is not guarded via synchronized block.
@@ -77,9 +89,25 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     // We need to use the LongCounter here as this is not guarded via synchronized block.
     private final LongCounter deallocationsHuge = PlatformDependent.newLongCounter();
 
+    // Number of pooled chunks and of pooled chunks that were destroyed, guarded via synchronized block.
+    private int numChunks;
+    private long chunksReleased;
+
+    // true if the pooled chunks track which of their allocations are alive, see reportAgedAllocations.
+    final boolean trackAllocations;
+
+    // true if the bytes requested by the active allocations are accounted, see PoolArenaFragmentationMetric.
+    final boolean accountRequestedBytes;
+
     // Number of thread caches backed by this arena.
     final AtomicInteger numThreadCaches = new AtomicInteger();
 
+    // Statistics of the thread caches backed by this arena, reported by every PoolThreadCache when it is trimmed.
+    private final LongCounter threadCacheHits = PlatformDependent.newLongCounter();
+    private final LongCounter threadCacheMisses = PlatformDependent.newLongCounter();
+    private final LongCounter threadCacheGrows = PlatformDependent.newLongCounter();
+    private final LongCounter threadCacheShrinks = PlatformDependent.newLongCounter();
+
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
@@ -91,8 +119,26 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     // 参数6：directMemoryCacheAlignment 0
     protected PoolArena(PooledByteBufAllocator parent, int pageSize,
           int maxOrder, int pageShifts, int chunkSize, int cacheAlignment) {
+        this(parent, pageSize, maxOrder, pageShifts, chunkSize, cacheAlignment, null);
+    }
+
+    protected PoolArena(PooledByteBufAllocator parent, int pageSize,
+          int maxOrder, int pageShifts, int chunkSize, int cacheAlignment, SizeClasses sizeClasses) {
+        this(parent, pageSize, maxOrder, pageShifts, chunkSize, cacheAlignment, sizeClasses, 1);
+    }
+
+    /**
+     * @param subpageStripes the number of subpage pools per size class, must be a power of two. Threads are spread
+     *                       over the stripes by their id so threads sharing the arena contend less on the locks of
+     *                       the pool heads, at the price of more partially used subpages.
+     */
+    protected PoolArena(PooledByteBufAllocator parent, int pageSize, int maxOrder, int pageShifts, int chunkSize,
+          int cacheAlignment, SizeClasses sizeClasses, int subpageStripes) {
+        assert subpageStripes > 0 && (subpageStripes & subpageStripes - 1) == 0 : subpageStripes;
         // 记录当前 arena 的爸爸 是谁，arena归属的 alloctor 对象。
         this.parent = parent;
+        trackAllocations = parent != null && parent.trackAllocations();
+        accountRequestedBytes = parent != null && parent.accountRequestedBytes();
         // 8k
         this.pageSize = pageSize;
         // 11
@@ -104,6 +150,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         // 0
         directMemoryCacheAlignment = cacheAlignment;
         directMemoryCacheAlignmentMask = cacheAlignment - 1;
+        this.sizeClasses = sizeClasses;
 
         // 8k - 1 => 0b 1111111111111
         // ~(0b 1111111111111)
@@ -113,7 +160,11 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
         // 因为tiny有32种小规格：16b,32b,48b...496b  ，所以这里创建一个长度为 32 的 PoolSubpage 数组类型 去引用 tiny 类型的 Subpage ，
         // 供arena 区域共享使用。
-        tinySubpagePools = newSubpagePoolArray(numTinySubpagePools);
+        // With size classes there is one pool per size class, tiny pools are the ones for sizes < 512.
+        this.subpageStripes = subpageStripes;
+        subpageStripeMask = subpageStripes - 1;
+        numTinyPools = sizeClasses == null ? numTinySubpagePools : sizeClasses.nTiny;
+        tinySubpagePools = newSubpagePoolArray(numTinyPools * subpageStripes);
 
         // 赋值。每个数组内的元素 都是 PoolSubpage 对象，该对象为 head，head 在初始时 prev next 都指向自身。
         for (int i = 0; i < tinySubpagePools.length; i ++) {
@@ -121,15 +172,24 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         // 13 - 9 => 4
-        numSmallSubpagePools = pageShifts - 9;
+        numSmallSubpagePools = sizeClasses == null ? pageShifts - 9 : sizeClasses.nSubpages - sizeClasses.nTiny;
         // 因为small有4种小规格:512b,1024b,2048b,4096b
-        smallSubpagePools = newSubpagePoolArray(numSmallSubpagePools);
+        smallSubpagePools = newSubpagePoolArray(numSmallSubpagePools * subpageStripes);
 
         // 赋值。每个数组内的元素 都是 PoolSubpage 对象，该对象为 head，head 在初始时 prev next 都指向自身。
         for (int i = 0; i < smallSubpagePools.length; i ++) {
             smallSubpagePools[i] = newSubpagePoolHead(pageSize);
         }
 
+        int numNormalSizeClasses = sizeClasses == null ? maxOrder + 1 : sizeClasses.numSizes() - sizeClasses.nSubpages;
+        sizeClassMetrics = new PoolSizeClass[numTinyPools + numSmallSubpagePools + numNormalSizeClasses];
+        for (int i = 0; i < sizeClassMetrics.length; i ++) {
+            sizeClassMetrics[i] = new PoolSizeClass(sizeClassSize(i));
+        }
+        // Without size classes the tiny index 0 is never used, so do not expose a size class of 0 bytes.
+        sizeClassMetricList = Collections.<PoolSizeClassMetric>unmodifiableList(Arrays.asList(sizeClassMetrics)
+                .subList(sizeClasses == null ? 1 : 0, sizeClassMetrics.length));
+
 
         q100 = new PoolChunkList<T>(this, null, 100, Integer.MAX_VALUE, chunkSize);
         q075 = new PoolChunkList<T>(this, q100, 75, 100, chunkSize);
@@ -203,8 +263,52 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return tableIdx;
     }
 
+    int tinyPoolIdx(int normCapacity) {
+        if (sizeClasses == null) {
+            return tinyIdx(normCapacity);
+        }
+        // Tiny size classes are the first ones in the table.
+        return sizeClasses.size2SizeIdx(normCapacity);
+    }
+
+    int smallPoolIdx(int normCapacity) {
+        if (sizeClasses == null) {
+            return smallIdx(normCapacity);
+        }
+        return sizeClasses.size2SizeIdx(normCapacity) - sizeClasses.nTiny;
+    }
+
+    /**
+     * Returns the index of the {@link PoolThreadCache} normal cache for the given normalized capacity.
+     */
+    int normalCacheIdx(int normCapacity) {
+        if (sizeClasses == null) {
+            return log2(normCapacity >> pageShifts);
+        }
+        return sizeClasses.size2SizeIdx(normCapacity) - sizeClasses.nSubpages;
+    }
+
+    /**
+     * Returns the number of {@link PoolThreadCache} normal caches needed to cache all normalized capacities up to
+     * {@code maxCachedBufferCapacity}.
+     */
+    int numNormalCaches(int maxCachedBufferCapacity) {
+        int max = Math.min(chunkSize, maxCachedBufferCapacity);
+        if (sizeClasses == null) {
+            return max(1, log2(max / pageSize) + 1);
+        }
+        return sizeClasses.numRunSizesUpTo(max);
+    }
+
+    private static int log2(int val) {
+        return val <= 1 ? 0 : Integer.SIZE - 1 - Integer.numberOfLeadingZeros(val);
+    }
+
     // capacity < pageSize
     boolean isTinyOrSmall(int normCapacity) {
+        if (sizeClasses != null) {
+            return sizeClasses.isSubpage(normCapacity);
+        }
         return (normCapacity & subpageOverflowMask) == 0;
     }
 
@@ -241,7 +345,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                 }
 
                 // 假设 normCapacity 是 48 .
-                tableIdx = tinyIdx(normCapacity);
+                tableIdx = tinyPoolIdx(normCapacity);
                 // table指向　tinySubpagePools 数组
                 table = tinySubpagePools;
             } else {
@@ -254,7 +358,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                 }
 
                 // 假设 normCapacity 是 2048  会计算出来 2
-                tableIdx = smallIdx(normCapacity);
+                tableIdx = smallPoolIdx(normCapacity);
                 // table 指向 smallSubpagePools
                 table = smallSubpagePools;
             }
@@ -262,7 +366,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
             // 上面别管 tiny 还是 small ，总之 tableIdx 和 table 这俩 都已经计算完了..
 
             // 这一步会拿到一个符合规格的 head 节点。
-            final PoolSubpage<T> head = table[tableIdx];
+            final PoolSubpage<T> head = subpagePoolHead(table, tableIdx);
 
             /**
              * Synchronize on the head. This is needed as {@link PoolChunk#allocateSubpage(int)} and
@@ -340,6 +444,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         // 参数3：pageShifts 13
         // 参数4：chunkSize 16mb
         PoolChunk<T> c = newChunk(pageSize, maxOrder, pageShifts, chunkSize);
+        ++numChunks;
 
         // 参数1：buf 返回给业务使用ByteBuf对象，下面逻辑会给该buf 分配真正的内存。
         // 参数2：reqCapacity，业务层需要的内存容量
@@ -446,6 +551,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
 
             destroyChunk = !chunk.parent.free(chunk, handle, nioBuffer);
+            if (destroyChunk) {
+                --numChunks;
+                ++chunksReleased;
+            }
         }
         if (destroyChunk) {
             // destroyChunk not need to be called while holding the synchronized lock.
@@ -461,6 +570,11 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         // table 指向 tinySubpagePools 或者 smallSubpagePools 其中一个
         PoolSubpage<T>[] table;
 
+        if (sizeClasses != null) {
+            return isTiny(elemSize) ? subpagePoolHead(tinySubpagePools, tinyPoolIdx(elemSize))
+                    : subpagePoolHead(smallSubpagePools, smallPoolIdx(elemSize));
+        }
+
         if (isTiny(elemSize)) { // < 512
             // 计算出 tiny elemSize 对应的数组下标
             tableIdx = elemSize >>> 4;
@@ -488,7 +602,17 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         // 返回当前桶的 head节点，head 节点创建时 为一个 指向自身的 subpage 对象。
-        return table[tableIdx];
+        return subpagePoolHead(table, tableIdx);
+    }
+
+    /**
+     * Returns the head of the subpage pool of the calling thread's stripe for the size class at {@code tableIdx}.
+     */
+    private PoolSubpage<T> subpagePoolHead(PoolSubpage<T>[] table, int tableIdx) {
+        if (subpageStripeMask == 0) {
+            return table[tableIdx];
+        }
+        return table[tableIdx * subpageStripes + ((int) Thread.currentThread().getId() & subpageStripeMask)];
     }
 
     // 参数：reqCapacity 用户指定请求容量大小，是一个随意值
@@ -501,6 +625,11 @@ abstract class PoolArena<T> implements PoolArenaMetric {
             return directMemoryCacheAlignment == 0 ? reqCapacity : alignCapacity(reqCapacity);
         }
 
+        if (sizeClasses != null) {
+            return sizeClasses.normalizeSize(
+                    directMemoryCacheAlignment == 0 ? reqCapacity : alignCapacity(max(1, reqCapacity)));
+        }
+
         // 条件成立：说明reqCapacity 是一个大于 512 的值，规格排除掉  tiny 这个情况。
         if (!isTiny(reqCapacity)) { // >= 512
             // small、normal
@@ -610,10 +739,164 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
         memoryCopy(oldMemory, oldOffset, buf, bytesToCopy);
         if (freeOldMemory) {
+            deallocated(oldChunk, oldOffset, oldCapacity, oldMaxLength);
             free(oldChunk, oldNioBuffer, oldHandle, oldMaxLength, buf.cache);
         }
     }
 
+    private int sizeClassSize(int sizeClassIdx) {
+        if (sizeClasses != null) {
+            return sizeClasses.sizeIdx2size(sizeClassIdx);
+        }
+        if (sizeClassIdx < numTinySubpagePools) {
+            return sizeClassIdx << 4;
+        }
+        sizeClassIdx -= numTinySubpagePools;
+        if (sizeClassIdx < numSmallSubpagePools) {
+            return 512 << sizeClassIdx;
+        }
+        return pageSize << sizeClassIdx - numSmallSubpagePools;
+    }
+
+    private PoolSizeClass sizeClassMetric(int normCapacity) {
+        final int sizeClassIdx;
+        if (sizeClasses != null) {
+            sizeClassIdx = sizeClasses.size2SizeIdx(normCapacity);
+        } else if (isTiny(normCapacity)) {
+            sizeClassIdx = tinyIdx(normCapacity);
+        } else if (isTinyOrSmall(normCapacity)) {
+            sizeClassIdx = numTinySubpagePools + smallIdx(normCapacity);
+        } else {
+            sizeClassIdx = numTinySubpagePools + numSmallSubpagePools + log2(normCapacity >> pageShifts);
+        }
+        return sizeClassMetrics[sizeClassIdx];
+    }
+
+    /**
+     * Accounts a buffer of {@code reqCapacity} bytes at {@code offset} that was initialized with memory of a pooled
+     * {@link PoolChunk}.
+     */
+    void allocated(PoolChunk<T> chunk, int offset, int reqCapacity, int normCapacity) {
+        assert !chunk.unpooled;
+        if (accountRequestedBytes) {
+            sizeClassMetric(normCapacity).allocated(reqCapacity);
+        }
+        chunk.allocated(offset, reqCapacity, normCapacity);
+    }
+
+    /**
+     * Accounts the in-place change of the capacity of a buffer by {@code delta} bytes.
+     */
+    void resized(PoolChunk<T> chunk, int normCapacity, int delta) {
+        assert !chunk.unpooled;
+        if (accountRequestedBytes) {
+            sizeClassMetric(normCapacity).resized(delta);
+            chunk.resized(delta);
+        }
+    }
+
+    /**
+     * Accounts a buffer of {@code length} bytes at {@code offset} that releases its memory.
+     */
+    void deallocated(PoolChunk<T> chunk, int offset, int length, int normCapacity) {
+        if (!chunk.unpooled) {
+            if (accountRequestedBytes) {
+                sizeClassMetric(normCapacity).deallocated(length);
+            }
+            chunk.deallocated(offset, length, normCapacity);
+        }
+    }
+
+    void threadCacheTrimmed(int hits, int misses) {
+        if (hits != 0) {
+            threadCacheHits.add(hits);
+        }
+        if (misses != 0) {
+            threadCacheMisses.add(misses);
+        }
+    }
+
+    void threadCacheGrown() {
+        threadCacheGrows.increment();
+    }
+
+    void threadCacheShrunk() {
+        threadCacheShrinks.increment();
+    }
+
+    long numThreadCacheHits() {
+        return threadCacheHits.value();
+    }
+
+    long numThreadCacheMisses() {
+        return threadCacheMisses.value();
+    }
+
+    long numThreadCacheGrows() {
+        return threadCacheGrows.value();
+    }
+
+    long numThreadCacheShrinks() {
+        return threadCacheShrinks.value();
+    }
+
+    /**
+     * Return the number of bytes of memory held by the pooled chunks of this arena, whether they are used or not.
+     */
+    synchronized long numChunkBytes() {
+        return (long) numChunks * chunkSize;
+    }
+
+    /**
+     * Return the number of pooled chunks of this arena that were destroyed and so released their memory.
+     */
+    synchronized long numChunksReleased() {
+        return chunksReleased;
+    }
+
+    /**
+     * Destroy the pooled chunks that were not used since {@code idleDeadlineNanos}, until at least
+     * {@code maxBytes} bytes were released or no idle chunk is left.
+     *
+     * @return the number of bytes released.
+     */
+    long releaseIdleChunks(long idleDeadlineNanos, long maxBytes) {
+        List<PoolChunk<T>> idleChunks = new ArrayList<PoolChunk<T>>();
+        long released;
+        synchronized (this) {
+            // Chunks in q000 are destroyed as soon as they are empty, so only qInit can contain idle chunks.
+            released = qInit.removeIdleChunks(idleDeadlineNanos, maxBytes, idleChunks);
+            numChunks -= idleChunks.size();
+            chunksReleased += idleChunks.size();
+        }
+        // destroyChunk not need to be called while holding the synchronized lock.
+        for (PoolChunk<T> chunk : idleChunks) {
+            destroyChunk(chunk);
+        }
+        return released;
+    }
+
+    /**
+     * Appends the allocations of the pooled chunks that were alive at the previous call and were not released since
+     * to {@code buf}, but at most {@code maxReported}, and starts tracking the allocations alive now.
+     *
+     * @return the number of such allocations.
+     */
+    int reportAgedAllocations(StringBuilder buf, int maxReported) {
+        if (!trackAllocations) {
+            return 0;
+        }
+        synchronized (this) {
+            int aged = qInit.reportAgedAllocations(buf, maxReported);
+            aged += q000.reportAgedAllocations(buf, Math.max(0, maxReported - aged));
+            aged += q025.reportAgedAllocations(buf, Math.max(0, maxReported - aged));
+            aged += q050.reportAgedAllocations(buf, Math.max(0, maxReported - aged));
+            aged += q075.reportAgedAllocations(buf, Math.max(0, maxReported - aged));
+            aged += q100.reportAgedAllocations(buf, Math.max(0, maxReported - aged));
+            return aged;
+        }
+    }
+
     @Override
     public int numThreadCaches() {
         return numThreadCaches.get();
@@ -621,12 +904,12 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     @Override
     public int numTinySubpages() {
-        return tinySubpagePools.length;
+        return numTinyPools;
     }
 
     @Override
     public int numSmallSubpages() {
-        return smallSubpagePools.length;
+        return numSmallSubpagePools;
     }
 
     @Override
@@ -772,6 +1055,29 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return max(0, val);
     }
 
+    @Override
+    public List<PoolSizeClassMetric> sizeClasses() {
+        return sizeClassMetricList;
+    }
+
+    @Override
+    public long numActiveRequestedBytes() {
+        long val = 0;
+        for (PoolSizeClass sizeClass : sizeClassMetrics) {
+            val += sizeClass.requestedBytes();
+        }
+        return val;
+    }
+
+    @Override
+    public long numActiveReservedBytes() {
+        long val = 0;
+        for (PoolSizeClass sizeClass : sizeClassMetrics) {
+            val += sizeClass.reservedBytes();
+        }
+        return val;
+    }
+
     protected abstract PoolChunk<T> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize);
     protected abstract PoolChunk<T> newUnpooledChunk(int capacity);
     protected abstract PooledByteBuf<T> newByteBuf(int maxCapacity);
@@ -863,8 +1169,18 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
         HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
                 int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
+            this(parent, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, null);
+        }
+
+        HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, SizeClasses sizeClasses) {
+            this(parent, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, sizeClasses, 1);
+        }
+
+        HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder, int pageShifts, int chunkSize,
+                int directMemoryCacheAlignment, SizeClasses sizeClasses, int subpageStripes) {
             super(parent, pageSize, maxOrder, pageShifts, chunkSize,
-                    directMemoryCacheAlignment);
+                    directMemoryCacheAlignment, sizeClasses, subpageStripes);
         }
 
         private static byte[] newByteArray(int size) {
@@ -909,6 +1225,8 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     static final class DirectArena extends PoolArena<ByteBuffer> {
 
+        private final ChunkAllocator chunkAllocator;
+
         // 参数1：allocator 对象
         // 参数2：pageSize,8k
         // 参数3：maxOrder，11
@@ -917,6 +1235,23 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         // 参数6：directMemoryCacheAlignment 0
         DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
                 int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
+            this(parent, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, null);
+        }
+
+        DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, SizeClasses sizeClasses) {
+            this(parent, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, sizeClasses, 1);
+        }
+
+        DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder, int pageShifts, int chunkSize,
+                int directMemoryCacheAlignment, SizeClasses sizeClasses, int subpageStripes) {
+            this(parent, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, sizeClasses,
+                    subpageStripes, null);
+        }
+
+        DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder, int pageShifts, int chunkSize,
+                int directMemoryCacheAlignment, SizeClasses sizeClasses, int subpageStripes,
+                ChunkAllocator chunkAllocator) {
 
             // 参数1：allocator 对象
             // 参数2：pageSize,8k
@@ -925,7 +1260,8 @@ abstract class PoolArena<T> implements PoolArenaMetric {
             // 参数5：chunkSize,16mb
             // 参数6：directMemoryCacheAlignment 0
             super(parent, pageSize, maxOrder, pageShifts, chunkSize,
-                    directMemoryCacheAlignment);
+                    directMemoryCacheAlignment, sizeClasses, subpageStripes);
+            this.chunkAllocator = chunkAllocator != null ? chunkAllocator : DefaultChunkAllocator.INSTANCE;
         }
 
         @Override
@@ -965,13 +1301,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                 // 参数6：chunkSize 16mb
                 // 参数7： offset 0
                 return new PoolChunk<ByteBuffer>(this,
-                        allocateDirect(chunkSize), pageSize, maxOrder,
+                        chunkAllocator.allocate(chunkSize), pageSize, maxOrder,
                         pageShifts, chunkSize, 0);
             }
 
             // 不会执行下面代码..
 
-            final ByteBuffer memory = allocateDirect(chunkSize
+            final ByteBuffer memory = chunkAllocator.allocate(chunkSize
                     + directMemoryCacheAlignment);
             return new PoolChunk<ByteBuffer>(this, memory, pageSize,
                     maxOrder, pageShifts, chunkSize,
@@ -991,16 +1327,16 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         private static ByteBuffer allocateDirect(int capacity) {
-            return PlatformDependent.useDirectBufferNoCleaner() ?
-                    PlatformDependent.allocateDirectNoCleaner(capacity) : ByteBuffer.allocateDirect(capacity);
+            return DefaultChunkAllocator.INSTANCE.allocate(capacity);
         }
 
         @Override
         protected void destroyChunk(PoolChunk<ByteBuffer> chunk) {
-            if (PlatformDependent.useDirectBufferNoCleaner()) {
-                PlatformDependent.freeDirectNoCleaner(chunk.memory);
+            // Huge allocations are never pooled and so are not served by the ChunkAllocator.
+            if (chunk.unpooled) {
+                DefaultChunkAllocator.INSTANCE.free(chunk.memory);
             } else {
-                PlatformDependent.freeDirectBuffer(chunk.memory);
+                chunkAllocator.free(chunk.memory);
             }
         }
 
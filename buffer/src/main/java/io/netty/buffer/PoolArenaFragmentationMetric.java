@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import java.util.List;
+
+/**
+ * Metrics for the internal fragmentation of a {@link PoolArenaMetric}: the bytes requested by the active allocations
+ * compared to the bytes reserved for them. The counters are only maintained if
+ * {@code -Dio.netty.allocator.accountRequestedBytes} is {@code true}, otherwise they are always {@code 0}.
+ */
+public interface PoolArenaFragmentationMetric extends PoolArenaMetric {
+
+    /**
+     * Returns an unmodifiable {@link List} which holds a {@link PoolSizeClassMetric} for every size class that is
+     * served out of the chunks of the arena, ordered by size.
+     */
+    List<PoolSizeClassMetric> sizeClasses();
+
+    /**
+     * Return the number of bytes requested by the currently active tiny, small and normal allocations of the arena.
+     */
+    long numActiveRequestedBytes();
+
+    /**
+     * Return the number of bytes reserved for the currently active tiny, small and normal allocations of the arena.
+     * The difference to {@link #numActiveRequestedBytes()} is lost to internal fragmentation.
+     */
+    long numActiveReservedBytes();
+}
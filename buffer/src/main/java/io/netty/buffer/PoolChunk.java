@@ -16,9 +16,14 @@
 
 package io.netty.buffer;
 
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Description of algorithm for PageRun/PoolSubpage allocation from PoolChunk
@@ -102,10 +107,34 @@ import java.util.Deque;
  *
  * memoryMap[id]= depth_of_id  is defined above
  * depthMap[id]= x  indicates that the first node which is free to be allocated is at depth x (from root)
+ *
+ * Size classes:
+ * -------------
+ * If the owning {@link PoolArena} uses {@link SizeClasses} sizes are not normalized to powers of 2 and so runs
+ * consist of any number of pages. In this case the buddy tree is not used at all, instead the usage of every page
+ * is tracked in pageBitmap (one bit per page) and a run is allocated from the first sequence of free pages that is
+ * long enough. The handle of such a run stores the offset of its first page and the number of pages in the run:
+ *
+ *   handle = runOffset << 16 | runPages
+ *
+ * Subpages are allocated the same way with the run size given by {@link SizeClasses#subpageRunSize(int)} and are
+ * stored in subpages by the offset of the first page of their run.
+ *
+ * Allocation tracking:
+ * --------------------
+ * If the arena tracks allocations the chunk is split into slots of 16 bytes, the smallest size of an allocation, and
+ * every slot has two bits in allocationBits: the live bit is set while a buffer that starts at the slot holds the
+ * memory, the fresh bit is set when such a buffer is initialized. {@link #reportAgedAllocations(StringBuilder, int)}
+ * reports the slots whose live bit is set but whose fresh bit is not, i.e. buffers that were already alive at the
+ * previous call, and clears all fresh bits. Memory cached by a {@link PoolThreadCache} is not tracked.
  */
-final class PoolChunk<T> implements PoolChunkMetric {
+final class PoolChunk<T> implements PoolChunkFragmentationMetric {
 
     private static final int INTEGER_SIZE_MINUS_ONE = Integer.SIZE - 1;
+    private static final int RUN_OFFSET_SHIFT = 16;
+    private static final int RUN_PAGES_MASK = (1 << RUN_OFFSET_SHIFT) - 1;
+    private static final int TRACKING_SLOT_SHIFT = 4;
+    private static final long TRACKING_LIVE_BITS = 0x5555555555555555L;
 
     final PoolArena<T> arena;
     final T memory;
@@ -113,6 +142,9 @@ final class PoolChunk<T> implements PoolChunkMetric {
     final int offset;
     private final byte[] memoryMap;
     private final byte[] depthMap;
+    /** Only used if the arena uses size classes, one bit per page that is set if the page is in use. */
+    private final long[] pageBitmap;
+    private final SizeClasses sizeClasses;
     private final PoolSubpage<T>[] subpages;
     /** Used to determine if the requested capacity is equal to or greater than pageSize. */
     private final int subpageOverflowMask;
@@ -134,6 +166,17 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     private int freeBytes;
 
+    // The value of System.nanoTime() when the last allocation of this chunk was freed, guarded by the arena.
+    private long emptySinceNanos;
+
+    // Bytes requested by and reserved for the active allocations out of this chunk, null if the chunk is unpooled
+    // or the arena does not account requested bytes.
+    private final LongCounter requestedBytes;
+    private final LongCounter reservedBytes;
+
+    // Two bits per slot if the arena tracks allocations, null otherwise.
+    private final AtomicLongArray allocationBits;
+
     PoolChunkList<T> parent;
     PoolChunk<T> prev;
     PoolChunk<T> next;
@@ -182,37 +225,53 @@ final class PoolChunk<T> implements PoolChunkMetric {
         // 最多可申请多少 subpage ， 1 << 11 => 2048
         maxSubpageAllocs = 1 << maxOrder;
 
-        // Generate the memory map.
+        if (arena.sizeClasses != null) {
+            sizeClasses = arena.sizeClasses;
+            memoryMap = null;
+            depthMap = null;
+            pageBitmap = new long[(maxSubpageAllocs + 63) >>> 6];
+            // Mark the bits after the last page as used so a free run never extends past the end of the chunk.
+            for (int i = maxSubpageAllocs; i < pageBitmap.length << 6; i++) {
+                pageBitmap[i >>> 6] |= 1L << i;
+            }
+        } else {
+            sizeClasses = null;
+            pageBitmap = null;
+            // Generate the memory map.
 
 
-        // 使用一个数组表示 满二叉树，根据公式 i 的左节点 2i ,i 的右节点 2i + 1
+            // 使用一个数组表示 满二叉树，根据公式 i 的左节点 2i ,i 的右节点 2i + 1
 
-        // 创建了一个 长度为 4096 的数组。
-        // 数组的每个元素 表示 当前i 下标 的树节点 的可分配 深度能力值，每个树节点的 可分配深度能力值 为 深度值，
-        // 比如 memoryMap[1] = 0， 表示根节点可分配整个内存， memoryMap[2] = 1 表示这个节点可管理chunk的一半内存....
-        // 注意：memoryMap 对应索引的 树节点 如果管理的内存被划分出去后，该值会改变。
-        // [0, 0, 1, 1, 2, 2, 2, 2, 3 ,3 ,3 ,3 ,3 ,3 ,3 ,3 ....]
-        memoryMap = new byte[maxSubpageAllocs << 1];
+            // 创建了一个 长度为 4096 的数组。
+            // 数组的每个元素 表示 当前i 下标 的树节点 的可分配 深度能力值，每个树节点的 可分配深度能力值 为 深度值，
+            // 比如 memoryMap[1] = 0， 表示根节点可分配整个内存， memoryMap[2] = 1 表示这个节点可管理chunk的一半内存....
+            // 注意：memoryMap 对应索引的 树节点 如果管理的内存被划分出去后，该值会改变。
+            // [0, 0, 1, 1, 2, 2, 2, 2, 3 ,3 ,3 ,3 ,3 ,3 ,3 ,3 ....]
+            memoryMap = new byte[maxSubpageAllocs << 1];
 
 
-        // [0, 0, 1, 1, 2, 2, 2, 2, 3 ,3 ,3 ,3 ,3 ,3 ,3 ,3 ....]
-        // 表示当前索引的树节点 所在树的深度是多少，注意：初始化之后 depthMap 就不会再发生改变了。
-        depthMap = new byte[memoryMap.length];
+            // [0, 0, 1, 1, 2, 2, 2, 2, 3 ,3 ,3 ,3 ,3 ,3 ,3 ,3 ....]
+            // 表示当前索引的树节点 所在树的深度是多少，注意：初始化之后 depthMap 就不会再发生改变了。
+            depthMap = new byte[memoryMap.length];
 
-        int memoryMapIndex = 1;
-        for (int d = 0; d <= maxOrder; ++ d) { // move down the tree one level at a time
-            int depth = 1 << d;
-            for (int p = 0; p < depth; ++ p) {
-                // in each level traverse left to right and set value to the depth of subtree
-                memoryMap[memoryMapIndex] = (byte) d;
-                depthMap[memoryMapIndex] = (byte) d;
-                memoryMapIndex ++;
+            int memoryMapIndex = 1;
+            for (int d = 0; d <= maxOrder; ++ d) { // move down the tree one level at a time
+                int depth = 1 << d;
+                for (int p = 0; p < depth; ++ p) {
+                    // in each level traverse left to right and set value to the depth of subtree
+                    memoryMap[memoryMapIndex] = (byte) d;
+                    depthMap[memoryMapIndex] = (byte) d;
+                    memoryMapIndex ++;
+                }
             }
         }
 
-
         // 因为chunk默认情况下，最多可以开辟 2048 个 subpage ，所以 这里创建一个 长度为 2048 的subpage 数组。
         subpages = newSubpageArray(maxSubpageAllocs);
+        requestedBytes = arena.accountRequestedBytes ? PlatformDependent.newLongCounter() : null;
+        reservedBytes = arena.accountRequestedBytes ? PlatformDependent.newLongCounter() : null;
+        allocationBits = arena.trackAllocations ?
+                new AtomicLongArray(((chunkSize >>> TRACKING_SLOT_SHIFT) + 31) >>> 5) : null;
 
         cachedNioBuffers = new ArrayDeque<ByteBuffer>(8);
     }
@@ -225,6 +284,8 @@ final class PoolChunk<T> implements PoolChunkMetric {
         this.offset = offset;
         memoryMap = null;
         depthMap = null;
+        pageBitmap = null;
+        sizeClasses = null;
         subpages = null;
         subpageOverflowMask = 0;
         pageSize = 0;
@@ -235,6 +296,9 @@ final class PoolChunk<T> implements PoolChunkMetric {
         log2ChunkSize = log2(chunkSize);
         maxSubpageAllocs = 0;
         cachedNioBuffers = null;
+        requestedBytes = null;
+        reservedBytes = null;
+        allocationBits = null;
     }
 
     @SuppressWarnings("unchecked")
@@ -271,8 +335,11 @@ final class PoolChunk<T> implements PoolChunkMetric {
         // 非常重要...
         final long handle;
 
+        if (sizeClasses != null) {
+            handle = sizeClasses.isSubpage(normCapacity) ?
+                    allocateSubpageRun(normCapacity) : allocatePages(normCapacity >> pageShifts);
         // 条件成立：说明 normCapacity 是一个 >= pageSize 的值，也就说 业务需求的内存量是一个 大于等于 一个页的内存。
-        if ((normCapacity & subpageOverflowMask) != 0) { // >= pageSize
+        } else if ((normCapacity & subpageOverflowMask) != 0) { // >= pageSize
             // 申请 8k 16k 32k... <= 16mb 逻辑的入口
             // 这里的handle 是 当前分配内存 占用的 树节点 id 值，可能是 -1 ，-1 表示申请失败。。
             handle =  allocateRun(normCapacity);
@@ -527,6 +594,101 @@ final class PoolChunk<T> implements PoolChunkMetric {
         }
     }
 
+    /**
+     * Allocate a run of pages from the chunk when size classes are used. The first sequence of free pages that is
+     * long enough is used.
+     *
+     * @param pages number of pages of the run
+     * @return handle of the run or {@code -1} if there is no such sequence
+     */
+    private long allocatePages(int pages) {
+        int runOffset = findFreeRun(pages);
+        if (runOffset < 0) {
+            return -1;
+        }
+        markPages(runOffset, pages, true);
+        freeBytes -= pages << pageShifts;
+        return runOffset << RUN_OFFSET_SHIFT | pages;
+    }
+
+    /**
+     * Create / initialize a new PoolSubpage of normCapacity when size classes are used. The subpage spans a run of
+     * {@link SizeClasses#subpageRunSize(int)} bytes.
+     *
+     * @param normCapacity normalized capacity
+     * @return handle of the allocated element or {@code -1} if the run could not be allocated
+     */
+    private long allocateSubpageRun(int normCapacity) {
+        PoolSubpage<T> head = arena.findSubpagePoolHead(normCapacity);
+        int runSize = sizeClasses.subpageRunSize(normCapacity);
+        synchronized (head) {
+            long runHandle = allocatePages(runSize >> pageShifts);
+            if (runHandle < 0) {
+                return runHandle;
+            }
+
+            int id = (int) runHandle;
+            int subpageIdx = subpageIdx(id);
+            PoolSubpage<T> subpage = subpages[subpageIdx];
+            if (subpage == null || subpage.runSize != runSize) {
+                subpage = new PoolSubpage<T>(head, this, id, runOffset(id), pageSize, runSize, normCapacity);
+                subpages[subpageIdx] = subpage;
+            } else {
+                subpage.init(head, normCapacity);
+            }
+            return subpage.allocate();
+        }
+    }
+
+    /**
+     * Returns the index of the first page of the first sequence of at least {@code pages} free pages or {@code -1}
+     * if there is none.
+     */
+    private int findFreeRun(int pages) {
+        final long[] pageBitmap = this.pageBitmap;
+        int runOffset = 0;
+        int runPages = 0;
+        for (int i = 0; i < pageBitmap.length; i++) {
+            long bits = pageBitmap[i];
+            int j = 0;
+            while (j < Long.SIZE) {
+                long remaining = bits >>> j;
+                if ((remaining & 1) == 0) {
+                    int free = remaining == 0 ? Long.SIZE - j : Long.numberOfTrailingZeros(remaining);
+                    if (runPages == 0) {
+                        runOffset = i << 6 | j;
+                    }
+                    runPages += free;
+                    if (runPages >= pages) {
+                        return runOffset;
+                    }
+                    j += free;
+                } else {
+                    runPages = 0;
+                    j += Long.numberOfTrailingZeros(~remaining);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void markPages(int runOffset, int pages, boolean used) {
+        final int end = runOffset + pages;
+        for (int i = runOffset; i < end;) {
+            int bit = i & 63;
+            int n = Math.min(Long.SIZE - bit, end - i);
+            long mask = (n == Long.SIZE ? -1L : (1L << n) - 1) << bit;
+            if (used) {
+                assert (pageBitmap[i >>> 6] & mask) == 0;
+                pageBitmap[i >>> 6] |= mask;
+            } else {
+                assert (pageBitmap[i >>> 6] & mask) == mask;
+                pageBitmap[i >>> 6] &= ~mask;
+            }
+            i += n;
+        }
+    }
+
     /**
      * Free a subpage or a run of pages
      * When a subpage is freed from PoolSubpage, it might be added back to subpage pool of the owning PoolArena
@@ -551,7 +713,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
             // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and synchronize on it.
             // This is need as we may add it back and so alter the linked-list structure.
             // 获取 出 arena 范围 该 内存规格 在 pools 的 head 节点。
-            PoolSubpage<T> head = arena.findSubpagePoolHead(subpage.elemSize);
+            PoolSubpage<T> head = subpage.poolHead;
             synchronized (head) {
                 // 释放内存。
                 // 参数1：获取 出 arena 范围 该 内存规格 在 pools 的 head 节点。
@@ -565,10 +727,17 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
 
         freeBytes += runLength(memoryMapIdx);
+        if (freeBytes == chunkSize) {
+            emptySinceNanos = System.nanoTime();
+        }
 
-        setValue(memoryMapIdx, depth(memoryMapIdx));
+        if (sizeClasses != null) {
+            markPages(memoryMapIdx >>> RUN_OFFSET_SHIFT, memoryMapIdx & RUN_PAGES_MASK, false);
+        } else {
+            setValue(memoryMapIdx, depth(memoryMapIdx));
 
-        updateParentsFree(memoryMapIdx);
+            updateParentsFree(memoryMapIdx);
+        }
 
         if (nioBuffer != null && cachedNioBuffers != null &&
                 cachedNioBuffers.size() < PooledByteBufAllocator.DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK) {
@@ -589,8 +758,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
         // 条件成立：说明 handle 表示的 是 allocateRun 的返回值，接下来是处理 allocateRun 内存的封装逻辑。
         if (bitmapIdx == 0) {
-            byte val = value(memoryMapIdx);
-            assert val == unusable : String.valueOf(val);
+            assert sizeClasses != null || value(memoryMapIdx) == unusable : String.valueOf(value(memoryMapIdx));
 
             // 参数1：this ，创建byteBuf 分配内存的 chunk 对象，真实的内存 是有chunk 持有的，所以 必须传 chunk对象
             // 参数2：nioBuffer 可能是null..
@@ -687,6 +855,9 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     private int runLength(int id) {
+        if (sizeClasses != null) {
+            return (id & RUN_PAGES_MASK) << pageShifts;
+        }
         // represents the size in #bytes supported by node 'id' in the tree
 
         // 24 - depth(2049) => 24 - 11 => 13
@@ -696,6 +867,9 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     // 这里假设  id = 2049
     private int runOffset(int id) {
+        if (sizeClasses != null) {
+            return (id >>> RUN_OFFSET_SHIFT) << pageShifts;
+        }
         // represents the 0-based offset in #bytes from start of the byte-array chunk
         // depth(2049)  => 11
         // 1 << 11 => 0b 1000 0000 0000
@@ -723,6 +897,9 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     private int subpageIdx(int memoryMapIdx) {
+        if (sizeClasses != null) {
+            return memoryMapIdx >>> RUN_OFFSET_SHIFT;
+        }
         return memoryMapIdx ^ maxSubpageAllocs; // remove highest set bit, to get offset
     }
 
@@ -734,6 +911,117 @@ final class PoolChunk<T> implements PoolChunkMetric {
         return (int) (handle >>> Integer.SIZE);
     }
 
+    void allocated(int offset, int reqCapacity, int normCapacity) {
+        if (requestedBytes != null) {
+            requestedBytes.add(reqCapacity);
+            reservedBytes.add(normCapacity);
+        }
+        if (allocationBits != null) {
+            // Set the live and the fresh bit.
+            updateAllocationBits(offset, 3L, true);
+        }
+    }
+
+    void resized(int delta) {
+        requestedBytes.add(delta);
+    }
+
+    void deallocated(int offset, int length, int normCapacity) {
+        if (requestedBytes != null) {
+            requestedBytes.add(-length);
+            reservedBytes.add(-normCapacity);
+        }
+        if (allocationBits != null) {
+            updateAllocationBits(offset, 3L, false);
+        }
+    }
+
+    private void updateAllocationBits(int offset, long bits, boolean set) {
+        int slot = offset - this.offset >>> TRACKING_SLOT_SHIFT;
+        int word = slot >>> 5;
+        long mask = bits << ((slot & 31) << 1);
+        for (;;) {
+            long value = allocationBits.get(word);
+            long newValue = set ? value | mask : value & ~mask;
+            if (allocationBits.compareAndSet(word, value, newValue)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends the offsets of the buffers that were alive at the previous call and did not release their memory since
+     * to {@code buf}, but at most {@code maxReported}, and clears the fresh bits. Must be called while holding the
+     * lock of the arena.
+     *
+     * @return the number of such buffers.
+     */
+    int reportAgedAllocations(StringBuilder buf, int maxReported) {
+        assert Thread.holdsLock(arena);
+        if (allocationBits == null) {
+            return 0;
+        }
+        int aged = 0;
+        for (int word = 0; word < allocationBits.length(); word++) {
+            long value;
+            do {
+                value = allocationBits.get(word);
+                if (value == 0) {
+                    break;
+                }
+            } while (!allocationBits.compareAndSet(word, value, value & TRACKING_LIVE_BITS));
+
+            // Live bits whose fresh bit is not set.
+            long agedBits = value & ~(value >>> 1) & TRACKING_LIVE_BITS;
+            while (agedBits != 0) {
+                if (aged < maxReported) {
+                    int slot = word << 5 | Long.numberOfTrailingZeros(agedBits) >>> 1;
+                    buf.append(this).append(" offset: ").append(slot << TRACKING_SLOT_SHIFT)
+                       .append(StringUtil.NEWLINE);
+                }
+                aged++;
+                agedBits &= agedBits - 1;
+            }
+        }
+        return aged;
+    }
+
+    /**
+     * Returns {@code true} if the only memory of this chunk that is in use is the run of a single {@link PoolSubpage}
+     * which still has live allocations. Must be called while holding the lock of the {@link PoolArena}.
+     */
+    boolean isPinnedBySubpage() {
+        assert Thread.holdsLock(arena);
+        if (unpooled || freeBytes == chunkSize) {
+            return false;
+        }
+        for (PoolSubpage<T> subpage : subpages) {
+            if (subpage != null && subpage.doNotDestroy) {
+                return subpage.runSize == chunkSize - freeBytes &&
+                        subpage.numAvailable() < subpage.maxNumElements();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long requestedBytes() {
+        return requestedBytes == null ? 0 : Math.max(0, requestedBytes.value());
+    }
+
+    @Override
+    public long reservedBytes() {
+        return reservedBytes == null ? 0 : Math.max(0, reservedBytes.value());
+    }
+
+    /**
+     * Return {@code true} if this chunk has no active allocation since {@code deadlineNanos} or earlier. Must be
+     * called while holding the lock of the arena.
+     */
+    boolean isIdleSince(long deadlineNanos) {
+        return freeBytes == chunkSize && emptySinceNanos - deadlineNanos <= 0;
+    }
+
     @Override
     public int chunkSize() {
         return chunkSize;
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+/**
+ * Metrics for the internal fragmentation of a {@link PoolChunkMetric}, see {@link PoolArenaFragmentationMetric}.
+ */
+public interface PoolChunkFragmentationMetric extends PoolChunkMetric {
+
+    /**
+     * Return the number of bytes requested by the currently active allocations out of the chunk.
+     */
+    long requestedBytes();
+
+    /**
+     * Return the number of bytes reserved for the currently active allocations out of the chunk. This is the sum
+     * of the normalized sizes of these allocations.
+     */
+    long reservedBytes();
+}
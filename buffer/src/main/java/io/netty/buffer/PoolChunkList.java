@@ -27,7 +27,7 @@ import static java.lang.Math.*;
 
 import java.nio.ByteBuffer;
 
-final class PoolChunkList<T> implements PoolChunkListMetric {
+final class PoolChunkList<T> implements PoolChunkListFragmentationMetric {
     private static final Iterator<PoolChunkMetric> EMPTY_METRICS = Collections.<PoolChunkMetric>emptyList().iterator();
     private final PoolArena<T> arena;
     private final PoolChunkList<T> nextList;
@@ -188,6 +188,54 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
         return max(1, value);
     }
 
+    @Override
+    public long requestedBytes() {
+        long val = 0;
+        synchronized (arena) {
+            for (PoolChunk<T> cur = head; cur != null; cur = cur.next) {
+                val += cur.requestedBytes();
+            }
+        }
+        return val;
+    }
+
+    @Override
+    public long reservedBytes() {
+        long val = 0;
+        synchronized (arena) {
+            for (PoolChunk<T> cur = head; cur != null; cur = cur.next) {
+                val += cur.reservedBytes();
+            }
+        }
+        return val;
+    }
+
+    @Override
+    public int numPinnedChunks() {
+        int val = 0;
+        synchronized (arena) {
+            for (PoolChunk<T> cur = head; cur != null; cur = cur.next) {
+                if (cur.isPinnedBySubpage()) {
+                    val ++;
+                }
+            }
+        }
+        return val;
+    }
+
+    /**
+     * See {@link PoolArena#reportAgedAllocations(StringBuilder, int)}, must be called while holding the lock of the
+     * arena.
+     */
+    int reportAgedAllocations(StringBuilder buf, int maxReported) {
+        assert Thread.holdsLock(arena);
+        int aged = 0;
+        for (PoolChunk<T> cur = head; cur != null; cur = cur.next) {
+            aged += cur.reportAgedAllocations(buf, Math.max(0, maxReported - aged));
+        }
+        return aged;
+    }
+
     @Override
     public Iterator<PoolChunkMetric> iterator() {
         synchronized (arena) {
@@ -226,6 +274,27 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
         return buf.toString();
     }
 
+    /**
+     * Remove the empty chunks that were not used since {@code idleDeadlineNanos} and add them to {@code removed},
+     * until at least {@code maxBytes} bytes were removed.
+     *
+     * @return the number of bytes removed.
+     */
+    long removeIdleChunks(long idleDeadlineNanos, long maxBytes, List<PoolChunk<T>> removed) {
+        long removedBytes = 0;
+        PoolChunk<T> cur = head;
+        while (cur != null && removedBytes < maxBytes) {
+            PoolChunk<T> next = cur.next;
+            if (cur.isIdleSince(idleDeadlineNanos)) {
+                remove(cur);
+                removed.add(cur);
+                removedBytes += cur.chunkSize();
+            }
+            cur = next;
+        }
+        return removedBytes;
+    }
+
     void destroy(PoolArena<T> arena) {
         PoolChunk<T> chunk = head;
         while (chunk != null) {
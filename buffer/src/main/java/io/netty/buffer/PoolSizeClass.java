@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+
+import static java.lang.Math.max;
+
+/**
+ * Accounting of the active allocations of one size class of a {@link PoolArena}. The counters are striped so they
+ * can be updated from the allocation path of all threads without any locking.
+ */
+final class PoolSizeClass implements PoolSizeClassMetric {
+
+    private final int size;
+    private final LongCounter activeAllocations = PlatformDependent.newLongCounter();
+    private final LongCounter requestedBytes = PlatformDependent.newLongCounter();
+
+    PoolSizeClass(int size) {
+        this.size = size;
+    }
+
+    void allocated(int reqCapacity) {
+        activeAllocations.increment();
+        requestedBytes.add(reqCapacity);
+    }
+
+    void deallocated(int length) {
+        activeAllocations.decrement();
+        requestedBytes.add(-length);
+    }
+
+    void resized(int delta) {
+        requestedBytes.add(delta);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long numActiveAllocations() {
+        return max(0, activeAllocations.value());
+    }
+
+    @Override
+    public long requestedBytes() {
+        return max(0, requestedBytes.value());
+    }
+
+    @Override
+    public long reservedBytes() {
+        return numActiveAllocations() * size;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append(StringUtil.simpleClassName(this))
+                .append("(size: ").append(size)
+                .append(", active: ").append(numActiveAllocations())
+                .append(", requested: ").append(requestedBytes())
+                .append(", reserved: ").append(reservedBytes())
+                .append(')')
+                .toString();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+/**
+ * Metrics for the active allocations of a size class of a {@link PoolArenaMetric}. Comparing
+ * {@link #requestedBytes()} with {@link #reservedBytes()} gives the internal fragmentation of the size class.
+ */
+public interface PoolSizeClassMetric {
+
+    /**
+     * Return the normalized size (in bytes) of the allocations of this size class.
+     */
+    int size();
+
+    /**
+     * Return the number of currently active allocations of this size class.
+     */
+    long numActiveAllocations();
+
+    /**
+     * Return the number of bytes requested by the currently active allocations of this size class.
+     */
+    long requestedBytes();
+
+    /**
+     * Return the number of bytes reserved for the currently active allocations of this size class, which is
+     * {@link #numActiveAllocations()} * {@link #size()}.
+     */
+    long reservedBytes();
+}
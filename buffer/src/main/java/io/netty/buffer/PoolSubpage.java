@@ -22,8 +22,12 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
     private final int memoryMapIdx;
     private final int runOffset;
     private final int pageSize;
+    /** Size of the run of pages this subpage spans, which is {@link #pageSize} unless size classes are used. */
+    final int runSize;
     private final long[] bitmap;
 
+    /** The head of the subpage pool this subpage is added to, {@code null} if this is a head. */
+    PoolSubpage<T> poolHead;
     PoolSubpage<T> prev;
     PoolSubpage<T> next;
 
@@ -44,6 +48,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         runOffset = -1;
         elemSize = -1;
         this.pageSize = pageSize;
+        runSize = pageSize;
         bitmap = null;
     }
 
@@ -54,11 +59,17 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
     // 参数5：pageSize,8k
     // 参数6: normCapacity, 16b 32b .... 512b 1024b... 4096b
     PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int memoryMapIdx, int runOffset, int pageSize, int elemSize) {
+        this(head, chunk, memoryMapIdx, runOffset, pageSize, pageSize, elemSize);
+    }
+
+    PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int memoryMapIdx, int runOffset, int pageSize,
+                int runSize, int elemSize) {
 
         this.chunk = chunk;
         this.memoryMapIdx = memoryMapIdx;
         this.runOffset = runOffset;
         this.pageSize = pageSize;
+        this.runSize = runSize;
 
         // pageSize / 16 是因为 tiny 最小规格 16b，以最小规格划分的话 需要多少个 bit 才能表示出这个 内存的使用情况。
         // / 64 是因为 long 是8 字节，1 字节 是8bit ，计算出 多少 long 才能表示整个位图。
@@ -73,6 +84,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
     void init(PoolSubpage<T> head, int elemSize) {
         // true 表示当前subpage 是存活状态， false 表示当前subpage 是释放状态，不可用状态。
         doNotDestroy = true;
+        poolHead = head;
 
         // subpage 需要知道它管理的 内存规格 size。
         this.elemSize = elemSize;
@@ -87,7 +99,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
 
             // maxNumElems 赋值之后 就不在变动了，表示当前 subpage 最多可给业务分配多少小块内存。
             // numAvail，每对外划分出一小块 内存后，该值 都减一。
-            maxNumElems = numAvail = pageSize / elemSize;
+            maxNumElems = numAvail = runSize / elemSize;
 
             // nextAvail 申请内存时  会使用这个字段。 表示 下一个 可用的 位图下标值。
             nextAvail = 0;
@@ -386,7 +398,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         }
 
         return "(" + memoryMapIdx + ": " + (maxNumElems - numAvail) + '/' + maxNumElems +
-                ", offset: " + runOffset + ", length: " + pageSize + ", elemSize: " + elemSize + ')';
+                ", offset: " + runOffset + ", length: " + runSize + ", elemSize: " + elemSize + ')';
     }
 
     @Override
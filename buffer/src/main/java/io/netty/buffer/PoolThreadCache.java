@@ -55,8 +55,6 @@ final class PoolThreadCache {
     private final MemoryRegionCache<ByteBuffer>[] normalDirectCaches;
 
     // Used for bitshifting when calculate the index of normal caches later
-    private final int numShiftsNormalDirect;
-    private final int numShiftsNormalHeap;
     private final int freeSweepAllocationThreshold;
     private final AtomicBoolean freed = new AtomicBoolean();
 
@@ -75,6 +73,17 @@ final class PoolThreadCache {
     PoolThreadCache(PoolArena<byte[]> heapArena, PoolArena<ByteBuffer> directArena,
                     int tinyCacheSize, int smallCacheSize, int normalCacheSize,
                     int maxCachedBufferCapacity, int freeSweepAllocationThreshold) {
+        this(heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize,
+                maxCachedBufferCapacity, freeSweepAllocationThreshold, false);
+    }
+
+    /**
+     * @param adaptive {@code true} if every {@link MemoryRegionCache} should adjust the number of entries it holds
+     *                 on each trim, between {@code 1} and its configured size, based on its own hit ratio.
+     */
+    PoolThreadCache(PoolArena<byte[]> heapArena, PoolArena<ByteBuffer> directArena,
+                    int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                    int maxCachedBufferCapacity, int freeSweepAllocationThreshold, boolean adaptive) {
 
         checkPositiveOrZero(maxCachedBufferCapacity, "maxCachedBufferCapacity");
         // 8192 ,当使用 PoolThreadCache get 8192 次之后，会进行一次主动 清理空闲内存的逻辑，将缓存的内存位置信息 归还给 PoolAlloctor。
@@ -91,7 +100,7 @@ final class PoolThreadCache {
             // 创建出来一个长度为 32 的MemoryRegionCache 数组，并且数组内每一个元素 类型为 SubpageMemoryRegionCache 类型。
             // SubpageMemoryRegionCache 包含一个 固定长度{512}的队列
             tinySubPageDirectCaches = createSubPageCaches(
-                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+                    tinyCacheSize, directArena.numTinySubpages(), SizeClass.Tiny, adaptive);
 
             // 参数1：smallCacheSize 256
             // 参数2：numTinySubpagePools 4
@@ -99,11 +108,7 @@ final class PoolThreadCache {
             // 创建出来一个长度为 4 的MemoryRegionCache 数组，并且数组内每一个元素 类型为 SubpageMemoryRegionCache 类型。
             // SubpageMemoryRegionCache 包含一个 固定长度{256}的队列
             smallSubPageDirectCaches = createSubPageCaches(
-                    smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small);
-
-            // pageSize -> 8192
-            // 以2为底，8192的对数 是 多少？ 13   这个值 后面逻辑会使用。
-            numShiftsNormalDirect = log2(directArena.pageSize);
+                    smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small, adaptive);
 
             // 参数1：normalCacheSize 64
             // 参数2：maxCachedBufferCapacity 32k
@@ -111,7 +116,7 @@ final class PoolThreadCache {
             // 创建出来长度为3的 memoryRegionCache 数组，数组内每个元素类型为 NormalMemoryRegionCache，
             // 并且每个cache 能缓存 64 个 内存位置信息。  cache[0] 缓存的规格为 8k  cache[1] 缓存的规格为 16k  cache[2]  缓存的规格为 32k
             normalDirectCaches = createNormalCaches(
-                    normalCacheSize, maxCachedBufferCapacity, directArena);
+                    normalCacheSize, maxCachedBufferCapacity, directArena, adaptive);
 
             // 给当前PoolThreadCache 占用的 directArena 自增使用的线程数量。
             directArena.numThreadCaches.getAndIncrement();
@@ -120,20 +125,18 @@ final class PoolThreadCache {
             tinySubPageDirectCaches = null;
             smallSubPageDirectCaches = null;
             normalDirectCaches = null;
-            numShiftsNormalDirect = -1;
         }
 
         // 条件一般都成立
         if (heapArena != null) {
             // Create the caches for the heap allocations
             tinySubPageHeapCaches = createSubPageCaches(
-                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+                    tinyCacheSize, heapArena.numTinySubpages(), SizeClass.Tiny, adaptive);
             smallSubPageHeapCaches = createSubPageCaches(
-                    smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small);
+                    smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small, adaptive);
 
-            numShiftsNormalHeap = log2(heapArena.pageSize);
             normalHeapCaches = createNormalCaches(
-                    normalCacheSize, maxCachedBufferCapacity, heapArena);
+                    normalCacheSize, maxCachedBufferCapacity, heapArena, adaptive);
 
             heapArena.numThreadCaches.getAndIncrement();
         } else {
@@ -141,7 +144,6 @@ final class PoolThreadCache {
             tinySubPageHeapCaches = null;
             smallSubPageHeapCaches = null;
             normalHeapCaches = null;
-            numShiftsNormalHeap = -1;
         }
 
         // Only check if there are caches in use.
@@ -155,13 +157,13 @@ final class PoolThreadCache {
 
 
     private static <T> MemoryRegionCache<T>[] createSubPageCaches(
-            int cacheSize, int numCaches, SizeClass sizeClass) {
+            int cacheSize, int numCaches, SizeClass sizeClass, boolean adaptive) {
         if (cacheSize > 0 && numCaches > 0) {
             @SuppressWarnings("unchecked")
             MemoryRegionCache<T>[] cache = new MemoryRegionCache[numCaches];
             for (int i = 0; i < cache.length; i++) {
                 // TODO: maybe use cacheSize / cache.length
-                cache[i] = new SubPageMemoryRegionCache<T>(cacheSize, sizeClass);
+                cache[i] = new SubPageMemoryRegionCache<T>(cacheSize, sizeClass, adaptive);
             }
             return cache;
         } else {
@@ -173,18 +175,17 @@ final class PoolThreadCache {
     // 参数2：maxCachedBufferCapacity 32k
     // 参数3：directArena
     private static <T> MemoryRegionCache<T>[] createNormalCaches(
-            int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area) {
+            int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area, boolean adaptive) {
         // 条件一：64 >0 => true
         // 条件二：32k > 0 =>true
         if (cacheSize > 0 && maxCachedBufferCapacity > 0) {
-            // max = 32k
-            int max = Math.min(area.chunkSize, maxCachedBufferCapacity);
-
             // log2(max / area.pageSize) + 1
             // => 3
             // max(1, 3)  => 3
-            int arraySize = Math.max(1, log2(max / area.pageSize) + 1);
-
+            int arraySize = area.numNormalCaches(maxCachedBufferCapacity);
+            if (arraySize == 0) {
+                return null;
+            }
 
             @SuppressWarnings("unchecked")
                     // 这里arraySize 为什么是 3？  8k 16k  32k
@@ -192,7 +193,7 @@ final class PoolThreadCache {
 
             // 创建出来的每个 NormalMemoryRegionCache 内部的队列长度为 64，表示可以缓存 64个 normal 类型的 内存位置信息。
             for (int i = 0; i < cache.length; i++) {
-                cache[i] = new NormalMemoryRegionCache<T>(cacheSize);
+                cache[i] = new NormalMemoryRegionCache<T>(cacheSize, adaptive);
             }
             return cache;
         } else {
@@ -200,16 +201,6 @@ final class PoolThreadCache {
         }
     }
 
-    // 0b 10 0000 0000 0000 => res 13
-    private static int log2(int val) {
-        int res = 0;
-        while (val > 1) {
-            val >>= 1;
-            res++;
-        }
-        return res;
-    }
-
     /**
      * Try to allocate a tiny buffer out of the cache. Returns {@code true} if successful {@code false} otherwise
      */
@@ -342,32 +333,32 @@ final class PoolThreadCache {
     }
 
     void trim() {
-        trim(tinySubPageDirectCaches);
-        trim(smallSubPageDirectCaches);
-        trim(normalDirectCaches);
-        trim(tinySubPageHeapCaches);
-        trim(smallSubPageHeapCaches);
-        trim(normalHeapCaches);
+        trim(tinySubPageDirectCaches, directArena);
+        trim(smallSubPageDirectCaches, directArena);
+        trim(normalDirectCaches, directArena);
+        trim(tinySubPageHeapCaches, heapArena);
+        trim(smallSubPageHeapCaches, heapArena);
+        trim(normalHeapCaches, heapArena);
     }
 
-    private static void trim(MemoryRegionCache<?>[] caches) {
+    private static void trim(MemoryRegionCache<?>[] caches, PoolArena<?> arena) {
         if (caches == null) {
             return;
         }
         for (MemoryRegionCache<?> c: caches) {
-            trim(c);
+            trim(c, arena);
         }
     }
 
-    private static void trim(MemoryRegionCache<?> cache) {
+    private static void trim(MemoryRegionCache<?> cache, PoolArena<?> arena) {
         if (cache == null) {
             return;
         }
-        cache.trim();
+        cache.trim(arena);
     }
 
     private MemoryRegionCache<?> cacheForTiny(PoolArena<?> area, int normCapacity) {
-        int idx = PoolArena.tinyIdx(normCapacity);
+        int idx = area.tinyPoolIdx(normCapacity);
         if (area.isDirect()) {
             return cache(tinySubPageDirectCaches, idx);
         }
@@ -375,7 +366,7 @@ final class PoolThreadCache {
     }
 
     private MemoryRegionCache<?> cacheForSmall(PoolArena<?> area, int normCapacity) {
-        int idx = PoolArena.smallIdx(normCapacity);
+        int idx = area.smallPoolIdx(normCapacity);
         if (area.isDirect()) {
             return cache(smallSubPageDirectCaches, idx);
         }
@@ -383,11 +374,10 @@ final class PoolThreadCache {
     }
 
     private MemoryRegionCache<?> cacheForNormal(PoolArena<?> area, int normCapacity) {
+        int idx = area.normalCacheIdx(normCapacity);
         if (area.isDirect()) {
-            int idx = log2(normCapacity >> numShiftsNormalDirect);
             return cache(normalDirectCaches, idx);
         }
-        int idx = log2(normCapacity >> numShiftsNormalHeap);
         return cache(normalHeapCaches, idx);
     }
 
@@ -402,8 +392,8 @@ final class PoolThreadCache {
      * Cache used for buffers which are backed by TINY or SMALL size.
      */
     private static final class SubPageMemoryRegionCache<T> extends MemoryRegionCache<T> {
-        SubPageMemoryRegionCache(int size, SizeClass sizeClass) {
-            super(size, sizeClass);
+        SubPageMemoryRegionCache(int size, SizeClass sizeClass, boolean adaptive) {
+            super(size, sizeClass, adaptive);
         }
 
         @Override
@@ -417,8 +407,8 @@ final class PoolThreadCache {
      * Cache used for buffers which are backed by NORMAL size.
      */
     private static final class NormalMemoryRegionCache<T> extends MemoryRegionCache<T> {
-        NormalMemoryRegionCache(int size) {
-            super(size, SizeClass.Normal);
+        NormalMemoryRegionCache(int size, boolean adaptive) {
+            super(size, SizeClass.Normal, adaptive);
         }
 
         @Override
@@ -432,12 +422,19 @@ final class PoolThreadCache {
         private final int size;
         private final Queue<Entry<T>> queue;
         private final SizeClass sizeClass;
+        private final boolean adaptive;
+        // The number of entries the cache may hold if adaptive, updated on every trim. Volatile as buffers may be
+        // released and so added to the cache by other threads.
+        private volatile int limit;
         private int allocations;
+        private int misses;
 
-        MemoryRegionCache(int size, SizeClass sizeClass) {
+        MemoryRegionCache(int size, SizeClass sizeClass, boolean adaptive) {
             this.size = MathUtil.safeFindNextPositivePowerOfTwo(size);
             queue = PlatformDependent.newFixedMpscQueue(this.size);
             this.sizeClass = sizeClass;
+            this.adaptive = adaptive;
+            limit = this.size;
         }
 
         /**
@@ -455,6 +452,9 @@ final class PoolThreadCache {
         // 参数3：handle   申请内存时  表示 内存 位置信息的 handle
         public final boolean add(PoolChunk<T> chunk, ByteBuffer nioBuffer, long handle) {
             // 这一步相当于 将 待归还 内存位置 + 内存大小 .. 信息保存到 entry 对象了。
+            if (adaptive && queue.size() >= limit) {
+                return false;
+            }
             Entry<T> entry = newEntry(chunk, nioBuffer, handle);
 
             // 将 entry加入到　缓存队列。
@@ -475,6 +475,7 @@ final class PoolThreadCache {
         public final boolean allocate(PooledByteBuf<T> buf, int reqCapacity) {
             Entry<T> entry = queue.poll();
             if (entry == null) {
+                ++ misses;
                 return false;
             }
             initBuf(entry.chunk, entry.nioBuffer, entry.handle, buf, reqCapacity);
@@ -509,9 +510,18 @@ final class PoolThreadCache {
         /**
          * Free up cached {@link PoolChunk}s if not allocated frequently enough.
          */
-        public final void trim() {
+        public final void trim(PoolArena<?> arena) {
+            final int allocations = this.allocations;
+            final int misses = this.misses;
+            this.allocations = 0;
+            this.misses = 0;
+            arena.threadCacheTrimmed(allocations, misses);
+
+            if (adaptive) {
+                adapt(arena, allocations, misses);
+                return;
+            }
             int free = size - allocations;
-            allocations = 0;
 
             // We not even allocated all the number that are
             if (free > 0) {
@@ -519,6 +529,32 @@ final class PoolThreadCache {
             }
         }
 
+        /**
+         * Doubles the limit if more than a quarter of the allocations since the last trim missed the cache and halves
+         * it if the cache was idle or less than a quarter of the limit was allocated without any miss. Afterwards
+         * cached entries above the limit are freed.
+         */
+        private void adapt(PoolArena<?> arena, int allocations, int misses) {
+            int limit = this.limit;
+            if (misses > (allocations + misses) >>> 2) {
+                if (limit < size) {
+                    limit <<= 1;
+                    arena.threadCacheGrown();
+                }
+            } else if (misses == 0 && (allocations == 0 || allocations < limit >>> 2)) {
+                if (limit > 1) {
+                    limit >>>= 1;
+                    arena.threadCacheShrunk();
+                }
+            }
+            this.limit = limit;
+
+            int free = queue.size() - limit;
+            if (free > 0) {
+                free(free, false);
+            }
+        }
+
         @SuppressWarnings({ "unchecked", "rawtypes" })
         private  void freeEntry(Entry entry, boolean finalizer) {
             PoolChunk chunk = entry.chunk;
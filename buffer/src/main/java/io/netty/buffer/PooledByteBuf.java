@@ -59,6 +59,7 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
         // 参数7：当前线程的 threadLocalCache 对象，为什么要传这个对象？  因为释放的时候 首选 释放 的地方 为 threadLocalCache ,缓存到 线程局部，方便
         // 后面再申请 时 使用，而不是直接归还到 pool
         init0(chunk, nioBuffer, handle, offset, length, maxLength, cache);
+        chunk.arena.allocated(chunk, offset, length, maxLength);
     }
 
     void initUnpooled(PoolChunk<T> chunk, int length) {
@@ -112,12 +113,14 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
             // If the request capacity does not require reallocation, just update the length of the memory.
             if (newCapacity > length) {
                 if (newCapacity <= maxLength) {
+                    chunk.arena.resized(chunk, maxLength, newCapacity - length);
                     length = newCapacity;
                     return this;
                 }
             } else if (newCapacity > maxLength >>> 1 &&
                     (maxLength > 512 || newCapacity > maxLength - 16)) {
                 // here newCapacity < length
+                chunk.arena.resized(chunk, maxLength, newCapacity - length);
                 length = newCapacity;
                 trimIndicesToCapacity(newCapacity);
                 return this;
@@ -193,6 +196,7 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
             // 参数3：handle  申请内存时  表示 内存 位置信息的 handle
             // 参数4：maxLength  byteBuf 可用内存的最大 大小
             // 参数5：cache 申请byteBuf对象的 线程，释放内存时  优先 将 内存位置信息 缓存到 线程本地。
+            chunk.arena.deallocated(chunk, offset, length, maxLength);
             chunk.arena.free(chunk, tmpNioBuf, handle, maxLength, cache);
 
             tmpNioBuf = null;
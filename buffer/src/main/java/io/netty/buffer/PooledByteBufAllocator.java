@@ -16,12 +16,17 @@
 
 package io.netty.buffer;
 
+import static io.netty.util.internal.ObjectUtil.checkPositive;
 import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
 
 import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.concurrent.NumaNodeThreadFactory;
+import io.netty.util.internal.MathUtil;
+import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.SystemPropertyUtil;
@@ -29,10 +34,14 @@ import io.netty.util.internal.ThreadExecutorMap;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class PooledByteBufAllocator extends AbstractByteBufAllocator implements ByteBufAllocatorMetricProvider {
@@ -51,6 +60,15 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private static final long DEFAULT_CACHE_TRIM_INTERVAL_MILLIS;
     private static final boolean DEFAULT_USE_CACHE_FOR_ALL_THREADS;
     private static final int DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT;
+    private static final boolean DEFAULT_USE_SIZE_CLASSES;
+    private static final boolean DEFAULT_ADAPTIVE_CACHE_SIZE;
+    private static final int DEFAULT_SUBPAGE_STRIPES;
+    private static final int DEFAULT_NUMA_NODES;
+    private static final long DEFAULT_MAX_CHUNK_IDLE_TIME_MILLIS;
+    private static final long DEFAULT_TARGET_RETAINED_BYTES;
+    private static final long DEFAULT_LEAK_TRACKING_INTERVAL_MILLIS;
+    private static final boolean DEFAULT_ACCOUNT_REQUESTED_BYTES;
+    private static final int MAX_REPORTED_AGED_ALLOCATIONS = 64;
     static final int DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK;
 
     private static final int MIN_PAGE_SIZE = 4096;
@@ -158,6 +176,38 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT = SystemPropertyUtil.getInt(
                 "io.netty.allocator.directMemoryCacheAlignment", 0);
 
+        // Use jemalloc 4 style size classes instead of power of two sizes for allocations that are served by a chunk.
+        DEFAULT_USE_SIZE_CLASSES = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.useSizeClasses", false);
+
+        // Let every thread cache adjust its size on each trim based on its own hit ratio.
+        DEFAULT_ADAPTIVE_CACHE_SIZE = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.adaptiveCacheSize", false);
+
+        // Number of subpage pools per size class and arena, threads sharing an arena are spread over them.
+        DEFAULT_SUBPAGE_STRIPES = MathUtil.safeFindNextPositivePowerOfTwo(SystemPropertyUtil.getInt(
+                "io.netty.allocator.subpageStripes", 1));
+
+        // Number of NUMA nodes the direct arenas are partitioned over, every node needs at least one arena.
+        DEFAULT_NUMA_NODES = Math.max(1, Math.min(SystemPropertyUtil.getInt("io.netty.allocator.numaNodes", 1),
+                DEFAULT_NUM_DIRECT_ARENA));
+
+        // Release the pooled chunks which were not used for this long in the background, 0 disables it.
+        DEFAULT_MAX_CHUNK_IDLE_TIME_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.maxChunkIdleTimeMillis", 0));
+
+        // Keep idle chunks as long as all chunks of an allocator together do not hold more than this.
+        DEFAULT_TARGET_RETAINED_BYTES = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.targetRetainedBytes", 0));
+
+        // Report the pooled buffers which were alive for at least this long in the background, 0 disables it.
+        DEFAULT_LEAK_TRACKING_INTERVAL_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.leakTrackingIntervalMillis", 0));
+
+        // Account the bytes requested by the active allocations per size class and chunk, which costs a few striped
+        // counter updates per allocation and release, see PoolArenaFragmentationMetric.
+        DEFAULT_ACCOUNT_REQUESTED_BYTES = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.accountRequestedBytes", false);
 
         // Use 1023 by default as we use an ArrayDeque as backing storage which will then allocate an internal array
         // of 1024 elements. Otherwise we would allocate 2048 and only use 1024 which is wasteful.
@@ -187,6 +237,14 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             logger.debug("-Dio.netty.allocator.useCacheForAllThreads: {}", DEFAULT_USE_CACHE_FOR_ALL_THREADS);
             logger.debug("-Dio.netty.allocator.maxCachedByteBuffersPerChunk: {}",
                     DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK);
+            logger.debug("-Dio.netty.allocator.useSizeClasses: {}", DEFAULT_USE_SIZE_CLASSES);
+            logger.debug("-Dio.netty.allocator.adaptiveCacheSize: {}", DEFAULT_ADAPTIVE_CACHE_SIZE);
+            logger.debug("-Dio.netty.allocator.subpageStripes: {}", DEFAULT_SUBPAGE_STRIPES);
+            logger.debug("-Dio.netty.allocator.numaNodes: {}", DEFAULT_NUMA_NODES);
+            logger.debug("-Dio.netty.allocator.maxChunkIdleTimeMillis: {}", DEFAULT_MAX_CHUNK_IDLE_TIME_MILLIS);
+            logger.debug("-Dio.netty.allocator.targetRetainedBytes: {}", DEFAULT_TARGET_RETAINED_BYTES);
+            logger.debug("-Dio.netty.allocator.leakTrackingIntervalMillis: {}", DEFAULT_LEAK_TRACKING_INTERVAL_MILLIS);
+            logger.debug("-Dio.netty.allocator.accountRequestedBytes: {}", DEFAULT_ACCOUNT_REQUESTED_BYTES);
         }
     }
 
@@ -198,6 +256,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private final int tinyCacheSize;
     private final int smallCacheSize;
     private final int normalCacheSize;
+    private final boolean adaptiveCacheSize;
+    private final int numaNodes;
     private final List<PoolArenaMetric> heapArenaMetrics;
     private final List<PoolArenaMetric> directArenaMetrics;
     private final PoolThreadLocalCache threadCache;
@@ -298,6 +358,105 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
                                   int tinyCacheSize, int smallCacheSize, int normalCacheSize,
                                   boolean useCacheForAllThreads, int directMemoryCacheAlignment) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder, tinyCacheSize, smallCacheSize,
+                normalCacheSize, useCacheForAllThreads, directMemoryCacheAlignment, DEFAULT_USE_SIZE_CLASSES);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param useSizeClasses {@code true} if capacities should be normalized to jemalloc 4 style size classes (four
+     *                       classes per doubling) and chunks should allocate runs of any number of pages, which
+     *                       reduces the memory wasted by sizes just above a power of two.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder, tinyCacheSize, smallCacheSize,
+                normalCacheSize, useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses,
+                DEFAULT_ADAPTIVE_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param useSizeClasses {@code true} if capacities should be normalized to jemalloc 4 style size classes.
+     * @param adaptiveCacheSize {@code true} if the thread caches should start with the given cache sizes as upper
+     *                          bound and then grow or shrink every cache on each trim depending on its own hit ratio
+     *                          and idleness. The decisions are exposed by {@link PooledByteBufAllocatorMetric}.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, boolean adaptiveCacheSize) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder, tinyCacheSize, smallCacheSize,
+                normalCacheSize, useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses,
+                adaptiveCacheSize, DEFAULT_SUBPAGE_STRIPES);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param useSizeClasses {@code true} if capacities should be normalized to jemalloc 4 style size classes.
+     * @param adaptiveCacheSize {@code true} if the thread caches should adjust their sizes to their hit ratio.
+     * @param subpageStripes the number of tiny and small subpage pools per size class in every arena, must be a power
+     *                       of two. Threads that share an arena and miss their thread cache are spread over the pools
+     *                       by their id, which reduces the contention on the pools with many threads per arena.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, boolean adaptiveCacheSize, int subpageStripes) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder, tinyCacheSize, smallCacheSize,
+                normalCacheSize, useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses,
+                adaptiveCacheSize, subpageStripes, null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param useSizeClasses {@code true} if capacities should be normalized to jemalloc 4 style size classes.
+     * @param adaptiveCacheSize {@code true} if the thread caches should adjust their sizes to their hit ratio.
+     * @param subpageStripes the number of tiny and small subpage pools per size class in every arena, must be a power
+     *                       of two.
+     * @param chunkAllocator the {@link ChunkAllocator} which provides the memory of the chunks of the direct arenas,
+     *                       or {@code null} to use the {@link DefaultChunkAllocator}. A chunk's memory is handed
+     *                       back to it as soon as the chunk is destroyed. Huge allocations that are not pooled are
+     *                       never served by the {@link ChunkAllocator}.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, boolean adaptiveCacheSize, int subpageStripes,
+                                  ChunkAllocator chunkAllocator) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder, tinyCacheSize, smallCacheSize,
+                normalCacheSize, useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses,
+                adaptiveCacheSize, subpageStripes, chunkAllocator,
+                // The default must not exceed the number of direct arenas of this instance.
+                Math.min(DEFAULT_NUMA_NODES, Math.max(1, nDirectArena)));
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param useSizeClasses {@code true} if capacities should be normalized to jemalloc 4 style size classes.
+     * @param adaptiveCacheSize {@code true} if the thread caches should adjust their sizes to their hit ratio.
+     * @param subpageStripes the number of tiny and small subpage pools per size class in every arena, must be a power
+     *                       of two.
+     * @param chunkAllocator the {@link ChunkAllocator} which provides the memory of the chunks of the direct arenas,
+     *                       or {@code null} to use the {@link DefaultChunkAllocator}.
+     * @param numaNodes the number of NUMA nodes the direct arenas are partitioned over, the direct arena {@code i}
+     *                  belongs to node {@code i % numaNodes}. A thread bound to a node via
+     *                  {@link NumaNodeThreadFactory} only uses the direct arenas of its node, or any direct arena
+     *                  if its node is not lower than {@code numaNodes}. Must not be greater than
+     *                  {@code nDirectArena} unless there are no direct arenas.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, boolean adaptiveCacheSize, int subpageStripes,
+                                  ChunkAllocator chunkAllocator, int numaNodes) {
         // 将申请偏向 堆 还是 非堆 信息交给 父类。父类根据该信息 会进行 路由。
         super(preferDirect);
 
@@ -309,6 +468,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         this.tinyCacheSize = tinyCacheSize; // {512}
         this.smallCacheSize = smallCacheSize; // {256}
         this.normalCacheSize = normalCacheSize;// {64}
+        this.adaptiveCacheSize = adaptiveCacheSize;
+        this.numaNodes = numaNodes;
 
         // 根据pageSize 和 满二叉树叶子节点深度值 计算出 chunkSize，默认情况下  pageSize-> 8k   maxOrder -> 11, 计算出 16mb
         chunkSize = validateAndCalculateChunkSize(pageSize, maxOrder);
@@ -329,9 +490,22 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                     + directMemoryCacheAlignment + " (expected: power of two)");
         }
 
+        checkPositive(subpageStripes, "subpageStripes");
+        if ((subpageStripes & subpageStripes - 1) != 0) {
+            throw new IllegalArgumentException("subpageStripes: " + subpageStripes + " (expected: power of two)");
+        }
+
+        checkPositive(numaNodes, "numaNodes");
+        if (nDirectArena > 0 && numaNodes > nDirectArena) {
+            throw new IllegalArgumentException("numaNodes: " + numaNodes + " (expected: <= nDirectArena(" +
+                    nDirectArena + "))");
+        }
+
 
         // pageSize is 8k ，得出 pageShifts = 13 , 1 << 13 => pageSize.
         int pageShifts = validateAndCalculatePageShifts(pageSize);
+        // The size classes are immutable and so can be shared by all arenas.
+        SizeClasses sizeClasses = useSizeClasses ? new SizeClasses(pageSize, pageShifts, chunkSize) : null;
 
         // 一般都会成立。
         if (nHeapArena > 0) {
@@ -346,7 +520,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
                 PoolArena.HeapArena arena = new PoolArena.HeapArena(this,
                         pageSize, maxOrder, pageShifts, chunkSize,
-                        directMemoryCacheAlignment);
+                        directMemoryCacheAlignment, sizeClasses, subpageStripes);
 
                 heapArenas[i] = arena;
                 metrics.add(arena);
@@ -374,7 +548,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                 // 参数5：chunkSize,16mb
                 // 参数6：directMemoryCacheAlignment 0
                 PoolArena.DirectArena arena = new PoolArena.DirectArena(
-                        this, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment);
+                        this, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, sizeClasses,
+                        subpageStripes, chunkAllocator);
 
                 directArenas[i] = arena;
                 metrics.add(arena);
@@ -385,6 +560,13 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             directArenaMetrics = Collections.emptyList();
         }
         metric = new PooledByteBufAllocatorMetric(this);
+
+        if (DEFAULT_MAX_CHUNK_IDLE_TIME_MILLIS > 0) {
+            IdleChunkReleaser.schedule(this);
+        }
+        if (DEFAULT_LEAK_TRACKING_INTERVAL_MILLIS > 0) {
+            AgedAllocationReporter.schedule(this);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -510,6 +692,34 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return DEFAULT_USE_CACHE_FOR_ALL_THREADS;
     }
 
+    /**
+     * Default size class behavior - System Property: io.netty.allocator.useSizeClasses - default false
+     */
+    public static boolean defaultUseSizeClasses() {
+        return DEFAULT_USE_SIZE_CLASSES;
+    }
+
+    /**
+     * Default adaptive thread cache behavior - System Property: io.netty.allocator.adaptiveCacheSize - default false
+     */
+    public static boolean defaultAdaptiveCacheSize() {
+        return DEFAULT_ADAPTIVE_CACHE_SIZE;
+    }
+
+    /**
+     * Default number of subpage pools per size class - System Property: io.netty.allocator.subpageStripes - default 1
+     */
+    public static int defaultSubpageStripes() {
+        return DEFAULT_SUBPAGE_STRIPES;
+    }
+
+    /**
+     * Default number of NUMA nodes of the direct arenas - System Property: io.netty.allocator.numaNodes - default 1
+     */
+    public static int defaultNumaNodes() {
+        return DEFAULT_NUMA_NODES;
+    }
+
     /**
      * Default prefer direct - System Property: io.netty.noPreferDirect - default false
      */
@@ -570,6 +780,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     final class PoolThreadLocalCache extends FastThreadLocal<PoolThreadCache> {
         // true
         private final boolean useCacheForAllThreads;
+        // Guarded by initialValue(), so a misconfigured node is only logged once per allocator.
+        private boolean loggedUnknownNumaNode;
 
         PoolThreadLocalCache(boolean useCacheForAllThreads) {
             this.useCacheForAllThreads = useCacheForAllThreads;
@@ -578,8 +790,10 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         @Override
         protected synchronized PoolThreadCache initialValue() {
 
-            final PoolArena<byte[]> heapArena = leastUsedArena(heapArenas);
-            final PoolArena<ByteBuffer> directArena = leastUsedArena(directArenas);
+            // Heap memory is placed by the JVM, so only the direct arenas are partitioned by NUMA node.
+            final PoolArena<byte[]> heapArena = leastUsedArena(heapArenas, -1);
+            final PoolArena<ByteBuffer> directArena = leastUsedArena(
+                    directArenas, NumaNodeThreadFactory.currentNumaNode());
 
             final Thread current = Thread.currentThread();
 
@@ -597,7 +811,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                 // 参数6：DEFAULT_CACHE_TRIM_INTERVAL 8192 是一个阈值。
                 final PoolThreadCache cache = new PoolThreadCache(
                         heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize,
-                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL);
+                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL, adaptiveCacheSize);
 
 
 
@@ -620,13 +834,27 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         }
 
         // 返回一个 arenas 数组内，线程共享数最低的 arena 对象。
-        private <T> PoolArena<T> leastUsedArena(PoolArena<T>[] arenas) {
+        private <T> PoolArena<T> leastUsedArena(PoolArena<T>[] arenas, int node) {
             if (arenas == null || arenas.length == 0) {
                 return null;
             }
 
-            PoolArena<T> minArena = arenas[0];
-            for (int i = 1; i < arenas.length; i++) {
+            // Only consider the arenas of the given node, which are every numaNodes-th arena starting at the node.
+            int first = 0;
+            int step = 1;
+            if (node >= 0 && numaNodes > 1) {
+                if (node < numaNodes) {
+                    first = node;
+                    step = numaNodes;
+                } else if (!loggedUnknownNumaNode) {
+                    // Failing here would fail every allocation of the thread, as the cache is never initialized.
+                    loggedUnknownNumaNode = true;
+                    logger.debug("NUMA node of {}: {} (expected: < numaNodes({})), using the arenas of all nodes",
+                            Thread.currentThread().getName(), node, numaNodes);
+                }
+            }
+            PoolArena<T> minArena = arenas[first];
+            for (int i = first + step; i < arenas.length; i += step) {
                 PoolArena<T> arena = arenas[i];
                 if (arena.numThreadCaches.get() < minArena.numThreadCaches.get()) {
                     minArena = arena;
@@ -764,6 +992,109 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return used;
     }
 
+    final long requestedHeapMemory() {
+        return requestedMemory(heapArenas);
+    }
+
+    final long requestedDirectMemory() {
+        return requestedMemory(directArenas);
+    }
+
+    private static long requestedMemory(PoolArena<?>[] arenas) {
+        if (arenas == null) {
+            return -1;
+        }
+        long requested = 0;
+        for (PoolArena<?> arena : arenas) {
+            requested += arena.numActiveRequestedBytes();
+        }
+        return requested;
+    }
+
+    final long reservedHeapMemory() {
+        return reservedMemory(heapArenas);
+    }
+
+    final long reservedDirectMemory() {
+        return reservedMemory(directArenas);
+    }
+
+    private static long reservedMemory(PoolArena<?>[] arenas) {
+        if (arenas == null) {
+            return -1;
+        }
+        long reserved = 0;
+        for (PoolArena<?> arena : arenas) {
+            reserved += arena.numActiveReservedBytes();
+        }
+        return reserved;
+    }
+
+    final long numThreadCacheHits() {
+        long val = 0;
+        for (PoolArena<?> arena : allArenas()) {
+            val += arena.numThreadCacheHits();
+        }
+        return val;
+    }
+
+    final long numThreadCacheMisses() {
+        long val = 0;
+        for (PoolArena<?> arena : allArenas()) {
+            val += arena.numThreadCacheMisses();
+        }
+        return val;
+    }
+
+    final long numThreadCacheGrows() {
+        long val = 0;
+        for (PoolArena<?> arena : allArenas()) {
+            val += arena.numThreadCacheGrows();
+        }
+        return val;
+    }
+
+    final long numThreadCacheShrinks() {
+        long val = 0;
+        for (PoolArena<?> arena : allArenas()) {
+            val += arena.numThreadCacheShrinks();
+        }
+        return val;
+    }
+
+    final long numChunksReleased() {
+        long val = 0;
+        for (PoolArena<?> arena : allArenas()) {
+            val += arena.numChunksReleased();
+        }
+        return val;
+    }
+
+    private List<PoolArena<?>> allArenas() {
+        List<PoolArena<?>> arenas = new ArrayList<PoolArena<?>>();
+        if (heapArenas != null) {
+            Collections.addAll(arenas, heapArenas);
+        }
+        if (directArenas != null) {
+            Collections.addAll(arenas, directArenas);
+        }
+        return arenas;
+    }
+
+    final boolean adaptiveCacheSize() {
+        return adaptiveCacheSize;
+    }
+
+    // Only called while the arenas are created, overridden by tests.
+    boolean trackAllocations() {
+        return DEFAULT_LEAK_TRACKING_INTERVAL_MILLIS > 0;
+    }
+
+    // Only called while the arenas are created, overridden by tests.
+    boolean accountRequestedBytes() {
+        return DEFAULT_ACCOUNT_REQUESTED_BYTES;
+    }
+
     final PoolThreadCache threadCache() {
         PoolThreadCache cache =  threadCache.get();
         assert cache != null;
@@ -785,6 +1116,60 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return false;
     }
 
+    /**
+     * Release the memory of the pooled chunks which had no active allocation for at least {@code maxIdleTime}, as
+     * long as the chunks of all arenas together hold more than {@code targetRetainedBytes}. Memory cached by thread
+     * local caches keeps its chunk in use, so it may make sense to trim the caches first.
+     *
+     * This is done periodically in the background if {@code io.netty.allocator.maxChunkIdleTimeMillis} is set, and
+     * may otherwise be called by the user, preferably not from a thread which serves requests.
+     *
+     * Returns the number of bytes released.
+     */
+    public long releaseIdleChunks(long maxIdleTime, TimeUnit unit, long targetRetainedBytes) {
+        checkPositiveOrZero(maxIdleTime, "maxIdleTime");
+        ObjectUtil.checkNotNull(unit, "unit");
+        checkPositiveOrZero(targetRetainedBytes, "targetRetainedBytes");
+
+        long idleDeadlineNanos = System.nanoTime() - unit.toNanos(maxIdleTime);
+        List<PoolArena<?>> arenas = allArenas();
+        long excessBytes = -targetRetainedBytes;
+        for (PoolArena<?> arena : arenas) {
+            excessBytes += arena.numChunkBytes();
+        }
+        long released = 0;
+        for (PoolArena<?> arena : arenas) {
+            if (released >= excessBytes) {
+                break;
+            }
+            released += arena.releaseIdleChunks(idleDeadlineNanos, excessBytes - released);
+        }
+        return released;
+    }
+
+    /**
+     * Logs at debug level the buffers allocated out of the pooled chunks which were already alive at the previous
+     * call and did not release their memory since, and returns their number. They are either long-lived or leaked,
+     * so a number that keeps growing hints at a leak. Every buffer only costs two bits of the chunk's tracking
+     * bitmap, so unlike the {@link io.netty.util.ResourceLeakDetector} this does not need a wrapper per buffer, but
+     * it can neither tell where a buffer was allocated nor track huge buffers.
+     *
+     * This is done periodically in the background if {@code io.netty.allocator.leakTrackingIntervalMillis} is set,
+     * otherwise allocations are not tracked and this always returns {@code 0}.
+     */
+    public int reportAgedAllocations() {
+        StringBuilder buf = new StringBuilder();
+        int aged = 0;
+        for (PoolArena<?> arena : allArenas()) {
+            aged += arena.reportAgedAllocations(buf, Math.max(0, MAX_REPORTED_AGED_ALLOCATIONS - aged));
+        }
+        if (aged > 0 && logger.isDebugEnabled()) {
+            logger.debug("{} pooled buffer(s) are alive for more than one interval, showing {}:{}{}",
+                    aged, Math.min(aged, MAX_REPORTED_AGED_ALLOCATIONS), StringUtil.NEWLINE, buf);
+        }
+        return aged;
+    }
+
     /**
      * Returns the status of the allocator (which contains all metrics) as string. Be aware this may be expensive
      * and so should not called too frequently.
@@ -814,4 +1199,86 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
         return buf.toString();
     }
+
+    /**
+     * Periodically releases the idle chunks of a {@link PooledByteBufAllocator} from a shared background thread,
+     * until the allocator is garbage collected.
+     */
+    private static final class IdleChunkReleaser implements Runnable {
+
+        // Only initialized once the first allocator needs it.
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory(PooledByteBufAllocator.class, true));
+
+        private final WeakReference<PooledByteBufAllocator> allocatorRef;
+        private volatile ScheduledFuture<?> future;
+
+        private IdleChunkReleaser(PooledByteBufAllocator allocator) {
+            allocatorRef = new WeakReference<PooledByteBufAllocator>(allocator);
+        }
+
+        static void schedule(PooledByteBufAllocator allocator) {
+            IdleChunkReleaser releaser = new IdleChunkReleaser(allocator);
+            releaser.future = EXECUTOR.scheduleWithFixedDelay(releaser, DEFAULT_MAX_CHUNK_IDLE_TIME_MILLIS,
+                    DEFAULT_MAX_CHUNK_IDLE_TIME_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            PooledByteBufAllocator allocator = allocatorRef.get();
+            if (allocator == null) {
+                ScheduledFuture<?> future = this.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                allocator.releaseIdleChunks(DEFAULT_MAX_CHUNK_IDLE_TIME_MILLIS, TimeUnit.MILLISECONDS,
+                        DEFAULT_TARGET_RETAINED_BYTES);
+            } catch (Throwable cause) {
+                // Keep the task scheduled, an exception would cancel it.
+                logger.warn("Failed to release the idle chunks of {}", allocator, cause);
+            }
+        }
+    }
+
+    /**
+     * Periodically reports the aged allocations of a {@link PooledByteBufAllocator}, until the allocator is garbage
+     * collected.
+     */
+    private static final class AgedAllocationReporter implements Runnable {
+
+        private final WeakReference<PooledByteBufAllocator> allocatorRef;
+        private volatile ScheduledFuture<?> future;
+
+        private AgedAllocationReporter(PooledByteBufAllocator allocator) {
+            allocatorRef = new WeakReference<PooledByteBufAllocator>(allocator);
+        }
+
+        static void schedule(PooledByteBufAllocator allocator) {
+            AgedAllocationReporter reporter = new AgedAllocationReporter(allocator);
+            reporter.future = IdleChunkReleaser.EXECUTOR.scheduleWithFixedDelay(reporter,
+                    DEFAULT_LEAK_TRACKING_INTERVAL_MILLIS, DEFAULT_LEAK_TRACKING_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            PooledByteBufAllocator allocator = allocatorRef.get();
+            if (allocator == null) {
+                ScheduledFuture<?> future = this.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                allocator.reportAgedAllocations();
+            } catch (Throwable cause) {
+                // Keep the task scheduled, an exception would cancel it.
+                logger.warn("Failed to report the aged allocations of {}", allocator, cause);
+            }
+        }
+    }
 }
@@ -18,6 +18,7 @@ package io.netty.buffer;
 import io.netty.util.internal.StringUtil;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Exposed metric for {@link PooledByteBufAllocator}.
@@ -87,6 +88,54 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.normalCacheSize();
     }
 
+    /**
+     * Return {@code true} if the thread local caches adjust their size depending on their hit ratio.
+     */
+    public boolean adaptiveCacheSize() {
+        return allocator.adaptiveCacheSize();
+    }
+
+    /**
+     * Return the number of allocations served by the thread local caches. The caches report their statistics
+     * every time they are trimmed.
+     */
+    public long numThreadCacheHits() {
+        return allocator.numThreadCacheHits();
+    }
+
+    /**
+     * Return the number of allocations that could not be served by the thread local caches, as they were empty. The
+     * caches report their statistics every time they are trimmed.
+     */
+    public long numThreadCacheMisses() {
+        return allocator.numThreadCacheMisses();
+    }
+
+    /**
+     * Return the number of times a thread local cache was allowed to hold more buffers because of too many misses.
+     * This is always {@code 0} if {@link #adaptiveCacheSize()} is {@code false}.
+     */
+    public long numThreadCacheGrows() {
+        return allocator.numThreadCacheGrows();
+    }
+
+    /**
+     * Return the number of times a thread local cache was shrunk because it was idle or barely used.
+     * This is always {@code 0} if {@link #adaptiveCacheSize()} is {@code false}.
+     */
+    public long numThreadCacheShrinks() {
+        return allocator.numThreadCacheShrinks();
+    }
+
+    /**
+     * Return the number of pooled chunks that were destroyed and so gave their memory back, either because they
+     * became empty or because they were idle for too long (see
+     * {@link PooledByteBufAllocator#releaseIdleChunks(long, TimeUnit, long)}).
+     */
+    public long numChunksReleased() {
+        return allocator.numChunksReleased();
+    }
+
     /**
      * Return the chunk size for an arena.
      */
@@ -104,18 +153,64 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.usedDirectMemory();
     }
 
+    /**
+     * Return the number of bytes requested by the active tiny, small and normal heap buffers of this
+     * {@link PooledByteBufAllocator}, or {@code 0} unless {@code -Dio.netty.allocator.accountRequestedBytes} is
+     * {@code true}.
+     */
+    public long requestedHeapMemory() {
+        return allocator.requestedHeapMemory();
+    }
+
+    /**
+     * Return the number of bytes reserved for the active tiny, small and normal heap buffers of this
+     * {@link PooledByteBufAllocator}. The difference to {@link #requestedHeapMemory()} is lost to internal
+     * fragmentation, see {@link PoolArenaFragmentationMetric#sizeClasses()} for the break-down per size class.
+     */
+    public long reservedHeapMemory() {
+        return allocator.reservedHeapMemory();
+    }
+
+    /**
+     * Return the number of bytes requested by the active tiny, small and normal direct buffers of this
+     * {@link PooledByteBufAllocator}, or {@code 0} unless {@code -Dio.netty.allocator.accountRequestedBytes} is
+     * {@code true}.
+     */
+    public long requestedDirectMemory() {
+        return allocator.requestedDirectMemory();
+    }
+
+    /**
+     * Return the number of bytes reserved for the active tiny, small and normal direct buffers of this
+     * {@link PooledByteBufAllocator}. The difference to {@link #requestedDirectMemory()} is lost to internal
+     * fragmentation, see {@link PoolArenaFragmentationMetric#sizeClasses()} for the break-down per size class.
+     */
+    public long reservedDirectMemory() {
+        return allocator.reservedDirectMemory();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(256);
         sb.append(StringUtil.simpleClassName(this))
                 .append("(usedHeapMemory: ").append(usedHeapMemory())
                 .append("; usedDirectMemory: ").append(usedDirectMemory())
+                .append("; requestedHeapMemory: ").append(requestedHeapMemory())
+                .append("; reservedHeapMemory: ").append(reservedHeapMemory())
+                .append("; requestedDirectMemory: ").append(requestedDirectMemory())
+                .append("; reservedDirectMemory: ").append(reservedDirectMemory())
                 .append("; numHeapArenas: ").append(numHeapArenas())
                 .append("; numDirectArenas: ").append(numDirectArenas())
                 .append("; tinyCacheSize: ").append(tinyCacheSize())
                 .append("; smallCacheSize: ").append(smallCacheSize())
                 .append("; normalCacheSize: ").append(normalCacheSize())
                 .append("; numThreadLocalCaches: ").append(numThreadLocalCaches())
+                .append("; adaptiveCacheSize: ").append(adaptiveCacheSize())
+                .append("; numThreadCacheHits: ").append(numThreadCacheHits())
+                .append("; numThreadCacheMisses: ").append(numThreadCacheMisses())
+                .append("; numThreadCacheGrows: ").append(numThreadCacheGrows())
+                .append("; numThreadCacheShrinks: ").append(numThreadCacheShrinks())
+                .append("; numChunksReleased: ").append(numChunksReleased())
                 .append("; chunkSize: ").append(chunkSize()).append(')');
         return sb.toString();
     }
@@ -15,6 +15,7 @@
  */
 package io.netty.buffer;
 
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 
 import java.io.IOException;
@@ -35,9 +36,19 @@ class ReadOnlyByteBufferBuf extends AbstractReferenceCountedByteBuf {
 
     protected final ByteBuffer buffer;
     private final ByteBufAllocator allocator;
+    // The buffer passed in, buffer is a slice of it which can not be freed.
+    private final ByteBuffer bufferToFree;
     private ByteBuffer tmpNioBuf;
 
     ReadOnlyByteBufferBuf(ByteBufAllocator allocator, ByteBuffer buffer) {
+        this(allocator, buffer, false);
+    }
+
+    /**
+     * If {@code doFree} is {@code true} the {@code buffer} is freed (or unmapped) once the reference count
+     * reaches {@code 0}. It must not be a duplicate or slice then.
+     */
+    ReadOnlyByteBufferBuf(ByteBufAllocator allocator, ByteBuffer buffer, boolean doFree) {
         super(buffer.remaining());
         if (!buffer.isReadOnly()) {
             throw new IllegalArgumentException("must be a readonly buffer: " + StringUtil.simpleClassName(buffer));
@@ -45,11 +56,16 @@ class ReadOnlyByteBufferBuf extends AbstractReferenceCountedByteBuf {
 
         this.allocator = allocator;
         this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        bufferToFree = doFree ? buffer : null;
         writerIndex(this.buffer.limit());
     }
 
     @Override
-    protected void deallocate() { }
+    protected void deallocate() {
+        if (bufferToFree != null) {
+            PlatformDependent.freeDirectBuffer(bufferToFree);
+        }
+    }
 
     @Override
     public boolean isWritable() {
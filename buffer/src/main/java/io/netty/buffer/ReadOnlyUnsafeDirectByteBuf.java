@@ -29,7 +29,11 @@ final class ReadOnlyUnsafeDirectByteBuf extends ReadOnlyByteBufferBuf {
     private final long memoryAddress;
 
     ReadOnlyUnsafeDirectByteBuf(ByteBufAllocator allocator, ByteBuffer byteBuffer) {
-        super(allocator, byteBuffer);
+        this(allocator, byteBuffer, false);
+    }
+
+    ReadOnlyUnsafeDirectByteBuf(ByteBufAllocator allocator, ByteBuffer byteBuffer, boolean doFree) {
+        super(allocator, byteBuffer, doFree);
         // Use buffer as the super class will slice the passed in ByteBuffer which means the memoryAddress
         // may be different if the position != 0.
         memoryAddress = PlatformDependent.directBufferAddress(buffer);
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.UnstableApi;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * {@link ChunkAllocator} which reserves a slab of chunks when it is created and caps the number of chunks that can
+ * exist at the same time.
+ * <p>
+ * The reserved chunks can be pre-faulted, so the first traffic spike does not pay for the page faults, and are kept
+ * for reuse when they are freed. Chunks allocated on top of the reservation are returned to the wrapped
+ * {@link ChunkAllocator}, and so to the OS, as soon as they are freed. Once {@code maxChunks} chunks exist any further
+ * allocation fails with an {@link OutOfMemoryError}.
+ */
+@UnstableApi
+public final class ReservedChunkAllocator implements ChunkAllocator {
+
+    // Touching one byte per page is enough to fault in the whole page.
+    private static final int PREFAULT_STRIDE = 4096;
+
+    private final ChunkAllocator delegate;
+    private final int chunkSize;
+    private final int reservedChunks;
+    private final int maxChunks;
+    private final Deque<ByteBuffer> freeChunks = new ArrayDeque<ByteBuffer>();
+    private int numChunks;
+
+    /**
+     * Creates a new instance which allocates the chunks via the {@link DefaultChunkAllocator}.
+     *
+     * @param chunkSize the size of the chunks of the {@link PooledByteBufAllocator} (plus its
+     *                  {@code directMemoryCacheAlignment} if any), only chunks of this size are reserved and reused.
+     * @param reservedChunks the number of chunks to allocate now and to keep when they are freed.
+     * @param maxChunks the maximum number of chunks which may exist at the same time.
+     * @param prefault {@code true} if every page of the reserved chunks should be touched now.
+     */
+    public ReservedChunkAllocator(int chunkSize, int reservedChunks, int maxChunks, boolean prefault) {
+        this(DefaultChunkAllocator.INSTANCE, chunkSize, reservedChunks, maxChunks, prefault);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate the {@link ChunkAllocator} which allocates and frees the memory of the chunks.
+     * @param chunkSize the size of the chunks of the {@link PooledByteBufAllocator} (plus its
+     *                  {@code directMemoryCacheAlignment} if any), only chunks of this size are reserved and reused.
+     * @param reservedChunks the number of chunks to allocate now and to keep when they are freed.
+     * @param maxChunks the maximum number of chunks which may exist at the same time.
+     * @param prefault {@code true} if every page of the reserved chunks should be touched now.
+     */
+    public ReservedChunkAllocator(ChunkAllocator delegate, int chunkSize, int reservedChunks, int maxChunks,
+                                  boolean prefault) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.chunkSize = checkPositive(chunkSize, "chunkSize");
+        this.reservedChunks = checkPositiveOrZero(reservedChunks, "reservedChunks");
+        if (maxChunks < reservedChunks) {
+            throw new IllegalArgumentException("maxChunks: " + maxChunks + " (expected: >= reservedChunks(" +
+                    reservedChunks + "))");
+        }
+        this.maxChunks = maxChunks;
+
+        for (int i = 0; i < reservedChunks; i++) {
+            ByteBuffer memory = delegate.allocate(chunkSize);
+            if (prefault) {
+                prefault(memory);
+            }
+            freeChunks.add(memory);
+        }
+        numChunks = reservedChunks;
+    }
+
+    private static void prefault(ByteBuffer memory) {
+        for (int i = 0; i < memory.capacity(); i += PREFAULT_STRIDE) {
+            memory.put(i, (byte) 0);
+        }
+    }
+
+    @Override
+    public synchronized ByteBuffer allocate(int capacity) {
+        if (capacity == chunkSize) {
+            ByteBuffer memory = freeChunks.poll();
+            if (memory != null) {
+                return memory;
+            }
+        }
+        if (numChunks == maxChunks) {
+            throw new OutOfMemoryError("failed to allocate " + capacity + " byte(s) of chunk memory (chunks: " +
+                    numChunks + ", max: " + maxChunks + ')');
+        }
+        ByteBuffer memory = delegate.allocate(capacity);
+        numChunks++;
+        return memory;
+    }
+
+    @Override
+    public synchronized void free(ByteBuffer memory) {
+        if (memory.capacity() == chunkSize && freeChunks.size() < reservedChunks) {
+            memory.clear();
+            freeChunks.push(memory);
+        } else {
+            numChunks--;
+            delegate.free(memory);
+        }
+    }
+
+    /**
+     * Return the number of chunks that currently exist, including the reserved chunks that are not used.
+     */
+    public synchronized int numChunks() {
+        return numChunks;
+    }
+
+    /**
+     * Return the number of reserved chunks that are currently not used.
+     */
+    public synchronized int numFreeChunks() {
+        return freeChunks.size();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.buffer;
+
+/**
+ * Size classes as used by jemalloc 4. Every doubling of the size is split into {@code 4} evenly spaced classes,
+ * so the internal fragmentation of a normalized size is at most {@code 25%} instead of the {@code 50%} of the
+ * power of two classes used by the buddy allocator of {@link PoolChunk}.
+ *
+ * The table looks like this for a {@code pageSize} of {@code 8192}:
+ * <pre>
+ *   16, 32, 48, 64                          (quantum spaced)
+ *   80, 96, 112, 128
+ *   160, 192, 224, 256
+ *   ...
+ *   10240, 12288, 14336, 16384
+ *   20480, 24576, 28672, 32768              (32768 and above are runs of pages)
+ *   ...
+ *   up to chunkSize
+ * </pre>
+ *
+ * Sizes below {@code pageSize << 2} are served by {@link PoolSubpage}s. As most of these sizes are not a divisor of
+ * the {@code pageSize} a subpage spans the smallest run of pages that holds a whole number of elements (bounded by
+ * the maximum number of elements a {@link PoolSubpage} can track). All bigger sizes are multiples of the
+ * {@code pageSize} and are served as runs of pages.
+ */
+final class SizeClasses {
+
+    static final int LOG2_QUANTUM = 4;
+    private static final int LOG2_SIZE_CLASS_GROUP = 2;
+    private static final int SIZE_CLASS_GROUP = 1 << LOG2_SIZE_CLASS_GROUP;
+    private static final int QUANTUM = 1 << LOG2_QUANTUM;
+    private static final int FIRST_GROUP_MAX_SIZE = QUANTUM << LOG2_SIZE_CLASS_GROUP;
+    private static final int TINY_MAX_SIZE = 512;
+
+    private final int pageSize;
+    private final int chunkSize;
+    private final int[] sizeIdx2size;
+    private final int[] runSizes;
+    private final int subpageMaxSize;
+
+    /** Number of size classes that are served by {@link PoolSubpage}s. */
+    final int nSubpages;
+    /** Number of size classes that are smaller than {@code 512} bytes, which are always subpage classes. */
+    final int nTiny;
+
+    SizeClasses(int pageSize, int pageShifts, int chunkSize) {
+        assert pageSize == 1 << pageShifts;
+        this.pageSize = pageSize;
+        this.chunkSize = chunkSize;
+
+        subpageMaxSize = Math.min(pageSize << LOG2_SIZE_CLASS_GROUP, chunkSize);
+
+        int nSizes = 0;
+        int size = 0;
+        while (size < chunkSize) {
+            size = nextSize(size);
+            nSizes++;
+        }
+        sizeIdx2size = new int[nSizes];
+
+        int nSubpages = 0;
+        int nTiny = 0;
+        size = 0;
+        for (int i = 0; i < nSizes; i++) {
+            size = nextSize(size);
+            sizeIdx2size[i] = size;
+            if (size < subpageMaxSize) {
+                nSubpages++;
+            }
+            if (size < TINY_MAX_SIZE) {
+                nTiny++;
+            }
+        }
+        this.nSubpages = nSubpages;
+        this.nTiny = nTiny;
+
+        runSizes = new int[nSubpages];
+        int maxElems = pageSize >>> LOG2_QUANTUM;
+        for (int i = 0; i < nSubpages; i++) {
+            runSizes[i] = calculateRunSize(sizeIdx2size[i], maxElems);
+        }
+    }
+
+    private static int nextSize(int size) {
+        if (size < FIRST_GROUP_MAX_SIZE) {
+            return size + QUANTUM;
+        }
+        // The delta of a group is a quarter of the power of two the group starts at.
+        return size + (1 << log2(size) - LOG2_SIZE_CLASS_GROUP);
+    }
+
+    private int calculateRunSize(int elemSize, int maxElems) {
+        int runSize = 0;
+        int numElems;
+        do {
+            runSize += pageSize;
+            numElems = runSize / elemSize;
+        } while ((numElems == 0 || numElems < maxElems && runSize != numElems * elemSize) &&
+                runSize + pageSize <= chunkSize);
+        return runSize;
+    }
+
+    /**
+     * Returns the index of the smallest size class that can hold {@code size} bytes.
+     */
+    int size2SizeIdx(int size) {
+        if (size <= FIRST_GROUP_MAX_SIZE) {
+            return size == 0 ? 0 : size - 1 >>> LOG2_QUANTUM;
+        }
+        int log2Group = log2(size - 1);
+        int log2Delta = log2Group - LOG2_SIZE_CLASS_GROUP;
+        int mod = size - 1 - (1 << log2Group) >>> log2Delta;
+        return SIZE_CLASS_GROUP + (log2Group - log2(FIRST_GROUP_MAX_SIZE)) * SIZE_CLASS_GROUP + mod;
+    }
+
+    int sizeIdx2size(int sizeIdx) {
+        return sizeIdx2size[sizeIdx];
+    }
+
+    /**
+     * Normalizes {@code size} to the smallest size class that can hold it. {@code size} must not exceed the
+     * {@code chunkSize}.
+     */
+    int normalizeSize(int size) {
+        assert size <= chunkSize;
+        return sizeIdx2size[size2SizeIdx(size)];
+    }
+
+    /**
+     * Returns {@code true} if the normalized size is served by a {@link PoolSubpage}.
+     */
+    boolean isSubpage(int normSize) {
+        return normSize < subpageMaxSize;
+    }
+
+    /**
+     * Returns the size of the run of pages a {@link PoolSubpage} of the given normalized size spans.
+     */
+    int subpageRunSize(int normSize) {
+        return runSizes[size2SizeIdx(normSize)];
+    }
+
+    /**
+     * Returns the number of size classes which are served as runs of pages and are not bigger than {@code size}.
+     */
+    int numRunSizesUpTo(int size) {
+        if (size < subpageMaxSize) {
+            return 0;
+        }
+        size = Math.min(size, chunkSize);
+        int sizeIdx = size2SizeIdx(size);
+        if (sizeIdx2size[sizeIdx] != size) {
+            sizeIdx--;
+        }
+        return sizeIdx - nSubpages + 1;
+    }
+
+    int numSizes() {
+        return sizeIdx2size.length;
+    }
+
+    private static int log2(int val) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(val);
+    }
+}
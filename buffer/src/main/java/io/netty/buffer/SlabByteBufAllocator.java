@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * {@link ByteBufAllocator} for workloads which allocate many tiny, short-lived heap buffers. Heap buffers of up to
+ * {@code maxSlabbedCapacity} bytes share the array of a slab which belongs to the allocating thread, and are
+ * carved out of it by bumping a pointer. Once all buffers of the current slab of a thread were released the slab is
+ * reused from its start, otherwise a new slab is created when it is full. A slab is garbage collected after its last
+ * buffer, so a single long-lived buffer keeps the whole slab alive.
+ * <p>
+ * Larger heap buffers and all direct buffers are not pooled, just like with {@link UnpooledByteBufAllocator}.
+ */
+@UnstableApi
+public final class SlabByteBufAllocator extends AbstractByteBufAllocator {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(SlabByteBufAllocator.class);
+
+    private static final int DEFAULT_SLAB_SIZE;
+    private static final int DEFAULT_MAX_SLABBED_CAPACITY;
+
+    static {
+        DEFAULT_SLAB_SIZE = Math.max(1, SystemPropertyUtil.getInt("io.netty.allocator.slabSize", 64 * 1024));
+        DEFAULT_MAX_SLABBED_CAPACITY = Math.max(0, Math.min(DEFAULT_SLAB_SIZE,
+                SystemPropertyUtil.getInt("io.netty.allocator.maxSlabbedCapacity", 256)));
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.allocator.slabSize: {}", DEFAULT_SLAB_SIZE);
+            logger.debug("-Dio.netty.allocator.maxSlabbedCapacity: {}", DEFAULT_MAX_SLABBED_CAPACITY);
+        }
+    }
+
+    public static final SlabByteBufAllocator DEFAULT =
+            new SlabByteBufAllocator(PlatformDependent.directBufferPreferred());
+
+    private final int slabSize;
+    private final int maxSlabbedCapacity;
+    private final FastThreadLocal<Slab> slabs = new FastThreadLocal<Slab>() {
+        @Override
+        protected Slab initialValue() {
+            return new Slab(slabSize);
+        }
+    };
+
+    /**
+     * Create a new instance with the default slab size and maximal capacity of the slabbed buffers.
+     *
+     * @param preferDirect {@code true} if {@link #buffer(int)} should try to allocate a direct buffer rather than
+     *                     a heap buffer
+     */
+    public SlabByteBufAllocator(boolean preferDirect) {
+        this(preferDirect, DEFAULT_SLAB_SIZE, DEFAULT_MAX_SLABBED_CAPACITY);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param preferDirect {@code true} if {@link #buffer(int)} should try to allocate a direct buffer rather than
+     *                     a heap buffer
+     * @param slabSize the number of bytes of every slab.
+     * @param maxSlabbedCapacity the greatest initial capacity of a heap buffer that is allocated out of a slab, must
+     *                           not be greater than {@code slabSize}.
+     */
+    public SlabByteBufAllocator(boolean preferDirect, int slabSize, int maxSlabbedCapacity) {
+        super(preferDirect);
+        this.slabSize = checkPositive(slabSize, "slabSize");
+        this.maxSlabbedCapacity = checkPositiveOrZero(maxSlabbedCapacity, "maxSlabbedCapacity");
+        if (maxSlabbedCapacity > slabSize) {
+            throw new IllegalArgumentException("maxSlabbedCapacity: " + maxSlabbedCapacity +
+                    " (expected: <= slabSize(" + slabSize + "))");
+        }
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        ByteBuf buf;
+        if (initialCapacity <= maxSlabbedCapacity) {
+            Slab slab = slabs.get();
+            buf = slab.allocate(this, initialCapacity, maxCapacity);
+            if (buf == null) {
+                // The slab is full and some of its buffers are still in use, leave it to them.
+                slab = new Slab(slabSize);
+                slabs.set(slab);
+                buf = slab.allocate(this, initialCapacity, maxCapacity);
+            }
+        } else {
+            buf = PlatformDependent.hasUnsafe() ?
+                    new UnpooledUnsafeHeapByteBuf(this, initialCapacity, maxCapacity) :
+                    new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity);
+        }
+        return toLeakAwareBuffer(buf);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        final ByteBuf buf;
+        if (PlatformDependent.hasUnsafe()) {
+            buf = UnsafeByteBufUtil.newUnsafeDirectByteBuf(this, initialCapacity, maxCapacity);
+        } else {
+            buf = new UnpooledDirectByteBuf(this, initialCapacity, maxCapacity);
+        }
+        return toLeakAwareBuffer(buf);
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return false;
+    }
+
+    /**
+     * The memory shared by the slabbed buffers of a thread.
+     */
+    static final class Slab {
+        private static final AtomicIntegerFieldUpdater<Slab> REFCNT_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Slab.class, "refCnt");
+
+        // Keep the buffers aligned to 8 bytes.
+        private static final int ALIGNMENT_MASK = 7;
+
+        final byte[] memory;
+        // Only accessed by the thread the slab belongs to.
+        private int position;
+        // The number of buffers that still use the memory, they may be released by any thread.
+        private volatile int refCnt;
+
+        Slab(int size) {
+            memory = PlatformDependent.allocateUninitializedArray(size);
+        }
+
+        /**
+         * Returns a buffer which uses the next free bytes of the slab, or {@code null} if there are not enough.
+         */
+        ByteBuf allocate(ByteBufAllocator alloc, int initialCapacity, int maxCapacity) {
+            if (refCnt == 0) {
+                // No buffer uses the memory anymore, so all of it can be handed out again.
+                position = 0;
+            }
+            int size = Math.max(initialCapacity + ALIGNMENT_MASK & ~ALIGNMENT_MASK, ALIGNMENT_MASK + 1);
+            if (size > memory.length - position) {
+                if (initialCapacity > memory.length - position) {
+                    return null;
+                }
+                // Do not waste the tail of the slab because of the alignment.
+                size = memory.length - position;
+            }
+            REFCNT_UPDATER.incrementAndGet(this);
+            SlabHeapByteBuf buf = SlabHeapByteBuf.newInstance(alloc, this, position, initialCapacity, size,
+                    maxCapacity);
+            position += size;
+            return buf;
+        }
+
+        void release() {
+            REFCNT_UPDATER.decrementAndGet(this);
+        }
+    }
+}
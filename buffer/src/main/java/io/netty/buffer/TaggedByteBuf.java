@@ -0,0 +1,288 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.ObjectUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * {@link TrackedByteBuf} of a {@link TaggedByteBufAllocator}, which also accounts the changes of the capacity of
+ * the buffer, either via {@link #capacity(int)} or when it grows while being written.
+ * <p>
+ * The capacity of the allocated buffer is compared with the accounted one after every call which may change it and
+ * before the buffer is released. So if the buffer grows without this wrapper, e.g. via a retained duplicate of a
+ * pooled buffer or via {@link ByteBufUtil#writeUtf8(ByteBuf, CharSequence)} which writes to the unwrapped buffer,
+ * the metric keeps the previous capacity until the next such call.
+ */
+final class TaggedByteBuf extends TrackedByteBuf {
+
+    TaggedByteBuf(ByteBuf wrapped, TaggedAllocation allocation) {
+        super(wrapped, allocation);
+    }
+
+    @Override
+    protected TrackedByteBuf newTrackedByteBuf(ByteBuf buf, Allocation allocation) {
+        return new TaggedByteBuf(buf, (TaggedAllocation) allocation);
+    }
+
+    private ByteBuf resized() {
+        ((TaggedAllocation) allocation).resized();
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        // Account the capacity while it can still be read, the buffer may be reused once it is released.
+        resized();
+        return super.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        resized();
+        return super.release(decrement);
+    }
+
+    @Override
+    public ByteBuf capacity(int newCapacity) {
+        super.capacity(newCapacity);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf ensureWritable(int minWritableBytes) {
+        super.ensureWritable(minWritableBytes);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeBoolean(boolean value) {
+        super.writeBoolean(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeByte(int value) {
+        super.writeByte(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeShort(int value) {
+        super.writeShort(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeShortLE(int value) {
+        super.writeShortLE(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeMedium(int value) {
+        super.writeMedium(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeMediumLE(int value) {
+        super.writeMediumLE(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeInt(int value) {
+        super.writeInt(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeIntLE(int value) {
+        super.writeIntLE(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeLong(long value) {
+        super.writeLong(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeLongLE(long value) {
+        super.writeLongLE(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeChar(int value) {
+        super.writeChar(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeFloat(float value) {
+        super.writeFloat(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeDouble(double value) {
+        super.writeDouble(value);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeBytes(ByteBuf src) {
+        super.writeBytes(src);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeBytes(ByteBuf src, int length) {
+        super.writeBytes(src, length);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeBytes(ByteBuf src, int srcIndex, int length) {
+        super.writeBytes(src, srcIndex, length);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeBytes(byte[] src) {
+        super.writeBytes(src);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeBytes(byte[] src, int srcIndex, int length) {
+        super.writeBytes(src, srcIndex, length);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeBytes(ByteBuffer src) {
+        super.writeBytes(src);
+        return resized();
+    }
+
+    @Override
+    public ByteBuf writeZero(int length) {
+        super.writeZero(length);
+        return resized();
+    }
+
+    @Override
+    public int ensureWritable(int minWritableBytes, boolean force) {
+        try {
+            return super.ensureWritable(minWritableBytes, force);
+        } finally {
+            resized();
+        }
+    }
+
+    @Override
+    public int writeCharSequence(CharSequence sequence, Charset charset) {
+        try {
+            return super.writeCharSequence(sequence, charset);
+        } finally {
+            resized();
+        }
+    }
+
+    @Override
+    public int writeBytes(InputStream in, int length) throws IOException {
+        try {
+            return super.writeBytes(in, length);
+        } finally {
+            resized();
+        }
+    }
+
+    @Override
+    public int writeBytes(ScatteringByteChannel in, int length) throws IOException {
+        try {
+            return super.writeBytes(in, length);
+        } finally {
+            resized();
+        }
+    }
+
+    @Override
+    public int writeBytes(FileChannel in, long position, int length) throws IOException {
+        try {
+            return super.writeBytes(in, position, length);
+        } finally {
+            resized();
+        }
+    }
+
+    static final class TaggedAllocation extends Allocation {
+        private static final AtomicIntegerFieldUpdater<TaggedAllocation> CAPACITY_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(TaggedAllocation.class, "capacity");
+        private static final int RELEASED = -1;
+
+        private final TaggedByteBufAllocatorMetric metric;
+        // The allocated buffer, whose capacity is shared by all its derived buffers.
+        private final ByteBuf buf;
+        private final boolean direct;
+        // The accounted capacity, or RELEASED.
+        private volatile int capacity;
+
+        TaggedAllocation(TaggedByteBufAllocatorMetric metric, ByteBuf buf) {
+            this.metric = ObjectUtil.checkNotNull(metric, "metric");
+            this.buf = ObjectUtil.checkNotNull(buf, "buf");
+            direct = buf.isDirect();
+            capacity = buf.capacity();
+            metric.allocated(direct, capacity);
+        }
+
+        /**
+         * Accounts the difference between the current capacity of the buffer and the accounted one.
+         */
+        void resized() {
+            for (;;) {
+                int capacity = this.capacity;
+                if (capacity == RELEASED) {
+                    return;
+                }
+                int newCapacity = buf.capacity();
+                if (newCapacity == capacity) {
+                    return;
+                }
+                if (CAPACITY_UPDATER.compareAndSet(this, capacity, newCapacity)) {
+                    metric.resized(direct, newCapacity - capacity);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected void released() {
+            metric.deallocated(direct, CAPACITY_UPDATER.getAndSet(this, RELEASED));
+        }
+    }
+}
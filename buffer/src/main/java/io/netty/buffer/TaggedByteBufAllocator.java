@@ -0,0 +1,263 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.buffer.TaggedByteBuf.TaggedAllocation;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.UnstableApi;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+/**
+ * {@link ByteBufAllocator} which delegates to another {@link ByteBufAllocator} and attributes the memory of the
+ * allocated buffers to a tag, for example the subsystem or the type of the handler which allocates them. All
+ * instances which use the same tag share one {@link TaggedByteBufAllocatorMetric}, so it is cheap to create an
+ * instance per pipeline or per handler:
+ *
+ * <pre>
+ * ctx.channel().config().setAllocator(new TaggedByteBufAllocator("http2", ctx.alloc()));
+ * </pre>
+ *
+ * The metrics of all tags can be retrieved via {@link #metrics()} and {@link #dumpStats()}. A tag is forgotten
+ * once its metric is not referenced anymore by an allocator, a buffer which was not released yet or the user.
+ * <p>
+ * Every allocated buffer is wrapped to detect its release, so this allocator is meant to diagnose which subsystem
+ * holds memory rather than to be used on the hottest allocation paths. Composite buffers are not accounted
+ * themselves, as their components are accounted by the allocator which allocated them.
+ */
+@UnstableApi
+public final class TaggedByteBufAllocator implements ByteBufAllocator, ByteBufAllocatorMetricProvider {
+
+    // Only referenced weakly, the allocators and the allocations keep the metrics alive.
+    private static final ConcurrentMap<String, MetricReference> METRICS = PlatformDependent.newConcurrentHashMap();
+    private static final ReferenceQueue<TaggedByteBufAllocatorMetric> STALE_METRICS =
+            new ReferenceQueue<TaggedByteBufAllocatorMetric>();
+
+    private final ByteBufAllocator allocator;
+    private final TaggedByteBufAllocatorMetric metric;
+
+    /**
+     * Create a new instance which attributes the buffers allocated by {@code allocator} to {@code tag}.
+     */
+    public TaggedByteBufAllocator(String tag, ByteBufAllocator allocator) {
+        this.allocator = checkNotNull(allocator, "allocator");
+        metric = metricFor(checkNotNull(tag, "tag"));
+    }
+
+    /**
+     * Return the {@link TaggedByteBufAllocatorMetric} of the given tag, creating it if needed.
+     */
+    public static TaggedByteBufAllocatorMetric metricFor(String tag) {
+        expungeStaleMetrics();
+        for (;;) {
+            MetricReference ref = METRICS.get(tag);
+            TaggedByteBufAllocatorMetric metric = ref == null ? null : ref.get();
+            if (metric != null) {
+                return metric;
+            }
+            metric = new TaggedByteBufAllocatorMetric(tag);
+            MetricReference newRef = new MetricReference(metric);
+            if (ref == null ? METRICS.putIfAbsent(tag, newRef) == null : METRICS.replace(tag, ref, newRef)) {
+                return metric;
+            }
+        }
+    }
+
+    /**
+     * Return the {@link TaggedByteBufAllocatorMetric}s of all tags which are still in use.
+     */
+    public static List<TaggedByteBufAllocatorMetric> metrics() {
+        expungeStaleMetrics();
+        List<TaggedByteBufAllocatorMetric> metrics = new ArrayList<TaggedByteBufAllocatorMetric>(METRICS.size());
+        for (MetricReference ref : METRICS.values()) {
+            TaggedByteBufAllocatorMetric metric = ref.get();
+            if (metric != null) {
+                metrics.add(metric);
+            }
+        }
+        return Collections.unmodifiableList(metrics);
+    }
+
+    private static void expungeStaleMetrics() {
+        for (;;) {
+            MetricReference ref = (MetricReference) STALE_METRICS.poll();
+            if (ref == null) {
+                return;
+            }
+            METRICS.remove(ref.tag, ref);
+        }
+    }
+
+    /**
+     * Returns the status of all tags as string.
+     */
+    public static String dumpStats() {
+        List<TaggedByteBufAllocatorMetric> metrics = metrics();
+        StringBuilder buf = new StringBuilder(64 + metrics.size() * 128)
+                .append(metrics.size())
+                .append(" tag(s):")
+                .append(StringUtil.NEWLINE);
+        for (TaggedByteBufAllocatorMetric metric: metrics) {
+            buf.append(metric).append(StringUtil.NEWLINE);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Return the tag of this allocator.
+     */
+    public String tag() {
+        return metric.tag();
+    }
+
+    /**
+     * Return the {@link ByteBufAllocator} to which this allocator delegates.
+     */
+    public ByteBufAllocator unwrap() {
+        return allocator;
+    }
+
+    @Override
+    public TaggedByteBufAllocatorMetric metric() {
+        return metric;
+    }
+
+    @Override
+    public ByteBuf buffer() {
+        return track(allocator.buffer());
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity) {
+        return track(allocator.buffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity, int maxCapacity) {
+        return track(allocator.buffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public ByteBuf ioBuffer() {
+        return track(allocator.ioBuffer());
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity) {
+        return track(allocator.ioBuffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity, int maxCapacity) {
+        return track(allocator.ioBuffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public ByteBuf heapBuffer() {
+        return track(allocator.heapBuffer());
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity) {
+        return track(allocator.heapBuffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity, int maxCapacity) {
+        return track(allocator.heapBuffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public ByteBuf directBuffer() {
+        return track(allocator.directBuffer());
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity) {
+        return track(allocator.directBuffer(initialCapacity));
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity, int maxCapacity) {
+        return track(allocator.directBuffer(initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public CompositeByteBuf compositeBuffer() {
+        return allocator.compositeBuffer();
+    }
+
+    @Override
+    public CompositeByteBuf compositeBuffer(int maxNumComponents) {
+        return allocator.compositeBuffer(maxNumComponents);
+    }
+
+    @Override
+    public CompositeByteBuf compositeHeapBuffer() {
+        return allocator.compositeHeapBuffer();
+    }
+
+    @Override
+    public CompositeByteBuf compositeHeapBuffer(int maxNumComponents) {
+        return allocator.compositeHeapBuffer(maxNumComponents);
+    }
+
+    @Override
+    public CompositeByteBuf compositeDirectBuffer() {
+        return allocator.compositeDirectBuffer();
+    }
+
+    @Override
+    public CompositeByteBuf compositeDirectBuffer(int maxNumComponents) {
+        return allocator.compositeDirectBuffer(maxNumComponents);
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return allocator.isDirectBufferPooled();
+    }
+
+    @Override
+    public int calculateNewCapacity(int minNewCapacity, int maxCapacity) {
+        return allocator.calculateNewCapacity(minNewCapacity, maxCapacity);
+    }
+
+    private ByteBuf track(ByteBuf buf) {
+        return new TaggedByteBuf(buf, new TaggedAllocation(metric, buf));
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "(tag: " + tag() + ", allocator: " + allocator + ')';
+    }
+
+    private static final class MetricReference extends WeakReference<TaggedByteBufAllocatorMetric> {
+        final String tag;
+
+        MetricReference(TaggedByteBufAllocatorMetric metric) {
+            super(metric, STALE_METRICS);
+            tag = metric.tag();
+        }
+    }
+}
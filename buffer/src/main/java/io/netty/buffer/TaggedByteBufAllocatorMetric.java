@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Exposed metric of a tag of {@link TaggedByteBufAllocator}s. It accounts the memory of all buffers that were
+ * allocated by any {@link TaggedByteBufAllocator} using the same tag and which were not released yet.
+ */
+@UnstableApi
+public final class TaggedByteBufAllocatorMetric implements ByteBufAllocatorMetric {
+
+    private final String tag;
+    private final LongCounter usedHeapMemory = PlatformDependent.newLongCounter();
+    private final LongCounter usedDirectMemory = PlatformDependent.newLongCounter();
+    private final LongCounter activeHeapBuffers = PlatformDependent.newLongCounter();
+    private final LongCounter activeDirectBuffers = PlatformDependent.newLongCounter();
+
+    TaggedByteBufAllocatorMetric(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Return the tag of this metric.
+     */
+    public String tag() {
+        return tag;
+    }
+
+    /**
+     * Return the number of bytes of heap memory which is held by buffers of this tag. A buffer is accounted with
+     * its current capacity.
+     */
+    @Override
+    public long usedHeapMemory() {
+        return usedHeapMemory.value();
+    }
+
+    /**
+     * Return the number of bytes of direct memory which is held by buffers of this tag. A buffer is accounted with
+     * its current capacity.
+     */
+    @Override
+    public long usedDirectMemory() {
+        return usedDirectMemory.value();
+    }
+
+    /**
+     * Return the number of heap buffers of this tag which were not released yet.
+     */
+    public long activeHeapBuffers() {
+        return activeHeapBuffers.value();
+    }
+
+    /**
+     * Return the number of direct buffers of this tag which were not released yet.
+     */
+    public long activeDirectBuffers() {
+        return activeDirectBuffers.value();
+    }
+
+    void allocated(boolean direct, int capacity) {
+        if (direct) {
+            usedDirectMemory.add(capacity);
+            activeDirectBuffers.increment();
+        } else {
+            usedHeapMemory.add(capacity);
+            activeHeapBuffers.increment();
+        }
+    }
+
+    void resized(boolean direct, int delta) {
+        if (direct) {
+            usedDirectMemory.add(delta);
+        } else {
+            usedHeapMemory.add(delta);
+        }
+    }
+
+    void deallocated(boolean direct, int capacity) {
+        if (direct) {
+            usedDirectMemory.add(-capacity);
+            activeDirectBuffers.decrement();
+        } else {
+            usedHeapMemory.add(-capacity);
+            activeHeapBuffers.decrement();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(StringUtil.simpleClassName(this))
+                .append("(tag: ").append(tag)
+                .append("; usedHeapMemory: ").append(usedHeapMemory())
+                .append("; usedDirectMemory: ").append(usedDirectMemory())
+                .append("; activeHeapBuffers: ").append(activeHeapBuffers())
+                .append("; activeDirectBuffers: ").append(activeDirectBuffers())
+                .append(')');
+        return sb.toString();
+    }
+}
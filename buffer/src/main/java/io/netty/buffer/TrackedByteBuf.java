@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.ObjectUtil;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Wraps a buffer to notify its {@link Allocation} once it is released, either by itself or by one of its derived
+ * buffers. Unlike the leak-aware buffers it does not care about buffers that are never released.
+ */
+class TrackedByteBuf extends WrappedByteBuf {
+
+    final Allocation allocation;
+
+    TrackedByteBuf(ByteBuf wrapped, Allocation allocation) {
+        super(wrapped);
+        this.allocation = ObjectUtil.checkNotNull(allocation, "allocation");
+    }
+
+    @Override
+    public ByteBuf slice() {
+        return newSharedTrackedByteBuf(super.slice());
+    }
+
+    @Override
+    public ByteBuf retainedSlice() {
+        return unwrappedDerived(super.retainedSlice());
+    }
+
+    @Override
+    public ByteBuf retainedSlice(int index, int length) {
+        return unwrappedDerived(super.retainedSlice(index, length));
+    }
+
+    @Override
+    public ByteBuf retainedDuplicate() {
+        return unwrappedDerived(super.retainedDuplicate());
+    }
+
+    @Override
+    public ByteBuf readRetainedSlice(int length) {
+        return unwrappedDerived(super.readRetainedSlice(length));
+    }
+
+    @Override
+    public ByteBuf slice(int index, int length) {
+        return newSharedTrackedByteBuf(super.slice(index, length));
+    }
+
+    @Override
+    public ByteBuf duplicate() {
+        return newSharedTrackedByteBuf(super.duplicate());
+    }
+
+    @Override
+    public ByteBuf readSlice(int length) {
+        return newSharedTrackedByteBuf(super.readSlice(length));
+    }
+
+    @Override
+    public ByteBuf asReadOnly() {
+        return newSharedTrackedByteBuf(super.asReadOnly());
+    }
+
+    @Override
+    public ByteBuf order(ByteOrder endianness) {
+        if (order() == endianness) {
+            return this;
+        }
+        return newSharedTrackedByteBuf(super.order(endianness));
+    }
+
+    @Override
+    public boolean release() {
+        if (super.release()) {
+            allocation.release();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        if (super.release(decrement)) {
+            allocation.release();
+            return true;
+        }
+        return false;
+    }
+
+    private ByteBuf unwrappedDerived(ByteBuf derived) {
+        ByteBuf unwrappedDerived = derived;
+        while (unwrappedDerived instanceof SwappedByteBuf) {
+            unwrappedDerived = unwrappedDerived.unwrap();
+        }
+        if (unwrappedDerived instanceof AbstractPooledDerivedByteBuf) {
+            // The derived buffer has its own reference count and releases its parent once it is released, so let it
+            // release this buffer instead of the wrapped one. It does not need to be wrapped itself.
+            ((AbstractPooledDerivedByteBuf) unwrappedDerived).parent(this);
+            return derived;
+        }
+        // Shares the reference count of the wrapped buffer.
+        return newSharedTrackedByteBuf(derived);
+    }
+
+    private TrackedByteBuf newSharedTrackedByteBuf(ByteBuf derived) {
+        return newTrackedByteBuf(derived, allocation);
+    }
+
+    protected TrackedByteBuf newTrackedByteBuf(ByteBuf buf, Allocation allocation) {
+        return new TrackedByteBuf(buf, allocation);
+    }
+
+    /**
+     * Accounts a tracked buffer until it is released.
+     */
+    abstract static class Allocation {
+        private static final AtomicIntegerFieldUpdater<Allocation> RELEASED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Allocation.class, "released");
+
+        private volatile int released;
+
+        /**
+         * Called once the buffer is released, a buffer is released at most once even if it is released by several
+         * of its derived buffers by mistake.
+         */
+        protected abstract void released();
+
+        final void release() {
+            if (RELEASED_UPDATER.compareAndSet(this, 0, 1)) {
+                released();
+            }
+        }
+    }
+}
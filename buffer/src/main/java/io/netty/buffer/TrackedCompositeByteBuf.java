@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.buffer.TrackedByteBuf.Allocation;
+import io.netty.util.internal.ObjectUtil;
+
+import java.nio.ByteOrder;
+
+/**
+ * {@link TrackedByteBuf} for {@link CompositeByteBuf}s.
+ */
+class TrackedCompositeByteBuf extends WrappedCompositeByteBuf {
+
+    final Allocation allocation;
+
+    TrackedCompositeByteBuf(CompositeByteBuf wrapped, Allocation allocation) {
+        super(wrapped);
+        this.allocation = ObjectUtil.checkNotNull(allocation, "allocation");
+    }
+
+    @Override
+    public boolean release() {
+        if (super.release()) {
+            allocation.release();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        if (super.release(decrement)) {
+            allocation.release();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public ByteBuf order(ByteOrder endianness) {
+        if (order() == endianness) {
+            return this;
+        }
+        return newTrackedByteBuf(super.order(endianness));
+    }
+
+    @Override
+    public ByteBuf slice() {
+        return newTrackedByteBuf(super.slice());
+    }
+
+    @Override
+    public ByteBuf retainedSlice() {
+        return newTrackedByteBuf(super.retainedSlice());
+    }
+
+    @Override
+    public ByteBuf slice(int index, int length) {
+        return newTrackedByteBuf(super.slice(index, length));
+    }
+
+    @Override
+    public ByteBuf retainedSlice(int index, int length) {
+        return newTrackedByteBuf(super.retainedSlice(index, length));
+    }
+
+    @Override
+    public ByteBuf duplicate() {
+        return newTrackedByteBuf(super.duplicate());
+    }
+
+    @Override
+    public ByteBuf retainedDuplicate() {
+        return newTrackedByteBuf(super.retainedDuplicate());
+    }
+
+    @Override
+    public ByteBuf readSlice(int length) {
+        return newTrackedByteBuf(super.readSlice(length));
+    }
+
+    @Override
+    public ByteBuf readRetainedSlice(int length) {
+        return newTrackedByteBuf(super.readRetainedSlice(length));
+    }
+
+    @Override
+    public ByteBuf asReadOnly() {
+        return newTrackedByteBuf(super.asReadOnly());
+    }
+
+    private TrackedByteBuf newTrackedByteBuf(ByteBuf derived) {
+        // The derived buffers of a CompositeByteBuf share its reference count.
+        return new TrackedByteBuf(derived, allocation);
+    }
+}
@@ -19,9 +19,11 @@ import io.netty.buffer.CompositeByteBuf.ByteWrapper;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -216,6 +218,26 @@ public final class Unpooled {
         return new WrappedUnpooledUnsafeDirectByteBuf(ALLOC, memoryAddress, size, doFree);
     }
 
+    /**
+     * Creates a new read-only buffer which maps {@code length} bytes of the {@code file} starting at
+     * {@code position} into memory. Its content can be sliced, composed and written without copying it.
+     * The region is unmapped once the reference count of the {@link ByteBuf} reaches {@code 0}, so buffers
+     * derived from it must not be used anymore after that.
+     */
+    public static ByteBuf mappedBuffer(FileChannel file, long position, int length) throws IOException {
+        ObjectUtil.checkNotNull(file, "file");
+        ObjectUtil.checkPositiveOrZero(position, "position");
+        ObjectUtil.checkPositiveOrZero(length, "length");
+        if (length == 0) {
+            return EMPTY_BUFFER;
+        }
+        ByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, position, length);
+        if (PlatformDependent.hasUnsafe()) {
+            return new ReadOnlyUnsafeDirectByteBuf(ALLOC, mapped, true);
+        }
+        return new ReadOnlyByteBufferBuf(ALLOC, mapped, true);
+    }
+
     /**
      * Creates a new buffer which wraps the specified buffer's readable bytes.
      * A modification on the specified buffer's content will be visible to the
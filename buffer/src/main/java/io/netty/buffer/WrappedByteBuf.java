@@ -942,6 +942,11 @@ class WrappedByteBuf extends ByteBuf {
         return buf.nioBuffers(index, length);
     }
 
+    @Override
+    public int nioBuffers(int index, int length, ByteBuffer[] buffers, int offset, int maxCount) {
+        return buf.nioBuffers(index, length, buffers, offset, maxCount);
+    }
+
     @Override
     public ByteBuffer internalNioBuffer(int index, int length) {
         return buf.internalNioBuffer(index, length);
@@ -714,6 +714,12 @@ class WrappedCompositeByteBuf extends CompositeByteBuf {
         return this;
     }
 
+    @Override
+    public CompositeByteBuf getBytes(int index, ByteBuffer... dsts) {
+        wrapped.getBytes(index, dsts);
+        return this;
+    }
+
     @Override
     public CompositeByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
         wrapped.getBytes(index, dst, dstIndex, length);
@@ -879,6 +885,11 @@ class WrappedCompositeByteBuf extends CompositeByteBuf {
         return wrapped.nioBuffers(index, length);
     }
 
+    @Override
+    public int nioBuffers(int index, int length, ByteBuffer[] buffers, int offset, int maxCount) {
+        return wrapped.nioBuffers(index, length, buffers, offset, maxCount);
+    }
+
     @Override
     public CompositeByteBuf consolidate() {
         wrapped.consolidate();
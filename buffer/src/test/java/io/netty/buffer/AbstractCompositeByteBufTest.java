@@ -24,6 +24,7 @@ import org.junit.Test;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
@@ -43,6 +44,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -745,6 +747,52 @@ public abstract class AbstractCompositeByteBufTest extends AbstractByteBufTest {
         buf.release();
     }
 
+    @Test
+    public void testNioBuffersIntoArray() {
+        ByteBuf c1 = directBuffer().writeBytes(new byte[] { 1, 2 });
+        ByteBuf c2 = directBuffer().writeBytes(new byte[] { 3, 4 });
+        CompositeByteBuf buf = compositeBuffer();
+        buf.addComponent(true, c1);
+        buf.addComponent(true, EMPTY_BUFFER);
+        buf.addComponent(true, c2);
+
+        ByteBuffer[] nioBuffers = new ByteBuffer[4];
+        assertEquals(2, buf.nioBuffers(1, 3, nioBuffers, 1, 3));
+        assertNull(nioBuffers[0]);
+        assertEquals(ByteBuffer.wrap(new byte[] { 2 }), nioBuffers[1]);
+        assertEquals(ByteBuffer.wrap(new byte[] { 3, 4 }), nioBuffers[2]);
+        assertNull(nioBuffers[3]);
+        // The components reuse their NIO buffers, which are not shared with the internal NIO buffers of c1 and c2.
+        ByteBuffer nioBuffer = nioBuffers[1];
+        assertNotSame(c1.internalNioBuffer(1, 1), nioBuffer);
+        assertEquals(1, buf.nioBuffers(1, 1, nioBuffers, 1, 1));
+        assertSame(nioBuffer, nioBuffers[1]);
+
+        Arrays.fill(nioBuffers, null);
+        assertEquals(1, buf.nioBuffers(0, 4, nioBuffers, 0, 1));
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2 }), nioBuffers[0]);
+        assertNull(nioBuffers[1]);
+
+        assertEquals(0, buf.nioBuffers(0, 0, nioBuffers, 0, 4));
+        buf.release();
+    }
+
+    @Test
+    public void testNioBuffersIntoArraySharedComponent() {
+        ByteBuf c1 = directBuffer().writeBytes(new byte[] { 1, 2, 3, 4 });
+        CompositeByteBuf buf = compositeBuffer();
+        buf.addComponent(true, c1.retain());
+        buf.addComponent(true, c1.retainedSlice(0, 2));
+        buf.addComponent(true, c1);
+
+        ByteBuffer[] nioBuffers = new ByteBuffer[3];
+        assertEquals(3, buf.nioBuffers(2, 8, nioBuffers, 0, 3));
+        assertEquals(ByteBuffer.wrap(new byte[] { 3, 4 }), nioBuffers[0]);
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2 }), nioBuffers[1]);
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }), nioBuffers[2]);
+        buf.release();
+    }
+
     @Test
     public void testRemoveLastComponent() {
         CompositeByteBuf buf = compositeBuffer();
@@ -1534,4 +1582,101 @@ public abstract class AbstractCompositeByteBufTest extends AbstractByteBufTest {
         }
         assertTrue(cbuf.release());
     }
+
+    @Test
+    public void testManyComponentsOffsetIndex() {
+        // Enough components for the offsets to be looked up in the index, with empty components in between.
+        CompositeByteBuf buf = compositeBuffer(Integer.MAX_VALUE);
+        byte[] expected = new byte[300];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+        for (int i = 0; i < 100; i++) {
+            buf.addComponent(true, buffer(3).writeBytes(expected, 3 * i, 3));
+            buf.addComponent(true, EMPTY_BUFFER);
+        }
+        assertEquals(0, buf.toComponentIndex(0));
+        assertEquals(2, buf.toComponentIndex(3));
+        assertEquals(198, buf.toComponentIndex(299));
+        assertContent(expected, buf);
+
+        // Insert in the middle, so the offsets of the following components change.
+        buf.addComponent(true, 10, buffer(2).writeByte(-1).writeByte(-2));
+        expected = concat(expected, 0, 15, new byte[] { -1, -2 }, expected, 15, expected.length - 15);
+        assertContent(expected, buf);
+
+        buf.removeComponent(0);
+        buf.writerIndex(buf.capacity());
+        expected = concat(expected, 3, expected.length - 3, EMPTY_BYTES, expected, 0, 0);
+        assertContent(expected, buf);
+
+        buf.skipBytes(4);
+        buf.discardReadBytes();
+        expected = concat(expected, 4, expected.length - 4, EMPTY_BYTES, expected, 0, 0);
+        assertContent(expected, buf);
+
+        buf.capacity(200);
+        expected = concat(expected, 0, 200, EMPTY_BYTES, expected, 0, 0);
+        assertContent(expected, buf);
+
+        buf.consolidate(0, 20);
+        assertContent(expected, buf);
+
+        buf.addComponent(true, buffer(1).writeByte(-3));
+        expected = concat(expected, 0, expected.length, new byte[] { -3 }, expected, 0, 0);
+        assertContent(expected, buf);
+        buf.release();
+    }
+
+    private static byte[] concat(byte[] a, int aIndex, int aLength, byte[] b, byte[] c, int cIndex, int cLength) {
+        byte[] result = new byte[aLength + b.length + cLength];
+        System.arraycopy(a, aIndex, result, 0, aLength);
+        System.arraycopy(b, 0, result, aLength, b.length);
+        System.arraycopy(c, cIndex, result, aLength + b.length, cLength);
+        return result;
+    }
+
+    private static void assertContent(byte[] expected, CompositeByteBuf buf) {
+        assertEquals(expected.length, buf.capacity());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], buf.getByte(i));
+        }
+        for (int i = expected.length - 4; i >= 0; i -= 3) {
+            assertEquals(wrappedBuffer(expected).getInt(i), buf.getInt(i));
+        }
+    }
+
+    @Test
+    public void testGetBytesScatter() {
+        CompositeByteBuf buf = compositeBuffer();
+        buf.addComponent(true, wrappedBuffer(new byte[] { 1, 2, 3 }));
+        buf.addComponent(true, EMPTY_BUFFER);
+        buf.addComponent(true, wrappedBuffer(new byte[] { 4, 5 }));
+        buf.addComponent(true, directBuffer(4).writeBytes(new byte[] { 6, 7, 8, 9 }));
+
+        ByteBuffer first = ByteBuffer.allocate(2);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer second = ByteBuffer.allocateDirect(6);
+        second.limit(5);
+        buf.getBytes(1, first, empty, second);
+        assertEquals(0, buf.readerIndex());
+        assertFalse(first.hasRemaining());
+        assertFalse(second.hasRemaining());
+        assertEquals(5, second.limit());
+        first.flip();
+        second.flip();
+        assertEquals(2, first.get());
+        assertEquals(3, first.get());
+        for (int i = 4; i <= 8; i++) {
+            assertEquals(i, second.get());
+        }
+
+        try {
+            buf.getBytes(6, ByteBuffer.allocate(2), ByteBuffer.allocate(2));
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+        buf.release();
+    }
 }
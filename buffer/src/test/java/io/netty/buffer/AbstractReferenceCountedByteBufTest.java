@@ -16,6 +16,8 @@
 package io.netty.buffer;
 
 import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -26,8 +28,12 @@ import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ScatteringByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -84,7 +90,103 @@ public class AbstractReferenceCountedByteBufTest {
         referenceCounted.retain(2);
     }
 
+    @Test
+    public void testOwnerThreadRetainRelease() throws Exception {
+        final EventExecutor executor = new DefaultEventExecutor();
+        try {
+            final AtomicInteger deallocations = new AtomicInteger();
+            final AbstractReferenceCountedByteBuf referenceCounted = newOwnedReferenceCounted(executor, deallocations);
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    referenceCounted.retain(2);
+                    assertEquals(3, referenceCounted.refCnt());
+                    assertFalse(referenceCounted.release());
+                    assertFalse(referenceCounted.release());
+                    assertEquals(1, referenceCounted.refCnt());
+                    assertTrue(referenceCounted.release());
+                    assertEquals(0, referenceCounted.refCnt());
+                }
+            }).sync();
+            assertEquals(1, deallocations.get());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testOwnerThreadReleaseOnOtherThread() throws Exception {
+        final EventExecutor executor = new DefaultEventExecutor();
+        try {
+            AtomicInteger deallocations = new AtomicInteger();
+            final AbstractReferenceCountedByteBuf referenceCounted = newOwnedReferenceCounted(executor, deallocations);
+            referenceCounted.retain();
+            assertFalse(referenceCounted.release());
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    assertEquals(1, referenceCounted.refCnt());
+                    assertTrue(referenceCounted.release());
+                }
+            }).sync();
+            assertEquals(0, referenceCounted.refCnt());
+            assertEquals(1, deallocations.get());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testOwnerThreadLastReleaseOnOtherThread() throws Exception {
+        final EventExecutor executor = new DefaultEventExecutor();
+        try {
+            AtomicInteger deallocations = new AtomicInteger();
+            AbstractReferenceCountedByteBuf referenceCounted = newOwnedReferenceCounted(executor, deallocations);
+            // The last release on another thread does not deallocate the buffer, the owner deallocates it once it
+            // merged the reference counts.
+            assertFalse(referenceCounted.release());
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).sync();
+            assertEquals(0, referenceCounted.refCnt());
+            assertEquals(1, deallocations.get());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testOwnerThreadTerminated() throws Exception {
+        EventExecutor executor = new DefaultEventExecutor();
+        AtomicInteger deallocations = new AtomicInteger();
+        AbstractReferenceCountedByteBuf referenceCounted = newOwnedReferenceCounted(executor, deallocations);
+        executor.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(referenceCounted.release());
+        assertEquals(0, referenceCounted.refCnt());
+        assertEquals(1, deallocations.get());
+    }
+
+    private static AbstractReferenceCountedByteBuf newOwnedReferenceCounted(
+            final EventExecutor executor, final AtomicInteger deallocations) throws Exception {
+        return executor.submit(new Callable<AbstractReferenceCountedByteBuf>() {
+            @Override
+            public AbstractReferenceCountedByteBuf call() {
+                AbstractReferenceCountedByteBuf referenceCounted = newReferenceCounted(deallocations);
+                referenceCounted.setOwner(executor);
+                return referenceCounted;
+            }
+        }).get();
+    }
+
     private static AbstractReferenceCountedByteBuf newReferenceCounted() {
+        return newReferenceCounted(new AtomicInteger());
+    }
+
+    private static AbstractReferenceCountedByteBuf newReferenceCounted(final AtomicInteger deallocations) {
         return new AbstractReferenceCountedByteBuf(Integer.MAX_VALUE) {
 
             @Override
@@ -319,7 +421,7 @@ public class AbstractReferenceCountedByteBufTest {
 
             @Override
             protected void deallocate() {
-                // NOOP
+                deallocations.incrementAndGet();
             }
 
             @Override
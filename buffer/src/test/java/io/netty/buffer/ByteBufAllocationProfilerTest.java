@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.ResourceLeakDetector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBufAllocationProfilerTest {
+
+    @Before
+    public void setUp() {
+        ByteBufAllocationProfiler.reset();
+        ByteBufAllocationProfiler.setSamplingInterval(1);
+    }
+
+    @After
+    public void tearDown() {
+        ByteBufAllocationProfiler.setSamplingInterval(0);
+        ByteBufAllocationProfiler.reset();
+    }
+
+    @Test
+    public void testDisabled() {
+        ByteBufAllocationProfiler.setSamplingInterval(0);
+        assertFalse(ByteBufAllocationProfiler.isEnabled());
+        ByteBuf buffer = UnpooledByteBufAllocator.DEFAULT.heapBuffer(16);
+        assertTrue(ByteBufAllocationProfiler.snapshot().isEmpty());
+        buffer.release();
+    }
+
+    @Test
+    public void testAllocationSite() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true);
+        ByteBuf first = allocator.directBuffer(100);
+        ByteBuf second = allocator.directBuffer(1000);
+        CompositeByteBuf composite = allocator.compositeDirectBuffer();
+
+        List<ByteBufAllocationSite> sites = ByteBufAllocationProfiler.snapshot();
+        assertEquals(3, sites.size());
+        ByteBufAllocationSite site = sites.get(0);
+        assertEquals(1, site.sampledAllocations());
+        assertEquals(1000, site.liveBytes());
+        assertEquals(1, site.capacityHistogram()[ByteBufAllocationProfiler.capacityIndex(1000)]);
+        assertTrue(site.stackTrace(), site.stackTrace().trim().startsWith(
+                "at " + ByteBufAllocationProfilerTest.class.getName() + ".testAllocationSite("));
+
+        assertTrue(first.release());
+        assertTrue(second.release());
+        assertTrue(composite.release());
+        for (ByteBufAllocationSite s : ByteBufAllocationProfiler.snapshot()) {
+            assertEquals(0, s.liveAllocations());
+            assertEquals(0, s.liveBytes());
+            long released = 0;
+            for (long count : s.lifetimeHistogram()) {
+                released += count;
+            }
+            assertEquals(1, released);
+        }
+    }
+
+    @Test
+    public void testSameSite() {
+        for (int i = 0; i < 10; i++) {
+            Unpooled.directBuffer(i).release();
+        }
+        List<ByteBufAllocationSite> sites = ByteBufAllocationProfiler.snapshot();
+        assertEquals(1, sites.size());
+        assertEquals(10, sites.get(0).sampledAllocations());
+        assertEquals(0, sites.get(0).liveAllocations());
+        assertEquals(2, sites.get(0).capacityHistogram()[0]);
+    }
+
+    @Test
+    public void testReleaseOfDerivedBuffers() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true);
+        ByteBuf buffer = allocator.directBuffer(64).writeLong(1);
+        ByteBuf retainedSlice = buffer.retainedSlice();
+        ByteBuf slice = buffer.slice();
+        assertFalse(buffer.release());
+        assertEquals(1, ByteBufAllocationProfiler.snapshot().get(0).liveAllocations());
+
+        assertTrue(retainedSlice.release());
+        ByteBufAllocationSite site = ByteBufAllocationProfiler.snapshot().get(0);
+        assertEquals(1, site.sampledAllocations());
+        assertEquals(0, site.liveAllocations());
+        assertEquals(0, slice.refCnt());
+    }
+
+    @Test
+    public void testLeakDetectionEnabled() {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        try {
+            ByteBuf buffer = new PooledByteBufAllocator(false).heapBuffer(16);
+            // The leak detector tracks the sampled buffer, which wraps the allocated buffer only once.
+            assertTrue(buffer instanceof AdvancedLeakAwareByteBuf);
+            assertTrue(buffer.unwrap() instanceof TrackedByteBuf);
+            assertFalse(buffer.unwrap().unwrap() instanceof TrackedByteBuf);
+
+            ByteBuf duplicate = buffer.duplicate();
+            assertTrue(duplicate.release());
+            assertEquals(0, ByteBufAllocationProfiler.snapshot().get(0).liveAllocations());
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testHistogramIndex() {
+        assertEquals(0, ByteBufAllocationProfiler.capacityIndex(0));
+        assertEquals(0, ByteBufAllocationProfiler.capacityIndex(1));
+        assertEquals(10, ByteBufAllocationProfiler.capacityIndex(1024));
+        assertEquals(10, ByteBufAllocationProfiler.capacityIndex(2047));
+        assertEquals(30, ByteBufAllocationProfiler.capacityIndex(Integer.MAX_VALUE));
+        assertEquals(0, ByteBufAllocationProfiler.lifetimeIndex(999));
+        assertEquals(1, ByteBufAllocationProfiler.lifetimeIndex(2000));
+        assertEquals(ByteBufAllocationSite.LIFETIME_BUCKETS - 1,
+                ByteBufAllocationProfiler.lifetimeIndex(Long.MAX_VALUE));
+    }
+}
@@ -631,6 +631,86 @@ public class ByteBufUtilTest {
         buffer.release();
     }
 
+    @Test
+    public void testDecodeIso88591() {
+        testDecodeString("Some ISO-8859-1 like \u00e4\u00c4\u00ff", CharsetUtil.ISO_8859_1);
+    }
+
+    @Test
+    public void testDecodeUtf8AsciiPrefix() {
+        testDecodeString("Some long ASCII prefix before UTF-8 like \u00e4\u00c4\u220f\u0152", CharsetUtil.UTF_8);
+        testDecodeString("Only ASCII which is longer than a few words", CharsetUtil.UTF_8);
+    }
+
+    @Test
+    public void testIndexOfNonAscii() {
+        byte[] bytes = new byte[40];
+        Arrays.fill(bytes, (byte) 'a');
+        ByteBuf direct = Unpooled.directBuffer(40).writeBytes(bytes);
+        ByteBuf offset = Unpooled.wrappedBuffer(bytes, 3, 37);
+        // Every buffer with the buffer that modifies its content at the same indexes.
+        ByteBuf[][] buffers = {
+                { Unpooled.wrappedBuffer(bytes), Unpooled.wrappedBuffer(bytes) },
+                { offset, offset },
+                { direct, direct },
+                { Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(bytes, 0, 13), Unpooled.wrappedBuffer(bytes, 13, 27)),
+                        Unpooled.wrappedBuffer(bytes) },
+                { Unpooled.unmodifiableBuffer(Unpooled.wrappedBuffer(bytes)), Unpooled.wrappedBuffer(bytes) }
+        };
+        for (ByteBuf[] pair : buffers) {
+            ByteBuf buffer = pair[0];
+            int capacity = buffer.capacity();
+            assertEquals(-1, ByteBufUtil.indexOfNonAscii(buffer, 0, capacity));
+            for (int i = 0; i < capacity; i++) {
+                pair[1].setByte(i, 0x80);
+                assertEquals(i, ByteBufUtil.indexOfNonAscii(buffer, 0, capacity));
+                assertEquals(i, ByteBufUtil.indexOfNonAscii(buffer, i, capacity - i));
+                assertEquals(-1, ByteBufUtil.indexOfNonAscii(buffer, 0, i));
+                assertEquals(-1, ByteBufUtil.indexOfNonAscii(buffer, i + 1, capacity - i - 1));
+                pair[1].setByte(i, 'a');
+            }
+            buffer.release();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOfNonAsciiOutOfBounds() {
+        ByteBuf buffer = Unpooled.buffer(8);
+        try {
+            ByteBufUtil.indexOfNonAscii(buffer, 4, 5);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testWriteAsciiAndUtf8Prefixes() {
+        String[] texts = {
+                "A long ASCII text that is written word by word",
+                "A long ASCII text before ISO-8859-1 \u00e4\u00c4\u00ff and UTF-8 \u220f\u0152",
+                "Short \u00e4",
+                "\u220f\u0152 a non-ASCII text which is followed by ASCII"
+        };
+        for (String text : texts) {
+            for (CharSequence seq : new CharSequence[] { text, new StringBuilder(text) }) {
+                for (ByteBuf buffer : new ByteBuf[] { Unpooled.buffer(), Unpooled.directBuffer() }) {
+                    assertEquals(text.length(), ByteBufUtil.writeAscii(buffer, seq));
+                    ByteBuf expected = Unpooled.wrappedBuffer(text.getBytes(CharsetUtil.US_ASCII));
+                    for (int i = 0; i < text.length(); i++) {
+                        expected.setByte(i, AsciiString.c2b(text.charAt(i)));
+                    }
+                    assertEquals(expected, buffer);
+                    expected.release();
+                    buffer.clear();
+
+                    ByteBufUtil.writeUtf8(buffer, seq);
+                    assertEquals(text, buffer.toString(CharsetUtil.UTF_8));
+                    buffer.release();
+                }
+            }
+        }
+    }
+
     @Test
     public void testToStringDoesNotThrowIndexOutOfBounds() {
         CompositeByteBuf buffer = Unpooled.compositeBuffer();
@@ -815,4 +895,218 @@ public class ByteBufUtilTest {
             buffer.release();
         }
     }
+
+    @Test
+    public void testIndexOfByte() {
+        ByteBuf[] buffers = {
+                Unpooled.buffer(40),
+                Unpooled.directBuffer(40),
+                PooledByteBufAllocator.DEFAULT.heapBuffer(40),
+                PooledByteBufAllocator.DEFAULT.directBuffer(40),
+                Unpooled.wrappedBuffer(Unpooled.buffer(13), Unpooled.directBuffer(0), Unpooled.directBuffer(27)),
+        };
+        for (ByteBuf buffer : buffers) {
+            try {
+                buffer.writerIndex(buffer.capacity());
+                for (int index = 0; index < buffer.capacity(); index++) {
+                    buffer.setZero(0, buffer.capacity());
+                    buffer.setByte(index, 0x80);
+                    for (int from = 0; from <= index; from++) {
+                        for (int to = index + 1; to <= buffer.capacity(); to++) {
+                            assertEquals(index, ByteBufUtil.indexOf(buffer, from, to, (byte) 0x80));
+                            assertEquals(index, buffer.indexOf(from, to, (byte) 0x80));
+                        }
+                        assertEquals(-1, buffer.indexOf(from, index, (byte) 0x80));
+                    }
+                    assertEquals(-1, buffer.indexOf(index + 1, buffer.capacity(), (byte) 0x80));
+                    assertEquals(-1, buffer.indexOf(0, buffer.capacity(), (byte) 0x7F));
+                }
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfByteFirstOccurrence() {
+        ByteBuf buffer = Unpooled.copiedBuffer("abcxxxxxxxxxxxxxxxxxxxxxbxxxx", CharsetUtil.US_ASCII);
+        try {
+            assertEquals(1, buffer.indexOf(0, buffer.writerIndex(), (byte) 'b'));
+            assertEquals(24, buffer.indexOf(2, buffer.writerIndex(), (byte) 'b'));
+            assertEquals(3, buffer.indexOf(0, buffer.writerIndex(), (byte) 'x'));
+            assertEquals(24, buffer.indexOf(buffer.writerIndex(), 0, (byte) 'b'));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testIndexOfNeedle() {
+        ByteBuf haystack = Unpooled.copiedBuffer("abc12abc12abd123", CharsetUtil.US_ASCII);
+        ByteBuf composite = Unpooled.wrappedBuffer(
+                Unpooled.copiedBuffer("abc12ab", CharsetUtil.US_ASCII),
+                Unpooled.copiedBuffer("c12abd123", CharsetUtil.US_ASCII));
+        try {
+            for (ByteBuf buffer : new ByteBuf[] { haystack, composite }) {
+                assertEquals(0, ByteBufUtil.indexOf(Unpooled.copiedBuffer("abc", CharsetUtil.US_ASCII), buffer));
+                assertEquals(10, ByteBufUtil.indexOf(Unpooled.copiedBuffer("abd", CharsetUtil.US_ASCII), buffer));
+                assertEquals(4, ByteBufUtil.indexOf(Unpooled.copiedBuffer("2abc", CharsetUtil.US_ASCII), buffer));
+                assertEquals(13, ByteBufUtil.indexOf(Unpooled.copiedBuffer("123", CharsetUtil.US_ASCII), buffer));
+                assertEquals(-1, ByteBufUtil.indexOf(Unpooled.copiedBuffer("1234", CharsetUtil.US_ASCII), buffer));
+                assertEquals(-1, ByteBufUtil.indexOf(Unpooled.copiedBuffer("abe", CharsetUtil.US_ASCII), buffer));
+                assertEquals(0, ByteBufUtil.indexOf(Unpooled.EMPTY_BUFFER, buffer));
+
+                buffer.readerIndex(1);
+                assertEquals(5, ByteBufUtil.indexOf(Unpooled.copiedBuffer("abc", CharsetUtil.US_ASCII), buffer));
+                assertEquals(1, ByteBufUtil.indexOf(Unpooled.EMPTY_BUFFER, buffer));
+            }
+        } finally {
+            haystack.release();
+            composite.release();
+        }
+    }
+
+    private static final long[] VARINT_VALUES = {
+            0, 1, 127, 128, 300, 16383, 16384, (1 << 21) - 1, 1 << 21, (1 << 28) - 1, 1 << 28, Integer.MAX_VALUE,
+            -1, Integer.MIN_VALUE, 1L << 35, (1L << 56) - 1, 1L << 56, Long.MAX_VALUE, Long.MIN_VALUE,
+    };
+
+    @Test
+    public void testVarint32RoundTrip() {
+        // The trailing bytes make sure the word-at-a-time reads are used for the short varints as well.
+        for (ByteBuf buf : new ByteBuf[] { Unpooled.buffer(), Unpooled.directBuffer(), Unpooled.compositeBuffer() }) {
+            for (long v : VARINT_VALUES) {
+                int value = (int) v;
+                buf.clear();
+                int size = ByteBufUtil.writeVarint32(buf, value);
+                assertEquals(ByteBufUtil.varint32Size(value), size);
+                assertEquals(size, buf.readableBytes());
+                assertEquals(size, ByteBufUtil.varint32Length(buf, 0));
+                assertEquals(value, ByteBufUtil.getVarint32(buf, 0));
+                buf.writeLong(-1);
+                assertEquals(size, ByteBufUtil.varint32Length(buf, 0));
+                assertEquals(value, ByteBufUtil.readVarint32(buf));
+                assertEquals(size, buf.readerIndex());
+            }
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testVarint64RoundTrip() {
+        for (ByteBuf buf : new ByteBuf[] { Unpooled.buffer(), Unpooled.directBuffer(), Unpooled.compositeBuffer() }) {
+            for (long value : VARINT_VALUES) {
+                buf.clear();
+                int size = ByteBufUtil.writeVarint64(buf, value);
+                assertEquals(ByteBufUtil.varint64Size(value), size);
+                assertEquals(size, buf.readableBytes());
+                assertEquals(size, ByteBufUtil.varint64Length(buf, 0));
+                assertEquals(value, ByteBufUtil.getVarint64(buf, 0));
+                buf.writeLong(-1);
+                assertEquals(value, ByteBufUtil.readVarint64(buf));
+                assertEquals(size, buf.readerIndex());
+            }
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testVarintEncoding() {
+        ByteBuf buf = Unpooled.buffer();
+        ByteBufUtil.writeVarint32(buf, 300);
+        assertEquals("ac02", ByteBufUtil.hexDump(buf));
+        buf.clear();
+        ByteBufUtil.writeVarint32(buf, -1);
+        assertEquals("ffffffff0f", ByteBufUtil.hexDump(buf));
+        buf.clear();
+        ByteBufUtil.writeVarint64(buf, -1);
+        assertEquals("ffffffffffffffffff01", ByteBufUtil.hexDump(buf));
+        buf.release();
+    }
+
+    @Test
+    public void testVarintIncompleteAndMalformed() {
+        ByteBuf buf = Unpooled.buffer().writeByte(0x80).writeByte(0x80);
+        assertEquals(0, ByteBufUtil.varint32Length(buf, 0));
+        try {
+            ByteBufUtil.readVarint32(buf);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+        assertEquals(0, buf.readerIndex());
+
+        buf.writeByte(0x80).writeByte(0x80).writeByte(0x80);
+        assertEquals(-1, ByteBufUtil.varint32Length(buf, 0));
+        assertEquals(0, ByteBufUtil.varint64Length(buf, 0));
+        buf.writeZero(8);
+        assertEquals(-1, ByteBufUtil.varint32Length(buf, 0));
+        assertEquals(6, ByteBufUtil.varint64Length(buf, 0));
+        try {
+            ByteBufUtil.getVarint32(buf, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+
+        buf.clear();
+        for (int i = 0; i < 10; i++) {
+            buf.writeByte(0xFF);
+        }
+        buf.writeByte(0);
+        assertEquals(-1, ByteBufUtil.varint64Length(buf, 0));
+        buf.release();
+    }
+
+    @Test
+    public void testZigZag() {
+        assertEquals(0, ByteBufUtil.encodeZigZag32(0));
+        assertEquals(1, ByteBufUtil.encodeZigZag32(-1));
+        assertEquals(2, ByteBufUtil.encodeZigZag32(1));
+        assertEquals(-1, ByteBufUtil.encodeZigZag32(Integer.MIN_VALUE));
+        assertEquals(-2, ByteBufUtil.encodeZigZag32(Integer.MAX_VALUE));
+        assertEquals(1, ByteBufUtil.encodeZigZag64(-1));
+        assertEquals(-1, ByteBufUtil.encodeZigZag64(Long.MIN_VALUE));
+        for (long value : VARINT_VALUES) {
+            assertEquals((int) value, ByteBufUtil.decodeZigZag32(ByteBufUtil.encodeZigZag32((int) value)));
+            assertEquals(value, ByteBufUtil.decodeZigZag64(ByteBufUtil.encodeZigZag64(value)));
+        }
+    }
+
+    @Test
+    public void testPackedVarints() {
+        int[] ints = new int[VARINT_VALUES.length];
+        long[] longs = new long[VARINT_VALUES.length];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = (int) VARINT_VALUES[i];
+            longs[i] = VARINT_VALUES[i];
+        }
+        ByteBuf buf = Unpooled.buffer(1);
+        int size = ByteBufUtil.writeVarint32s(buf, ints, 1, ints.length - 1);
+        assertEquals(size, buf.readableBytes());
+        int[] readInts = new int[ints.length];
+        ByteBufUtil.readVarint32s(buf, readInts, 1, ints.length - 1);
+        assertFalse(buf.isReadable());
+        assertEquals(0, readInts[0]);
+        assertArrayEquals(ints, readInts);
+
+        buf.clear();
+        size = ByteBufUtil.writeVarint64s(buf, longs, 0, longs.length);
+        assertEquals(size, buf.readableBytes());
+        long[] readLongs = new long[longs.length];
+        ByteBufUtil.readVarint64s(buf, readLongs, 0, longs.length);
+        assertFalse(buf.isReadable());
+        assertArrayEquals(longs, readLongs);
+
+        // A truncated array does not move the readerIndex.
+        buf.readerIndex(0).writerIndex(size - 1);
+        try {
+            ByteBufUtil.readVarint64s(buf, readLongs, 0, longs.length);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+        assertEquals(0, buf.readerIndex());
+        buf.release();
+    }
 }
@@ -46,6 +46,45 @@ public class PoolArenaTest {
         }
     }
 
+    @Test
+    public void testNormalizeCapacityWithSizeClasses() throws Exception {
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 8192, 11, 13, 8192 << 11, 0,
+                new SizeClasses(8192, 13, 8192 << 11));
+        int[] reqCapacities = {0, 15, 17, 65, 510, 1025, 9 * 1024, 12 * 1024 + 1, 33 * 1024, 8192 << 11};
+        int[] expectedResult = {16, 16, 32, 80, 512, 1280, 10 * 1024, 14 * 1024, 40 * 1024, 8192 << 11};
+        for (int i = 0; i < reqCapacities.length; i ++) {
+            Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
+        }
+    }
+
+    @Test
+    public void testNormalizeAlignedCapacityWithSizeClasses() throws Exception {
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 8192, 11, 13, 8192 << 11, 64,
+                new SizeClasses(8192, 13, 8192 << 11));
+        int[] reqCapacities = {0, 15, 65, 129, 1025};
+        int[] expectedResult = {64, 64, 128, 192, 1280};
+        for (int i = 0; i < reqCapacities.length; i ++) {
+            Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
+        }
+    }
+
+    @Test
+    public void testSizeClassesSubpageRunSize() {
+        SizeClasses sizeClasses = new SizeClasses(8192, 13, 8192 << 11);
+        // 10 KiB elements need a run of 5 pages to not waste any memory.
+        Assert.assertEquals(5 * 8192, sizeClasses.subpageRunSize(10 * 1024));
+        Assert.assertEquals(8192, sizeClasses.subpageRunSize(16));
+        Assert.assertTrue(sizeClasses.isSubpage(28 * 1024));
+        Assert.assertFalse(sizeClasses.isSubpage(32 * 1024));
+        for (int i = 0; i < sizeClasses.numSizes(); i++) {
+            int size = sizeClasses.sizeIdx2size(i);
+            Assert.assertEquals(i, sizeClasses.size2SizeIdx(size));
+            if (i + 1 < sizeClasses.numSizes()) {
+                Assert.assertEquals(i + 1, sizeClasses.size2SizeIdx(size + 1));
+            }
+        }
+    }
+
     @Test
     public void testDirectArenaOffsetCacheLine() throws Exception {
         assumeTrue(PlatformDependent.hasUnsafe());
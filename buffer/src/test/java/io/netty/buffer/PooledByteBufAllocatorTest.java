@@ -16,19 +16,25 @@
 
 package io.netty.buffer;
 
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.concurrent.NumaNodeThreadFactory;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
 import org.junit.Assume;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.LockSupport;
 
@@ -225,6 +231,382 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         }
     }
 
+    @Test
+    public void testSizeClassMetric() {
+        testSizeClassMetric0(newAccountingAllocator(false));
+    }
+
+    @Test
+    public void testSizeClassMetricWithSizeClasses() {
+        testSizeClassMetric0(newAccountingAllocator(true));
+    }
+
+    private static PooledByteBufAllocator newAccountingAllocator(boolean useSizeClasses) {
+        return new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, useSizeClasses) {
+            @Override
+            boolean accountRequestedBytes() {
+                return true;
+            }
+        };
+    }
+
+    private static void testSizeClassMetric0(PooledByteBufAllocator allocator) {
+        PoolArenaFragmentationMetric metric =
+                (PoolArenaFragmentationMetric) allocator.metric().heapArenas().get(0);
+        for (PoolSizeClassMetric sizeClass : metric.sizeClasses()) {
+            assertTrue(sizeClass.size() > 0);
+        }
+        ByteBuf tiny = allocator.heapBuffer(100);
+        ByteBuf small = allocator.heapBuffer(1000);
+        ByteBuf normal = allocator.heapBuffer(20000);
+        int reserved = unwrapPooled(tiny).maxLength + unwrapPooled(small).maxLength + unwrapPooled(normal).maxLength;
+
+        assertEquals(21100, metric.numActiveRequestedBytes());
+        assertEquals(reserved, metric.numActiveReservedBytes());
+        assertEquals(21100, allocator.metric().requestedHeapMemory());
+        assertEquals(reserved, allocator.metric().reservedHeapMemory());
+        assertEquals(0, allocator.metric().requestedDirectMemory());
+
+        PoolSizeClassMetric tinyClass = sizeClassMetric(metric, unwrapPooled(tiny).maxLength);
+        assertEquals(1, tinyClass.numActiveAllocations());
+        assertEquals(100, tinyClass.requestedBytes());
+        assertEquals(tinyClass.size(), tinyClass.reservedBytes());
+
+        // Growing in place only changes the requested bytes.
+        normal.capacity(20001);
+        assertEquals(21101, metric.numActiveRequestedBytes());
+        assertEquals(reserved, metric.numActiveReservedBytes());
+
+        // Reallocating moves the buffer to another size class.
+        tiny.capacity(5000);
+        assertEquals(0, tinyClass.numActiveAllocations());
+        assertEquals(0, tinyClass.requestedBytes());
+        assertEquals(1, sizeClassMetric(metric, unwrapPooled(tiny).maxLength).numActiveAllocations());
+
+        long listRequested = 0;
+        long listReserved = 0;
+        for (PoolChunkListMetric list : metric.chunkLists()) {
+            listRequested += ((PoolChunkListFragmentationMetric) list).requestedBytes();
+            listReserved += ((PoolChunkListFragmentationMetric) list).reservedBytes();
+        }
+        assertEquals(metric.numActiveRequestedBytes(), listRequested);
+        assertEquals(metric.numActiveReservedBytes(), listReserved);
+
+        assertTrue(tiny.release());
+        assertTrue(small.release());
+        assertTrue(normal.release());
+        assertEquals(0, metric.numActiveRequestedBytes());
+        assertEquals(0, metric.numActiveReservedBytes());
+        for (PoolSizeClassMetric sizeClass : metric.sizeClasses()) {
+            assertEquals(0, sizeClass.numActiveAllocations());
+        }
+    }
+
+    @Test
+    public void testSizeClassMetricNotAccounted() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, false);
+        PoolArenaFragmentationMetric metric =
+                (PoolArenaFragmentationMetric) allocator.metric().heapArenas().get(0);
+        ByteBuf buffer = allocator.heapBuffer(100);
+        buffer.capacity(200);
+        assertEquals(0, metric.numActiveRequestedBytes());
+        assertEquals(0, metric.numActiveReservedBytes());
+        assertEquals(0, allocator.metric().requestedHeapMemory());
+        assertTrue(buffer.release());
+        assertEquals(0, metric.numActiveRequestedBytes());
+    }
+
+    private static PoolSizeClassMetric sizeClassMetric(PoolArenaFragmentationMetric metric, int size) {
+        for (PoolSizeClassMetric sizeClass : metric.sizeClasses()) {
+            if (sizeClass.size() == size) {
+                return sizeClass;
+            }
+        }
+        throw new AssertionError("no size class of " + size + " bytes");
+    }
+
+    @Test
+    public void testPinnedChunkMetric() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        ByteBuf tiny = allocator.heapBuffer(16);
+        assertEquals(1, numPinnedChunks(metric));
+
+        ByteBuf normal = allocator.heapBuffer(8192);
+        assertEquals(0, numPinnedChunks(metric));
+
+        assertTrue(normal.release());
+        assertEquals(1, numPinnedChunks(metric));
+
+        assertTrue(tiny.release());
+        assertEquals(0, numPinnedChunks(metric));
+    }
+
+    private static int numPinnedChunks(PoolArenaMetric metric) {
+        int pinned = 0;
+        for (PoolChunkListMetric list : metric.chunkLists()) {
+            pinned += ((PoolChunkListFragmentationMetric) list).numPinnedChunks();
+        }
+        return pinned;
+    }
+
+    @Test
+    public void testAdaptiveCacheSize() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                false, 1, 0, 8192, 11, 8, 8, 8, true, 0, false, true);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        assertTrue(metric.adaptiveCacheSize());
+
+        allocateAndRelease(allocator, 8);
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(0, metric.numThreadCacheHits());
+        assertEquals(8, metric.numThreadCacheMisses());
+        // The cache already has its maximum size.
+        assertEquals(0, metric.numThreadCacheGrows());
+
+        // Two idle trims shrink the cache from 8 to 2 entries.
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertTrue(metric.numThreadCacheShrinks() > 0);
+
+        allocateAndRelease(allocator, 8);
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(2, metric.numThreadCacheHits());
+        assertEquals(14, metric.numThreadCacheMisses());
+        assertEquals(1, metric.numThreadCacheGrows());
+
+        // Only 2 of the buffers fit into the cache before it grew to 4 entries.
+        allocateAndRelease(allocator, 8);
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(4, metric.numThreadCacheHits());
+    }
+
+    private static void allocateAndRelease(PooledByteBufAllocator allocator, int num) {
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>(num);
+        for (int i = 0; i < num; i++) {
+            buffers.add(allocator.heapBuffer(16));
+        }
+        for (ByteBuf buffer : buffers) {
+            assertTrue(buffer.release());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubpageStripesNotPowerOfTwo() {
+        new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, false, false, 3);
+    }
+
+    @Test
+    public void testSubpageStripes() throws Throwable {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                false, 1, 0, 8192, 11, 0, 0, 0, true, 0, false, false, 4);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+                        for (int j = 0; j < 1000; j++) {
+                            buffers.add(allocator.heapBuffer(16).writeInt(j));
+                            buffers.add(allocator.heapBuffer(1000).writeInt(j));
+                        }
+                        for (int j = 0; j < buffers.size(); j++) {
+                            assertEquals(j >> 1, buffers.get(j).readInt());
+                            assertTrue(buffers.get(j).release());
+                        }
+                    } catch (Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        assertEquals(0, metric.numActiveAllocations());
+        assertEquals(PoolArena.numTinySubpagePools, metric.numTinySubpages());
+        assertEquals(4, metric.numSmallSubpages());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNumaNodesGreaterThanDirectArenas() {
+        new PooledByteBufAllocator(true, 0, 2, 8192, 11, 0, 0, 0, true, 0, false, false, 1, null, 3);
+    }
+
+    @Test
+    public void testNumaNodes() throws Throwable {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 4, 8192, 11, 0, 0, 0, true, 0, false, false, 1, null, 2);
+        final List<PoolArenaMetric> arenas = allocator.metric().directArenas();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        ThreadFactory threadFactory = new NumaNodeThreadFactory(new DefaultThreadFactory("numa"), 1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ByteBuf buffer = allocator.directBuffer(16);
+                        assertEquals(1, arenas.indexOf(unwrapPooled(buffer).chunk.arena) % 2);
+                        buffer.release();
+                    } catch (Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    @Test
+    public void testNumaNodeOutOfRange() throws Throwable {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 2, 8192, 11, 0, 0, 0, true, 0, false, false, 1, null, 2);
+        final List<PoolArenaMetric> arenas = allocator.metric().directArenas();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new NumaNodeThreadFactory(new DefaultThreadFactory("numa"), 2).newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Falls back to the arenas of all nodes.
+                    ByteBuf buffer = allocator.directBuffer(16);
+                    assertTrue(arenas.contains(unwrapPooled(buffer).chunk.arena));
+                    buffer.release();
+                    allocator.directBuffer(16).release();
+                } catch (Throwable cause) {
+                    error.set(cause);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    @Test
+    public void testReleaseIdleChunks() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        int chunkSize = allocator.metric().chunkSize();
+
+        // A chunk that never reached a quarter of usage stays in qInit once empty.
+        allocator.directBuffer(64 * 1024).release();
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        assertEquals(chunkSize, arena.chunkLists().get(0).iterator().next().freeBytes());
+
+        assertEquals(0, allocator.releaseIdleChunks(1, TimeUnit.HOURS, 0));
+        assertEquals(0, allocator.releaseIdleChunks(0, MILLISECONDS, chunkSize));
+        assertEquals(0, allocator.metric().numChunksReleased());
+
+        assertEquals(chunkSize, allocator.releaseIdleChunks(0, MILLISECONDS, 0));
+        assertFalse(arena.chunkLists().get(0).iterator().hasNext());
+        assertEquals(1, allocator.metric().numChunksReleased());
+
+        // Chunks that are in use are never released.
+        ByteBuf buffer = allocator.directBuffer(64 * 1024);
+        assertEquals(0, allocator.releaseIdleChunks(0, MILLISECONDS, 0));
+        buffer.release();
+
+        // Chunks released once empty from q000 are accounted too.
+        allocator.directBuffer(chunkSize).release();
+        assertEquals(2, allocator.metric().numChunksReleased());
+    }
+
+    @Test
+    public void testReportAgedAllocations() {
+        testReportAgedAllocations(false);
+    }
+
+    @Test
+    public void testReportAgedAllocationsWithSizeClasses() {
+        testReportAgedAllocations(true);
+    }
+
+    private static void testReportAgedAllocations(boolean useSizeClasses) {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 11, 64, 64, 64, true, 0, useSizeClasses) {
+            @Override
+            boolean trackAllocations() {
+                return true;
+            }
+        };
+        ByteBuf tiny = allocator.directBuffer(16);
+        ByteBuf normal = allocator.directBuffer(16 * 1024);
+        assertEquals(0, allocator.reportAgedAllocations());
+
+        // Memory that is released, even if only to the thread cache, is not tracked anymore.
+        normal.release();
+        ByteBuf small = allocator.directBuffer(1024);
+        assertEquals(1, allocator.reportAgedAllocations());
+        assertEquals(2, allocator.reportAgedAllocations());
+
+        // Growing a buffer moves it to new memory.
+        small.capacity(64 * 1024);
+        assertEquals(1, allocator.reportAgedAllocations());
+        tiny.release();
+        small.release();
+        assertEquals(0, allocator.reportAgedAllocations());
+    }
+
+    @Test
+    public void testReportAgedAllocationsNotTracked() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        ByteBuf buffer = allocator.directBuffer(16);
+        allocator.reportAgedAllocations();
+        assertEquals(0, allocator.reportAgedAllocations());
+        buffer.release();
+    }
+
+    @Test
+    public void testChunkAllocator() {
+        final AtomicInteger allocatedChunks = new AtomicInteger();
+        final AtomicInteger freedChunks = new AtomicInteger();
+        ChunkAllocator chunkAllocator = new ChunkAllocator() {
+            @Override
+            public ByteBuffer allocate(int capacity) {
+                allocatedChunks.incrementAndGet();
+                return ByteBuffer.allocateDirect(capacity);
+            }
+
+            @Override
+            public void free(ByteBuffer memory) {
+                freedChunks.incrementAndGet();
+                PlatformDependent.freeDirectBuffer(memory);
+            }
+        };
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 11, 0, 0, 0, true, 0, false, false, 1, chunkAllocator);
+
+        // Huge allocations are never served by the ChunkAllocator.
+        allocator.directBuffer(32 * 1024 * 1024).release();
+        assertEquals(0, allocatedChunks.get());
+
+        // Once more than a quarter of the chunk was used it is destroyed as soon as it becomes empty.
+        ByteBuf buffer = allocator.directBuffer(8 * 1024 * 1024);
+        assertEquals(1, allocatedChunks.get());
+        buffer.writeLong(1);
+        assertEquals(1, buffer.readLong());
+        assertTrue(buffer.release());
+        assertEquals(1, freedChunks.get());
+    }
+
     @Test
     public void testAllocNotNull() {
         PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0);
@@ -245,6 +627,42 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         assertNotNull(buffer.alloc());
     }
 
+    @Test
+    public void testSizeClasses() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0, true, 0, true);
+        ByteBuf buffer = allocator.directBuffer(9 * 1024);
+        // A power of two allocator would use 16 KiB for this buffer.
+        assertEquals(10 * 1024, unwrapPooled(buffer).maxLength);
+        assertTrue(buffer.release());
+
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+        for (int size = 1; size < 128 * 1024; size = size * 5 / 4 + 1) {
+            for (int i = 0; i < 8; i++) {
+                ByteBuf buf = allocator.directBuffer(size);
+                int value = buffers.size();
+                while (buf.isWritable(4)) {
+                    buf.writeInt(value);
+                }
+                buffers.add(buf);
+            }
+        }
+        for (int i = 0; i < buffers.size(); i++) {
+            ByteBuf buf = buffers.get(i);
+            while (buf.isReadable(4)) {
+                assertEquals(i, buf.readInt());
+            }
+            assertTrue(buf.release());
+        }
+
+        PoolArenaMetric metric = allocator.metric().directArenas().get(0);
+        assertEquals(0, metric.numActiveAllocations());
+        assertEquals(metric.numAllocations(), metric.numDeallocations());
+    }
+
+    private static PooledByteBuf<?> unwrapPooled(ByteBuf buf) {
+        return (PooledByteBuf<?>) (buf instanceof PooledByteBuf ? buf : buf.unwrap());
+    }
+
     @Test
     public void testFreePoolChunk() {
         int chunkSize = 16 * 1024 * 1024;
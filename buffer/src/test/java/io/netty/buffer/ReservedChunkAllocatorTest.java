@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ReservedChunkAllocatorTest {
+
+    private static final int CHUNK_SIZE = 8192 << 11;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxChunksLessThanReservedChunks() {
+        new ReservedChunkAllocator(CHUNK_SIZE, 2, 1, false);
+    }
+
+    @Test
+    public void testReservedChunksAreReused() {
+        CountingChunkAllocator delegate = new CountingChunkAllocator();
+        ReservedChunkAllocator allocator = new ReservedChunkAllocator(delegate, CHUNK_SIZE, 1, 2, true);
+        assertEquals(1, delegate.allocated);
+        assertEquals(1, allocator.numChunks());
+        assertEquals(1, allocator.numFreeChunks());
+
+        ByteBuffer reserved = allocator.allocate(CHUNK_SIZE);
+        assertEquals(0, allocator.numFreeChunks());
+        ByteBuffer other = allocator.allocate(CHUNK_SIZE);
+        assertEquals(2, delegate.allocated);
+        assertEquals(2, allocator.numChunks());
+
+        allocator.free(reserved);
+        assertEquals(1, allocator.numFreeChunks());
+        allocator.free(other);
+        assertEquals(1, delegate.freed);
+        assertEquals(1, allocator.numChunks());
+
+        assertSame(reserved, allocator.allocate(CHUNK_SIZE));
+        assertEquals(2, delegate.allocated);
+    }
+
+    @Test
+    public void testMaxChunks() {
+        ReservedChunkAllocator allocator = new ReservedChunkAllocator(CHUNK_SIZE, 0, 1, false);
+        ByteBuffer memory = allocator.allocate(CHUNK_SIZE);
+        try {
+            allocator.allocate(CHUNK_SIZE);
+            fail();
+        } catch (OutOfMemoryError expected) {
+            // expected
+        }
+        allocator.free(memory);
+        assertEquals(0, allocator.numChunks());
+        allocator.free(allocator.allocate(CHUNK_SIZE));
+    }
+
+    @Test
+    public void testPooledByteBufAllocator() {
+        ReservedChunkAllocator chunkAllocator = new ReservedChunkAllocator(CHUNK_SIZE, 1, 1, true);
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 11, 0, 0, 0, true, 0, false, false, 1, chunkAllocator);
+        ByteBuf buffer = allocator.directBuffer(CHUNK_SIZE);
+        assertEquals(0, chunkAllocator.numFreeChunks());
+        try {
+            allocator.directBuffer(CHUNK_SIZE);
+            fail();
+        } catch (OutOfMemoryError expected) {
+            // expected
+        }
+        buffer.release();
+        assertEquals(1, chunkAllocator.numFreeChunks());
+    }
+
+    private static final class CountingChunkAllocator implements ChunkAllocator {
+        int allocated;
+        int freed;
+
+        @Override
+        public ByteBuffer allocate(int capacity) {
+            allocated++;
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        @Override
+        public void free(ByteBuffer memory) {
+            freed++;
+        }
+    }
+}
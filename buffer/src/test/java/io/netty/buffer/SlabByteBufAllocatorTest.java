@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.internal.PlatformDependent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SlabByteBufAllocatorTest extends ByteBufAllocatorTest {
+
+    @Override
+    protected int defaultMaxCapacity() {
+        return AbstractByteBufAllocator.DEFAULT_MAX_CAPACITY;
+    }
+
+    @Override
+    protected int defaultMaxComponents() {
+        return AbstractByteBufAllocator.DEFAULT_MAX_COMPONENTS;
+    }
+
+    @Override
+    protected SlabByteBufAllocator newAllocator(boolean preferDirect) {
+        return new SlabByteBufAllocator(preferDirect);
+    }
+
+    @Override
+    protected boolean isDirectExpected(boolean preferDirect) {
+        return preferDirect && PlatformDependent.hasUnsafe();
+    }
+
+    @Test
+    public void testBuffersShareSlab() {
+        SlabByteBufAllocator allocator = new SlabByteBufAllocator(false, 64, 16);
+        ByteBuf first = allocator.heapBuffer(3);
+        ByteBuf second = allocator.heapBuffer(16);
+        assertSame(first.array(), second.array());
+        assertEquals(0, first.arrayOffset());
+        // Buffers are aligned to 8 bytes.
+        assertEquals(8, second.arrayOffset());
+        assertEquals(3, first.capacity());
+        assertEquals(16, second.capacity());
+
+        // Released buffers do not let the slab be reused as long as others are in use.
+        first.release();
+        ByteBuf third = allocator.heapBuffer(8);
+        assertEquals(24, third.arrayOffset());
+
+        second.release();
+        third.release();
+        ByteBuf fourth = allocator.heapBuffer(8);
+        assertEquals(0, fourth.arrayOffset());
+        fourth.release();
+    }
+
+    @Test
+    public void testNewSlabWhenFull() {
+        SlabByteBufAllocator allocator = new SlabByteBufAllocator(false, 32, 16);
+        ByteBuf first = allocator.heapBuffer(16);
+        ByteBuf second = allocator.heapBuffer(12);
+        assertSame(first.array(), second.array());
+        ByteBuf third = allocator.heapBuffer(8);
+        assertNotSame(first.array(), third.array());
+        assertEquals(0, third.arrayOffset());
+        first.release();
+        second.release();
+        third.release();
+    }
+
+    @Test
+    public void testLargeBufferNotSlabbed() {
+        SlabByteBufAllocator allocator = new SlabByteBufAllocator(false, 64, 16);
+        ByteBuf buffer = allocator.heapBuffer(17);
+        assertFalse(buffer instanceof SlabHeapByteBuf);
+        buffer.release();
+    }
+
+    @Test
+    public void testLeakDetectionEnabled() {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        try {
+            SlabByteBufAllocator allocator = new SlabByteBufAllocator(false, 64, 16);
+            ByteBuf buffer = allocator.heapBuffer(8);
+            assertTrue(buffer instanceof AdvancedLeakAwareByteBuf);
+            assertTrue(buffer.unwrap() instanceof SlabHeapByteBuf);
+            assertTrue(buffer.release());
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testGrowOutOfSlab() {
+        SlabByteBufAllocator allocator = new SlabByteBufAllocator(false, 64, 16);
+        ByteBuf first = allocator.heapBuffer(4);
+        first.writeInt(42);
+        ByteBuf second = allocator.heapBuffer(4);
+        // Grows within the bytes reserved for alignment.
+        first.writeInt(43);
+        assertSame(second.array(), first.array());
+
+        first.writeLong(44);
+        assertNotSame(second.array(), first.array());
+        assertEquals(0, first.arrayOffset());
+        assertEquals(42, first.readInt());
+        assertEquals(43, first.readInt());
+        assertEquals(44, first.readLong());
+
+        // The grown buffer does not use the slab anymore, so it can be reused.
+        second.release();
+        ByteBuf third = allocator.heapBuffer(4);
+        assertEquals(0, third.arrayOffset());
+        assertTrue(first.release());
+        third.release();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests heap buffers allocated out of a slab of a {@link SlabByteBufAllocator}.
+ */
+public class SlabHeapByteBufTest extends AbstractByteBufTest {
+
+    private static final SlabByteBufAllocator ALLOCATOR = new SlabByteBufAllocator(false, 64 * 1024, 64 * 1024);
+
+    @Override
+    protected ByteBuf newBuffer(int length, int maxCapacity) {
+        return ALLOCATOR.heapBuffer(length, maxCapacity);
+    }
+
+    @Override
+    @Test
+    public void testMaxFastWritableBytes() {
+        ByteBuf buffer = newBuffer(150, 500).writerIndex(100);
+        assertEquals(50, buffer.writableBytes());
+        assertEquals(150, buffer.capacity());
+        assertEquals(500, buffer.maxCapacity());
+        assertEquals(400, buffer.maxWritableBytes());
+        // The bytes reserved in the slab are aligned to 8.
+        assertEquals(52, buffer.maxFastWritableBytes());
+        buffer.release();
+    }
+}
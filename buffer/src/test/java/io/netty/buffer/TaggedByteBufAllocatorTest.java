@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.PlatformDependent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaggedByteBufAllocatorTest extends ByteBufAllocatorTest {
+
+    @Override
+    protected int defaultMaxCapacity() {
+        return AbstractByteBufAllocator.DEFAULT_MAX_CAPACITY;
+    }
+
+    @Override
+    protected int defaultMaxComponents() {
+        return AbstractByteBufAllocator.DEFAULT_MAX_COMPONENTS;
+    }
+
+    @Override
+    protected TaggedByteBufAllocator newAllocator(boolean preferDirect) {
+        return new TaggedByteBufAllocator("test", new UnpooledByteBufAllocator(preferDirect));
+    }
+
+    @Override
+    protected boolean isDirectExpected(boolean preferDirect) {
+        return preferDirect && PlatformDependent.hasUnsafe();
+    }
+
+    @Test
+    public void testMetricSharedByTag() {
+        TaggedByteBufAllocator first = new TaggedByteBufAllocator("shared", UnpooledByteBufAllocator.DEFAULT);
+        TaggedByteBufAllocator second = new TaggedByteBufAllocator("shared", PooledByteBufAllocator.DEFAULT);
+        assertSame(first.metric(), second.metric());
+        assertSame(first.metric(), TaggedByteBufAllocator.metricFor("shared"));
+        assertTrue(TaggedByteBufAllocator.metrics().contains(first.metric()));
+        assertTrue(TaggedByteBufAllocator.dumpStats().contains("tag: shared"));
+    }
+
+    @Test
+    public void testAccountsUntilReleased() {
+        TaggedByteBufAllocator allocator = new TaggedByteBufAllocator(
+                "testAccountsUntilReleased", new UnpooledByteBufAllocator(false));
+        TaggedByteBufAllocatorMetric metric = allocator.metric();
+
+        ByteBuf heap = allocator.heapBuffer(16);
+        ByteBuf direct = allocator.directBuffer(32);
+        assertEquals(16, metric.usedHeapMemory());
+        assertEquals(1, metric.activeHeapBuffers());
+        assertEquals(32, metric.usedDirectMemory());
+        assertEquals(1, metric.activeDirectBuffers());
+
+        heap.retain();
+        assertFalse(heap.release());
+        assertEquals(16, metric.usedHeapMemory());
+        assertTrue(heap.release());
+        assertEquals(0, metric.usedHeapMemory());
+        assertEquals(0, metric.activeHeapBuffers());
+
+        assertTrue(direct.release());
+        assertEquals(0, metric.usedDirectMemory());
+        assertEquals(0, metric.activeDirectBuffers());
+    }
+
+    @Test
+    public void testAccountsReleaseOfRetainedSlice() {
+        TaggedByteBufAllocator allocator = new TaggedByteBufAllocator(
+                "testAccountsReleaseOfRetainedSlice", new PooledByteBufAllocator(true));
+        TaggedByteBufAllocatorMetric metric = allocator.metric();
+
+        ByteBuf buffer = allocator.directBuffer(64);
+        ByteBuf slice = buffer.writeLong(1).retainedSlice();
+        assertFalse(buffer.release());
+        assertEquals(64, metric.usedDirectMemory());
+
+        assertTrue(slice.release());
+        assertEquals(0, metric.usedDirectMemory());
+        assertEquals(0, metric.activeDirectBuffers());
+    }
+
+    @Test
+    public void testAccountsCapacityChanges() {
+        TaggedByteBufAllocator allocator = new TaggedByteBufAllocator(
+                "testAccountsCapacityChanges", new UnpooledByteBufAllocator(false));
+        TaggedByteBufAllocatorMetric metric = allocator.metric();
+
+        ByteBuf buffer = allocator.heapBuffer(16);
+        buffer.writeBytes(new byte[100]);
+        assertTrue(buffer.capacity() >= 100);
+        assertEquals(buffer.capacity(), metric.usedHeapMemory());
+
+        buffer.capacity(200);
+        assertEquals(200, metric.usedHeapMemory());
+
+        ByteBuf duplicate = buffer.duplicate();
+        duplicate.ensureWritable(500);
+        assertEquals(buffer.capacity(), metric.usedHeapMemory());
+
+        buffer.slice(0, 8).writerIndex(0).writeLong(1);
+        assertEquals(buffer.capacity(), metric.usedHeapMemory());
+
+        assertTrue(duplicate.release());
+        assertEquals(0, metric.usedHeapMemory());
+        assertEquals(0, metric.activeHeapBuffers());
+    }
+
+    @Test
+    public void testAccountsGrowthOfUnwrappedBuffer() {
+        TaggedByteBufAllocator allocator = new TaggedByteBufAllocator(
+                "testAccountsGrowthOfUnwrappedBuffer", new UnpooledByteBufAllocator(false));
+        TaggedByteBufAllocatorMetric metric = allocator.metric();
+
+        ByteBuf buffer = allocator.heapBuffer(4);
+        // Grows the unwrapped buffer, so the growth is accounted by the next call.
+        ByteBufUtil.writeUtf8(buffer, new String(new char[1000]).replace('\0', 'a'));
+        assertTrue(buffer.capacity() >= 1000);
+        buffer.writeByte(1);
+        assertEquals(buffer.capacity(), metric.usedHeapMemory());
+
+        ByteBufUtil.writeUtf8(buffer, new String(new char[buffer.writableBytes() + 1]).replace('\0', 'a'));
+        assertTrue(buffer.release());
+        assertEquals(0, metric.usedHeapMemory());
+        assertEquals(0, metric.activeHeapBuffers());
+    }
+
+    @Test
+    public void testCompositeBufferNotAccounted() {
+        TaggedByteBufAllocator allocator = new TaggedByteBufAllocator(
+                "testCompositeBufferNotAccounted", UnpooledByteBufAllocator.DEFAULT);
+        CompositeByteBuf composite = allocator.compositeBuffer();
+        composite.addComponent(true, allocator.heapBuffer(8).writeLong(1));
+        assertEquals(8, allocator.metric().usedHeapMemory());
+        assertTrue(composite.release());
+        assertEquals(0, allocator.metric().usedHeapMemory());
+    }
+}
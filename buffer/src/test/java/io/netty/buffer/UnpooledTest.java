@@ -15,10 +15,13 @@
  */
 package io.netty.buffer;
 
+import io.netty.util.internal.PlatformDependent;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.io.File;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.ScatteringByteChannel;
 import java.util.ArrayList;
@@ -721,4 +724,47 @@ public class UnpooledTest {
             wrappedBuffer.release();
         }
     }
+
+    @Test
+    public void testMappedBuffer() throws Exception {
+        File file = File.createTempFile("netty-test", "tmp");
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            byte[] bytes = new byte[1024];
+            PlatformDependent.threadLocalRandom().nextBytes(bytes);
+            raf.write(bytes);
+
+            ByteBuf mapped = mappedBuffer(raf.getChannel(), 100, 500);
+            assertTrue(mapped.isReadOnly());
+            assertTrue(mapped.isDirect());
+            assertEquals(500, mapped.readableBytes());
+            assertEquals(wrappedBuffer(bytes, 100, 500), mapped);
+
+            ByteBuf composite = wrappedBuffer(copiedBuffer(bytes, 0, 100), mapped.retainedSlice(0, 10));
+            assertEquals(wrappedBuffer(bytes, 0, 110), composite);
+            assertTrue(composite.release());
+            assertEquals(1, mapped.refCnt());
+
+            assertTrue(mapped.release());
+            assertSame(EMPTY_BUFFER, mappedBuffer(raf.getChannel(), 0, 0));
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMappedBufferNegativePosition() throws Exception {
+        File file = File.createTempFile("netty-test", "tmp");
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            mappedBuffer(raf.getChannel(), -1, 1);
+        } finally {
+            raf.close();
+            file.delete();
+        }
+    }
 }
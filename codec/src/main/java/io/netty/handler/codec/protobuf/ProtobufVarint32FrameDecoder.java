@@ -18,6 +18,7 @@ package io.netty.handler.codec.protobuf;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.nano.CodedInputByteBufferNano;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import io.netty.handler.codec.CorruptedFrameException;
@@ -48,74 +49,22 @@ public class ProtobufVarint32FrameDecoder extends ByteToMessageDecoder {
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out)
             throws Exception {
-        in.markReaderIndex();
-        int preIndex = in.readerIndex();
-        int length = readRawVarint32(in);
-        if (preIndex == in.readerIndex()) {
+        int readerIndex = in.readerIndex();
+        int lengthFieldLength = ByteBufUtil.varint32Length(in, readerIndex);
+        if (lengthFieldLength == 0) {
             return;
         }
+        if (lengthFieldLength < 0) {
+            throw new CorruptedFrameException("malformed varint.");
+        }
+        int length = ByteBufUtil.getVarint32(in, readerIndex);
         if (length < 0) {
             throw new CorruptedFrameException("negative length: " + length);
         }
 
-        if (in.readableBytes() < length) {
-            in.resetReaderIndex();
-        } else {
+        if (in.readableBytes() - lengthFieldLength >= length) {
+            in.skipBytes(lengthFieldLength);
             out.add(in.readRetainedSlice(length));
         }
     }
-
-    /**
-     * Reads variable length 32bit int from buffer
-     *
-     * @return decoded int if buffers readerIndex has been forwarded else nonsense value
-     */
-    private static int readRawVarint32(ByteBuf buffer) {
-        if (!buffer.isReadable()) {
-            return 0;
-        }
-        buffer.markReaderIndex();
-        byte tmp = buffer.readByte();
-        if (tmp >= 0) {
-            return tmp;
-        } else {
-            int result = tmp & 127;
-            if (!buffer.isReadable()) {
-                buffer.resetReaderIndex();
-                return 0;
-            }
-            if ((tmp = buffer.readByte()) >= 0) {
-                result |= tmp << 7;
-            } else {
-                result |= (tmp & 127) << 7;
-                if (!buffer.isReadable()) {
-                    buffer.resetReaderIndex();
-                    return 0;
-                }
-                if ((tmp = buffer.readByte()) >= 0) {
-                    result |= tmp << 14;
-                } else {
-                    result |= (tmp & 127) << 14;
-                    if (!buffer.isReadable()) {
-                        buffer.resetReaderIndex();
-                        return 0;
-                    }
-                    if ((tmp = buffer.readByte()) >= 0) {
-                        result |= tmp << 21;
-                    } else {
-                        result |= (tmp & 127) << 21;
-                        if (!buffer.isReadable()) {
-                            buffer.resetReaderIndex();
-                            return 0;
-                        }
-                        result |= (tmp = buffer.readByte()) << 28;
-                        if (tmp < 0) {
-                            throw new CorruptedFrameException("malformed varint.");
-                        }
-                    }
-                }
-            }
-            return result;
-        }
-    }
 }
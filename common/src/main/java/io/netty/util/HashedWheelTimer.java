@@ -20,19 +20,12 @@ import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
-import java.util.concurrent.atomic.AtomicLong;
 
 import static io.netty.util.internal.StringUtil.simpleClassName;
 
@@ -77,41 +70,22 @@ import static io.netty.util.internal.StringUtil.simpleClassName;
  * timer facility'</a>.  More comprehensive slides are located
  * <a href="http://www.cse.wustl.edu/~cdgill/courses/cs6874/TimingWheels.ppt">here</a>.
  */
-public class HashedWheelTimer implements Timer {
+public class HashedWheelTimer extends AbstractWheelTimer {
 
     static final InternalLogger logger =
             InternalLoggerFactory.getInstance(HashedWheelTimer.class);
 
-    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
-    private static final AtomicBoolean WARNED_TOO_MANY_INSTANCES = new AtomicBoolean();
-    private static final int INSTANCE_COUNT_LIMIT = 64;
-    private static final long MILLISECOND_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
     private static final ResourceLeakDetector<HashedWheelTimer> leakDetector = ResourceLeakDetectorFactory.instance()
             .newResourceLeakDetector(HashedWheelTimer.class, 1);
 
-    private static final AtomicIntegerFieldUpdater<HashedWheelTimer> WORKER_STATE_UPDATER =
-            AtomicIntegerFieldUpdater.newUpdater(HashedWheelTimer.class, "workerState");
-
-    private final ResourceLeakTracker<HashedWheelTimer> leak;
-    private final Worker worker = new Worker();
-    private final Thread workerThread;
-
     public static final int WORKER_STATE_INIT = 0;
     public static final int WORKER_STATE_STARTED = 1;
     public static final int WORKER_STATE_SHUTDOWN = 2;
-    @SuppressWarnings({ "unused", "FieldMayBeFinal" })
-    private volatile int workerState; // 0 - init, 1 - started, 2 - shut down
 
-    private final long tickDuration;
     private final HashedWheelBucket[] wheel;
     private final int mask;
-    private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
     private final Queue<HashedWheelTimeout> timeouts = PlatformDependent.newMpscQueue();
     private final Queue<HashedWheelTimeout> cancelledTimeouts = PlatformDependent.newMpscQueue();
-    private final AtomicLong pendingTimeouts = new AtomicLong(0);
-    private final long maxPendingTimeouts;
-
-    private volatile long startTime;
 
     /**
      * Creates a new timer with the default thread factory
@@ -242,69 +216,37 @@ public class HashedWheelTimer implements Timer {
             ThreadFactory threadFactory,
             long tickDuration, TimeUnit unit, int ticksPerWheel, boolean leakDetection,
             long maxPendingTimeouts) {
-
-        ObjectUtil.checkNotNull(threadFactory, "threadFactory");
-        ObjectUtil.checkNotNull(unit, "unit");
-        ObjectUtil.checkPositive(tickDuration, "tickDuration");
-        ObjectUtil.checkPositive(ticksPerWheel, "ticksPerWheel");
+        super(threadFactory, validateTickDuration(tickDuration, unit, ticksPerWheel), leakDetection,
+                maxPendingTimeouts, leakDetector);
 
         // Normalize ticksPerWheel to power of two and initialize the wheel.
         wheel = createWheel(ticksPerWheel);
         mask = wheel.length - 1;
+    }
+
+    private static long validateTickDuration(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        ObjectUtil.checkNotNull(unit, "unit");
+        ObjectUtil.checkPositive(tickDuration, "tickDuration");
+        ObjectUtil.checkPositive(ticksPerWheel, "ticksPerWheel");
+        if (ticksPerWheel > 1073741824) {
+            throw new IllegalArgumentException(
+                    "ticksPerWheel may not be greater than 2^30: " + ticksPerWheel);
+        }
 
         // Convert tickDuration to nanos.
         long duration = unit.toNanos(tickDuration);
+        int wheelLength = normalizeTicksPerWheel(ticksPerWheel);
 
         // Prevent overflow.
-        if (duration >= Long.MAX_VALUE / wheel.length) {
+        if (duration >= Long.MAX_VALUE / wheelLength) {
             throw new IllegalArgumentException(String.format(
                     "tickDuration: %d (expected: 0 < tickDuration in nanos < %d",
-                    tickDuration, Long.MAX_VALUE / wheel.length));
-        }
-
-        if (duration < MILLISECOND_NANOS) {
-            logger.warn("Configured tickDuration {} smaller then {}, using 1ms.",
-                        tickDuration, MILLISECOND_NANOS);
-            this.tickDuration = MILLISECOND_NANOS;
-        } else {
-            this.tickDuration = duration;
-        }
-
-        workerThread = threadFactory.newThread(worker);
-
-        leak = leakDetection || !workerThread.isDaemon() ? leakDetector.track(this) : null;
-
-        this.maxPendingTimeouts = maxPendingTimeouts;
-
-        if (INSTANCE_COUNTER.incrementAndGet() > INSTANCE_COUNT_LIMIT &&
-            WARNED_TOO_MANY_INSTANCES.compareAndSet(false, true)) {
-            reportTooManyInstances();
-        }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            super.finalize();
-        } finally {
-            // This object is going to be GCed and it is assumed the ship has sailed to do a proper shutdown. If
-            // we have not yet shutdown then we want to make sure we decrement the active instance count.
-            if (WORKER_STATE_UPDATER.getAndSet(this, WORKER_STATE_SHUTDOWN) != WORKER_STATE_SHUTDOWN) {
-                INSTANCE_COUNTER.decrementAndGet();
-            }
+                    tickDuration, Long.MAX_VALUE / wheelLength));
         }
+        return duration;
     }
 
     private static HashedWheelBucket[] createWheel(int ticksPerWheel) {
-        if (ticksPerWheel <= 0) {
-            throw new IllegalArgumentException(
-                    "ticksPerWheel must be greater than 0: " + ticksPerWheel);
-        }
-        if (ticksPerWheel > 1073741824) {
-            throw new IllegalArgumentException(
-                    "ticksPerWheel may not be greater than 2^30: " + ticksPerWheel);
-        }
-
         ticksPerWheel = normalizeTicksPerWheel(ticksPerWheel);
         HashedWheelBucket[] wheel = new HashedWheelBucket[ticksPerWheel];
         for (int i = 0; i < wheel.length; i ++) {
@@ -321,263 +263,81 @@ public class HashedWheelTimer implements Timer {
         return normalizedTicksPerWheel;
     }
 
-    /**
-     * Starts the background thread explicitly.  The background thread will
-     * start automatically on demand even if you did not call this method.
-     *
-     * @throws IllegalStateException if this timer has been
-     *                               {@linkplain #stop() stopped} already
-     */
-    public void start() {
-        switch (WORKER_STATE_UPDATER.get(this)) {
-            case WORKER_STATE_INIT:
-                if (WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_INIT, WORKER_STATE_STARTED)) {
-                    workerThread.start();
-                }
-                break;
-            case WORKER_STATE_STARTED:
-                break;
-            case WORKER_STATE_SHUTDOWN:
-                throw new IllegalStateException("cannot be started once stopped");
-            default:
-                throw new Error("Invalid WorkerState");
-        }
-
-        // Wait until the startTime is initialized by the worker.
-        while (startTime == 0) {
-            try {
-                startTimeInitialized.await();
-            } catch (InterruptedException ignore) {
-                // Ignore - it will be ready very soon.
-            }
-        }
-    }
-
-    @Override
-    public Set<Timeout> stop() {
-        if (Thread.currentThread() == workerThread) {
-            throw new IllegalStateException(
-                    HashedWheelTimer.class.getSimpleName() +
-                            ".stop() cannot be called from " +
-                            TimerTask.class.getSimpleName());
-        }
-
-        if (!WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_STARTED, WORKER_STATE_SHUTDOWN)) {
-            // workerState can be 0 or 2 at this moment - let it always be 2.
-            if (WORKER_STATE_UPDATER.getAndSet(this, WORKER_STATE_SHUTDOWN) != WORKER_STATE_SHUTDOWN) {
-                INSTANCE_COUNTER.decrementAndGet();
-                if (leak != null) {
-                    boolean closed = leak.close(this);
-                    assert closed;
-                }
-            }
-
-            return Collections.emptySet();
-        }
-
-        try {
-            boolean interrupted = false;
-            while (workerThread.isAlive()) {
-                workerThread.interrupt();
-                try {
-                    workerThread.join(100);
-                } catch (InterruptedException ignored) {
-                    interrupted = true;
-                }
-            }
-
-            if (interrupted) {
-                Thread.currentThread().interrupt();
-            }
-        } finally {
-            INSTANCE_COUNTER.decrementAndGet();
-            if (leak != null) {
-                boolean closed = leak.close(this);
-                assert closed;
-            }
-        }
-        return worker.unprocessedTimeouts();
-    }
-
     @Override
-    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
-        ObjectUtil.checkNotNull(task, "task");
-        ObjectUtil.checkNotNull(unit, "unit");
-
-        long pendingTimeoutsCount = pendingTimeouts.incrementAndGet();
-
-        if (maxPendingTimeouts > 0 && pendingTimeoutsCount > maxPendingTimeouts) {
-            pendingTimeouts.decrementAndGet();
-            throw new RejectedExecutionException("Number of pending timeouts ("
-                + pendingTimeoutsCount + ") is greater than or equal to maximum allowed pending "
-                + "timeouts (" + maxPendingTimeouts + ")");
-        }
-
-        start();
-
-        // Add the timeout to the timeout queue which will be processed on the next tick.
+    Timeout newTimeout0(TimerTask task, long deadline) {
         // During processing all the queued HashedWheelTimeouts will be added to the correct HashedWheelBucket.
-        long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
-
-        // Guard against overflow.
-        if (delay > 0 && deadline < 0) {
-            deadline = Long.MAX_VALUE;
-        }
         HashedWheelTimeout timeout = new HashedWheelTimeout(this, task, deadline);
         timeouts.add(timeout);
         return timeout;
     }
 
-    /**
-     * Returns the number of pending timeouts of this {@link Timer}.
-     */
-    public long pendingTimeouts() {
-        return pendingTimeouts.get();
+    @Override
+    void expireTimeouts(long tick, long deadline) {
+        int idx = (int) (tick & mask);
+        processCancelledTasks();
+        HashedWheelBucket bucket =
+                wheel[idx];
+        transferTimeoutsToBuckets(tick);
+        bucket.expireTimeouts(deadline);
     }
 
-    private static void reportTooManyInstances() {
-        if (logger.isErrorEnabled()) {
-            String resourceType = simpleClassName(HashedWheelTimer.class);
-            logger.error("You are creating too many " + resourceType + " instances. " +
-                    resourceType + " is a shared resource that must be reused across the JVM," +
-                    "so that only a few instances are created.");
+    @Override
+    void collectUnprocessedTimeouts(Set<Timeout> unprocessedTimeouts) {
+        for (HashedWheelBucket bucket: wheel) {
+            bucket.clearTimeouts(unprocessedTimeouts);
         }
-    }
-
-    private final class Worker implements Runnable {
-        private final Set<Timeout> unprocessedTimeouts = new HashSet<Timeout>();
-
-        private long tick;
-
-        @Override
-        public void run() {
-            // Initialize the startTime.
-            startTime = System.nanoTime();
-            if (startTime == 0) {
-                // We use 0 as an indicator for the uninitialized value here, so make sure it's not 0 when initialized.
-                startTime = 1;
-            }
-
-            // Notify the other threads waiting for the initialization at start().
-            startTimeInitialized.countDown();
-
-            do {
-                final long deadline = waitForNextTick();
-                if (deadline > 0) {
-                    int idx = (int) (tick & mask);
-                    processCancelledTasks();
-                    HashedWheelBucket bucket =
-                            wheel[idx];
-                    transferTimeoutsToBuckets();
-                    bucket.expireTimeouts(deadline);
-                    tick++;
-                }
-            } while (WORKER_STATE_UPDATER.get(HashedWheelTimer.this) == WORKER_STATE_STARTED);
-
-            // Fill the unprocessedTimeouts so we can return them from stop() method.
-            for (HashedWheelBucket bucket: wheel) {
-                bucket.clearTimeouts(unprocessedTimeouts);
+        for (;;) {
+            HashedWheelTimeout timeout = timeouts.poll();
+            if (timeout == null) {
+                break;
             }
-            for (;;) {
-                HashedWheelTimeout timeout = timeouts.poll();
-                if (timeout == null) {
-                    break;
-                }
-                if (!timeout.isCancelled()) {
-                    unprocessedTimeouts.add(timeout);
-                }
+            if (!timeout.isCancelled()) {
+                unprocessedTimeouts.add(timeout);
             }
-            processCancelledTasks();
         }
+        processCancelledTasks();
+    }
 
-        private void transferTimeoutsToBuckets() {
-            // transfer only max. 100000 timeouts per tick to prevent a thread to stale the workerThread when it just
-            // adds new timeouts in a loop.
-            for (int i = 0; i < 100000; i++) {
-                HashedWheelTimeout timeout = timeouts.poll();
-                if (timeout == null) {
-                    // all processed
-                    break;
-                }
-                if (timeout.state() == HashedWheelTimeout.ST_CANCELLED) {
-                    // Was cancelled in the meantime.
-                    continue;
-                }
-
-                long calculated = timeout.deadline / tickDuration;
-                timeout.remainingRounds = (calculated - tick) / wheel.length;
-
-                final long ticks = Math.max(calculated, tick); // Ensure we don't schedule for past.
-                int stopIndex = (int) (ticks & mask);
-
-                HashedWheelBucket bucket = wheel[stopIndex];
-                bucket.addTimeout(timeout);
+    private void transferTimeoutsToBuckets(long tick) {
+        // transfer only max. 100000 timeouts per tick to prevent a thread to stale the workerThread when it just
+        // adds new timeouts in a loop.
+        for (int i = 0; i < 100000; i++) {
+            HashedWheelTimeout timeout = timeouts.poll();
+            if (timeout == null) {
+                // all processed
+                break;
             }
-        }
-
-        private void processCancelledTasks() {
-            for (;;) {
-                HashedWheelTimeout timeout = cancelledTimeouts.poll();
-                if (timeout == null) {
-                    // all processed
-                    break;
-                }
-                try {
-                    timeout.remove();
-                } catch (Throwable t) {
-                    if (logger.isWarnEnabled()) {
-                        logger.warn("An exception was thrown while process a cancellation task", t);
-                    }
-                }
+            if (timeout.state() == HashedWheelTimeout.ST_CANCELLED) {
+                // Was cancelled in the meantime.
+                continue;
             }
-        }
 
-        /**
-         * calculate goal nanoTime from startTime and current tick number,
-         * then wait until that goal has been reached.
-         * @return Long.MIN_VALUE if received a shutdown request,
-         * current time otherwise (with Long.MIN_VALUE changed by +1)
-         */
-        private long waitForNextTick() {
-            long deadline = tickDuration * (tick + 1);
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
 
-            for (;;) {
-                final long currentTime = System.nanoTime() - startTime;
-                long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+            final long ticks = Math.max(calculated, tick); // Ensure we don't schedule for past.
+            int stopIndex = (int) (ticks & mask);
 
-                if (sleepTimeMs <= 0) {
-                    if (currentTime == Long.MIN_VALUE) {
-                        return -Long.MAX_VALUE;
-                    } else {
-                        return currentTime;
-                    }
-                }
-
-                // Check if we run on windows, as if thats the case we will need
-                // to round the sleepTime as workaround for a bug that only affect
-                // the JVM if it runs on windows.
-                //
-                // See https://github.com/netty/netty/issues/356
-                if (PlatformDependent.isWindows()) {
-                    sleepTimeMs = sleepTimeMs / 10 * 10;
-                    if (sleepTimeMs == 0) {
-                        sleepTimeMs = 1;
-                    }
-                }
+            HashedWheelBucket bucket = wheel[stopIndex];
+            bucket.addTimeout(timeout);
+        }
+    }
 
-                try {
-                    Thread.sleep(sleepTimeMs);
-                } catch (InterruptedException ignored) {
-                    if (WORKER_STATE_UPDATER.get(HashedWheelTimer.this) == WORKER_STATE_SHUTDOWN) {
-                        return Long.MIN_VALUE;
-                    }
+    private void processCancelledTasks() {
+        for (;;) {
+            HashedWheelTimeout timeout = cancelledTimeouts.poll();
+            if (timeout == null) {
+                // all processed
+                break;
+            }
+            try {
+                timeout.remove();
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("An exception was thrown while process a cancellation task", t);
                 }
             }
         }
-
-        public Set<Timeout> unprocessedTimeouts() {
-            return Collections.unmodifiableSet(unprocessedTimeouts);
-        }
     }
 
     private static final class HashedWheelTimeout implements Timeout {
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static io.netty.util.internal.StringUtil.simpleClassName;
+
+/**
+ * A {@link Timer} optimized for approximated I/O timeout scheduling with many pending long timeouts.
+ * <p>
+ * Like {@link HashedWheelTimer} this timer executes the scheduled {@link TimerTask}s on ticks of a fixed duration,
+ * but it uses a hierarchy of wheels instead of a single wheel. The first wheel has one bucket per tick, and every
+ * bucket of the next wheel covers a whole turn of the wheel below it. A timeout is put into the lowest wheel which
+ * can hold its deadline, and is moved down to the lower wheels (cascaded) once the tick reaches the range of its
+ * bucket. So each timeout is touched at most once per wheel, independent of how far in the future it expires,
+ * while {@link HashedWheelTimer} inspects every timeout on every turn of its wheel.
+ * <p>
+ * Cancelled timeouts are unlinked from their bucket in constant time, directly if cancelled from a
+ * {@link TimerTask} and on the next tick otherwise.
+ *
+ * <h3>Do not create many instances.</h3>
+ *
+ * {@link HierarchicalWheelTimer} creates a new thread whenever it is instantiated and started. Therefore, you
+ * should make sure to create only one instance and share it across your application.
+ *
+ * <h3>Implementation Details</h3>
+ *
+ * {@link HierarchicalWheelTimer} is based on the hierarchical timing wheels described by
+ * <a href="http://cseweb.ucsd.edu/users/varghese/">George Varghese</a> and Tony Lauck's paper,
+ * <a href="http://cseweb.ucsd.edu/users/varghese/PAPERS/twheel.ps.Z">'Hashed
+ * and Hierarchical Timing Wheels: data structures to efficiently implement a
+ * timer facility'</a>.
+ */
+public class HierarchicalWheelTimer extends AbstractWheelTimer {
+
+    static final InternalLogger logger =
+            InternalLoggerFactory.getInstance(HierarchicalWheelTimer.class);
+
+    private static final ResourceLeakDetector<HierarchicalWheelTimer> leakDetector =
+            ResourceLeakDetectorFactory.instance().newResourceLeakDetector(HierarchicalWheelTimer.class, 1);
+
+    // wheels[0] holds one bucket per tick, every bucket of wheels[n] covers a whole turn of wheels[n - 1].
+    private final HierarchicalWheelBucket[][] wheels;
+    private final int wheelShift;
+    private final int mask;
+    private final Queue<HierarchicalWheelTimeout> timeouts = PlatformDependent.newMpscQueue();
+    private final Queue<HierarchicalWheelTimeout> cancelledTimeouts = PlatformDependent.newMpscQueue();
+
+    /**
+     * Creates a new timer with the default thread factory
+     * ({@link Executors#defaultThreadFactory()}), default tick duration, and
+     * default number of ticks per wheel.
+     */
+    public HierarchicalWheelTimer() {
+        this(Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a new timer with the default thread factory
+     * ({@link Executors#defaultThreadFactory()}) and default number of ticks
+     * per wheel.
+     *
+     * @param tickDuration   the duration between tick
+     * @param unit           the time unit of the {@code tickDuration}
+     * @throws NullPointerException     if {@code unit} is {@code null}
+     * @throws IllegalArgumentException if {@code tickDuration} is &lt;= 0
+     */
+    public HierarchicalWheelTimer(long tickDuration, TimeUnit unit) {
+        this(Executors.defaultThreadFactory(), tickDuration, unit);
+    }
+
+    /**
+     * Creates a new timer with the default tick duration and default number of
+     * ticks per wheel.
+     *
+     * @param threadFactory  a {@link ThreadFactory} that creates a
+     *                       background {@link Thread} which is dedicated to
+     *                       {@link TimerTask} execution.
+     * @throws NullPointerException if {@code threadFactory} is {@code null}
+     */
+    public HierarchicalWheelTimer(ThreadFactory threadFactory) {
+        this(threadFactory, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new timer with the default number of ticks per wheel.
+     *
+     * @param threadFactory  a {@link ThreadFactory} that creates a
+     *                       background {@link Thread} which is dedicated to
+     *                       {@link TimerTask} execution.
+     * @param tickDuration   the duration between tick
+     * @param unit           the time unit of the {@code tickDuration}
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if {@code tickDuration} is &lt;= 0
+     */
+    public HierarchicalWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit) {
+        this(threadFactory, tickDuration, unit, 64, true, -1);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory        a {@link ThreadFactory} that creates a
+     *                             background {@link Thread} which is dedicated to
+     *                             {@link TimerTask} execution.
+     * @param tickDuration         the duration between tick
+     * @param unit                 the time unit of the {@code tickDuration}
+     * @param ticksPerWheel        the size of each wheel, rounded up to a power of two of at least 2
+     * @param leakDetection        {@code true} if leak detection should be enabled always,
+     *                             if false it will only be enabled if the worker thread is not
+     *                             a daemon thread.
+     * @param  maxPendingTimeouts  The maximum number of pending timeouts after which call to
+     *                             {@code newTimeout} will result in
+     *                             {@link java.util.concurrent.RejectedExecutionException}
+     *                             being thrown. No maximum pending timeouts limit is assumed if
+     *                             this value is 0 or negative.
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if either of {@code tickDuration} and {@code ticksPerWheel} is &lt;= 0
+     */
+    public HierarchicalWheelTimer(
+            ThreadFactory threadFactory,
+            long tickDuration, TimeUnit unit, int ticksPerWheel, boolean leakDetection,
+            long maxPendingTimeouts) {
+        super(threadFactory, validateTickDuration(tickDuration, unit, ticksPerWheel), leakDetection,
+                maxPendingTimeouts, leakDetector);
+
+        // Normalize ticksPerWheel to a power of two and create enough wheels to cover all positive ticks.
+        wheelShift = Math.max(1, 32 - Integer.numberOfLeadingZeros(ticksPerWheel - 1));
+        mask = (1 << wheelShift) - 1;
+        wheels = new HierarchicalWheelBucket[(63 + wheelShift - 1) / wheelShift][];
+        for (int i = 0; i < wheels.length; i ++) {
+            HierarchicalWheelBucket[] wheel = new HierarchicalWheelBucket[1 << wheelShift];
+            for (int j = 0; j < wheel.length; j ++) {
+                wheel[j] = new HierarchicalWheelBucket();
+            }
+            wheels[i] = wheel;
+        }
+    }
+
+    private static long validateTickDuration(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        ObjectUtil.checkNotNull(unit, "unit");
+        ObjectUtil.checkPositive(tickDuration, "tickDuration");
+        ObjectUtil.checkPositive(ticksPerWheel, "ticksPerWheel");
+        if (ticksPerWheel > 1 << 16) {
+            throw new IllegalArgumentException(
+                    "ticksPerWheel may not be greater than 2^16: " + ticksPerWheel);
+        }
+        return unit.toNanos(tickDuration);
+    }
+
+    @Override
+    Timeout newTimeout0(TimerTask task, long deadline) {
+        HierarchicalWheelTimeout timeout = new HierarchicalWheelTimeout(this, task, deadline);
+        timeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    void expireTimeouts(long tick, long deadline) {
+        processCancelledTasks();
+        transferTimeoutsToBuckets(tick);
+        cascadeTimeouts(tick);
+        wheels[0][(int) (tick & mask)].expireTimeouts(deadline);
+    }
+
+    @Override
+    void collectUnprocessedTimeouts(Set<Timeout> unprocessedTimeouts) {
+        for (HierarchicalWheelBucket[] wheel: wheels) {
+            for (HierarchicalWheelBucket bucket: wheel) {
+                bucket.clearTimeouts(unprocessedTimeouts);
+            }
+        }
+        for (;;) {
+            HierarchicalWheelTimeout timeout = timeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (!timeout.isCancelled()) {
+                unprocessedTimeouts.add(timeout);
+            }
+        }
+        processCancelledTasks();
+    }
+
+    private void transferTimeoutsToBuckets(long tick) {
+        // transfer only max. 100000 timeouts per tick to prevent a thread to stale the workerThread when it just
+        // adds new timeouts in a loop.
+        for (int i = 0; i < 100000; i++) {
+            HierarchicalWheelTimeout timeout = timeouts.poll();
+            if (timeout == null) {
+                // all processed
+                break;
+            }
+            if (timeout.isCancelled()) {
+                // Was cancelled in the meantime.
+                continue;
+            }
+            addTimeout(timeout, tick);
+        }
+    }
+
+    /**
+     * Moves the timeouts of the buckets whose range starts with the current tick to the lower wheels. The
+     * higher wheels are processed first, as their timeouts may end up in a bucket of a lower wheel which
+     * starts with the current tick as well.
+     */
+    private void cascadeTimeouts(long tick) {
+        for (int level = wheels.length - 1; level > 0; level --) {
+            int shift = level * wheelShift;
+            if ((tick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            HierarchicalWheelBucket bucket = wheels[level][(int) ((tick >>> shift) & mask)];
+            for (;;) {
+                HierarchicalWheelTimeout timeout = bucket.pollTimeout();
+                if (timeout == null) {
+                    break;
+                }
+                if (!timeout.isCancelled()) {
+                    addTimeout(timeout, tick);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the {@link HierarchicalWheelTimeout} to the lowest wheel whose bucket for the deadline of the
+     * timeout is reached before the wheel wraps around, which is the wheel of the highest bit that differs
+     * between the current tick and the tick of the deadline.
+     */
+    private void addTimeout(HierarchicalWheelTimeout timeout, long tick) {
+        // Ensure we don't schedule for past.
+        long ticks = Math.max(timeout.deadline / tickDuration, tick);
+        long diff = ticks ^ tick;
+        int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / wheelShift;
+        wheels[level][(int) ((ticks >>> (level * wheelShift)) & mask)].addTimeout(timeout);
+    }
+
+    private void processCancelledTasks() {
+        for (;;) {
+            HierarchicalWheelTimeout timeout = cancelledTimeouts.poll();
+            if (timeout == null) {
+                // all processed
+                break;
+            }
+            timeout.remove();
+        }
+    }
+
+    private static final class HierarchicalWheelTimeout implements Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<HierarchicalWheelTimeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(HierarchicalWheelTimeout.class, "state");
+
+        private final HierarchicalWheelTimer timer;
+        private final TimerTask task;
+        private final long deadline;
+
+        @SuppressWarnings({"unused", "FieldMayBeFinal", "RedundantFieldInitialization" })
+        private volatile int state = ST_INIT;
+
+        // This will be used to chain timeouts in HierarchicalWheelBucket via a double-linked-list.
+        // As only the workerThread will act on it there is no need for synchronization / volatile.
+        HierarchicalWheelTimeout next;
+        HierarchicalWheelTimeout prev;
+
+        // The bucket to which the timeout was added
+        HierarchicalWheelBucket bucket;
+
+        HierarchicalWheelTimeout(HierarchicalWheelTimer timer, TimerTask task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public Timer timer() {
+            return timer;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            timer.pendingTimeouts.decrementAndGet();
+            if (Thread.currentThread() == timer.workerThread) {
+                // Cancelled from a TimerTask, so we can unlink it right away.
+                remove();
+            } else {
+                // Let the workerThread unlink it on the next tick, which keeps cancellation lock-free.
+                timer.cancelledTimeouts.add(this);
+            }
+            return true;
+        }
+
+        void remove() {
+            HierarchicalWheelBucket bucket = this.bucket;
+            if (bucket != null) {
+                bucket.remove(this);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            timer.pendingTimeouts.decrementAndGet();
+
+            try {
+                task.run(this);
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("An exception was thrown by " + TimerTask.class.getSimpleName() + '.', t);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            final long currentTime = System.nanoTime();
+            long remaining = deadline - currentTime + timer.startTime;
+
+            StringBuilder buf = new StringBuilder(192)
+               .append(simpleClassName(this))
+               .append('(')
+               .append("deadline: ");
+            if (remaining > 0) {
+                buf.append(remaining)
+                   .append(" ns later");
+            } else if (remaining < 0) {
+                buf.append(-remaining)
+                   .append(" ns ago");
+            } else {
+                buf.append("now");
+            }
+
+            if (isCancelled()) {
+                buf.append(", cancelled");
+            }
+
+            return buf.append(", task: ")
+                      .append(task())
+                      .append(')')
+                      .toString();
+        }
+    }
+
+    /**
+     * Bucket that stores HierarchicalWheelTimeouts in a double-linked-list, so they can be removed in the middle
+     * in constant time. The HierarchicalWheelTimeouts act as nodes themself and so no extra object creation is
+     * needed.
+     */
+    private static final class HierarchicalWheelBucket {
+        // Used for the linked-list datastructure
+        private HierarchicalWheelTimeout head;
+        private HierarchicalWheelTimeout tail;
+
+        void addTimeout(HierarchicalWheelTimeout timeout) {
+            assert timeout.bucket == null;
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * Expire all {@link HierarchicalWheelTimeout}s of this bucket, which all must be due at the given
+         * {@code deadline}.
+         */
+        void expireTimeouts(long deadline) {
+            for (;;) {
+                HierarchicalWheelTimeout timeout = pollTimeout();
+                if (timeout == null) {
+                    return;
+                }
+                if (timeout.deadline > deadline) {
+                    // The timeout was placed into a wrong slot. This should never happen.
+                    throw new IllegalStateException(String.format(
+                            "timeout.deadline (%d) > deadline (%d)", timeout.deadline, deadline));
+                }
+                timeout.expire();
+            }
+        }
+
+        void remove(HierarchicalWheelTimeout timeout) {
+            HierarchicalWheelTimeout next = timeout.next;
+            HierarchicalWheelTimeout prev = timeout.prev;
+            if (prev != null) {
+                prev.next = next;
+            } else {
+                head = next;
+            }
+            if (next != null) {
+                next.prev = prev;
+            } else {
+                tail = prev;
+            }
+            // null out prev, next and bucket to allow for GC.
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Clear this bucket and return all not expired / cancelled {@link Timeout}s.
+         */
+        void clearTimeouts(Set<Timeout> set) {
+            for (;;) {
+                HierarchicalWheelTimeout timeout = pollTimeout();
+                if (timeout == null) {
+                    return;
+                }
+                if (timeout.isExpired() || timeout.isCancelled()) {
+                    continue;
+                }
+                set.add(timeout);
+            }
+        }
+
+        HierarchicalWheelTimeout pollTimeout() {
+            HierarchicalWheelTimeout head = this.head;
+            if (head == null) {
+                return null;
+            }
+            HierarchicalWheelTimeout next = head.next;
+            if (next == null) {
+                tail = this.head = null;
+            } else {
+                this.head = next;
+                next.prev = null;
+            }
+
+            // null out prev and next to allow for GC.
+            head.next = null;
+            head.prev = null;
+            head.bucket = null;
+            return head;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package io.netty.util.concurrent;
 import io.netty.util.internal.DefaultPriorityQueue;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PriorityQueue;
+import io.netty.util.internal.SystemPropertyUtil;
 
 import static io.netty.util.concurrent.ScheduledFutureTask.deadlineNanos;
 
@@ -43,10 +44,29 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
        public void run() { } // Do nothing
     };
 
+    private static final long COARSE_TIMER_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(Math.max(1,
+            SystemPropertyUtil.getInt("io.netty.eventexecutor.coarseTimerTickMillis", 10)));
+
     PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue;
 
     long nextTaskId;
 
+    // Holds the tasks scheduled via scheduleCoarse(...). The scheduled task queue only contains a single task for
+    // all of them, which expires the tasks of the wheel at the next tick that has any.
+    private ScheduledTaskWheel coarseTaskWheel;
+    private ScheduledFutureTask<Void> coarseTaskWheelWakeup;
+    private long coarseTaskWheelWakeupTick;
+    private final Runnable expireCoarseTasksTask = new Runnable() {
+        @Override
+        public void run() {
+            coarseTaskWheelWakeup = null;
+            long nextTick = coarseTaskWheel.expire(nanoTime());
+            if (nextTick != -1) {
+                scheduleCoarseTaskWheelWakeup(nextTick);
+            }
+        }
+    };
+
     protected AbstractScheduledEventExecutor() {
     }
 
@@ -97,6 +117,11 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
      */
     protected void cancelScheduledTasks() {
         assert inEventLoop();
+        if (coarseTaskWheel != null) {
+            coarseTaskWheel.cancelAll();
+            // The wakeup task is cancelled together with the other scheduled tasks below.
+            coarseTaskWheelWakeup = null;
+        }
         PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
         if (isNullOrEmpty(scheduledTaskQueue)) {
             return;
@@ -199,6 +224,28 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
         return schedule(new ScheduledFutureTask<V>(this, callable, deadlineNanos(unit.toNanos(delay))));
     }
 
+    /**
+     * Schedules a one-shot task like {@link #schedule(Runnable, long, TimeUnit)}, but for timeouts which do not need
+     * to be precise, like idle or read timeouts of connections. The task runs on the first tick of the
+     * {@code io.netty.eventexecutor.coarseTimerTickMillis} (10ms by default) granularity after the delay passed.
+     * <p>
+     * Such tasks are kept in a timing wheel in which scheduling and cancelling are {@code O(1)}, instead of the
+     * priority queue of the other scheduled tasks, which only holds a single task for the whole wheel.
+     */
+    public ScheduledFuture<?> scheduleCoarse(Runnable command, long delay, TimeUnit unit) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (delay < 0) {
+            delay = 0;
+        }
+        validateScheduled0(delay, unit);
+
+        return schedule(new ScheduledFutureTask<Void>(
+                this,
+                command,
+                deadlineNanos(unit.toNanos(delay))).setCoarse());
+    }
+
     @Override
     public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
         ObjectUtil.checkNotNull(command, "command");
@@ -254,10 +301,36 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
     }
 
     final void scheduleFromEventLoop(final ScheduledFutureTask<?> task) {
+        if (task.isCoarse()) {
+            scheduleCoarseFromEventLoop(task);
+            return;
+        }
         // nextTaskId a long and so there is no chance it will overflow back to 0
         scheduledTaskQueue().add(task.setId(++nextTaskId));
     }
 
+    private void scheduleCoarseFromEventLoop(final ScheduledFutureTask<?> task) {
+        ScheduledTaskWheel wheel = coarseTaskWheel;
+        if (wheel == null) {
+            coarseTaskWheel = wheel = new ScheduledTaskWheel(COARSE_TIMER_TICK_NANOS, nanoTime());
+        }
+        scheduleCoarseTaskWheelWakeup(wheel.add(task));
+    }
+
+    private void scheduleCoarseTaskWheelWakeup(long tick) {
+        ScheduledFutureTask<Void> wakeup = coarseTaskWheelWakeup;
+        if (wakeup != null) {
+            if (coarseTaskWheelWakeupTick <= tick) {
+                return;
+            }
+            wakeup.cancel(false);
+        }
+        coarseTaskWheelWakeupTick = tick;
+        coarseTaskWheelWakeup = wakeup = new ScheduledFutureTask<Void>(
+                this, expireCoarseTasksTask, coarseTaskWheel.tickDeadlineNanos(tick));
+        scheduleFromEventLoop(wakeup);
+    }
+
     private <V> ScheduledFuture<V> schedule(final ScheduledFutureTask<V> task) {
         if (inEventLoop()) {
             scheduleFromEventLoop(task);
@@ -281,13 +354,23 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
     final void removeScheduled(final ScheduledFutureTask<?> task) {
         assert task.isCancelled();
         if (inEventLoop()) {
-            scheduledTaskQueue().removeTyped(task);
+            removeScheduledFromEventLoop(task);
         } else {
             // task will remove itself from scheduled task queue when it runs
             lazyExecute(task);
         }
     }
 
+    final void removeScheduledFromEventLoop(final ScheduledFutureTask<?> task) {
+        if (task.isCoarse()) {
+            if (coarseTaskWheel != null) {
+                coarseTaskWheel.remove(task);
+            }
+        } else {
+            scheduledTaskQueue().removeTyped(task);
+        }
+    }
+
     /**
      * Called from arbitrary non-{@link EventExecutor} threads prior to scheduled task submission.
      * Returns {@code true} if the {@link EventExecutor} thread should be woken immediately to
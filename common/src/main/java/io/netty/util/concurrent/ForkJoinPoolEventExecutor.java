@@ -0,0 +1,396 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.NettyRuntime;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SuppressJava6Requirement;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link EventExecutor} implementation which runs its tasks on a work-stealing {@link ForkJoinPool}, so submitting
+ * tasks does not contend on a single locked queue like {@link UnorderedThreadPoolEventExecutor} does. Like
+ * {@link UnorderedThreadPoolEventExecutor} it makes no guarantees about the ordering of task execution, which makes
+ * it useful to fan out CPU-heavy work that does not need ordering, like decoding.
+ * <p>
+ * Scheduled tasks are kept by a dedicated timer thread until they expire and then submitted to the pool.
+ * <p>
+ * This implementation requires Java 7 or newer.
+ *
+ * <strong>Because it provides no ordering care should be taken when using it!</strong>
+ */
+@UnstableApi
+@SuppressJava6Requirement(reason = "Usage guarded by java version check")
+public final class ForkJoinPoolEventExecutor extends AbstractEventExecutor {
+
+    private static final int ST_STARTED = 1;
+    private static final int ST_SHUTTING_DOWN = 2;
+    private static final int ST_SHUTDOWN = 3;
+    private static final int ST_TERMINATED = 4;
+
+    private static final long SHUTDOWN_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final AtomicInteger poolId = new AtomicInteger();
+
+    private final ForkJoinPool pool;
+    private final EventExecutor timer;
+    private final AtomicInteger state = new AtomicInteger(ST_STARTED);
+    private final Promise<?> terminationFuture = GlobalEventExecutor.INSTANCE.newPromise();
+    private volatile long lastExecutionTime;
+    private long gracefulShutdownStartTime;
+    private long gracefulShutdownQuietPeriod;
+    private long gracefulShutdownTimeout;
+
+    private final Runnable shutdownCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            if (state.get() == ST_SHUTTING_DOWN) {
+                long nanoTime = System.nanoTime();
+                if (nanoTime - gracefulShutdownStartTime >= gracefulShutdownTimeout ||
+                        nanoTime - lastExecutionTime >= gracefulShutdownQuietPeriod && pool.isQuiescent()) {
+                    shutdown0();
+                }
+            }
+            if (state.get() == ST_SHUTDOWN && pool.isTerminated() && timer.isTerminated()) {
+                state.set(ST_TERMINATED);
+                terminationFuture.trySuccess(null);
+                return;
+            }
+            GlobalEventExecutor.INSTANCE.schedule(this, SHUTDOWN_CHECK_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+        }
+    };
+
+    /**
+     * Creates a new instance with a parallelism of {@link NettyRuntime#availableProcessors()}.
+     */
+    public ForkJoinPoolEventExecutor() {
+        this(NettyRuntime.availableProcessors());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param parallelism   the number of threads which run tasks.
+     */
+    public ForkJoinPoolEventExecutor(int parallelism) {
+        ObjectUtil.checkPositive(parallelism, "parallelism");
+        if (PlatformDependent.javaVersion() < 7) {
+            throw new UnsupportedOperationException(
+                    ForkJoinPoolEventExecutor.class.getSimpleName() + " requires Java 7 or newer");
+        }
+        String poolName = DefaultThreadFactory.toPoolName(getClass());
+        // Use the async mode, as the tasks are never joined and should run in the order they were submitted.
+        pool = new ForkJoinPool(parallelism, new WorkerThreadFactory(poolName + '-' + poolId.incrementAndGet() + '-'),
+                null, true);
+        timer = new DefaultEventExecutor(new DefaultThreadFactory(poolName + "Timer"));
+    }
+
+    @Override
+    public EventExecutorGroup parent() {
+        return this;
+    }
+
+    @Override
+    public boolean inEventLoop(Thread thread) {
+        return false;
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return state.get() >= ST_SHUTTING_DOWN;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state.get() >= ST_SHUTDOWN;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return state.get() == ST_TERMINATED;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminationFuture.await(timeout, unit);
+    }
+
+    @Override
+    public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+        ObjectUtil.checkPositiveOrZero(quietPeriod, "quietPeriod");
+        if (timeout < quietPeriod) {
+            throw new IllegalArgumentException(
+                    "timeout: " + timeout + " (expected >= quietPeriod (" + quietPeriod + "))");
+        }
+        ObjectUtil.checkNotNull(unit, "unit");
+
+        if (state.compareAndSet(ST_STARTED, ST_SHUTTING_DOWN)) {
+            gracefulShutdownStartTime = lastExecutionTime = System.nanoTime();
+            gracefulShutdownQuietPeriod = unit.toNanos(quietPeriod);
+            gracefulShutdownTimeout = unit.toNanos(timeout);
+            GlobalEventExecutor.INSTANCE.execute(shutdownCheckTask);
+        }
+        return terminationFuture();
+    }
+
+    @Override
+    public Future<?> terminationFuture() {
+        return terminationFuture;
+    }
+
+    @Override
+    @Deprecated
+    public void shutdown() {
+        for (;;) {
+            int oldState = state.get();
+            if (oldState >= ST_SHUTDOWN) {
+                return;
+            }
+            if (state.compareAndSet(oldState, ST_SHUTTING_DOWN)) {
+                shutdown0();
+                if (oldState == ST_STARTED) {
+                    GlobalEventExecutor.INSTANCE.execute(shutdownCheckTask);
+                }
+                return;
+            }
+        }
+    }
+
+    private void shutdown0() {
+        state.set(ST_SHUTDOWN);
+        pool.shutdown();
+        // Cancels all scheduled tasks which did not expire yet.
+        timer.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        ObjectUtil.checkNotNull(command, "command");
+        int state = this.state.get();
+        if (state != ST_STARTED) {
+            if (state >= ST_SHUTDOWN) {
+                throw new RejectedExecutionException("event executor terminated");
+            }
+            lastExecutionTime = System.nanoTime();
+        }
+        pool.execute(command);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(unit, "unit");
+        return schedule(new ForkJoinScheduledFutureTask<Void>(
+                this, command, deadlineNanos(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        ObjectUtil.checkNotNull(callable, "callable");
+        ObjectUtil.checkNotNull(unit, "unit");
+        return schedule(new ForkJoinScheduledFutureTask<V>(
+                this, callable, deadlineNanos(delay, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (period <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("period: %d (expected: > 0)", period));
+        }
+        return schedule(new ForkJoinScheduledFutureTask<Void>(
+                this, command, deadlineNanos(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (delay <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("delay: %d (expected: > 0)", delay));
+        }
+        return schedule(new ForkJoinScheduledFutureTask<Void>(
+                this, command, deadlineNanos(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    private static long deadlineNanos(long delay, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(Math.max(0, delay));
+    }
+
+    private <V> ScheduledFuture<V> schedule(ForkJoinScheduledFutureTask<V> task) {
+        if (isShutdown()) {
+            throw new RejectedExecutionException("event executor terminated");
+        }
+        task.scheduleOnTimer();
+        return task;
+    }
+
+    private final class ForkJoinScheduledFutureTask<V> extends PromiseTask<V> implements ScheduledFuture<V> {
+        private volatile long deadlineNanos;
+        /* 0 - no repeat, >0 - repeat at fixed rate, <0 - repeat with fixed delay */
+        private final long periodNanos;
+        private volatile ScheduledFuture<?> timerFuture;
+
+        // Submits this task to the pool once it expired.
+        private final Runnable submitTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    execute(ForkJoinScheduledFutureTask.this);
+                } catch (RejectedExecutionException e) {
+                    cancelWithoutTimer();
+                }
+            }
+        };
+
+        // Cancels this task if the timer cancelled the submitTask, which happens when shutting down.
+        private final FutureListener<Object> timerCancelledListener = new FutureListener<Object>() {
+            @Override
+            public void operationComplete(Future<Object> future) {
+                if (future.isCancelled()) {
+                    cancelWithoutTimer();
+                }
+            }
+        };
+
+        ForkJoinScheduledFutureTask(EventExecutor executor, Runnable runnable, long deadlineNanos, long periodNanos) {
+            super(executor, runnable);
+            this.deadlineNanos = deadlineNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        ForkJoinScheduledFutureTask(EventExecutor executor, Callable<V> callable, long deadlineNanos) {
+            super(executor, callable);
+            this.deadlineNanos = deadlineNanos;
+            periodNanos = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        void scheduleOnTimer() {
+            ScheduledFuture<?> future = timer.schedule(
+                    submitTask, deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            timerFuture = future;
+            ((ScheduledFuture<Object>) future).addListener(timerCancelledListener);
+            if (isCancelled()) {
+                // Cancelled concurrently, make sure the timer does not keep this task.
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (periodNanos == 0) {
+                super.run();
+                return;
+            }
+            // check if is done as it may was cancelled
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                runTask();
+            } catch (Throwable cause) {
+                setFailureInternal(cause);
+                return;
+            }
+            if (periodNanos > 0) {
+                deadlineNanos += periodNanos;
+            } else {
+                deadlineNanos = System.nanoTime() - periodNanos;
+            }
+            if (!isCancelled()) {
+                try {
+                    scheduleOnTimer();
+                } catch (RejectedExecutionException e) {
+                    cancelWithoutTimer();
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                ScheduledFuture<?> future = timerFuture;
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+            return cancelled;
+        }
+
+        private void cancelWithoutTimer() {
+            super.cancel(false);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            if (this == o) {
+                return 0;
+            }
+            long d = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+            return d < 0 ? -1 : d > 0 ? 1 : 0;
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger nextId = new AtomicInteger();
+        private final String prefix;
+
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = new WorkerThread(pool);
+            thread.setName(prefix + nextId.incrementAndGet());
+            return thread;
+        }
+    }
+
+    private static final class WorkerThread extends ForkJoinWorkerThread {
+        WorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            try {
+                FastThreadLocal.removeAll();
+            } finally {
+                super.onTermination(exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link EventExecutorChooserFactory} which chooses the less loaded of two randomly picked
+ * {@link SingleThreadEventExecutor}s ("power of two choices"), so long-lived busy channels do not cluster on a few
+ * executors like they may with round-robin.
+ * <p>
+ * The load of an executor is its {@link SingleThreadEventExecutor#busyTimeNanos() busy time} during the last sampling
+ * interval. If that differs by less than 10% between the two executors, the one with fewer
+ * {@link SingleThreadEventExecutor#registeredChannels() registered channels} and
+ * {@link SingleThreadEventExecutor#pendingTasks() pending tasks} is chosen.
+ * <p>
+ * If not all executors are {@link SingleThreadEventExecutor}s, {@link DefaultEventExecutorChooserFactory} is used.
+ */
+@UnstableApi
+public final class LoadAwareEventExecutorChooserFactory implements EventExecutorChooserFactory {
+
+    public static final LoadAwareEventExecutorChooserFactory INSTANCE =
+            new LoadAwareEventExecutorChooserFactory(1, TimeUnit.SECONDS);
+
+    private static final double BUSY_RATIO_THRESHOLD = 0.1;
+
+    private final long sampleIntervalNanos;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param sampleInterval    the interval over which the busy time of the executors is measured.
+     * @param unit              the {@link TimeUnit} of {@code sampleInterval}.
+     */
+    public LoadAwareEventExecutorChooserFactory(long sampleInterval, TimeUnit unit) {
+        ObjectUtil.checkNotNull(unit, "unit");
+        sampleIntervalNanos = unit.toNanos(ObjectUtil.checkPositive(sampleInterval, "sampleInterval"));
+    }
+
+    @Override
+    public EventExecutorChooser newChooser(EventExecutor[] executors) {
+        if (executors.length < 2) {
+            return DefaultEventExecutorChooserFactory.INSTANCE.newChooser(executors);
+        }
+        SingleThreadEventExecutor[] singleThreadExecutors = new SingleThreadEventExecutor[executors.length];
+        for (int i = 0; i < executors.length; i++) {
+            if (!(executors[i] instanceof SingleThreadEventExecutor)) {
+                return DefaultEventExecutorChooserFactory.INSTANCE.newChooser(executors);
+            }
+            singleThreadExecutors[i] = (SingleThreadEventExecutor) executors[i];
+        }
+        return new LoadAwareEventExecutorChooser(singleThreadExecutors, sampleIntervalNanos);
+    }
+
+    private static final class LoadAwareEventExecutorChooser implements EventExecutorChooser {
+        private final SingleThreadEventExecutor[] executors;
+        private final long sampleIntervalNanos;
+        private final AtomicReferenceArray<BusySample> samples;
+
+        LoadAwareEventExecutorChooser(SingleThreadEventExecutor[] executors, long sampleIntervalNanos) {
+            this.executors = executors;
+            this.sampleIntervalNanos = sampleIntervalNanos;
+            samples = new AtomicReferenceArray<BusySample>(executors.length);
+            long nanoTime = System.nanoTime();
+            for (int i = 0; i < executors.length; i++) {
+                samples.set(i, new BusySample(nanoTime, executors[i].busyTimeNanos(), 0));
+            }
+        }
+
+        @Override
+        public EventExecutor next() {
+            Random random = PlatformDependent.threadLocalRandom();
+            int first = random.nextInt(executors.length);
+            int second = random.nextInt(executors.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            return compareLoad(first, second) <= 0 ? executors[first] : executors[second];
+        }
+
+        private int compareLoad(int first, int second) {
+            double busyRatioDiff = busyRatio(first) - busyRatio(second);
+            if (busyRatioDiff < -BUSY_RATIO_THRESHOLD) {
+                return -1;
+            }
+            if (busyRatioDiff > BUSY_RATIO_THRESHOLD) {
+                return 1;
+            }
+            long load = load(executors[first]);
+            long otherLoad = load(executors[second]);
+            return load < otherLoad ? -1 : load > otherLoad ? 1 : 0;
+        }
+
+        private static long load(SingleThreadEventExecutor executor) {
+            return (long) Math.max(0, executor.registeredChannels()) + executor.pendingTasks();
+        }
+
+        private double busyRatio(int index) {
+            BusySample sample = samples.get(index);
+            long nanoTime = System.nanoTime();
+            long elapsedNanos = nanoTime - sample.nanoTime;
+            if (elapsedNanos < sampleIntervalNanos) {
+                return sample.busyRatio;
+            }
+            long busyTimeNanos = executors[index].busyTimeNanos();
+            // The busy time is a best effort, so never let it produce a ratio outside of [0, 1].
+            double busyRatio = Math.min(1, (double) Math.max(0, busyTimeNanos - sample.busyTimeNanos) / elapsedNanos);
+            // Concurrent updates may lose a sample, which is fine as the next call takes a new one.
+            samples.lazySet(index, new BusySample(nanoTime, busyTimeNanos, busyRatio));
+            return busyRatio;
+        }
+    }
+
+    private static final class BusySample {
+        final long nanoTime;
+        final long busyTimeNanos;
+        final double busyRatio;
+
+        BusySample(long nanoTime, long busyTimeNanos, double busyRatio) {
+            this.nanoTime = nanoTime;
+            this.busyTimeNanos = busyTimeNanos;
+            this.busyRatio = busyRatio;
+        }
+    }
+}
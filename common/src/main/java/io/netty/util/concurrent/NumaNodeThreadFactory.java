@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ThreadFactory} which binds every thread it creates to a NUMA node, so that NUMA-aware components like the
+ * {@code PooledByteBufAllocator} can hand it memory of its own node. The nodes are assigned round-robin from the
+ * given list, so an {@link EventExecutorGroup} can either be spread over all nodes or be dedicated to a single one.
+ * <p>
+ * The JDK provides no way to pin a thread to the CPUs of a node, so this is only a hint: the threads must be pinned
+ * by other means (for example {@code numactl} or {@code taskset}) for the hint to be accurate.
+ */
+@UnstableApi
+public final class NumaNodeThreadFactory implements ThreadFactory {
+
+    private static final FastThreadLocal<Integer> NUMA_NODE = new FastThreadLocal<Integer>();
+
+    private final ThreadFactory threadFactory;
+    private final int[] nodes;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threadFactory the {@link ThreadFactory} which creates the threads.
+     * @param nodes the NUMA nodes to which the created threads are bound in round-robin order.
+     */
+    public NumaNodeThreadFactory(ThreadFactory threadFactory, int... nodes) {
+        this.threadFactory = ObjectUtil.checkNotNull(threadFactory, "threadFactory");
+        ObjectUtil.checkNotNull(nodes, "nodes");
+        ObjectUtil.checkPositive(nodes.length, "nodes.length");
+        for (int node : nodes) {
+            ObjectUtil.checkPositiveOrZero(node, "node");
+        }
+        this.nodes = nodes.clone();
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+        final int node = nodes[Math.abs(nextIndex.getAndIncrement() % nodes.length)];
+        return threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                NUMA_NODE.set(node);
+                r.run();
+            }
+        });
+    }
+
+    /**
+     * Return the NUMA node the current thread is bound to, or {@code -1} if it was not created by a
+     * {@link NumaNodeThreadFactory}.
+     */
+    public static int currentNumaNode() {
+        Integer node = NUMA_NODE.getIfExists();
+        return node == null ? -1 : node;
+    }
+}
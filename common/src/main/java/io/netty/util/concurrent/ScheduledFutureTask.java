@@ -50,6 +50,13 @@ final class ScheduledFutureTask<V> extends PromiseTask<V> implements ScheduledFu
 
     private int queueIndex = INDEX_NOT_IN_QUEUE;
 
+    // Set for tasks which are kept in the ScheduledTaskWheel instead of the scheduled task queue, the other fields
+    // link the task into its bucket of the wheel.
+    private boolean coarse;
+    ScheduledTaskWheel.Bucket wheelBucket;
+    ScheduledFutureTask<?> wheelPrev;
+    ScheduledFutureTask<?> wheelNext;
+
     ScheduledFutureTask(AbstractScheduledEventExecutor executor,
             Runnable runnable, long nanoTime) {
 
@@ -89,6 +96,16 @@ final class ScheduledFutureTask<V> extends PromiseTask<V> implements ScheduledFu
         return period;
     }
 
+    ScheduledFutureTask<V> setCoarse() {
+        assert periodNanos == 0;
+        coarse = true;
+        return this;
+    }
+
+    boolean isCoarse() {
+        return coarse;
+    }
+
     ScheduledFutureTask<V> setId(long id) {
         if (this.id == 0L) {
             this.id = id;
@@ -159,7 +176,7 @@ final class ScheduledFutureTask<V> extends PromiseTask<V> implements ScheduledFu
             if (delayNanos() > 0L) {
                 // Not yet expired, need to add or remove from queue
                 if (isCancelled()) {
-                    scheduledExecutor().scheduledTaskQueue().removeTyped(this);
+                    scheduledExecutor().removeScheduledFromEventLoop(this);
                 } else {
                     scheduledExecutor().scheduleFromEventLoop(this);
                 }
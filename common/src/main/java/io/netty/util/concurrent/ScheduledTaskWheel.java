@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel which holds the {@link ScheduledFutureTask}s that were scheduled via
+ * {@link AbstractScheduledEventExecutor#scheduleCoarse(Runnable, long, TimeUnit)}. Adding and removing a task
+ * is {@code O(1)}, and every task is moved at most once per wheel until it expires.
+ * <p>
+ * {@code wheels[0]} holds one bucket per tick, every bucket of {@code wheels[n]} covers a whole turn of
+ * {@code wheels[n - 1]}. A task is put into the wheel of the highest bit that differs between the current tick and
+ * the tick at which it expires, and is cascaded to the lower wheels once the current tick reaches its bucket.
+ * <p>
+ * This class is not thread-safe and must only be used from the {@link EventExecutor} thread.
+ */
+final class ScheduledTaskWheel {
+    private static final int WHEEL_SHIFT = 6;
+    private static final int MASK = (1 << WHEEL_SHIFT) - 1;
+    // Enough wheels to cover all positive ticks.
+    private static final int LEVELS = (63 + WHEEL_SHIFT - 1) / WHEEL_SHIFT;
+
+    private final long tickNanos;
+    // Created lazily, as most executors only use the lowest wheels.
+    private final Bucket[][] wheels = new Bucket[LEVELS][];
+    private final int[] levelSizes = new int[LEVELS];
+    // The last tick which was processed, all tasks in the wheels expire after it.
+    private long currentTick;
+    private int size;
+
+    ScheduledTaskWheel(long tickNanos, long nanoTime) {
+        this.tickNanos = tickNanos;
+        currentTick = nanoTime / tickNanos;
+    }
+
+    /**
+     * Returns the number of tasks in this wheel.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the deadline in nanoseconds of the given tick.
+     */
+    long tickDeadlineNanos(long tick) {
+        return tick * tickNanos;
+    }
+
+    /**
+     * Adds the given task and returns the tick at which it will expire.
+     */
+    long add(ScheduledFutureTask<?> task) {
+        long tick = Math.max(expirationTick(task), currentTick + 1);
+        addTask(task, tick);
+        size ++;
+        return tick;
+    }
+
+    /**
+     * Removes the given task if it is contained in this wheel.
+     */
+    void remove(ScheduledFutureTask<?> task) {
+        Bucket bucket = task.wheelBucket;
+        if (bucket != null) {
+            bucket.remove(task);
+            levelSizes[bucket.level] --;
+            size --;
+        }
+    }
+
+    /**
+     * Runs all tasks which expire until the given {@code nanoTime} and returns the tick at which the next task
+     * expires, or {@code -1} if this wheel is empty.
+     */
+    long expire(long nanoTime) {
+        final long nowTick = nanoTime / tickNanos;
+        for (;;) {
+            long nextTick = nextTick();
+            if (nextTick == -1 || nextTick > nowTick) {
+                break;
+            }
+            currentTick = nextTick;
+            cascade();
+            if (levelSizes[0] == 0) {
+                // The tasks of the bucket that started at this tick all were cascaded to later ticks.
+                continue;
+            }
+
+            Bucket bucket = wheels[0][(int) (nextTick & MASK)];
+            for (;;) {
+                ScheduledFutureTask<?> task = bucket.poll();
+                if (task == null) {
+                    break;
+                }
+                levelSizes[0] --;
+                size --;
+                // Tasks which are cancelled or scheduled from the task will not touch this bucket.
+                task.run();
+            }
+        }
+        if (currentTick < nowTick) {
+            // No task expires until nowTick, so we can move forward without breaking the layout of the wheels.
+            currentTick = nowTick;
+        }
+        return nextTick();
+    }
+
+    /**
+     * Removes all tasks from this wheel and cancels them.
+     */
+    void cancelAll() {
+        for (Bucket[] wheel: wheels) {
+            if (wheel == null) {
+                continue;
+            }
+            for (Bucket bucket: wheel) {
+                for (;;) {
+                    ScheduledFutureTask<?> task = bucket.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    task.cancelWithoutRemove(false);
+                }
+            }
+        }
+        for (int i = 0; i < levelSizes.length; i ++) {
+            levelSizes[i] = 0;
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the first tick at which a bucket must be processed, which is the start of the first non-empty
+     * bucket after the current tick, or {@code -1} if this wheel is empty. Tasks of a wheel are always in the
+     * current turn of the wheel, so the buckets of the lower wheels come first.
+     */
+    private long nextTick() {
+        if (size == 0) {
+            return -1;
+        }
+        for (int level = 0; level < LEVELS; level ++) {
+            if (levelSizes[level] == 0) {
+                continue;
+            }
+            Bucket[] wheel = wheels[level];
+            int shift = level * WHEEL_SHIFT;
+            for (long index = (currentTick >>> shift) + 1; (index & MASK) != 0; index ++) {
+                if (!wheel[(int) (index & MASK)].isEmpty()) {
+                    return index << shift;
+                }
+            }
+        }
+        throw new IllegalStateException("no bucket found for " + size + " tasks");
+    }
+
+    private void cascade() {
+        // Process the higher wheels first, as their tasks may end up in a bucket of a lower wheel that starts
+        // with the current tick as well.
+        for (int level = LEVELS - 1; level > 0; level --) {
+            int shift = level * WHEEL_SHIFT;
+            if (levelSizes[level] == 0 || (currentTick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            Bucket bucket = wheels[level][(int) ((currentTick >>> shift) & MASK)];
+            for (;;) {
+                ScheduledFutureTask<?> task = bucket.poll();
+                if (task == null) {
+                    break;
+                }
+                levelSizes[level] --;
+                addTask(task, Math.max(expirationTick(task), currentTick));
+            }
+        }
+    }
+
+    private void addTask(ScheduledFutureTask<?> task, long tick) {
+        long diff = tick ^ currentTick;
+        int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / WHEEL_SHIFT;
+        Bucket[] wheel = wheels[level];
+        if (wheel == null) {
+            wheel = new Bucket[1 << WHEEL_SHIFT];
+            for (int i = 0; i < wheel.length; i ++) {
+                wheel[i] = new Bucket(level);
+            }
+            wheels[level] = wheel;
+        }
+        wheel[(int) ((tick >>> (level * WHEEL_SHIFT)) & MASK)].add(task);
+        levelSizes[level] ++;
+    }
+
+    private long expirationTick(ScheduledFutureTask<?> task) {
+        // Round up so a task never runs before its deadline.
+        long deadlineNanos = task.deadlineNanos();
+        long tick = deadlineNanos / tickNanos;
+        return deadlineNanos % tickNanos == 0 ? tick : tick + 1;
+    }
+
+    /**
+     * Double-linked-list of {@link ScheduledFutureTask}s, so they can be removed in the middle in constant time.
+     */
+    static final class Bucket {
+        final int level;
+        private ScheduledFutureTask<?> head;
+        private ScheduledFutureTask<?> tail;
+
+        Bucket(int level) {
+            this.level = level;
+        }
+
+        boolean isEmpty() {
+            return head == null;
+        }
+
+        void add(ScheduledFutureTask<?> task) {
+            assert task.wheelBucket == null;
+            task.wheelBucket = this;
+            if (head == null) {
+                head = tail = task;
+            } else {
+                tail.wheelNext = task;
+                task.wheelPrev = tail;
+                tail = task;
+            }
+        }
+
+        void remove(ScheduledFutureTask<?> task) {
+            ScheduledFutureTask<?> next = task.wheelNext;
+            ScheduledFutureTask<?> prev = task.wheelPrev;
+            if (prev != null) {
+                prev.wheelNext = next;
+            } else {
+                head = next;
+            }
+            if (next != null) {
+                next.wheelPrev = prev;
+            } else {
+                tail = prev;
+            }
+            task.wheelPrev = null;
+            task.wheelNext = null;
+            task.wheelBucket = null;
+        }
+
+        ScheduledFutureTask<?> poll() {
+            ScheduledFutureTask<?> task = head;
+            if (task != null) {
+                remove(task);
+            }
+            return task;
+        }
+    }
+}
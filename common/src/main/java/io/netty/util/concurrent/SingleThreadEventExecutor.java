@@ -15,9 +15,6 @@
  */
 package io.netty.util.concurrent;
 
-import io.netty.channel.ChannelPromise;
-import io.netty.channel.ChannelPromise;
-import io.netty.channel.EventLoop;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
@@ -64,6 +61,8 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
     private static final int ST_SHUTDOWN = 4;
     private static final int ST_TERMINATED = 5;
 
+    private static final long IDLE = -1;
+
     private static final Runnable NOOP_TASK = new Runnable() {
         @Override
         public void run() {
@@ -93,6 +92,10 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
     private long lastExecutionTime;
 
+    // Only written by the event loop thread, see busyTimeNanos().
+    private volatile long busyTimeNanos;
+    private volatile long busyStartTime = IDLE;
+
     @SuppressWarnings({ "FieldMayBeFinal", "unused" })
     private volatile int state = ST_NOT_STARTED;
 
@@ -249,6 +252,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
             if (scheduledTask == null) {
                 Runnable task = null;
+                markIdle();
                 try {
                     task = taskQueue.take();
                     if (task == WAKEUP_TASK) {
@@ -256,17 +260,22 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                     }
                 } catch (InterruptedException e) {
                     // Ignore
+                } finally {
+                    markBusy();
                 }
                 return task;
             } else {
                 long delayNanos = scheduledTask.delayNanos();
                 Runnable task = null;
                 if (delayNanos > 0) {
+                    markIdle();
                     try {
                         task = taskQueue.poll(delayNanos, TimeUnit.NANOSECONDS);
                     } catch (InterruptedException e) {
                         // Waken up.
                         return null;
+                    } finally {
+                        markBusy();
                     }
                 }
                 if (task == null) {
@@ -354,6 +363,61 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         return taskQueue.size();
     }
 
+    /**
+     * Returns the number of channels registered with this executor or {@code -1} if operation is not supported.
+     * The returned value is not guaranteed to be exact accurate and should be viewed as a best effort.
+     */
+    @UnstableApi
+    public int registeredChannels() {
+        return -1;
+    }
+
+    /**
+     * Returns the total time in nanoseconds the thread of this executor spent not being blocked waiting for tasks or
+     * I/O, including the time since it was woken up the last time. The returned value is not guaranteed to be exact
+     * accurate and should be viewed as a best effort.
+     */
+    @UnstableApi
+    public long busyTimeNanos() {
+        for (;;) {
+            long busyStartTime = this.busyStartTime;
+            long busyTimeNanos = this.busyTimeNanos;
+            // markIdle() marks the executor as idle before it accounts the busy time, so if busyStartTime did not
+            // change the busy time does not contain the time since busyStartTime yet.
+            if (busyStartTime == this.busyStartTime) {
+                if (busyStartTime != IDLE) {
+                    busyTimeNanos += Math.max(0, ScheduledFutureTask.nanoTime() - busyStartTime);
+                }
+                return busyTimeNanos;
+            }
+        }
+    }
+
+    /**
+     * Must be called by the event loop thread before it blocks waiting for tasks or I/O, so the time it is blocked
+     * is not accounted in {@link #busyTimeNanos()}. {@link #takeTask()} calls it automatically.
+     */
+    @UnstableApi
+    protected final void markIdle() {
+        long busyStartTime = this.busyStartTime;
+        if (busyStartTime != IDLE) {
+            // Mark as idle first, busyTimeNanos() relies on this order.
+            this.busyStartTime = IDLE;
+            busyTimeNanos += ScheduledFutureTask.nanoTime() - busyStartTime;
+        }
+    }
+
+    /**
+     * Must be called by the event loop thread once it is no longer blocked after calling {@link #markIdle()}. Calling
+     * it while not being idle is a no-op.
+     */
+    @UnstableApi
+    protected final void markBusy() {
+        if (busyStartTime == IDLE) {
+            busyStartTime = ScheduledFutureTask.nanoTime();
+        }
+    }
+
     /**
      * Add a task to the task queue, or throws a {@link RejectedExecutionException} if this instance was shutdown
      * before.
@@ -1068,6 +1132,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
                 boolean success = false;
                 updateLastExecutionTime();
+                markBusy();
                 try {
                     /**
                      * this:当前对象，执行run方法，点进去看下
@@ -1078,6 +1143,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                 } catch (Throwable t) {
                     logger.warn("Unexpected exception from an event executor: ", t);
                 } finally {
+                    markIdle();
                     for (;;) {
                         int oldState = state;
                         if (oldState >= ST_SHUTTING_DOWN || STATE_UPDATER.compareAndSet(
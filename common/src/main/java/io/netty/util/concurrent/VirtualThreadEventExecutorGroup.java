@@ -0,0 +1,430 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link EventExecutorGroup} for handlers which need to call blocking code. Every call to {@link #next()} returns a
+ * new {@link OrderedEventExecutor}, so every {@code ChannelHandlerContext} that is added with this group has its
+ * own ordered sequence of tasks. Such a sequence is not pinned to a thread but run on a new thread of the given
+ * {@link Executor} whenever it has tasks, so blocking one sequence never delays the others.
+ * <p>
+ * By default the sequences run on virtual threads when the JDK supports them, and otherwise on new threads of a
+ * {@link ThreadPerTaskExecutor}.
+ * <p>
+ * As the executors are created on demand, {@link #iterator()} returns a snapshot of the executors which were
+ * returned by {@link #next()} and are still referenced.
+ */
+@UnstableApi
+public final class VirtualThreadEventExecutorGroup extends AbstractEventExecutorGroup {
+    private static final InternalLogger logger =
+            InternalLoggerFactory.getInstance(VirtualThreadEventExecutorGroup.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    private static final int ST_STARTED = 1;
+    private static final int ST_SHUTTING_DOWN = 2;
+    private static final int ST_SHUTDOWN = 3;
+    private static final int ST_TERMINATED = 4;
+
+    private static final long SHUTDOWN_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            // Virtual threads may be a preview feature, in which case creating the builder fails.
+            ofVirtual.invoke(null);
+        } catch (Throwable cause) {
+            logger.debug("Virtual threads: unavailable", cause);
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        logger.debug("Virtual threads: {}", OF_VIRTUAL != null ? "available" : "unavailable");
+    }
+
+    private final Executor executor;
+    private final int maxTaskExecutePerRun;
+    private final AtomicInteger state = new AtomicInteger(ST_STARTED);
+    // The number of executors which have tasks queued or are running them.
+    private final AtomicInteger activeExecutors = new AtomicInteger();
+    // The executors returned by next(), guarded by itself. They are dropped once they are not referenced anymore.
+    private final Set<EventExecutor> executors =
+            Collections.newSetFromMap(new WeakHashMap<EventExecutor, Boolean>());
+    private final Promise<?> terminationFuture = new DefaultPromise<Void>(GlobalEventExecutor.INSTANCE);
+    private volatile long lastExecutionTime;
+    private long gracefulShutdownStartTime;
+    private long gracefulShutdownQuietPeriod;
+    private long gracefulShutdownTimeout;
+
+    private final Runnable shutdownCheckTask = new Runnable() {
+        @Override
+        public void run() {
+            if (state.get() == ST_SHUTTING_DOWN) {
+                long nanoTime = System.nanoTime();
+                if (nanoTime - gracefulShutdownStartTime >= gracefulShutdownTimeout ||
+                        activeExecutors.get() == 0 && nanoTime - lastExecutionTime >= gracefulShutdownQuietPeriod) {
+                    state.set(ST_SHUTDOWN);
+                }
+            }
+            if (state.get() == ST_SHUTDOWN && activeExecutors.get() == 0) {
+                state.set(ST_TERMINATED);
+                terminationFuture.trySuccess(null);
+                return;
+            }
+            GlobalEventExecutor.INSTANCE.schedule(this, SHUTDOWN_CHECK_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+        }
+    };
+
+    /**
+     * Creates a new instance which uses virtual threads if possible.
+     */
+    public VirtualThreadEventExecutorGroup() {
+        this(null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor  the {@link Executor} which runs the tasks of the {@link EventExecutor}s, must start a new
+     *                  thread for every task. Use {@code null} to use virtual threads if possible.
+     */
+    public VirtualThreadEventExecutorGroup(Executor executor) {
+        this(executor, 1024);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor              the {@link Executor} which runs the tasks of the {@link EventExecutor}s, must
+     *                              start a new thread for every task. Use {@code null} to use virtual threads if
+     *                              possible.
+     * @param maxTaskExecutePerRun  the maximum number of tasks an {@link EventExecutor} runs before it continues on a
+     *                              new thread.
+     */
+    public VirtualThreadEventExecutorGroup(Executor executor, int maxTaskExecutePerRun) {
+        if (executor == null) {
+            executor = new ThreadPerTaskExecutor(newThreadFactory(DefaultThreadFactory.toPoolName(getClass())));
+        }
+        this.executor = executor;
+        this.maxTaskExecutePerRun = ObjectUtil.checkPositive(maxTaskExecutePerRun, "maxTaskExecutePerRun");
+    }
+
+    /**
+     * Returns {@code true} if the JDK supports virtual threads, which are used by default.
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    private static ThreadFactory newThreadFactory(String poolName) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), poolName + '-', 0L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch (Throwable cause) {
+                logger.debug("Failed to create a virtual thread factory, using platform threads", cause);
+            }
+        }
+        return new DefaultThreadFactory(poolName);
+    }
+
+    @Override
+    public EventExecutor next() {
+        EventExecutor executor = new VirtualThreadOrderedEventExecutor();
+        synchronized (executors) {
+            executors.add(executor);
+        }
+        return executor;
+    }
+
+    @Override
+    public Iterator<EventExecutor> iterator() {
+        synchronized (executors) {
+            return Collections.unmodifiableList(new ArrayList<EventExecutor>(executors)).iterator();
+        }
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return state.get() >= ST_SHUTTING_DOWN;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state.get() >= ST_SHUTDOWN;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return state.get() == ST_TERMINATED;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminationFuture.await(timeout, unit);
+    }
+
+    @Override
+    public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+        ObjectUtil.checkPositiveOrZero(quietPeriod, "quietPeriod");
+        if (timeout < quietPeriod) {
+            throw new IllegalArgumentException(
+                    "timeout: " + timeout + " (expected >= quietPeriod (" + quietPeriod + "))");
+        }
+        ObjectUtil.checkNotNull(unit, "unit");
+
+        if (state.compareAndSet(ST_STARTED, ST_SHUTTING_DOWN)) {
+            gracefulShutdownStartTime = lastExecutionTime = System.nanoTime();
+            gracefulShutdownQuietPeriod = unit.toNanos(quietPeriod);
+            gracefulShutdownTimeout = unit.toNanos(timeout);
+            GlobalEventExecutor.INSTANCE.execute(shutdownCheckTask);
+        }
+        return terminationFuture();
+    }
+
+    @Override
+    public Future<?> terminationFuture() {
+        return terminationFuture;
+    }
+
+    @Override
+    @Deprecated
+    public void shutdown() {
+        for (;;) {
+            int oldState = state.get();
+            if (oldState >= ST_SHUTDOWN) {
+                return;
+            }
+            if (state.compareAndSet(oldState, ST_SHUTDOWN)) {
+                if (oldState == ST_STARTED) {
+                    GlobalEventExecutor.INSTANCE.execute(shutdownCheckTask);
+                }
+                return;
+            }
+        }
+    }
+
+    private final class VirtualThreadOrderedEventExecutor extends AbstractScheduledEventExecutor
+            implements Runnable, OrderedEventExecutor {
+        private final Queue<Runnable> tasks = PlatformDependent.newMpscQueue();
+
+        private static final int NONE = 0;
+        private static final int SUBMITTED = 1;
+        private static final int RUNNING = 2;
+
+        private final AtomicInteger state = new AtomicInteger();
+        // The thread which currently runs the tasks, only set while the state is RUNNING.
+        private volatile Thread thread;
+
+        // Only accessed while running, the state transitions make the changes visible to the next thread.
+        private ScheduledFuture<?> wakeupFuture;
+        private long wakeupDeadlineNanos;
+        private final Runnable wakeupTask = new Runnable() {
+            @Override
+            public void run() {
+                // Once the group is shut down no one runs the scheduled tasks anymore, so do not start a new
+                // thread for them.
+                if (!isShutdown()) {
+                    offerTask(WAKEUP_TASK);
+                }
+            }
+        };
+
+        VirtualThreadOrderedEventExecutor() {
+            super(VirtualThreadEventExecutorGroup.this);
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(SUBMITTED, RUNNING)) {
+                return;
+            }
+            for (;;) {
+                thread = Thread.currentThread();
+                int i = runTasks();
+                if (isShuttingDown()) {
+                    lastExecutionTime = System.nanoTime();
+                }
+                thread = null;
+
+                if (i == maxTaskExecutePerRun) {
+                    try {
+                        state.set(SUBMITTED);
+                        executor.execute(this);
+                        return; // done
+                    } catch (Throwable ignore) {
+                        // Reset the state back to running as we will keep on executing tasks, most likely the
+                        // executor rejected this task and we try again after running more tasks.
+                        state.set(RUNNING);
+                    }
+                } else {
+                    scheduleWakeup();
+                    state.set(NONE);
+                    // Like NonStickyEventExecutorGroup, look at the queue once more as a producer may have added a
+                    // task after the last poll but before the state was set to NONE without submitting this
+                    // executor. If the producer submitted it, it also accounted for it in activeExecutors.
+                    if (tasks.isEmpty() || !state.compareAndSet(NONE, RUNNING)) {
+                        activeExecutors.decrementAndGet();
+                        return; // done
+                    }
+                }
+            }
+        }
+
+        private int runTasks() {
+            if (VirtualThreadEventExecutorGroup.this.isShutdown()) {
+                // No one will run the scheduled tasks anymore.
+                cancelScheduledTasks();
+            } else {
+                long nanoTime = nanoTime();
+                for (;;) {
+                    Runnable scheduledTask = pollScheduledTask(nanoTime);
+                    if (scheduledTask == null) {
+                        break;
+                    }
+                    scheduledTask.run();
+                }
+            }
+            int i = 0;
+            for (; i < maxTaskExecutePerRun; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                safeExecute(task);
+            }
+            return i;
+        }
+
+        private void scheduleWakeup() {
+            ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
+            if (scheduledTask == null) {
+                if (wakeupFuture != null) {
+                    wakeupFuture.cancel(false);
+                    wakeupFuture = null;
+                }
+                return;
+            }
+            long deadlineNanos = scheduledTask.deadlineNanos();
+            if (wakeupFuture != null) {
+                if (!wakeupFuture.isDone() && wakeupDeadlineNanos <= deadlineNanos) {
+                    return;
+                }
+                wakeupFuture.cancel(false);
+            }
+            wakeupDeadlineNanos = deadlineNanos;
+            wakeupFuture = GlobalEventExecutor.INSTANCE.schedule(
+                    wakeupTask, scheduledTask.delayNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean inEventLoop(Thread thread) {
+            return thread == this.thread;
+        }
+
+        @Override
+        public boolean isShuttingDown() {
+            return VirtualThreadEventExecutorGroup.this.isShuttingDown();
+        }
+
+        @Override
+        public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+            return VirtualThreadEventExecutorGroup.this.shutdownGracefully(quietPeriod, timeout, unit);
+        }
+
+        @Override
+        public Future<?> terminationFuture() {
+            return VirtualThreadEventExecutorGroup.this.terminationFuture();
+        }
+
+        @Override
+        @Deprecated
+        public void shutdown() {
+            VirtualThreadEventExecutorGroup.this.shutdown();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return VirtualThreadEventExecutorGroup.this.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return VirtualThreadEventExecutorGroup.this.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return VirtualThreadEventExecutorGroup.this.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            ObjectUtil.checkNotNull(command, "command");
+            if (isShutdown()) {
+                throw new RejectedExecutionException("event executor group terminated");
+            }
+            offerTask(command);
+        }
+
+        private void offerTask(Runnable command) {
+            if (!tasks.offer(command)) {
+                throw new RejectedExecutionException();
+            }
+            if (state.compareAndSet(NONE, SUBMITTED)) {
+                activeExecutors.incrementAndGet();
+                try {
+                    executor.execute(this);
+                } catch (Throwable e) {
+                    // Reset the state so the next task submits this executor again. The MPSC queue does not support
+                    // removal, so the task stays in the queue like the tasks which were added by others in the
+                    // meantime, and they all run once this executor is submitted again.
+                    activeExecutors.decrementAndGet();
+                    state.set(NONE);
+                    PlatformDependent.throwException(e);
+                }
+            }
+        }
+    }
+}
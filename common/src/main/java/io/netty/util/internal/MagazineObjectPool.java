@@ -0,0 +1,252 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.internal;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * {@link ObjectPool} which keeps a magazine of pooled objects per thread. Objects which are recycled by the thread
+ * that created them are pushed onto the magazine directly, while objects which are recycled by other threads are
+ * handed back through a bounded MPSC queue of the magazine that is drained in batches once the magazine runs empty.
+ * Unlike {@link io.netty.util.Recycler} no per-thread queues are kept for the recycling threads, so cross-thread
+ * recycling costs one queue offer and objects become reusable as soon as the owning thread needs them.
+ * <p>
+ * Objects which do not fit into the magazine or its queue are dropped and left to the garbage collector, just like
+ * objects which are recycled after the thread that created them was collected.
+ *
+ * @param <T> the type of the pooled object
+ */
+public final class MagazineObjectPool<T> extends ObjectPool<T> {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(MagazineObjectPool.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final Handle NOOP_HANDLE = new Handle() {
+        @Override
+        public void recycle(Object object) {
+            // NOOP
+        }
+    };
+
+    private static final int DEFAULT_MAX_CAPACITY_PER_THREAD;
+    private static final int DEFAULT_MAX_REMOTE_CAPACITY_PER_THREAD;
+    private static final int INITIAL_CAPACITY = 256;
+
+    static {
+        DEFAULT_MAX_CAPACITY_PER_THREAD = Math.max(0,
+                SystemPropertyUtil.getInt("io.netty.objectPool.magazine.maxCapacityPerThread", 4 * 1024));
+        DEFAULT_MAX_REMOTE_CAPACITY_PER_THREAD = Math.max(2, Math.min(DEFAULT_MAX_CAPACITY_PER_THREAD,
+                SystemPropertyUtil.getInt("io.netty.objectPool.magazine.maxRemoteCapacityPerThread", 1024)));
+
+        if (logger.isDebugEnabled()) {
+            if (DEFAULT_MAX_CAPACITY_PER_THREAD == 0) {
+                logger.debug("-Dio.netty.objectPool.magazine.maxCapacityPerThread: disabled");
+            } else {
+                logger.debug("-Dio.netty.objectPool.magazine.maxCapacityPerThread: {}",
+                        DEFAULT_MAX_CAPACITY_PER_THREAD);
+                logger.debug("-Dio.netty.objectPool.magazine.maxRemoteCapacityPerThread: {}",
+                        DEFAULT_MAX_REMOTE_CAPACITY_PER_THREAD);
+            }
+        }
+    }
+
+    private final ObjectCreator<T> creator;
+    private final int maxCapacityPerThread;
+    private final int maxRemoteCapacityPerThread;
+    private final FastThreadLocal<Magazine<T>> magazines = new FastThreadLocal<Magazine<T>>() {
+        @Override
+        protected Magazine<T> initialValue() {
+            return new Magazine<T>(Thread.currentThread(), maxCapacityPerThread, maxRemoteCapacityPerThread);
+        }
+
+        @Override
+        protected void onRemoval(Magazine<T> magazine) {
+            // The thread is done with the pool, the magazine stays reachable from the handles of the objects that
+            // are still in use, so do not let it keep the pooled objects.
+            magazine.reclaim();
+        }
+    };
+
+    /**
+     * Create a new instance which uses the default capacities.
+     */
+    public MagazineObjectPool(ObjectCreator<T> creator) {
+        this(creator, DEFAULT_MAX_CAPACITY_PER_THREAD, DEFAULT_MAX_REMOTE_CAPACITY_PER_THREAD);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param creator the {@link ObjectCreator} used to create new objects
+     * @param maxCapacityPerThread the maximal number of pooled objects per thread, {@code 0} disables pooling
+     * @param maxRemoteCapacityPerThread the maximal number of objects per thread which may be waiting in its queue
+     *                                   after they were recycled by other threads
+     */
+    public MagazineObjectPool(ObjectCreator<T> creator, int maxCapacityPerThread, int maxRemoteCapacityPerThread) {
+        this.creator = ObjectUtil.checkNotNull(creator, "creator");
+        this.maxCapacityPerThread = ObjectUtil.checkPositiveOrZero(maxCapacityPerThread, "maxCapacityPerThread");
+        // The queue implementations require a capacity of at least 2.
+        this.maxRemoteCapacityPerThread = Math.max(2,
+                ObjectUtil.checkPositiveOrZero(maxRemoteCapacityPerThread, "maxRemoteCapacityPerThread"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T get() {
+        if (maxCapacityPerThread == 0) {
+            return creator.newObject((Handle<T>) NOOP_HANDLE);
+        }
+        Magazine<T> magazine = magazines.get();
+        MagazineHandle<T> handle = magazine.pop();
+        if (handle == null) {
+            handle = new MagazineHandle<T>(magazine);
+            handle.value = creator.newObject(handle);
+        }
+        return handle.value;
+    }
+
+    private static final class MagazineHandle<T> implements Handle<T> {
+        private final Magazine<T> magazine;
+        // Only set to true while the handle is in the magazine or its queue, so it is published to the owner thread
+        // by the queue.
+        boolean recycled;
+        T value;
+
+        MagazineHandle(Magazine<T> magazine) {
+            this.magazine = magazine;
+        }
+
+        @Override
+        public void recycle(T self) {
+            if (self != value) {
+                throw new IllegalArgumentException("object does not belong to handle");
+            }
+            if (recycled) {
+                throw new IllegalStateException("recycled already");
+            }
+            recycled = true;
+            Thread owner = magazine.owner.get();
+            if (Thread.currentThread() == owner) {
+                magazine.push(this);
+            } else if (owner == null) {
+                // The owner thread was collected, so no one will ever reuse the pooled objects.
+                magazine.reclaim();
+            } else {
+                magazine.pushRemote(this);
+            }
+        }
+    }
+
+    private static final class Magazine<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Magazine, Queue> REMOTE_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Magazine.class, Queue.class, "remote");
+
+        // The magazine is reachable from the handles of the objects in use, so it must not keep its thread alive.
+        final WeakReference<Thread> owner;
+        private final int maxCapacity;
+        private final int maxRemoteCapacity;
+        private MagazineHandle<?>[] elements;
+        private int size;
+        // Created lazily as most threads never get objects back from other threads.
+        private volatile Queue<MagazineHandle<T>> remote;
+
+        Magazine(Thread owner, int maxCapacity, int maxRemoteCapacity) {
+            this.owner = new WeakReference<Thread>(owner);
+            this.maxCapacity = maxCapacity;
+            this.maxRemoteCapacity = maxRemoteCapacity;
+            elements = new MagazineHandle[Math.min(INITIAL_CAPACITY, maxCapacity)];
+        }
+
+        @SuppressWarnings("unchecked")
+        MagazineHandle<T> pop() {
+            int size = this.size;
+            if (size == 0) {
+                size = drainRemote();
+                if (size == 0) {
+                    return null;
+                }
+            }
+            size --;
+            MagazineHandle<T> handle = (MagazineHandle<T>) elements[size];
+            elements[size] = null;
+            this.size = size;
+            handle.recycled = false;
+            return handle;
+        }
+
+        void push(MagazineHandle<T> handle) {
+            int size = this.size;
+            if (size == elements.length) {
+                if (size == maxCapacity) {
+                    // Drop the object.
+                    return;
+                }
+                elements = Arrays.copyOf(elements, Math.min(size << 1, maxCapacity));
+            }
+            elements[size] = handle;
+            this.size = size + 1;
+        }
+
+        /**
+         * Drops all pooled objects, called once the owner thread will not use the magazine anymore.
+         */
+        void reclaim() {
+            remote = null;
+            Arrays.fill(elements, 0, size, null);
+            size = 0;
+        }
+
+        void pushRemote(MagazineHandle<T> handle) {
+            Queue<MagazineHandle<T>> remote = this.remote;
+            if (remote == null) {
+                remote = PlatformDependent.newFixedMpscQueue(maxRemoteCapacity);
+                if (!REMOTE_UPDATER.compareAndSet(this, null, remote)) {
+                    remote = this.remote;
+                }
+            }
+            // If the queue is full the object is dropped.
+            remote.offer(handle);
+        }
+
+        private int drainRemote() {
+            Queue<MagazineHandle<T>> remote = this.remote;
+            if (remote == null) {
+                return 0;
+            }
+            int size = 0;
+            while (size < maxCapacity) {
+                MagazineHandle<T> handle = remote.poll();
+                if (handle == null) {
+                    break;
+                }
+                if (size == elements.length) {
+                    elements = Arrays.copyOf(elements, Math.min(size << 1, maxCapacity));
+                }
+                elements[size++] = handle;
+            }
+            this.size = size;
+            return size;
+        }
+    }
+}
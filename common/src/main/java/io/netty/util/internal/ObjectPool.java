@@ -16,6 +16,8 @@
 package io.netty.util.internal;
 
 import io.netty.util.Recycler;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 
 /**
  * Light-weight object pool.
@@ -24,6 +26,21 @@ import io.netty.util.Recycler;
  */
 public abstract class ObjectPool<T> {
 
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(ObjectPool.class);
+
+    private static final boolean USE_MAGAZINES;
+
+    static {
+        String type = SystemPropertyUtil.get("io.netty.objectPool.type", "recycler").trim();
+        if ("magazine".equalsIgnoreCase(type)) {
+            USE_MAGAZINES = true;
+        } else {
+            USE_MAGAZINES = false;
+            type = "recycler";
+        }
+        logger.debug("-Dio.netty.objectPool.type: {}", type);
+    }
+
     ObjectPool() { }
 
     /**
@@ -61,10 +78,15 @@ public abstract class ObjectPool<T> {
 
     /**
      * Creates a new {@link ObjectPool} which will use the given {@link ObjectCreator} to create the {@link Object}
-     * that should be pooled.
+     * that should be pooled. The pool is backed by {@link Recycler} unless {@code -Dio.netty.objectPool.type=magazine}
+     * selects the {@link MagazineObjectPool}.
      */
     public static <T> ObjectPool<T> newPool(final ObjectCreator<T> creator) {
-        return new RecyclerObjectPool<T>(ObjectUtil.checkNotNull(creator, "creator"));
+        ObjectUtil.checkNotNull(creator, "creator");
+        if (USE_MAGAZINES) {
+            return new MagazineObjectPool<T>(creator);
+        }
+        return new RecyclerObjectPool<T>(creator);
     }
 
     private static final class RecyclerObjectPool<T> extends ObjectPool<T> {
@@ -20,10 +20,13 @@ import org.junit.Test;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class AbstractScheduledEventExecutorTest {
     private static final Runnable TEST_RUNNABLE = new Runnable() {
@@ -95,6 +98,75 @@ public class AbstractScheduledEventExecutorTest {
         executor.scheduleWithFixedDelay(TEST_RUNNABLE, 0, -1, TimeUnit.DAYS);
     }
 
+    @Test
+    public void testScheduleCoarse() throws Exception {
+        TestScheduledEventExecutor executor = new TestScheduledEventExecutor();
+        ScheduledFuture<?> future = executor.scheduleCoarse(TEST_RUNNABLE, 1, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> future2 = executor.scheduleCoarse(TEST_RUNNABLE, 2, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> future3 = executor.scheduleCoarse(TEST_RUNNABLE, 1, TimeUnit.DAYS);
+
+        // The coarse tasks share a single task in the scheduled task queue.
+        Runnable task = pollScheduledTask(executor);
+        assertNull(executor.pollScheduledTask(AbstractScheduledEventExecutor.nanoTime()));
+        assertFalse(future.isDone());
+
+        task.run();
+        assertTrue(future.isSuccess());
+        assertTrue(future2.isSuccess());
+        assertFalse(future3.isDone());
+
+        // The task which expires the wheel was rescheduled for the remaining task.
+        assertTrue(executor.nextScheduledTaskNano() > TimeUnit.HOURS.toNanos(1));
+    }
+
+    @Test
+    public void testScheduleCoarseCancel() throws Exception {
+        TestScheduledEventExecutor executor = new TestScheduledEventExecutor();
+        final AtomicBoolean run = new AtomicBoolean();
+        ScheduledFuture<?> future = executor.scheduleCoarse(new Runnable() {
+            @Override
+            public void run() {
+                run.set(true);
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        assertTrue(future.cancel(false));
+
+        pollScheduledTask(executor).run();
+        assertFalse(run.get());
+        assertFalse(executor.hasScheduledTasks());
+    }
+
+    @Test
+    public void testScheduleCoarseEarlierTimeout() throws Exception {
+        TestScheduledEventExecutor executor = new TestScheduledEventExecutor();
+        ScheduledFuture<?> future = executor.scheduleCoarse(TEST_RUNNABLE, 1, TimeUnit.DAYS);
+        ScheduledFuture<?> future2 = executor.scheduleCoarse(TEST_RUNNABLE, 1, TimeUnit.MILLISECONDS);
+
+        // The task which expires the wheel must have been moved to the earlier timeout.
+        pollScheduledTask(executor).run();
+        assertFalse(future.isDone());
+        assertTrue(future2.isSuccess());
+    }
+
+    @Test
+    public void testCancelScheduledTasksCancelsCoarse() {
+        TestScheduledEventExecutor executor = new TestScheduledEventExecutor();
+        ScheduledFuture<?> future = executor.scheduleCoarse(TEST_RUNNABLE, 1, TimeUnit.DAYS);
+        executor.cancelScheduledTasks();
+        assertTrue(future.isCancelled());
+        assertFalse(executor.hasScheduledTasks());
+    }
+
+    private static Runnable pollScheduledTask(AbstractScheduledEventExecutor executor) throws InterruptedException {
+        for (;;) {
+            Runnable task = executor.pollScheduledTask(AbstractScheduledEventExecutor.nanoTime());
+            if (task != null) {
+                return task;
+            }
+            Thread.sleep(5);
+        }
+    }
+
     private static final class TestScheduledEventExecutor extends AbstractScheduledEventExecutor {
         @Override
         public boolean isShuttingDown() {
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ForkJoinPoolEventExecutorTest {
+
+    private ForkJoinPoolEventExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ForkJoinPoolEventExecutor(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test(timeout = 10000)
+    public void testSubmit() throws Exception {
+        Future<Integer> future = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        });
+        assertEquals(42, (int) future.sync().getNow());
+        assertFalse(executor.inEventLoop());
+        assertTrue(executor.next() == executor);
+    }
+
+    @Test(timeout = 10000)
+    public void testFanOut() throws Exception {
+        final int tasks = 100000;
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+        // Tasks submitted from the workers are pushed to their own queues and stolen by the others.
+        for (int i = 0; i < 100; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < tasks / 100; j++) {
+                        executor.execute(task);
+                    }
+                }
+            });
+        }
+        latch.await();
+    }
+
+    @Test(timeout = 10000)
+    public void testSchedule() throws Exception {
+        ScheduledFuture<?> cancelled = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fail("cancelled task should not run");
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        ScheduledFuture<Integer> future = executor.schedule(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        assertTrue(future.getDelay(TimeUnit.MILLISECONDS) > 0);
+        assertTrue(cancelled.compareTo(future) < 0);
+        assertTrue(cancelled.cancel(false));
+
+        assertEquals(42, (int) future.sync().getNow());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(cancelled.isCancelled());
+    }
+
+    @Test(timeout = 10000)
+    public void testScheduleAtFixedRate() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 10, 10, TimeUnit.MILLISECONDS);
+        latch.await();
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test(timeout = 10000)
+    public void testScheduleWithFixedDelayFailure() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (runs.incrementAndGet() == 2) {
+                    throw new IllegalStateException();
+                }
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        future.await();
+        assertTrue(future.cause() instanceof IllegalStateException);
+        assertEquals(2, runs.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScheduleAtFixedRateZeroPeriod() {
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 0, 0, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 10000)
+    public void testShutdownGracefully() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Future<?> future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        ScheduledFuture<?> scheduled = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 1, TimeUnit.DAYS);
+        Future<?> terminationFuture = executor.shutdownGracefully(0, 10, TimeUnit.SECONDS);
+        assertTrue(executor.isShuttingDown());
+
+        // Tasks which are running must complete before the executor shuts down.
+        assertFalse(terminationFuture.await(200));
+        assertFalse(executor.isShutdown());
+        latch.countDown();
+        future.sync();
+        terminationFuture.sync();
+        assertTrue(executor.isTerminated());
+        // Scheduled tasks which did not expire yet are cancelled.
+        assertTrue(scheduled.isCancelled());
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail();
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class LoadAwareEventExecutorChooserFactoryTest {
+
+    @Test(timeout = 10000)
+    public void testAvoidsBusyExecutor() throws Exception {
+        DefaultEventExecutor[] executors = new DefaultEventExecutor[4];
+        for (int i = 0; i < executors.length; i++) {
+            executors[i] = new DefaultEventExecutor();
+            // Start the thread.
+            executors[i].submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).sync();
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            EventExecutorChooserFactory.EventExecutorChooser chooser =
+                    new LoadAwareEventExecutorChooserFactory(50, TimeUnit.MILLISECONDS).newChooser(executors);
+            executors[0].execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            Thread.sleep(200);
+            for (int i = 0; i < 1000; i++) {
+                assertNotSame(executors[0], chooser.next());
+            }
+        } finally {
+            latch.countDown();
+            for (DefaultEventExecutor executor: executors) {
+                executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+            }
+        }
+    }
+
+    @Test
+    public void testAvoidsExecutorWithMoreChannels() {
+        TestEventExecutor[] executors = {
+                new TestEventExecutor(100), new TestEventExecutor(1), new TestEventExecutor(-1)
+        };
+        EventExecutorChooserFactory.EventExecutorChooser chooser =
+                LoadAwareEventExecutorChooserFactory.INSTANCE.newChooser(executors);
+        for (int i = 0; i < 1000; i++) {
+            assertNotSame(executors[0], chooser.next());
+        }
+    }
+
+    @Test
+    public void testSingleExecutor() {
+        TestEventExecutor executor = new TestEventExecutor(0);
+        EventExecutorChooserFactory.EventExecutorChooser chooser =
+                LoadAwareEventExecutorChooserFactory.INSTANCE.newChooser(new EventExecutor[] { executor });
+        assertSame(executor, chooser.next());
+    }
+
+    @Test
+    public void testFallbackToRoundRobin() {
+        EventExecutor[] executors = { new TestEventExecutor(0), ImmediateEventExecutor.INSTANCE };
+        EventExecutorChooserFactory.EventExecutorChooser chooser =
+                LoadAwareEventExecutorChooserFactory.INSTANCE.newChooser(executors);
+        for (int i = 0; i < 10; i++) {
+            assertSame(executors[i % executors.length], chooser.next());
+        }
+    }
+
+    private static final class TestEventExecutor extends SingleThreadEventExecutor {
+        private final int registeredChannels;
+
+        TestEventExecutor(int registeredChannels) {
+            super(null, new DefaultThreadFactory(TestEventExecutor.class), false);
+            this.registeredChannels = registeredChannels;
+        }
+
+        @Override
+        public int registeredChannels() {
+            return registeredChannels;
+        }
+
+        @Override
+        protected void run() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+
+public class NumaNodeThreadFactoryTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoNodes() {
+        new NumaNodeThreadFactory(new DefaultThreadFactory("numa"));
+    }
+
+    @Test
+    public void testUnboundThread() {
+        assertEquals(-1, NumaNodeThreadFactory.currentNumaNode());
+    }
+
+    @Test
+    public void testRoundRobin() throws InterruptedException {
+        ThreadFactory threadFactory = new NumaNodeThreadFactory(new DefaultThreadFactory("numa"), 2, 3);
+        final AtomicIntegerArray nodes = new AtomicIntegerArray(4);
+        Thread[] threads = new Thread[nodes.length()];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    nodes.set(index, NumaNodeThreadFactory.currentNumaNode());
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2, nodes.get(0));
+        assertEquals(3, nodes.get(1));
+        assertEquals(2, nodes.get(2));
+        assertEquals(3, nodes.get(3));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduledTaskWheelTest {
+    // Covers the first five wheels when using a tick of one nanosecond.
+    private static final long MAX_DEADLINE_NANOS = 1 << 25;
+
+    private static DefaultEventExecutor executor;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        executor = new DefaultEventExecutor();
+        // All deadlines used in the tests must be in the past so the tasks run when expired by the wheel.
+        while (ScheduledFutureTask.nanoTime() <= MAX_DEADLINE_NANOS) {
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    public void testExpireInOrder() throws Exception {
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                Random random = new Random(42);
+                ScheduledTaskWheel wheel = new ScheduledTaskWheel(1, 0);
+                final List<Long> expired = new ArrayList<Long>();
+                List<ScheduledFutureTask<?>> tasks = new ArrayList<ScheduledFutureTask<?>>();
+                for (int i = 0; i < 10000; i ++) {
+                    final long deadline = 1 + (long) (random.nextDouble() * MAX_DEADLINE_NANOS);
+                    ScheduledFutureTask<Void> task = new ScheduledFutureTask<Void>(executor, new Runnable() {
+                        @Override
+                        public void run() {
+                            expired.add(deadline);
+                        }
+                    }, deadline).setCoarse();
+                    tasks.add(task);
+                    assertEquals(deadline, wheel.add(task));
+                }
+                assertEquals(tasks.size(), wheel.size());
+
+                long nanoTime = 0;
+                while (wheel.size() > 0) {
+                    nanoTime += random.nextInt(1 << 16);
+                    wheel.expire(nanoTime);
+                    for (ScheduledFutureTask<?> task: tasks) {
+                        assertEquals(task.deadlineNanos() <= nanoTime, task.isDone());
+                    }
+                }
+                assertEquals(tasks.size(), expired.size());
+                for (int i = 1; i < expired.size(); i ++) {
+                    assertTrue(expired.get(i - 1) <= expired.get(i));
+                }
+                return null;
+            }
+        }).sync();
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ScheduledTaskWheel wheel = new ScheduledTaskWheel(1, 0);
+                List<ScheduledFutureTask<?>> tasks = new ArrayList<ScheduledFutureTask<?>>();
+                for (long deadline = 1; deadline < MAX_DEADLINE_NANOS; deadline *= 3) {
+                    ScheduledFutureTask<Void> task = new ScheduledFutureTask<Void>(
+                            executor, new FailingRunnable(), deadline).setCoarse();
+                    tasks.add(task);
+                    wheel.add(task);
+                }
+                for (ScheduledFutureTask<?> task: tasks) {
+                    wheel.remove(task);
+                    // Removing a task twice must be a no-op.
+                    wheel.remove(task);
+                }
+                assertEquals(0, wheel.size());
+                assertEquals(-1, wheel.expire(MAX_DEADLINE_NANOS));
+                return null;
+            }
+        }).sync();
+    }
+
+    @Test
+    public void testAddAfterExpire() throws Exception {
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ScheduledTaskWheel wheel = new ScheduledTaskWheel(10, 0);
+                ScheduledFutureTask<Void> task = new ScheduledFutureTask<Void>(
+                        executor, new FailingRunnable(), 1005).setCoarse();
+                // Deadlines are rounded up to the next tick.
+                assertEquals(101, wheel.add(task));
+                assertEquals(1010, wheel.tickDeadlineNanos(101));
+
+                assertEquals(101, wheel.expire(1000));
+                assertFalse(task.isDone());
+
+                // Tasks which already expired are scheduled for the next tick.
+                ScheduledFutureTask<Void> task2 = new ScheduledFutureTask<Void>(
+                        executor, new FailingRunnable(), 500).setCoarse();
+                assertEquals(101, wheel.add(task2));
+
+                wheel.cancelAll();
+                assertTrue(task.isCancelled());
+                assertTrue(task2.isCancelled());
+                assertEquals(0, wheel.size());
+                return null;
+            }
+        }).sync();
+    }
+
+    private static final class FailingRunnable implements Runnable {
+        @Override
+        public void run() {
+            throw new AssertionError("should not run");
+        }
+    }
+}
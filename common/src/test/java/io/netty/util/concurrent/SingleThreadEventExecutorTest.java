@@ -320,4 +320,30 @@ public class SingleThreadEventExecutorTest {
             assertTrue(f.isSuccess());
         }
     }
+
+    @Test(timeout = 10000)
+    public void testBusyTime() throws Exception {
+        DefaultEventExecutor executor = new DefaultEventExecutor();
+        try {
+            assertEquals(0, executor.busyTimeNanos());
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }).sync();
+            long busyTimeNanos = executor.busyTimeNanos();
+            assertTrue(busyTimeNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+
+            // The time the executor is blocked waiting for tasks is not busy time.
+            Thread.sleep(200);
+            assertTrue(executor.busyTimeNanos() - busyTimeNanos < TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VirtualThreadEventExecutorGroupTest {
+
+    private VirtualThreadEventExecutorGroup group;
+
+    @Before
+    public void setUp() {
+        group = new VirtualThreadEventExecutorGroup(null, 64);
+    }
+
+    @After
+    public void tearDown() {
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    public void testNextReturnsNewOrderedExecutor() {
+        EventExecutor executor = group.next();
+        assertTrue(executor instanceof OrderedEventExecutor);
+        assertTrue(executor != group.next());
+        assertEquals(group, executor.parent());
+        assertFalse(executor.inEventLoop());
+    }
+
+    @Test
+    public void testIteratorReturnsExecutors() {
+        EventExecutor first = group.next();
+        EventExecutor second = group.next();
+        List<EventExecutor> executors = new ArrayList<EventExecutor>();
+        for (Iterator<EventExecutor> i = group.iterator(); i.hasNext();) {
+            executors.add(i.next());
+        }
+        assertEquals(2, executors.size());
+        assertTrue(executors.contains(first));
+        assertTrue(executors.contains(second));
+    }
+
+    @Test(timeout = 10000)
+    public void testExecutorRejectedTask() throws Exception {
+        final AtomicInteger rejected = new AtomicInteger(1);
+        final Executor threads = new ThreadPerTaskExecutor(new DefaultThreadFactory(getClass()));
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        group = new VirtualThreadEventExecutorGroup(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (rejected.getAndDecrement() > 0) {
+                    throw new RejectedExecutionException();
+                }
+                threads.execute(command);
+            }
+        });
+        EventExecutor executor = group.next();
+        final CountDownLatch latch = new CountDownLatch(2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+        try {
+            executor.execute(task);
+            fail();
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+        // The executor must be submitted again once the Executor accepts tasks, the rejected task is still queued.
+        executor.execute(task);
+        latch.await();
+    }
+
+    @Test(timeout = 10000)
+    @SuppressWarnings("deprecation")
+    public void testNoWakeupAfterShutdown() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        final Executor threads = new ThreadPerTaskExecutor(new DefaultThreadFactory(getClass()));
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        group = new VirtualThreadEventExecutorGroup(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executions.incrementAndGet();
+                threads.execute(command);
+            }
+        });
+        group.next().schedule(new Runnable() {
+            @Override
+            public void run() {
+                fail("scheduled task should not run after shutdown");
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        // Let the executor run the scheduling and become idle, so only its wakeup would start it again.
+        Thread.sleep(50);
+        int executed = executions.get();
+        assertEquals(1, executed);
+        group.shutdown();
+        group.terminationFuture().sync();
+        Thread.sleep(300);
+        assertEquals(executed, executions.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testOrdering() throws Throwable {
+        final EventExecutor executor = group.next();
+        final int threads = 4;
+        final int tasks = 10000;
+        final AtomicReference<Throwable> cause = new AtomicReference<Throwable>();
+        final int[] last = new int[threads];
+        final AtomicInteger running = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(threads * tasks);
+        List<Thread> threadList = new ArrayList<Thread>(threads);
+        for (int i = 0; i < threads; i++) {
+            final int producer = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 1; j <= tasks; j++) {
+                        final int id = j;
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    if (running.getAndIncrement() != 0) {
+                                        cause.compareAndSet(null, new AssertionError("Concurrent execution"));
+                                    }
+                                    if (!executor.inEventLoop()) {
+                                        cause.compareAndSet(null, new AssertionError("Not in event loop"));
+                                    }
+                                    // Tasks of the same producer must run in the order they were submitted.
+                                    if (last[producer] != id - 1) {
+                                        cause.compareAndSet(null, new AssertionError("Out of order execution id("
+                                                + id + ") lastId(" + last[producer] + ')'));
+                                    }
+                                    last[producer] = id;
+                                    running.decrementAndGet();
+                                } finally {
+                                    latch.countDown();
+                                }
+                            }
+                        });
+                    }
+                }
+            });
+            threadList.add(thread);
+            thread.start();
+        }
+        for (Thread t: threadList) {
+            t.join();
+        }
+        latch.await();
+        Throwable error = cause.get();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBlockingTaskDoesNotDelayOtherExecutors() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Future<Boolean> blocking = group.next().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return latch.await(10, TimeUnit.SECONDS);
+            }
+        });
+        group.next().submit(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }).sync();
+        assertTrue(blocking.sync().getNow());
+    }
+
+    @Test(timeout = 10000)
+    public void testSchedule() throws Exception {
+        final EventExecutor executor = group.next();
+        final AtomicReference<Boolean> inEventLoop = new AtomicReference<Boolean>();
+        ScheduledFuture<?> cancelled = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fail("cancelled task should not run");
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                inEventLoop.set(executor.inEventLoop());
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel(false));
+        future.sync();
+        assertTrue(inEventLoop.get());
+        assertTrue(cancelled.isCancelled());
+    }
+
+    @Test(timeout = 10000)
+    public void testScheduleAtFixedRate() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        ScheduledFuture<?> future = group.next().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 10, 10, TimeUnit.MILLISECONDS);
+        latch.await();
+        assertTrue(future.cancel(false));
+    }
+
+    @Test(timeout = 10000)
+    public void testShutdownGracefully() throws Exception {
+        EventExecutor executor = group.next();
+        final CountDownLatch latch = new CountDownLatch(1);
+        Future<?> future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Future<?> terminationFuture = group.shutdownGracefully(0, 10, TimeUnit.SECONDS);
+        assertTrue(group.isShuttingDown());
+
+        // Tasks which are running must complete before the group terminates.
+        assertFalse(terminationFuture.await(200));
+        latch.countDown();
+        future.sync();
+        terminationFuture.sync();
+        assertTrue(group.isTerminated());
+        assertTrue(executor.isTerminated());
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail();
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+        assertNull(terminationFuture.cause());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.internal;
+
+import io.netty.util.internal.ObjectPool.Handle;
+import io.netty.util.internal.ObjectPool.ObjectCreator;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MagazineObjectPoolTest {
+
+    private static MagazineObjectPool<HandledObject> newPool(int maxCapacity, int maxRemoteCapacity) {
+        return new MagazineObjectPool<HandledObject>(new ObjectCreator<HandledObject>() {
+            @Override
+            public HandledObject newObject(Handle<HandledObject> handle) {
+                return new HandledObject(handle);
+            }
+        }, maxCapacity, maxRemoteCapacity);
+    }
+
+    @Test
+    public void testRecycle() {
+        MagazineObjectPool<HandledObject> pool = newPool(16, 16);
+        HandledObject object = pool.get();
+        object.recycle();
+        HandledObject object2 = pool.get();
+        assertSame(object, object2);
+        object2.recycle();
+    }
+
+    @Test
+    public void testRecycleDisabled() {
+        MagazineObjectPool<HandledObject> pool = newPool(0, 0);
+        HandledObject object = pool.get();
+        object.recycle();
+        HandledObject object2 = pool.get();
+        assertNotSame(object, object2);
+        object2.recycle();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMultipleRecycle() {
+        MagazineObjectPool<HandledObject> pool = newPool(16, 16);
+        HandledObject object = pool.get();
+        object.recycle();
+        object.recycle();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRecycleWithWrongHandle() {
+        MagazineObjectPool<HandledObject> pool = newPool(16, 16);
+        HandledObject object = pool.get();
+        HandledObject object2 = pool.get();
+        object.handle.recycle(object2);
+    }
+
+    @Test(timeout = 5000L)
+    public void testRecycleAtDifferentThread() throws Exception {
+        final MagazineObjectPool<HandledObject> pool = newPool(16, 16);
+        final HandledObject object = pool.get();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                object.recycle();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        HandledObject object2 = pool.get();
+        assertSame(object, object2);
+        // The object belongs to this thread now, so it can be recycled and reused again.
+        object2.recycle();
+        assertSame(object, pool.get());
+    }
+
+    @Test(timeout = 5000L)
+    public void testThreadCanBeCollectedEvenIfHandledObjectIsReferenced() throws Exception {
+        final MagazineObjectPool<HandledObject> pool = newPool(16, 16);
+        final AtomicBoolean collected = new AtomicBoolean();
+        final AtomicReference<HandledObject> reference = new AtomicReference<HandledObject>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                HandledObject object = pool.get();
+                // Store a reference to the HandledObject to ensure it is not collected when the run method finish.
+                reference.set(object);
+            }
+        }) {
+            @Override
+            protected void finalize() throws Throwable {
+                super.finalize();
+                collected.set(true);
+            }
+        };
+        assertFalse(collected.get());
+        thread.start();
+        thread.join();
+
+        // Null out so it can be collected.
+        thread = null;
+
+        // Loop until the Thread was collected. If we can not collect it the Test will fail due of a timeout.
+        while (!collected.get()) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(50);
+        }
+
+        // Now call recycle after the Thread was collected to ensure this still works...
+        reference.getAndSet(null).recycle();
+    }
+
+    @Test(timeout = 5000L)
+    public void testRemoteCapacity() throws Exception {
+        final MagazineObjectPool<HandledObject> pool = newPool(16, 2);
+        final HandledObject[] objects = new HandledObject[4];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = pool.get();
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (HandledObject object : objects) {
+                    object.recycle();
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // Only the first two objects fit into the queue, the others were dropped.
+        HandledObject first = pool.get();
+        HandledObject second = pool.get();
+        HandledObject third = pool.get();
+        assertSame(objects[1], first);
+        assertSame(objects[0], second);
+        for (HandledObject object : objects) {
+            assertNotSame(object, third);
+        }
+    }
+
+    @Test
+    public void testMaxCapacity() {
+        MagazineObjectPool<HandledObject> pool = newPool(2, 2);
+        HandledObject[] objects = new HandledObject[3];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = pool.get();
+        }
+        for (HandledObject object : objects) {
+            object.recycle();
+        }
+        assertSame(objects[1], pool.get());
+        assertSame(objects[0], pool.get());
+        HandledObject object = pool.get();
+        for (HandledObject o : objects) {
+            assertNotSame(o, object);
+        }
+    }
+
+    static final class HandledObject {
+        final Handle<HandledObject> handle;
+
+        HandledObject(Handle<HandledObject> handle) {
+            this.handle = handle;
+        }
+
+        void recycle() {
+            handle.recycle(this);
+        }
+    }
+}
@@ -25,6 +25,8 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.AbstractScheduledEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.internal.ObjectUtil;
 
 import java.util.concurrent.ScheduledFuture;
@@ -343,7 +345,12 @@ public class IdleStateHandler extends ChannelDuplexHandler {
      * This method is visible for testing!
      */
     ScheduledFuture<?> schedule(ChannelHandlerContext ctx, Runnable task, long delay, TimeUnit unit) {
-        return ctx.executor().schedule(task, delay, unit);
+        EventExecutor executor = ctx.executor();
+        if (executor instanceof AbstractScheduledEventExecutor) {
+            // Idle timeouts do not need to be precise, so keep them out of the scheduled task queue.
+            return ((AbstractScheduledEventExecutor) executor).scheduleCoarse(task, delay, unit);
+        }
+        return executor.schedule(task, delay, unit);
     }
 
     private void destroy() {
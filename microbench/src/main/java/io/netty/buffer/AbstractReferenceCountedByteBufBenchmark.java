@@ -16,6 +16,7 @@
 package io.netty.buffer;
 
 import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.GroupThreads;
@@ -37,15 +38,20 @@ public class AbstractReferenceCountedByteBufBenchmark extends AbstractMicrobench
     public int delay;
 
     AbstractReferenceCountedByteBuf buf;
+    AbstractReferenceCountedByteBuf ownedBuf;
 
     @Setup
     public void setUp() {
         buf = (AbstractReferenceCountedByteBuf) Unpooled.buffer(1);
+        // ImmediateEventExecutor is in the event loop of every thread, so the benchmark thread is the owner.
+        ownedBuf = (AbstractReferenceCountedByteBuf) Unpooled.buffer(1);
+        ownedBuf.setOwner(ImmediateEventExecutor.INSTANCE);
     }
 
     @TearDown
     public void tearDown() {
         buf.release();
+        ownedBuf.release();
     }
 
     @Benchmark
@@ -66,4 +72,13 @@ public class AbstractReferenceCountedByteBufBenchmark extends AbstractMicrobench
         Blackhole.consumeCPU(delay);
         return buf.release();
     }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean retainReleaseOwnerThread() {
+        ownedBuf.retain();
+        Blackhole.consumeCPU(delay);
+        return ownedBuf.release();
+    }
 }
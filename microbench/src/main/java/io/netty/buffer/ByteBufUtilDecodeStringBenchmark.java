@@ -23,6 +23,7 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +41,30 @@ public class ByteBufUtilDecodeStringBenchmark extends AbstractMicrobenchmark {
                 return buffer;
             }
         },
+        POOLED_DIRECT {
+            @Override
+            ByteBuf newBuffer(byte[] bytes, int length) {
+                ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer(length);
+                buffer.writeBytes(bytes, 0, length);
+                return buffer;
+            }
+        },
+        READ_ONLY_DIRECT {
+            @Override
+            ByteBuf newBuffer(byte[] bytes, int length) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+                buffer.put(bytes, 0, length).flip();
+                return Unpooled.wrappedBuffer(buffer.asReadOnlyBuffer());
+            }
+        },
+        POOLED_HEAP {
+            @Override
+            ByteBuf newBuffer(byte[] bytes, int length) {
+                ByteBuf buffer = PooledByteBufAllocator.DEFAULT.heapBuffer(length);
+                buffer.writeBytes(bytes, 0, length);
+                return buffer;
+            }
+        },
         HEAP_OFFSET {
             @Override
             ByteBuf newBuffer(byte[] bytes, int length) {
@@ -75,7 +100,7 @@ public class ByteBufUtilDecodeStringBenchmark extends AbstractMicrobenchmark {
     @Param({ "8", "64", "1024", "10240", "1073741824" })
     public int size;
 
-    @Param({ "US-ASCII", "UTF-8" })
+    @Param({ "US-ASCII", "ISO-8859-1", "UTF-8" })
     public String charsetName;
 
     @Param
@@ -27,6 +27,7 @@ import io.netty.microbench.util.AbstractMicrobenchmark;
 import static io.netty.buffer.Unpooled.EMPTY_BUFFER;
 import static io.netty.buffer.Unpooled.wrappedBuffer;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -60,11 +61,13 @@ public class CompositeByteBufRandomAccessBenchmark extends AbstractMicrobenchmar
 
     private ByteBuf buffer;
     private Random random;
+    private ByteBuffer[] scatterBuffers;
 
     @Setup
     public void setup() {
         buffer = bufferType.newBuffer(size);
         random = new Random(0L);
+        scatterBuffers = new ByteBuffer[] { ByteBuffer.allocate(16), ByteBuffer.allocate(16) };
     }
 
     @TearDown
@@ -84,6 +87,22 @@ public class CompositeByteBufRandomAccessBenchmark extends AbstractMicrobenchmar
         return buffer.setLong(i, 1);
     }
 
+    @Benchmark
+    public byte getByte() {
+        return buffer.getByte(random.nextInt(size));
+    }
+
+    @Benchmark
+    public ByteBuffer[] getBytesScatter() {
+        ByteBuffer[] dsts = scatterBuffers;
+        for (ByteBuffer dst : dsts) {
+            dst.clear();
+        }
+        int i = random.nextInt(size - 32);
+        ((CompositeByteBuf) buffer).getBytes(i, dsts);
+        return dsts;
+    }
+
     private static ByteBuf newBufferSmallChunks(int length) {
 
         List<ByteBuf> buffers = new ArrayList<ByteBuf>(((length + 1) / 45) * 19);
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how tiny and small allocations that miss the thread cache scale with the number of threads sharing a
+ * few arenas, depending on the number of subpage pool stripes per arena.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PooledByteBufAllocatorConcurrentBenchmark extends AbstractMicrobenchmark {
+
+    @Param({ "00064", "00256", "01024", "04096" })
+    public int size;
+
+    @Param({ "1", "4", "16" })
+    public int subpageStripes;
+
+    private ByteBufAllocator pooledAllocator;
+
+    @Setup
+    public void setup() {
+        // No thread caches so every allocation goes to one of the two arenas.
+        pooledAllocator = new PooledByteBufAllocator(true, 0, 2, 8192, 11, 0, 0, 0, true, 0,
+                PooledByteBufAllocator.defaultUseSizeClasses(), false, subpageStripes);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean allocateReleasePooled8Threads() {
+        return pooledAllocator.directBuffer(size).release();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean allocateReleasePooled32Threads() {
+        return pooledAllocator.directBuffer(size).release();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean allocateReleasePooled64Threads() {
+        return pooledAllocator.directBuffer(size).release();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.internal;
+
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.Recycler;
+import io.netty.util.internal.MagazineObjectPool;
+import io.netty.util.internal.ObjectPool;
+import io.netty.util.internal.ObjectPool.Handle;
+import io.netty.util.internal.ObjectPool.ObjectCreator;
+import io.netty.util.internal.PlatformDependent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+
+/**
+ * Compares the {@link Recycler} based {@link ObjectPool} with the {@link MagazineObjectPool} when objects are
+ * recycled by the thread that got them and when they are recycled by another thread.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ObjectPoolBenchmark extends AbstractMicrobenchmark {
+
+    public enum PoolType {
+        RECYCLER,
+        MAGAZINE
+    }
+
+    @Param
+    public PoolType poolType;
+
+    private Recycler<PooledObject> recycler;
+    private ObjectPool<PooledObject> magazinePool;
+    private Queue<PooledObject> handOff;
+
+    @Setup
+    public void setup() {
+        switch (poolType) {
+        case RECYCLER:
+            // Use the Recycler directly as ObjectPool.newPool(...) picks the type via a system property.
+            recycler = new Recycler<PooledObject>() {
+                @Override
+                protected PooledObject newObject(Recycler.Handle<PooledObject> handle) {
+                    return new PooledObject(handle);
+                }
+            };
+            break;
+        case MAGAZINE:
+            magazinePool = new MagazineObjectPool<PooledObject>(new ObjectCreator<PooledObject>() {
+                @Override
+                public PooledObject newObject(Handle<PooledObject> handle) {
+                    return new PooledObject(handle);
+                }
+            });
+            break;
+        default:
+            throw new Error();
+        }
+        handOff = PlatformDependent.newFixedMpscQueue(1024);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public PooledObject sameThread() {
+        PooledObject object = get();
+        object.recycle();
+        return object;
+    }
+
+    @Benchmark
+    @Group("crossThread")
+    @GroupThreads(1)
+    public PooledObject allocate() {
+        PooledObject object = get();
+        if (!handOff.offer(object)) {
+            object.recycle();
+        }
+        return object;
+    }
+
+    @Benchmark
+    @Group("crossThread")
+    @GroupThreads(1)
+    public PooledObject release() {
+        PooledObject object = handOff.poll();
+        if (object != null) {
+            object.recycle();
+        }
+        return object;
+    }
+
+    private PooledObject get() {
+        return recycler != null ? recycler.get() : magazinePool.get();
+    }
+
+    static final class PooledObject {
+        private final Handle<PooledObject> handle;
+
+        PooledObject(Handle<PooledObject> handle) {
+            this.handle = handle;
+        }
+
+        void recycle() {
+            handle.recycle(this);
+        }
+    }
+}
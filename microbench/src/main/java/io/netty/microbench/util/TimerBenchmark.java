@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.util;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.HierarchicalWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link HashedWheelTimer} and {@link HierarchicalWheelTimer} while a large number of long timeouts, like
+ * idle timeouts of connections, is pending. The worker thread of the timer competes with the benchmark threads for
+ * CPU time on every tick, so the cost of a tick shows up in the throughput of scheduling and cancelling timeouts.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Threads(2)
+public class TimerBenchmark extends AbstractMicrobenchmark {
+
+    private static final TimerTask NOOP_TASK = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+            // NOOP
+        }
+    };
+
+    public enum TimerType {
+        HASHED,
+        HIERARCHICAL
+    }
+
+    @Param
+    public TimerType timerType;
+
+    @Param({ "1000000" })
+    public int pendingTimeouts;
+
+    private Timer timer;
+
+    @Setup
+    public void setup() {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("timer", true);
+        switch (timerType) {
+        case HASHED:
+            timer = new HashedWheelTimer(threadFactory, 1, TimeUnit.MILLISECONDS, 512, false, -1);
+            break;
+        case HIERARCHICAL:
+            timer = new HierarchicalWheelTimer(threadFactory, 1, TimeUnit.MILLISECONDS, 64, false, -1);
+            break;
+        default:
+            throw new Error();
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < pendingTimeouts; i++) {
+            // Spread the timeouts over 10 to 60 minutes.
+            timer.newTimeout(NOOP_TASK, TimeUnit.MINUTES.toMillis(10) + random.nextInt(50 * 60 * 1000),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        timer.stop();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        return timer.newTimeout(NOOP_TASK, 30, TimeUnit.SECONDS).cancel();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.unix.tests;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.unix.Buffer;
+import io.netty.channel.unix.HugePageChunkAllocator;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests {@link HugePageChunkAllocator}, subclasses must make sure the native library is loaded.
+ */
+public abstract class HugePageChunkAllocatorTest {
+
+    private static final int HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+
+    @Test
+    public void testTransparentHugePages() {
+        testAllocateFree(new HugePageChunkAllocator(false));
+    }
+
+    @Test
+    public void testHugeTlb() throws IOException {
+        // Only use MAP_HUGETLB if there are reserved 2 MiB huge pages, otherwise it just falls back to transparent
+        // huge pages.
+        assumeTrue(meminfo("Hugepagesize:") == HUGE_PAGE_SIZE / 1024);
+        assumeTrue(meminfo("HugePages_Free:") >= 2);
+        testAllocateFree(new HugePageChunkAllocator(true));
+    }
+
+    private static void testAllocateFree(HugePageChunkAllocator allocator) {
+        ByteBuffer memory = allocator.allocate(2 * HUGE_PAGE_SIZE);
+        try {
+            assertTrue(memory.isDirect());
+            assertEquals(2 * HUGE_PAGE_SIZE, memory.capacity());
+            assertEquals(0, Buffer.memoryAddress(memory) & HUGE_PAGE_SIZE - 1);
+            memory.putLong(0, 1);
+            memory.putLong(memory.capacity() - 8, 2);
+            assertEquals(1, memory.getLong(0));
+            assertEquals(2, memory.getLong(memory.capacity() - 8));
+        } finally {
+            allocator.free(memory);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChunkSizeNotMultipleOfHugePageSize() {
+        // 8192 << 7 is 1 MiB.
+        new HugePageChunkAllocator(false).allocate(8192 << 7);
+    }
+
+    @Test
+    public void testPooledByteBufAllocator() {
+        HugePageChunkAllocator chunkAllocator = new HugePageChunkAllocator(false);
+        // 8192 << 8 is 2 MiB.
+        assertEquals(8192 << 8, chunkAllocator.validateChunkSize(8192 << 8));
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 8, 0, 0, 0, true, 0, false, false, 1, chunkAllocator);
+        ByteBuf buffer = allocator.directBuffer(HUGE_PAGE_SIZE);
+        try {
+            buffer.writeZero(HUGE_PAGE_SIZE);
+            assertEquals(0, Buffer.memoryAddress(buffer.nioBuffer()) & HUGE_PAGE_SIZE - 1);
+        } finally {
+            // The chunk is unmapped as soon as it is empty again.
+            assertTrue(buffer.release());
+        }
+    }
+
+    // Returns the value of the given field of /proc/meminfo, or -1 if it can not be read.
+    private static long meminfo(String field) throws IOException {
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new FileReader("/proc/meminfo"));
+        } catch (IOException e) {
+            return -1;
+        }
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(field)) {
+                    return Long.parseLong(line.substring(field.length()).trim().split(" ")[0]);
+                }
+            }
+            return -1;
+        } finally {
+            reader.close();
+        }
+    }
+}
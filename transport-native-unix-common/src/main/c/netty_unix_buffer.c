@@ -13,10 +13,22 @@
  * License for the specific language governing permissions and limitations
  * under the License.
  */
+#include <errno.h>
+#include <stdint.h>
+#include <sys/mman.h>
+#include "netty_unix_errors.h"
 #include "netty_unix_jni.h"
 #include "netty_unix_util.h"
 #include "netty_unix_buffer.h"
 
+static jobject netty_unix_buffer_newMappedBuffer(JNIEnv* env, void* memory, jint capacity, jlong length) {
+    jobject buffer = (*env)->NewDirectByteBuffer(env, memory, capacity);
+    if (buffer == NULL) {
+        munmap(memory, (size_t) length);
+    }
+    return buffer;
+}
+
 // JNI Registered Methods Begin
 static jlong netty_unix_buffer_memoryAddress0(JNIEnv* env, jclass clazz, jobject buffer) {
     return (jlong) (*env)->GetDirectBufferAddress(env, buffer);
@@ -26,12 +38,55 @@ static jint netty_unix_buffer_addressSize0(JNIEnv* env, jclass clazz) {
    return (jint) sizeof(int*);
 }
 
+static jobject netty_unix_buffer_mmapHugePages0(JNIEnv* env, jclass clazz, jint capacity, jlong length, jlong alignment, jboolean hugeTlb) {
+#ifdef MAP_HUGETLB
+    if (hugeTlb == JNI_TRUE) {
+        void* memory = mmap(NULL, (size_t) length, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS | MAP_HUGETLB, -1, 0);
+        if (memory != MAP_FAILED) {
+            return netty_unix_buffer_newMappedBuffer(env, memory, capacity, length);
+        }
+        // No reserved huge page left, fallback to transparent huge pages.
+    }
+#endif
+    // Map one more huge page than needed and trim the mapping so it starts at an address aligned to the huge page
+    // size, otherwise the kernel can not back it with transparent huge pages.
+    size_t mappedLength = (size_t) (length + alignment);
+    char* mapped = mmap(NULL, mappedLength, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+    if (mapped == MAP_FAILED) {
+        netty_unix_errors_throwRuntimeExceptionErrorNo(env, "mmap() failed: ", errno);
+        return NULL;
+    }
+    size_t misalignment = (size_t) (((uintptr_t) mapped) & ((uintptr_t) alignment - 1));
+    size_t head = misalignment == 0 ? 0 : (size_t) alignment - misalignment;
+    size_t tail = mappedLength - head - (size_t) length;
+    if (head > 0) {
+        munmap(mapped, head);
+    }
+    if (tail > 0) {
+        munmap(mapped + head + length, tail);
+    }
+#ifdef MADV_HUGEPAGE
+    // Only a hint, transparent huge pages may be disabled.
+    madvise(mapped + head, (size_t) length, MADV_HUGEPAGE);
+#endif
+    return netty_unix_buffer_newMappedBuffer(env, mapped + head, capacity, length);
+}
+
+static void netty_unix_buffer_munmap0(JNIEnv* env, jclass clazz, jobject buffer, jlong length) {
+    void* memory = (*env)->GetDirectBufferAddress(env, buffer);
+    if (munmap(memory, (size_t) length) == -1) {
+        netty_unix_errors_throwRuntimeExceptionErrorNo(env, "munmap() failed: ", errno);
+    }
+}
+
 // JNI Registered Methods End
 
 // JNI Method Registration Table Begin
 static const JNINativeMethod statically_referenced_fixed_method_table[] = {
   { "memoryAddress0", "(Ljava/nio/ByteBuffer;)J", (void *) netty_unix_buffer_memoryAddress0 },
-  { "addressSize0", "()I", (void *) netty_unix_buffer_addressSize0 }
+  { "addressSize0", "()I", (void *) netty_unix_buffer_addressSize0 },
+  { "mmapHugePages0", "(IJJZ)Ljava/nio/ByteBuffer;", (void *) netty_unix_buffer_mmapHugePages0 },
+  { "munmap0", "(Ljava/nio/ByteBuffer;J)V", (void *) netty_unix_buffer_munmap0 }
 };
 static const jint statically_referenced_fixed_method_table_size = sizeof(statically_referenced_fixed_method_table) / sizeof(statically_referenced_fixed_method_table[0]);
 // JNI Method Registration Table End
@@ -62,7 +62,27 @@ public final class Buffer {
         return addressSize0();
     }
 
+    /**
+     * Map {@code length} bytes of anonymous memory that start at an address aligned to {@code hugePageSize} and
+     * return the first {@code capacity} bytes of it. The mapping comes from the reserved huge pages if
+     * {@code hugeTlb} is {@code true} and there are enough of them left, or is advised to be backed by transparent
+     * huge pages otherwise.
+     */
+    static ByteBuffer mmapHugePages(int capacity, long length, long hugePageSize, boolean hugeTlb) {
+        return mmapHugePages0(capacity, length, hugePageSize, hugeTlb);
+    }
+
+    /**
+     * Unmap the {@code length} bytes of memory returned by {@link #mmapHugePages(int, long, long, boolean)}.
+     */
+    static void munmap(ByteBuffer buffer, long length) {
+        munmap0(buffer, length);
+    }
+
     // If Unsafe can not be used we will need to do JNI calls.
     private static native int addressSize0();
     private static native long memoryAddress0(ByteBuffer buffer);
+
+    private static native ByteBuffer mmapHugePages0(int capacity, long length, long alignment, boolean hugeTlb);
+    private static native void munmap0(ByteBuffer buffer, long length);
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.unix;
+
+import io.netty.buffer.ChunkAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.internal.UnstableApi;
+
+import java.nio.ByteBuffer;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * {@link ChunkAllocator} which maps the chunks of a {@link PooledByteBufAllocator} with huge pages, which reduces
+ * the TLB misses when accessing large amounts of direct memory.
+ * <p>
+ * Every chunk is mapped with {@code MAP_HUGETLB} from the huge pages reserved via {@code vm.nr_hugepages}. When there
+ * are not enough of them left (or when {@code MAP_HUGETLB} is not used) the chunk is mapped at an address aligned to
+ * the huge page size and advised with {@code madvise(MADV_HUGEPAGE)} so it can be backed by transparent huge pages.
+ * Chunks that are not a multiple of the huge page size would share huge pages with unrelated mappings, so the
+ * chunk size of the {@link PooledByteBufAllocator} ({@code pageSize << maxOrder}) must be a multiple of it and its
+ * {@code directMemoryCacheAlignment} must be {@code 0}. Use {@link #validateChunkSize(int)} to check it up front.
+ * <p>
+ * The native library of the epoll or kqueue transport must be loaded before the first chunk is allocated, for example
+ * via {@code Epoll.ensureAvailability()}.
+ */
+@UnstableApi
+public final class HugePageChunkAllocator implements ChunkAllocator {
+
+    private static final int DEFAULT_HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+
+    private final int hugePageSize;
+    private final boolean hugeTlb;
+
+    /**
+     * Creates a new instance which maps the chunks with {@code MAP_HUGETLB} and 2 MiB huge pages.
+     */
+    public HugePageChunkAllocator() {
+        this(true);
+    }
+
+    /**
+     * Creates a new instance for 2 MiB huge pages.
+     *
+     * @param hugeTlb {@code true} if the chunks should be mapped with {@code MAP_HUGETLB}, {@code false} if they should
+     *                only use transparent huge pages.
+     */
+    public HugePageChunkAllocator(boolean hugeTlb) {
+        this(hugeTlb, DEFAULT_HUGE_PAGE_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param hugeTlb {@code true} if the chunks should be mapped with {@code MAP_HUGETLB}, {@code false} if they should
+     *                only use transparent huge pages.
+     * @param hugePageSize the size of the huge pages of the system, must be a power of two.
+     */
+    public HugePageChunkAllocator(boolean hugeTlb, int hugePageSize) {
+        checkPositive(hugePageSize, "hugePageSize");
+        if ((hugePageSize & hugePageSize - 1) != 0) {
+            throw new IllegalArgumentException("hugePageSize: " + hugePageSize + " (expected: power of two)");
+        }
+        this.hugeTlb = hugeTlb;
+        this.hugePageSize = hugePageSize;
+    }
+
+    /**
+     * Returns the size of the huge pages the chunks are mapped with.
+     */
+    public int hugePageSize() {
+        return hugePageSize;
+    }
+
+    /**
+     * Throws an {@link IllegalArgumentException} if {@code chunkSize} is not a positive multiple of
+     * {@link #hugePageSize()}, otherwise returns it.
+     */
+    public int validateChunkSize(int chunkSize) {
+        if (chunkSize <= 0 || (chunkSize & hugePageSize - 1) != 0) {
+            throw new IllegalArgumentException(
+                    "chunkSize: " + chunkSize + " (expected: multiple of hugePageSize " + hugePageSize + ')');
+        }
+        return chunkSize;
+    }
+
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        validateChunkSize(capacity);
+        return Buffer.mmapHugePages(capacity, capacity, hugePageSize, hugeTlb);
+    }
+
+    @Override
+    public void free(ByteBuffer memory) {
+        Buffer.munmap(memory, memory.capacity());
+    }
+}
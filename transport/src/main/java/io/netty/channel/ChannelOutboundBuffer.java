@@ -34,6 +34,9 @@ import io.netty.util.internal.logging.InternalLoggerFactory;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
@@ -54,7 +57,7 @@ import static java.lang.Math.min;
 public final class ChannelOutboundBuffer {
     // Assuming a 64-bit JVM:
     //  - 16 bytes object header
-    //  - 6 reference fields
+    //  - 5 reference fields
     //  - 2 long fields
     //  - 2 int fields
     //  - 1 boolean field
@@ -70,6 +73,14 @@ public final class ChannelOutboundBuffer {
             return new ByteBuffer[1024];
         }
     };
+
+    // The multi-buffer messages gathered by the current nioBuffers(...) call, only used once there is more than one.
+    private static final FastThreadLocal<Set<ByteBuf>> GATHERED_BUFFERS = new FastThreadLocal<Set<ByteBuf>>() {
+        @Override
+        protected Set<ByteBuf> initialValue() throws Exception {
+            return Collections.newSetFromMap(new IdentityHashMap<ByteBuf, Boolean>());
+        }
+    };
     // 表示当前出站缓冲区归属channel
     private final Channel channel;
 
@@ -464,6 +475,10 @@ public final class ChannelOutboundBuffer {
         // 这里会给每个线程分配一个长度为1024的byteBuffer数组，避免每个线程每次调用nioBuffers方法时都会创建byteBuffer数组
         // 提升了性能
         ByteBuffer[] nioBuffers = NIO_BUFFERS.get(threadLocalMap);
+        // The first multi-buffer message and, once there is a second one, all of them, so a message that was added
+        // more than once is detected without walking the flushed entries again.
+        ByteBuf firstGatheredBuf = null;
+        Set<ByteBuf> gatheredBufs = null;
         // 循环处理开始结点 flushedEntry
         Entry entry = flushedEntry;
         // 循环条件：当前结点不是 null && 当前结点不是unflushedEntry指向结点：1.循环到末尾 2.循环到unflushedEntry
@@ -529,9 +544,21 @@ public final class ChannelOutboundBuffer {
                         // 将刚刚转换出来的byteBuffer对象加入到数组中...
                         nioBuffers[nioBufferCount++] = nioBuf;
                     } else {
+                        boolean gathered;
+                        if (firstGatheredBuf == null) {
+                            firstGatheredBuf = buf;
+                            gathered = false;
+                        } else {
+                            if (gatheredBufs == null) {
+                                gatheredBufs = GATHERED_BUFFERS.get(threadLocalMap);
+                                gatheredBufs.add(firstGatheredBuf);
+                            }
+                            gathered = !gatheredBufs.add(buf);
+                        }
                         // The code exists in an extra method to ensure the method is not too big to inline as this
                         // branch is not very likely to get hit very frequently.
-                        nioBufferCount = nioBuffers(entry, buf, nioBuffers, nioBufferCount, maxCount);
+                        nioBufferCount = nioBuffers(buf, readerIndex, readableBytes, nioBuffers,
+                                nioBufferCount, maxCount, gathered);
                     }
                     if (nioBufferCount == maxCount) {
                         break;
@@ -540,6 +567,9 @@ public final class ChannelOutboundBuffer {
             }
             entry = entry.next;
         }
+        if (gatheredBufs != null) {
+            gatheredBufs.clear();
+        }
         // 出站缓冲区， 有多少byteBuffer待出站
         this.nioBufferCount = nioBufferCount;
         // 出站缓冲区，与欧多少字节byteBuffer待出站
@@ -548,23 +578,26 @@ public final class ChannelOutboundBuffer {
         return nioBuffers;
     }
 
-    private static int nioBuffers(Entry entry, ByteBuf buf, ByteBuffer[] nioBuffers, int nioBufferCount, int maxCount) {
-        ByteBuffer[] nioBufs = entry.bufs;
-        if (nioBufs == null) {
-            // cached ByteBuffers as they may be expensive to create in terms
-            // of Object allocation
-            entry.bufs = nioBufs = buf.nioBuffers();
-        }
-        for (int i = 0; i < nioBufs.length && nioBufferCount < maxCount; ++i) {
-            ByteBuffer nioBuf = nioBufs[i];
-            if (nioBuf == null) {
-                break;
-            } else if (!nioBuf.hasRemaining()) {
-                continue;
+    private static int nioBuffers(ByteBuf buf, int readerIndex, int readableBytes, ByteBuffer[] nioBuffers,
+                                  int nioBufferCount, int maxCount, boolean gathered) {
+        // Let the buffer store its NIO buffers directly into the thread-local array, which avoids creating and
+        // caching a new ByteBuffer[] for each composite buffer. These NIO buffers are owned by the buffer, so if the
+        // same buffer was already gathered by an earlier entry use new ones.
+        if (gathered) {
+            ByteBuffer[] nioBufs = buf.nioBuffers(readerIndex, readableBytes);
+            for (int i = 0; i < nioBufs.length && nioBufferCount < maxCount; ++i) {
+                ByteBuffer nioBuf = nioBufs[i];
+                if (nioBuf == null) {
+                    break;
+                } else if (!nioBuf.hasRemaining()) {
+                    continue;
+                }
+                nioBuffers[nioBufferCount++] = nioBuf;
             }
-            nioBuffers[nioBufferCount++] = nioBuf;
+            return nioBufferCount;
         }
-        return nioBufferCount;
+        return nioBufferCount + buf.nioBuffers(readerIndex, readableBytes, nioBuffers, nioBufferCount,
+                maxCount - nioBufferCount);
     }
 
     private static ByteBuffer[] expandNioBufferArray(ByteBuffer[] array, int neededSpace, int size) {
@@ -895,7 +928,6 @@ public final class ChannelOutboundBuffer {
         // 组装成链表使用的字段，指向下一个entry对象
         Object msg;
         // 当unsafe调用出站缓冲区，nioBuffers方法时，被涉及到的entry都会将它的msg转换成byteBuffer，这里缓存结果使用
-        ByteBuffer[] bufs;
         ByteBuffer buf;
         // 业务层面关注 msg写结果 提交的promise
         ChannelPromise promise;
@@ -903,10 +935,10 @@ public final class ChannelOutboundBuffer {
         long progress;
         // msg bytebuf有效数据量大小
         long total;
-        // byteBuf 有效数据量大小 + 96(16 + 6*8 + 16 + 8 + 1)
+        // byteBuf 有效数据量大小 + 96(16 + 5*8 + 16 + 8 + 1)
         // Assuming a 64-bit JVM:
         //  - 16 bytes object header
-        //  - 6 reference fields
+        //  - 5 reference fields
         //  - 2 long fields
         //  - 2 int fields
         //  - 1 boolean field
@@ -943,7 +975,6 @@ public final class ChannelOutboundBuffer {
                 pendingSize = 0;
                 total = 0;
                 progress = 0;
-                bufs = null;
                 buf = null;
                 return pSize;
             }
@@ -952,7 +983,6 @@ public final class ChannelOutboundBuffer {
 
         void recycle() {
             next = null;
-            bufs = null;
             buf = null;
             msg = null;
             promise = null;
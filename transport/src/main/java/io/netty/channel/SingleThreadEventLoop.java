@@ -176,14 +176,4 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
     public int pendingTasks() {
         return super.pendingTasks() + tailTasks.size();
     }
-
-    /**
-     * Returns the number of {@link Channel}s registered with this {@link EventLoop} or {@code -1}
-     * if operation is not supported. The returned value is not guaranteed to be exact accurate and
-     * should be viewed as a best effort.
-     */
-    @UnstableApi
-    public int registeredChannels() {
-        return -1;
-    }
 }
@@ -498,9 +498,11 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                             if (!hasTasks()) {
                                 // 1. curDeadlineNanos 最大值，表示没有周期性任务的情况
                                 // 2. curDeadlineNanos 表示周期性任务需要执行的截止时间
+                                markIdle();
                                 strategy = select(curDeadlineNanos);
                             }
                         } finally {
+                            markBusy();
                             // This update is just to help block unnecessary selector wakeups
                             // so use of lazySet is ok (no race condition)
                             nextWakeupNanos.lazySet(AWAKE);
@@ -124,6 +124,63 @@ public class ChannelOutboundBufferTest {
         buf.release();
     }
 
+    @Test
+    public void testNioBuffersCompositeAfterRemoveBytes() {
+        TestChannel channel = new TestChannel();
+
+        ChannelOutboundBuffer buffer = new ChannelOutboundBuffer(channel);
+
+        CompositeByteBuf comp = compositeBuffer(256);
+        comp.addComponent(true, directBuffer().writeBytes("buf1".getBytes(CharsetUtil.US_ASCII)));
+        comp.addComponent(true, directBuffer().writeBytes("buf2".getBytes(CharsetUtil.US_ASCII)));
+        buffer.addMessage(comp, comp.readableBytes(), channel.voidPromise());
+        buffer.addFlush();
+
+        ByteBuffer[] buffers = buffer.nioBuffers();
+        assertEquals(2, buffer.nioBufferCount());
+        assertEquals(8, buffer.nioBufferSize());
+
+        buffer.removeBytes(5);
+        buffers = buffer.nioBuffers();
+        assertEquals(1, buffer.nioBufferCount());
+        assertEquals(3, buffer.nioBufferSize());
+        assertEquals(ByteBuffer.wrap("uf2".getBytes(CharsetUtil.US_ASCII)), buffers[0]);
+        release(buffer);
+    }
+
+    @Test
+    public void testNioBuffersSharedBuffer() {
+        TestChannel channel = new TestChannel();
+
+        ChannelOutboundBuffer buffer = new ChannelOutboundBuffer(channel);
+
+        ByteBuf header = directBuffer().writeBytes("header".getBytes(CharsetUtil.US_ASCII));
+        CompositeByteBuf comp1 = compositeBuffer();
+        comp1.addComponent(true, header.retainedDuplicate());
+        comp1.addComponent(true, directBuffer().writeBytes("body1".getBytes(CharsetUtil.US_ASCII)));
+        CompositeByteBuf comp2 = compositeBuffer();
+        comp2.addComponent(true, header.retainedSlice(0, 4));
+        comp2.addComponent(true, directBuffer().writeBytes("body2".getBytes(CharsetUtil.US_ASCII)));
+        // The same buffer in two composites, as a plain entry and the same composite twice.
+        buffer.addMessage(comp1, comp1.readableBytes(), channel.voidPromise());
+        buffer.addMessage(comp2, comp2.readableBytes(), channel.voidPromise());
+        buffer.addMessage(header.retainedSlice(1, 3), 3, channel.voidPromise());
+        buffer.addMessage(comp1.retain(), comp1.readableBytes(), channel.voidPromise());
+        buffer.addFlush();
+
+        ByteBuffer[] buffers = buffer.nioBuffers();
+        assertEquals(7, buffer.nioBufferCount());
+        String[] expected = { "header", "body1", "head", "body2", "ead", "header", "body1" };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(ByteBuffer.wrap(expected[i].getBytes(CharsetUtil.US_ASCII)), buffers[i]);
+            for (int j = 0; j < i; j++) {
+                assertNotSame(buffers[j], buffers[i]);
+            }
+        }
+        header.release();
+        release(buffer);
+    }
+
     private static void release(ChannelOutboundBuffer buffer) {
         for (;;) {
             if (!buffer.remove()) {